@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.config.FileOfClasses;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Set-up shared by the benchmarks. The scope is read from the class path, where the test data and the scope and exclusions files
+ * of com.ibm.wala.core.tests are found in the benchmark jar.
+ */
+class BenchUtil {
+
+  private static final ClassLoader MY_CLASSLOADER = BenchUtil.class.getClassLoader();
+
+  /**
+   * call graph construction policies of {@link #makeBuilder}
+   */
+  static final String ZERO_CFA = "0-CFA";
+
+  static final String ZERO_ONE_CFA = "0-1-CFA";
+
+  /**
+   * @return the scope of the test data, without the regression exclusions
+   */
+  static AnalysisScope makeScope() throws IOException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, null, MY_CLASSLOADER);
+    scope.setExclusions(new FileOfClasses(new FileProvider().getInputStreamFromClassLoader(CallGraphTestUtil.REGRESSION_EXCLUSIONS,
+        MY_CLASSLOADER)));
+    return scope;
+  }
+
+  static AnalysisOptions makeOptions(AnalysisScope scope, IClassHierarchy cha, String mainClass) {
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, mainClass);
+    return CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+  }
+
+  /**
+   * @param policy {@link #ZERO_CFA} or {@link #ZERO_ONE_CFA}
+   */
+  static CallGraphBuilder makeBuilder(String policy, AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha,
+      AnalysisScope scope) {
+    if (ZERO_CFA.equals(policy)) {
+      return Util.makeZeroCFABuilder(options, cache, cha, scope);
+    } else if (ZERO_ONE_CFA.equals(policy)) {
+      return Util.makeZeroOneCFABuilder(options, cache, cha, scope);
+    } else {
+      throw new IllegalArgumentException("unknown policy " + policy);
+    }
+  }
+
+  /**
+   * @return the node of the main method in cg
+   */
+  static CGNode findMainMethod(CallGraph cg) {
+    for (Iterator<? extends CGNode> it = cg.getSuccNodes(cg.getFakeRootNode()); it.hasNext();) {
+      CGNode n = it.next();
+      if (n.getMethod().getName().toString().equals("main")) {
+        return n;
+      }
+    }
+    throw new IllegalStateException("no main method in " + cg);
+  }
+
+  /**
+   * @return the statement of the first call in n to a method named methodName
+   */
+  static Statement findCallTo(CGNode n, String methodName) {
+    IR ir = n.getIR();
+    for (Iterator<CallSiteReference> it = ir.iterateCallSites(); it.hasNext();) {
+      CallSiteReference site = it.next();
+      if (site.getDeclaredTarget().getName().toString().equals(methodName)) {
+        return new NormalStatement(n, ir.getCallInstructionIndices(site).intIterator().next());
+      }
+    }
+    throw new IllegalStateException("no call to " + methodName + " in " + n);
+  }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+
+/**
+ * Time call graph construction for some main classes of the test data. Each invocation starts from a fresh
+ * {@link AnalysisCache}, so IRs are built again as they would be by a single analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class CallGraphBenchmark {
+
+  @Param({ BenchUtil.ZERO_CFA, BenchUtil.ZERO_ONE_CFA })
+  public String policy;
+
+  @Param({ TestConstants.SLICE1_MAIN, TestConstants.ARRAY_ALIAS_MAIN })
+  public String mainClass;
+
+  private AnalysisScope scope;
+
+  private ClassHierarchy cha;
+
+  private AnalysisOptions options;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    scope = BenchUtil.makeScope();
+    cha = ClassHierarchy.make(scope);
+    options = BenchUtil.makeOptions(scope, cha, mainClass);
+  }
+
+  @Benchmark
+  public CallGraph makeCallGraph() throws Exception {
+    return BenchUtil.makeBuilder(policy, options, new AnalysisCache(), cha, scope).makeCallGraph(options, null);
+  }
+}
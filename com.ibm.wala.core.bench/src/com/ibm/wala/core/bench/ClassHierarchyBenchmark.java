@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Time {@link ClassHierarchy#make(AnalysisScope)} on the scope of the test data, with the standard library, and the subtype tests
+ * against interfaces which type filters and dispatch ask of it: every class against every interface that some class implements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class ClassHierarchyBenchmark {
+
+  private AnalysisScope scope;
+
+  private ClassHierarchy cha;
+
+  private final List<IClass> classes = new ArrayList<IClass>();
+
+  private final List<IClass> interfaces = new ArrayList<IClass>();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    scope = BenchUtil.makeScope();
+    cha = ClassHierarchy.make(scope);
+    Set<IClass> implemented = HashSetFactory.make();
+    for (IClass klass : cha) {
+      if (!klass.isInterface()) {
+        classes.add(klass);
+        implemented.addAll(klass.getAllImplementedInterfaces());
+      }
+    }
+    interfaces.addAll(implemented);
+  }
+
+  @Benchmark
+  public ClassHierarchy makeClassHierarchy() throws Exception {
+    return ClassHierarchy.make(scope);
+  }
+
+  /**
+   * the interface is the outer loop, as it is for a type filter applied to the instance keys of a points-to set
+   */
+  @Benchmark
+  public int implementsInterface() {
+    int result = 0;
+    for (IClass i : interfaces) {
+      for (IClass c : classes) {
+        if (cha.implementsInterface(c, i)) {
+          result++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * the class is the outer loop, so that consecutive queries ask about different interfaces
+   */
+  @Benchmark
+  public int implementsInterfaceByClass() {
+    int result = 0;
+    for (IClass c : classes) {
+      for (IClass i : interfaces) {
+        if (cha.implementsInterface(c, i)) {
+          result++;
+        }
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int isAssignableFrom() {
+    int result = 0;
+    for (IClass i : interfaces) {
+      for (IClass c : classes) {
+        if (cha.isAssignableFrom(i, c)) {
+          result++;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeIRFactory;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACFG;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.graph.dominators.Dominators;
+
+/**
+ * Time dominance queries between all pairs of blocks of the largest {@link SSACFG}s of the application classes of the test data:
+ * the range checks on the numbered dominator tree which {@link Dominators#isDominatedBy} does, against walks up the chains of
+ * immediate dominators, which it did before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class DominatorsBenchmark {
+
+  /**
+   * the number of control-flow graphs to query
+   */
+  private static final int CFGS = 20;
+
+  private final List<SSACFG> cfgs = new ArrayList<SSACFG>();
+
+  private final List<Dominators<ISSABasicBlock>> dominators = new ArrayList<Dominators<ISSABasicBlock>>();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    ShrikeIRFactory factory = new ShrikeIRFactory();
+    SSAOptions options = new SSAOptions();
+    ClassHierarchy cha = ClassHierarchy.make(BenchUtil.makeScope());
+    for (IClass klass : cha) {
+      if (klass.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        for (IMethod m : klass.getDeclaredMethods()) {
+          if (m instanceof IBytecodeMethod && !m.isAbstract() && !m.isNative()) {
+            cfgs.add(factory.makeIR((IBytecodeMethod) m, Everywhere.EVERYWHERE, options).getControlFlowGraph());
+          }
+        }
+      }
+    }
+    Collections.sort(cfgs, new Comparator<SSACFG>() {
+      @Override
+      public int compare(SSACFG a, SSACFG b) {
+        return b.getNumberOfNodes() - a.getNumberOfNodes();
+      }
+    });
+    cfgs.subList(Math.min(CFGS, cfgs.size()), cfgs.size()).clear();
+    for (SSACFG cfg : cfgs) {
+      Dominators<ISSABasicBlock> d = Dominators.make(cfg, cfg.entry());
+      // number the dominator tree now, so that the queries below do not time it
+      d.isDominatedBy(cfg.entry(), cfg.entry());
+      dominators.add(d);
+    }
+  }
+
+  @Benchmark
+  public int intervals() {
+    int result = 0;
+    for (int i = 0; i < cfgs.size(); i++) {
+      Dominators<ISSABasicBlock> d = dominators.get(i);
+      for (ISSABasicBlock node : cfgs.get(i)) {
+        for (ISSABasicBlock master : cfgs.get(i)) {
+          if (d.isDominatedBy(node, master)) {
+            result++;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int idomChains() {
+    int result = 0;
+    for (int i = 0; i < cfgs.size(); i++) {
+      Dominators<ISSABasicBlock> d = dominators.get(i);
+      for (ISSABasicBlock node : cfgs.get(i)) {
+        for (ISSABasicBlock master : cfgs.get(i)) {
+          for (ISSABasicBlock ptr = node; ptr != null; ptr = d.getIdom(ptr)) {
+            if (ptr.equals(master)) {
+              result++;
+              break;
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * the cost of computing the dominators and numbering their tree, which the first query pays
+   */
+  @Benchmark
+  public int analyze() {
+    int result = 0;
+    for (SSACFG cfg : cfgs) {
+      if (Dominators.make(cfg, cfg.entry()).isDominatedBy(cfg.exit(), cfg.entry())) {
+        result++;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.util.intset.BimodalMutableIntSetFactory;
+import com.ibm.wala.util.intset.BitVectorIntSetFactory;
+import com.ibm.wala.util.intset.DebuggingMutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+import com.ibm.wala.util.intset.RoaringMutableIntSetFactory;
+import com.ibm.wala.util.intset.SemiSparseMutableIntSetFactory;
+
+/**
+ * Time union and intersection of two sets made by each {@link MutableIntSetFactory}. The sets have the same number of
+ * elements, drawn from a small range (dense sets) or a large one (sparse sets), as points-to sets of few and of many objects are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IntSetBenchmark {
+
+  @Param({ "BitVector", "MutableSharedBitVector", "MutableSparse", "SemiSparse", "Bimodal", "Roaring", "Debugging" })
+  public String factory;
+
+  @Param({ "16", "1024" })
+  public int size;
+
+  /**
+   * the elements are drawn from [0, size * spread)
+   */
+  @Param({ "2", "1000" })
+  public int spread;
+
+  private MutableIntSetFactory<?> f;
+
+  private MutableIntSet a;
+
+  private MutableIntSet b;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    f = makeFactory(factory);
+    Random r = new Random(size ^ spread);
+    a = f.make(randomElements(r));
+    b = f.make(randomElements(r));
+  }
+
+  private static MutableIntSetFactory<?> makeFactory(String name) {
+    if (name.equals("BitVector")) {
+      return new BitVectorIntSetFactory();
+    } else if (name.equals("MutableSharedBitVector")) {
+      return new MutableSharedBitVectorIntSetFactory();
+    } else if (name.equals("MutableSparse")) {
+      return new MutableSparseIntSetFactory();
+    } else if (name.equals("SemiSparse")) {
+      return new SemiSparseMutableIntSetFactory();
+    } else if (name.equals("Bimodal")) {
+      return new BimodalMutableIntSetFactory();
+    } else if (name.equals("Roaring")) {
+      return new RoaringMutableIntSetFactory();
+    } else if (name.equals("Debugging")) {
+      return new DebuggingMutableIntSetFactory();
+    } else {
+      throw new IllegalArgumentException("unknown factory " + name);
+    }
+  }
+
+  /**
+   * @return size distinct elements in [0, size * spread), in increasing order
+   */
+  private int[] randomElements(Random r) {
+    BitSet chosen = new BitSet();
+    while (chosen.cardinality() < size) {
+      chosen.set(r.nextInt(size * spread));
+    }
+    int[] result = new int[size];
+    int j = 0;
+    for (int i = chosen.nextSetBit(0); i >= 0; i = chosen.nextSetBit(i + 1)) {
+      result[j++] = i;
+    }
+    return result;
+  }
+
+  @Benchmark
+  public MutableIntSet union() {
+    MutableIntSet result = f.makeCopy(a);
+    result.addAll(b);
+    return result;
+  }
+
+  @Benchmark
+  public MutableIntSet intersection() {
+    MutableIntSet result = f.makeCopy(a);
+    result.intersectWith(b);
+    return result;
+  }
+
+  /**
+   * the cost of the copy which {@link #union()} and {@link #intersection()} make first
+   */
+  @Benchmark
+  public MutableIntSet copy() {
+    return f.makeCopy(a);
+  }
+}
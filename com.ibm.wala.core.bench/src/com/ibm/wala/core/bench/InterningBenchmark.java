@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+import com.ibm.wala.util.strings.ImmutableByteArray;
+import com.ibm.wala.util.strings.UTF8Convert;
+
+/**
+ * Time findOrCreate of {@link Atom}, {@link TypeName}, {@link TypeReference}, {@link MethodReference} and {@link FieldReference}
+ * from several threads at once. Hits find keys which every thread interned before; misses create keys which no thread has seen,
+ * and so insert into the dictionary. The mixed group runs readers that hit against a writer that misses, as class loading in
+ * parallel with IR construction does.
+ *
+ * Each invocation interns a batch of {@link #KEYS} keys. The dictionaries never shrink, so misses are timed one batch per
+ * iteration, rather than for as long as an iteration lasts, to bound the memory they fill.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class InterningBenchmark {
+
+  /**
+   * the number of keys interned by each invocation
+   */
+  private static final int KEYS = 10000;
+
+  /**
+   * numbers the batches of keys, so that the names of every batch of misses are new
+   */
+  private static final AtomicInteger batches = new AtomicInteger();
+
+  @Param({ "Atom", "TypeName", "TypeReference", "MethodReference", "FieldReference" })
+  public String kind;
+
+  private Keys hits;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    // every thread makes the same names, so that they all hit the same entries
+    hits = makeKeys(kind, "hit");
+    for (int k = 0; k < KEYS; k++) {
+      hits.intern(k);
+    }
+  }
+
+  /**
+   * keys which no thread has interned, made anew for each iteration
+   */
+  @State(Scope.Thread)
+  public static class Misses {
+
+    private Keys keys;
+
+    @Setup(Level.Iteration)
+    public void setUp(InterningBenchmark b) {
+      keys = makeKeys(b.kind, "miss" + batches.getAndIncrement());
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(KEYS)
+  public void hits(Blackhole bh) {
+    internAll(hits, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(KEYS)
+  public void misses(Misses misses, Blackhole bh) {
+    internAll(misses.keys, bh);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(3)
+  @OperationsPerInvocation(KEYS)
+  public void mixedHits(Blackhole bh) {
+    internAll(hits, bh);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  @OperationsPerInvocation(KEYS)
+  public void mixedMisses(Misses misses, Blackhole bh) {
+    internAll(misses.keys, bh);
+  }
+
+  private static void internAll(Keys keys, Blackhole bh) {
+    for (int k = 0; k < KEYS; k++) {
+      bh.consume(keys.intern(k));
+    }
+  }
+
+  /**
+   * The inputs to findOrCreate for {@link #KEYS} keys of one kind. Their parts which are themselves interned (the names of the
+   * types, methods and fields) are interned here, so that only the dictionary of the kind is timed.
+   */
+  private static abstract class Keys {
+    abstract Object intern(int k);
+  }
+
+  private static Keys makeKeys(String kind, String prefix) {
+    if (kind.equals("Atom")) {
+      final byte[][] names = new byte[KEYS][];
+      for (int k = 0; k < KEYS; k++) {
+        names[k] = UTF8Convert.toUTF8(prefix + "_" + k);
+      }
+      return new Keys() {
+        @Override
+        Object intern(int k) {
+          return Atom.findOrCreate(names[k]);
+        }
+      };
+    } else if (kind.equals("TypeName")) {
+      final ImmutableByteArray[] names = new ImmutableByteArray[KEYS];
+      for (int k = 0; k < KEYS; k++) {
+        names[k] = ImmutableByteArray.make(className(prefix, k));
+      }
+      return new Keys() {
+        @Override
+        Object intern(int k) {
+          return TypeName.findOrCreate(names[k]);
+        }
+      };
+    } else if (kind.equals("TypeReference")) {
+      final TypeName[] names = new TypeName[KEYS];
+      for (int k = 0; k < KEYS; k++) {
+        names[k] = TypeName.findOrCreate(className(prefix, k));
+      }
+      return new Keys() {
+        @Override
+        Object intern(int k) {
+          return TypeReference.findOrCreate(ClassLoaderReference.Application, names[k]);
+        }
+      };
+    } else if (kind.equals("MethodReference")) {
+      final Atom[] names = makeAtoms(prefix);
+      final Descriptor descriptor = Descriptor.findOrCreateUTF8("()V");
+      return new Keys() {
+        @Override
+        Object intern(int k) {
+          return MethodReference.findOrCreate(TypeReference.JavaLangObject, names[k], descriptor);
+        }
+      };
+    } else if (kind.equals("FieldReference")) {
+      final Atom[] names = makeAtoms(prefix);
+      return new Keys() {
+        @Override
+        Object intern(int k) {
+          return FieldReference.findOrCreate(TypeReference.JavaLangObject, names[k], TypeReference.Int);
+        }
+      };
+    } else {
+      throw new IllegalArgumentException("unknown kind " + kind);
+    }
+  }
+
+  private static String className(String prefix, int k) {
+    return "Lbench/" + prefix + "/C" + k;
+  }
+
+  private static Atom[] makeAtoms(String prefix) {
+    Atom[] result = new Atom[KEYS];
+    for (int k = 0; k < KEYS; k++) {
+      result[k] = Atom.findOrCreateUnicodeAtom(prefix + "_" + k);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.slicer.Slicer;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+
+/**
+ * Time a backward slice from the call to println in the main method of the first slicer test, over its 0-1-CFA call graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class SlicerBenchmark {
+
+  @Param({ "FULL", "NO_BASE_PTRS", "NO_HEAP" })
+  public DataDependenceOptions dataOptions;
+
+  @Param({ "NONE", "FULL" })
+  public ControlDependenceOptions controlOptions;
+
+  private CallGraph cg;
+
+  private PointerAnalysis pa;
+
+  private Statement seed;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    AnalysisScope scope = BenchUtil.makeScope();
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisOptions options = BenchUtil.makeOptions(scope, cha, TestConstants.SLICE1_MAIN);
+    CallGraphBuilder builder = BenchUtil.makeBuilder(BenchUtil.ZERO_ONE_CFA, options, new AnalysisCache(), cha, scope);
+    cg = builder.makeCallGraph(options, null);
+    pa = builder.getPointerAnalysis();
+    CGNode main = BenchUtil.findMainMethod(cg);
+    seed = BenchUtil.findCallTo(main, "println");
+  }
+
+  @Benchmark
+  public Collection<Statement> backwardSlice() throws Exception {
+    return Slicer.computeBackwardSlice(seed, cg, pa, dataOptions, controlOptions);
+  }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.bench;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.dataflow.IFDS.SparseICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.examples.analysis.dataflow.ContextSensitiveReachingDefs;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPutInstruction;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Time the {@link TabulationSolver} on the context-sensitive reaching definitions of the dataflow test, over its 0-1-CFA call
+ * graph. Each invocation builds the supergraph again: the whole exploded supergraph, or a {@link SparseICFGSupergraph} which keeps
+ * only the nodes that access the static fields written in the program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class TabulationBenchmark {
+
+  private CallGraph cg;
+
+  private AnalysisCache cache;
+
+  private PointerAnalysis pa;
+
+  /**
+   * the static fields written by some putstatic instruction
+   */
+  private final Collection<PointerKey> staticFields = HashSetFactory.make();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    AnalysisScope scope = BenchUtil.makeScope();
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisOptions options = BenchUtil.makeOptions(scope, cha, "Ldataflow/StaticDataflow");
+    cache = new AnalysisCache();
+    CallGraphBuilder builder = BenchUtil.makeBuilder(BenchUtil.ZERO_ONE_CFA, options, cache, cha, scope);
+    cg = builder.makeCallGraph(options, null);
+    pa = builder.getPointerAnalysis();
+    for (CGNode n : cg) {
+      IR ir = n.getIR();
+      if (ir != null) {
+        for (SSAInstruction s : ir.getInstructions()) {
+          if (s instanceof SSAPutInstruction && ((SSAPutInstruction) s).isStatic()) {
+            IField f = cha.resolveField(((SSAPutInstruction) s).getDeclaredField());
+            if (f != null) {
+              staticFields.add(pa.getHeapModel().getPointerKeyForStaticField(f));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public TabulationResult<?, ?, ?> reachingDefs() {
+    return new ContextSensitiveReachingDefs(cg, cache).analyze();
+  }
+
+  @Benchmark
+  public TabulationResult<?, ?, ?> sparseReachingDefs() {
+    SparseICFGSupergraph supergraph = SparseICFGSupergraph.make(cg, cache, SparseICFGSupergraph.accessesHeap(pa, staticFields));
+    return new ContextSensitiveReachingDefs(cg, supergraph).analyze();
+  }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * JUnit tests for the canonical dictionaries of types, members and atoms.
+ */
+public class InterningTest extends WalaTestCase {
+
+  private static final int THREADS = 8;
+
+  private static final int NAMES = 2000;
+
+  /**
+   * Many threads race to create the same references; each must see the same canonical instances.
+   */
+  @Test
+  public void testConcurrentFindOrCreate() throws InterruptedException, ExecutionException {
+    // a fresh prefix, so that the references are created during the race
+    final String prefix = "Linterning" + System.nanoTime() + "/C";
+    List<Callable<Object[]>> tasks = new ArrayList<Callable<Object[]>>();
+    for (int t = 0; t < THREADS; t++) {
+      tasks.add(new Callable<Object[]>() {
+        @Override
+        public Object[] call() {
+          Object[] result = new Object[4 * NAMES];
+          for (int i = 0; i < NAMES; i++) {
+            TypeReference type = TypeReference.findOrCreate(ClassLoaderReference.Application, prefix + i);
+            result[4 * i] = type;
+            result[4 * i + 1] = Atom.findOrCreateUnicodeAtom("f" + i);
+            result[4 * i + 2] = FieldReference.findOrCreate(type, Atom.findOrCreateUnicodeAtom("f" + i), TypeReference.Int);
+            result[4 * i + 3] = MethodReference.findOrCreate(type, "m" + i, "()V");
+          }
+          return result;
+        }
+      });
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Object[]>> results = pool.invokeAll(tasks);
+      Object[] expected = results.get(0).get();
+      for (Future<Object[]> f : results) {
+        Object[] actual = f.get();
+        for (int i = 0; i < expected.length; i++) {
+          Assert.assertSame(expected[i], actual[i]);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -11,10 +11,14 @@
 package com.ibm.wala.core.tests.basic;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -22,11 +26,14 @@ import org.junit.Test;
 import com.ibm.wala.core.tests.util.WalaTestCase;
 import com.ibm.wala.util.collections.BimodalMap;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.IntObjectHashMap;
 import com.ibm.wala.util.collections.Iterator2Collection;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
 import com.ibm.wala.util.collections.SmallMap;
 import com.ibm.wala.util.graph.Graph;
 import com.ibm.wala.util.graph.NumberedGraph;
 import com.ibm.wala.util.graph.dominators.Dominators;
+import com.ibm.wala.util.graph.dominators.NumberedDominators;
 import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
 import com.ibm.wala.util.graph.traverse.BFSPathFinder;
 import com.ibm.wala.util.graph.traverse.BoundedBFSIterator;
@@ -36,8 +43,12 @@ import com.ibm.wala.util.intset.BitVector;
 import com.ibm.wala.util.intset.BitVectorBase;
 import com.ibm.wala.util.intset.BitVectorIntSetFactory;
 import com.ibm.wala.util.intset.IBinaryNaturalRelation;
+import com.ibm.wala.util.intset.IntIntHashMap;
+import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntPair;
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetRepository;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.IntegerUnionFind;
 import com.ibm.wala.util.intset.LongSet;
@@ -46,10 +57,12 @@ import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableIntSetFactory;
 import com.ibm.wala.util.intset.MutableLongSet;
 import com.ibm.wala.util.intset.MutableLongSetFactory;
+import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
 import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
 import com.ibm.wala.util.intset.MutableSparseLongSetFactory;
 import com.ibm.wala.util.intset.OffsetBitVector;
+import com.ibm.wala.util.intset.RoaringMutableIntSetFactory;
 import com.ibm.wala.util.intset.SemiSparseMutableIntSet;
 import com.ibm.wala.util.intset.SemiSparseMutableIntSetFactory;
 import com.ibm.wala.util.intset.SparseIntSet;
@@ -348,6 +361,205 @@ public class PrimitivesTest extends WalaTestCase {
     doMutableIntSet(new SemiSparseMutableIntSetFactory());
   }
 
+  /**
+   * Test the RoaringMutableIntSet implementation
+   */
+  @Test public void testRoaringMutableIntSet() {
+    doMutableIntSet(new RoaringMutableIntSetFactory());
+  }
+
+  /**
+   * Check that an IntSetRepository holds one set per value, whatever the representation, and that it memoizes unions
+   */
+  @Test public void testIntSetRepository() {
+    IntSetRepository repository = new IntSetRepository();
+    MutableIntSet sparse = new MutableSparseIntSetFactory().make(new int[] { 1, 2, 3 });
+    MutableIntSet bits = new BitVectorIntSetFactory().make(new int[] { 3, 2, 1 });
+    IntSetRepository.SharedSet a = repository.findOrCreate(sparse);
+    Assert.assertTrue(a.getValue().sameValue(sparse));
+    Assert.assertTrue(sparse != a.getValue());
+    Assert.assertSame(a, repository.findOrCreate(bits));
+    Assert.assertSame(a, repository.findOrAdopt(bits));
+    Assert.assertEquals(1, repository.size());
+
+    IntSetRepository.SharedSet b = repository.findOrCreate(SparseIntSet.singleton(4));
+    Assert.assertTrue(a != b);
+    Assert.assertTrue(a.getId() != b.getId());
+    IntSetRepository.SharedSet u = repository.union(a, b);
+    Assert.assertTrue(u.getValue().sameValue(new MutableSparseIntSetFactory().make(new int[] { 1, 2, 3, 4 })));
+    Assert.assertSame(u, repository.union(b, a));
+    Assert.assertSame(u, repository.union(u, a));
+    Assert.assertSame(a, repository.union(a, a));
+    Assert.assertSame(u, repository.findOrCreate(u.getValue()));
+    Assert.assertEquals(3, repository.size());
+    // sets are never modified by the repository
+    Assert.assertEquals(3, a.getValue().size());
+
+    // forgetting the sets nobody holds keeps the others canonical
+    repository.retainAll(Collections.singleton(u));
+    Assert.assertEquals(1, repository.size());
+    Assert.assertSame(u, repository.findOrCreate(u.getValue()));
+    Assert.assertTrue(a != repository.findOrCreate(sparse));
+  }
+
+  /**
+   * Compare the open-addressed maps with java.util.HashMaps under random puts and removes, which exercise the probing and the
+   * deletion of entries from probe sequences
+   */
+  @Test public void testPrimitiveHashMaps() {
+    Random r = new Random(11);
+    ObjectIntHashMap<String> oi = new ObjectIntHashMap<String>();
+    IntObjectHashMap<String> io = new IntObjectHashMap<String>();
+    IntIntHashMap ii = new IntIntHashMap(-7);
+    Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int round = 0; round < 20000; round++) {
+      int k = r.nextInt(500);
+      if (r.nextInt(3) == 0) {
+        expected.remove(k);
+        oi.remove("k" + k);
+        io.remove(k);
+        ii.remove(k);
+      } else {
+        int v = r.nextInt(1000);
+        expected.put(k, v);
+        oi.put("k" + k, v);
+        io.put(k, "v" + v);
+        ii.set(k, v);
+      }
+    }
+    Assert.assertEquals(expected.size(), oi.size());
+    Assert.assertEquals(expected.size(), io.size());
+    Assert.assertEquals(expected.size(), ii.size());
+    for (int k = 0; k < 500; k++) {
+      Integer v = expected.get(k);
+      Assert.assertEquals(v != null, oi.containsKey("k" + k));
+      Assert.assertEquals(v != null, io.containsKey(k));
+      Assert.assertEquals(v != null, ii.containsKey(k));
+      Assert.assertEquals(v == null ? -1 : v.intValue(), oi.get("k" + k));
+      Assert.assertEquals(v == null ? null : "v" + v, io.get(k));
+      Assert.assertEquals(v == null ? -7 : v.intValue(), ii.get(k));
+    }
+    int n = 0;
+    for (IntIterator it = io.keyIterator(); it.hasNext(); n++) {
+      Assert.assertTrue(expected.containsKey(it.next()));
+    }
+    Assert.assertEquals(expected.size(), n);
+  }
+
+  /**
+   * A MutableMapping iterates over its objects in the order in which they were mapped, and a replaced object moves to the end
+   */
+  @Test public void testMutableMappingOrder() {
+    MutableMapping<String> m = MutableMapping.make();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(i, m.add("s" + i));
+    }
+    m.replace("s0", "t0");
+    m.deleteMappedObject("s1");
+    Assert.assertEquals(0, m.getMappedIndex("t0"));
+    Assert.assertEquals(-1, m.getMappedIndex("s0"));
+    Assert.assertFalse(m.hasMappedIndex("s1"));
+    Assert.assertEquals(99, m.getSize());
+    Iterator<String> it = m.iterator();
+    for (int i = 2; i < 100; i++) {
+      Assert.assertEquals("s" + i, it.next());
+    }
+    Assert.assertEquals("t0", it.next());
+    Assert.assertFalse(it.hasNext());
+  }
+
+  /**
+   * Compare RoaringMutableIntSets with BitVectorIntSets on large sets, whose chunks are held as arrays, bitmaps and runs
+   */
+  @Test public void testRoaringMutableIntSetContainers() {
+    Random r = new Random(17);
+    MutableIntSetFactory<?> roaring = new RoaringMutableIntSetFactory();
+    MutableIntSetFactory<?> bits = new BitVectorIntSetFactory();
+    for (int round = 0; round < 20; round++) {
+      int[] a = clusteredInts(r);
+      int[] b = clusteredInts(r);
+      MutableIntSet ra = roaring.make(a);
+      MutableIntSet rb = roaring.make(b);
+      MutableIntSet ba = bits.make(a);
+      MutableIntSet bb = bits.make(b);
+      Assert.assertTrue(ra.sameValue(ba));
+      Assert.assertTrue(ba.sameValue(ra));
+      Assert.assertEquals(ba.size(), ra.size());
+      Assert.assertEquals(ba.max(), ra.max());
+      Assert.assertEquals(ba.containsAny(bb), ra.containsAny(rb));
+
+      int last = -1;
+      for (IntIterator it = ra.intIterator(); it.hasNext();) {
+        int i = it.next();
+        Assert.assertTrue(i > last);
+        Assert.assertTrue(ba.contains(i));
+        last = i;
+      }
+
+      MutableIntSet ru = roaring.makeCopy(ra);
+      MutableIntSet bu = bits.makeCopy(ba);
+      Assert.assertEquals(bu.addAll(bb), ru.addAll(rb));
+      Assert.assertTrue(ru.sameValue(bu));
+      Assert.assertFalse(ru.addAll(rb));
+      Assert.assertTrue(ra.isSubset(ru));
+
+      IntSet ri = ra.intersection(rb);
+      Assert.assertTrue(ri.sameValue(ba.intersection(bb)));
+      Assert.assertTrue(ri.isSubset(rb));
+
+      IntSet rd = IntSetUtil.diff(ra, rb, roaring);
+      Assert.assertTrue(rd.sameValue(IntSetUtil.diff(ba, bb, bits)));
+      final MutableIntSet excluded = bits.make();
+      ra.foreachExcluding(rb, new IntSetAction() {
+        @Override
+        public void act(int x) {
+          excluded.add(x);
+        }
+      });
+      Assert.assertTrue(rd.sameValue(excluded));
+
+      for (IntIterator it = bu.intIterator(); it.hasNext();) {
+        int i = it.next();
+        if (i % 3 != 0) {
+          Assert.assertTrue(ru.remove(i));
+        }
+      }
+      for (int i = 0; i <= bu.max(); i += 3) {
+        Assert.assertEquals(bu.contains(i), ru.contains(i));
+      }
+    }
+  }
+
+  /**
+   * @return ints in a few clusters, spread over several chunks of 2^16: sparse ones, dense ones and runs
+   */
+  private static int[] clusteredInts(Random r) {
+    MutableIntSet s = new BitVectorIntSetFactory().make();
+    for (int c = 0; c < 5; c++) {
+      int base = r.nextInt(1 << 19);
+      switch (r.nextInt(3)) {
+      case 0:
+        for (int k = 0; k < 100; k++) {
+          s.add(base + r.nextInt(1 << 17));
+        }
+        break;
+      case 1:
+        for (int k = 0; k < 20000; k++) {
+          s.add(base + r.nextInt(30000));
+        }
+        break;
+      default:
+        for (int k = 0; k < 10; k++) {
+          int start = base + r.nextInt(1 << 17);
+          for (int i = start + r.nextInt(3000); i >= start; i--) {
+            s.add(i);
+          }
+        }
+      }
+    }
+    return IntSetUtil.toArray(s);
+  }
+
   /**
    * Test the MutableSparseIntSet implementation
    */
@@ -781,6 +993,35 @@ public class PrimitivesTest extends WalaTestCase {
     Assert.assertTrue(D.dominatorTree().getSuccNodeCount(nodes[10]) == 5);
   }
 
+  /**
+   * Check the constant-time dominance queries of NumberedDominators against walks up the chains of immediate dominators, on random
+   * graphs with some nodes unreachable from the root
+   */
+  @Test public void testNumberedDominatorsIntervals() {
+    Random r = new Random(5);
+    for (int round = 0; round < 50; round++) {
+      NumberedGraph<Integer> G = SlowSparseNumberedGraph.make();
+      int n = 1 + r.nextInt(60);
+      for (int i = 0; i < n; i++) {
+        G.addNode(Integer.valueOf(i));
+      }
+      for (int e = 0; e < 2 * n; e++) {
+        G.addEdge(Integer.valueOf(r.nextInt(n)), Integer.valueOf(r.nextInt(n)));
+      }
+      Dominators<Integer> D = Dominators.make(G, Integer.valueOf(0));
+      Assert.assertTrue(D instanceof NumberedDominators);
+      for (Integer node : G) {
+        Set<Integer> dominators = HashSetFactory.make();
+        for (Iterator<Integer> it = D.dominators(node); it.hasNext();) {
+          dominators.add(it.next());
+        }
+        for (Integer master : G) {
+          Assert.assertEquals(node + " " + master, dominators.contains(master), D.isDominatedBy(node, master));
+        }
+      }
+    }
+  }
+
   @Test public void testBinaryIntegerRelation() {
     byte[] impl = new byte[] { BasicNaturalRelation.SIMPLE, BasicNaturalRelation.TWO_LEVEL, BasicNaturalRelation.SIMPLE };
     IBinaryNaturalRelation R = new BasicNaturalRelation(impl, BasicNaturalRelation.TWO_LEVEL);
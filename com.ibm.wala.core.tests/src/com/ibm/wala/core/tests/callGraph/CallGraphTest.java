@@ -10,16 +10,22 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.callGraph;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
 import com.ibm.wala.core.tests.demandpa.AbstractPtrTest;
 import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.core.tests.util.WalaTestCase;
@@ -33,20 +39,33 @@ import com.ibm.wala.ipa.callgraph.CallGraphStats;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.AllApplicationEntrypoints;
 import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.callgraph.impl.FakeWorldClinitMethod;
 import com.ibm.wala.ipa.callgraph.impl.Util;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAContextInterpreter;
 import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.StoredAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
 import com.ibm.wala.ipa.cfg.BasicBlockInContext;
 import com.ibm.wala.ipa.cfg.InterproceduralCFG;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.FieldReference;
 import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Iterable;
 import com.ibm.wala.util.debug.Assertions;
@@ -261,6 +280,352 @@ public class CallGraphTest extends WalaTestCase {
     Assert.assertEquals(1, pointsToSet.size());
     
   }
+  @Test
+  public void testParallelSolver() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expected = pointsToByName(builder.getPointerAnalysis());
+
+    AnalysisOptions parallelOptions = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    parallelOptions.setSolverParallelism(4);
+    CallGraphBuilder parallelBuilder = Util.makeZeroOneCFABuilder(parallelOptions, new AnalysisCache(), cha, scope);
+    CallGraph parallelCG = parallelBuilder.makeCallGraph(parallelOptions, null);
+    Map<String, Set<String>> actual = pointsToByName(parallelBuilder.getPointerAnalysis());
+
+    Assert.assertEquals(cg.getNumberOfNodes(), parallelCG.getNumberOfNodes());
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testDeltaPropagation() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expected = pointsToByName(builder.getPointerAnalysis());
+
+    AnalysisOptions deltaOptions = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    deltaOptions.setUseDeltaPropagation(true);
+    CallGraphBuilder deltaBuilder = Util.makeZeroOneCFABuilder(deltaOptions, new AnalysisCache(), cha, scope);
+    CallGraph deltaCG = deltaBuilder.makeCallGraph(deltaOptions, null);
+    Map<String, Set<String>> actual = pointsToByName(deltaBuilder.getPointerAnalysis());
+
+    Assert.assertEquals(cg.getNumberOfNodes(), deltaCG.getNumberOfNodes());
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testOnlineCycleDetection() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expected = pointsToByName(builder.getPointerAnalysis());
+
+    AnalysisOptions cycleOptions = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    cycleOptions.setUseOnlineCycleDetection(true);
+    CallGraphBuilder cycleBuilder = Util.makeZeroOneCFABuilder(cycleOptions, new AnalysisCache(), cha, scope);
+    CallGraph cycleCG = cycleBuilder.makeCallGraph(cycleOptions, null);
+    Map<String, Set<String>> actual = pointsToByName(cycleBuilder.getPointerAnalysis());
+
+    Assert.assertEquals(cg.getNumberOfNodes(), cycleCG.getNumberOfNodes());
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testIRPrefetch() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.JLEX, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.JLEX_MAIN);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expected = pointsToByName(builder.getPointerAnalysis());
+
+    AnalysisOptions prefetchOptions = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    prefetchOptions.setIRPrefetchThreads(4);
+    CallGraphBuilder prefetchBuilder = Util.makeZeroOneCFABuilder(prefetchOptions, new AnalysisCache(), cha, scope);
+    CallGraph prefetchCG = prefetchBuilder.makeCallGraph(prefetchOptions, null);
+    Map<String, Set<String>> actual = pointsToByName(prefetchBuilder.getPointerAnalysis());
+
+    Assert.assertEquals(cg.getNumberOfNodes(), prefetchCG.getNumberOfNodes());
+    Assert.assertEquals(expected, actual);
+  }
+
+  /**
+   * Check that hash-consing the points-to sets does not change the solution, alone and with difference propagation, and that it
+   * leaves fewer distinct sets than points-to sets.
+   */
+  @Test
+  public void testSharedPointsToSets() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    Map<String, Set<String>> expected = pointsToByName(builder.getPointerAnalysis());
+
+    for (boolean delta : new boolean[] { false, true }) {
+      AnalysisOptions sharedOptions = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      sharedOptions.setSharePointsToSets(true);
+      sharedOptions.setUseDeltaPropagation(delta);
+      SSAPropagationCallGraphBuilder sharedBuilder = Util.makeZeroOneCFABuilder(sharedOptions, new AnalysisCache(), cha, scope);
+      CallGraph sharedCG = sharedBuilder.makeCallGraph(sharedOptions, null);
+      Map<String, Set<String>> actual = pointsToByName(sharedBuilder.getPointerAnalysis());
+
+      Assert.assertEquals(cg.getNumberOfNodes(), sharedCG.getNumberOfNodes());
+      Assert.assertEquals(expected, actual);
+      int sets = sharedBuilder.getPropagationSystem().getSharedPointsToSets().size();
+      Assert.assertTrue(sets + " distinct sets", 0 < sets && sets < expected.size());
+    }
+  }
+
+  /**
+   * Build a call graph, change the code of PrintStream.println(int), and check the updated call graph against a new one. When the
+   * method loses its code, the update must contain the new call graph; it may be larger, since class initializers stay reachable.
+   * When the method gets its code back, the update must be the new call graph, up to the order in which the fake world clinit method
+   * calls the class initializers. Either update should add far fewer constraints than the new build.
+   */
+  @Test
+  public void testIncrementalUpdate() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.SLICE1_MAIN);
+    IMethod println = cha.resolveMethod(MethodReference.findOrCreate(TypeReference.findOrCreate(ClassLoaderReference.Primordial,
+        "Ljava/io/PrintStream"), "println", "(I)V"));
+    Assert.assertNotNull(println);
+
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setSupportIncrementalUpdates(true);
+    HidingInterpreter hiding = new HidingInterpreter(cha);
+    SSAPropagationCallGraphBuilder builder = makeHidingBuilder(options, hiding);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    int fullNodes = cg.getNumberOfNodes();
+
+    hiding.hidden.add(println);
+    int created = builder.getPropagationSystem().getNumberOfStatementsCreated();
+    builder.updateCallGraph(options, Collections.singleton(println), null);
+    SSAPropagationCallGraphBuilder newBuilder = makeHidingBuilder(options, hiding);
+    CallGraph newCG = newBuilder.makeCallGraph(options, null);
+    Assert.assertTrue(cg.getNumberOfNodes() < fullNodes);
+    assertFewerStatements(builder.getPropagationSystem().getNumberOfStatementsCreated() - created, newBuilder);
+    assertContains(callGraphByName(cg), callGraphByName(newCG));
+    assertContains(updatablePointsToByName(builder.getPointerAnalysis()), updatablePointsToByName(newBuilder.getPointerAnalysis()));
+
+    hiding.hidden.clear();
+    created = builder.getPropagationSystem().getNumberOfStatementsCreated();
+    builder.updateCallGraph(options, Collections.singleton(println), null);
+    newBuilder = makeHidingBuilder(options, hiding);
+    newCG = newBuilder.makeCallGraph(options, null);
+    Assert.assertEquals(fullNodes, cg.getNumberOfNodes());
+    assertFewerStatements(builder.getPropagationSystem().getNumberOfStatementsCreated() - created, newBuilder);
+    Assert.assertEquals(callGraphByName(newCG), callGraphByName(cg));
+    Assert.assertEquals(updatablePointsToByName(newBuilder.getPointerAnalysis()), updatablePointsToByName(builder.getPointerAnalysis()));
+    try {
+      GraphIntegrity.check(cg);
+    } catch (UnsoundGraphException e) {
+      Assert.assertTrue(e.getMessage(), false);
+    }
+  }
+
+  /**
+   * A call graph and pointer analysis written to a file and read back should have the same nodes, edges and points-to sets, and
+   * should answer queries with the nodes and keys of the original analysis.
+   */
+  @Test
+  public void testStoredAnalysis() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneContainerCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis pa = builder.getPointerAnalysis();
+
+    File f = File.createTempFile("stored", ".cg");
+    try {
+      StoredAnalysis.write(cg, pa, f);
+      StoredAnalysis stored = StoredAnalysis.read(f, cha, options, new AnalysisCache());
+      CallGraph storedCG = stored.getCallGraph();
+      PointerAnalysis storedPA = stored.getPointerAnalysis();
+      Assert.assertEquals(cg.getNumberOfNodes(), storedCG.getNumberOfNodes());
+      Assert.assertEquals(cg.getFakeRootNode().toString(), storedCG.getFakeRootNode().toString());
+      Assert.assertEquals(callGraphByName(cg), callGraphByName(storedCG));
+      Assert.assertEquals(pointsToByName(pa), pointsToByName(storedPA));
+
+      for (CGNode n : cg) {
+        CGNode s = storedCG.getNode(n.getMethod(), n.getContext());
+        Assert.assertNotNull(n.toString(), s);
+        Assert.assertEquals(n.toString(), s.toString());
+        Assert.assertEquals(cg.getSuccNodeCount(n), storedCG.getSuccNodeCount(s));
+        Assert.assertEquals(cg.getPredNodeCount(n), storedCG.getPredNodeCount(s));
+        if (n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+          IR ir = s.getIR();
+          for (int vn = 1; vn <= ir.getSymbolTable().getMaxValueNumber(); vn++) {
+            OrdinalSet<InstanceKey> expected = pa.getPointsToSet(pa.getHeapModel().getPointerKeyForLocal(n, vn));
+            OrdinalSet<InstanceKey> actual = storedPA.getPointsToSet(storedPA.getHeapModel().getPointerKeyForLocal(s, vn));
+            Assert.assertEquals(s + " v" + vn, expected.size(), actual.size());
+            for (InstanceKey ik : expected) {
+              Assert.assertTrue(s + " v" + vn + " " + ik, actual.contains(ik));
+            }
+          }
+        }
+      }
+      try {
+        GraphIntegrity.check(storedCG);
+      } catch (UnsoundGraphException e) {
+        Assert.assertTrue(e.getMessage(), false);
+      }
+    } finally {
+      f.delete();
+    }
+  }
+
+  private static SSAPropagationCallGraphBuilder makeHidingBuilder(AnalysisOptions options, HidingInterpreter hiding) {
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), hiding.cha, options
+        .getAnalysisScope());
+    builder.setContextInterpreter(new DelegatingSSAContextInterpreter(hiding, builder.getCFAContextInterpreter()));
+    return builder;
+  }
+
+  /**
+   * An update should add again only the constraints of the part of the call graph it retracts, a small part of those which a new
+   * build adds.
+   */
+  private static void assertFewerStatements(int updated, SSAPropagationCallGraphBuilder newBuilder) {
+    int built = newBuilder.getPropagationSystem().getNumberOfStatementsCreated();
+    Assert.assertTrue(updated + " statements added by the update, " + built + " by a new build", 0 < updated && 4 * updated < built);
+  }
+
+  private static void assertContains(Map<String, Set<String>> big, Map<String, Set<String>> small) {
+    for (Map.Entry<String, Set<String>> e : small.entrySet()) {
+      Assert.assertTrue(e.getKey(), big.containsKey(e.getKey()));
+      Assert.assertTrue(e.getKey(), big.get(e.getKey()).containsAll(e.getValue()));
+    }
+  }
+
+  /**
+   * the targets of the calls from each node, with the call sites named by their targets rather than by their program counters
+   */
+  private static Map<String, Set<String>> callGraphByName(CallGraph cg) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (CGNode n : cg) {
+      Set<String> s = HashSetFactory.make();
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        for (CGNode target : cg.getPossibleTargets(n, site)) {
+          s.add(site.getInvocationCode() + " " + site.getDeclaredTarget() + " -> " + target);
+        }
+      }
+      result.put(n.toString(), s);
+    }
+    return result;
+  }
+
+  /**
+   * the points-to sets, except those of the locals of the fake world clinit method, whose value numbers depend on the order in which
+   * the class initializers were found
+   */
+  private static Map<String, Set<String>> updatablePointsToByName(PointerAnalysis pa) {
+    Map<String, Set<String>> result = pointsToByName(pa);
+    for (PointerKey k : pa.getPointerKeys()) {
+      if (k instanceof LocalPointerKey && ((LocalPointerKey) k).getNode().getMethod() instanceof FakeWorldClinitMethod) {
+        result.remove(k.toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * An interpreter which gives the methods in a set no code, to simulate changes to them.
+   */
+  private static class HidingInterpreter implements SSAContextInterpreter {
+
+    private final IClassHierarchy cha;
+
+    private final Set<IMethod> hidden = HashSetFactory.make();
+
+    HidingInterpreter(IClassHierarchy cha) {
+      this.cha = cha;
+    }
+
+    @Override
+    public boolean understands(CGNode node) {
+      return hidden.contains(node.getMethod());
+    }
+
+    @Override
+    public IR getIR(CGNode node) {
+      return null;
+    }
+
+    @Override
+    public DefUse getDU(CGNode node) {
+      return null;
+    }
+
+    @Override
+    public int getNumberOfStatements(CGNode node) {
+      return 0;
+    }
+
+    @Override
+    public ControlFlowGraph<SSAInstruction, ISSABasicBlock> getCFG(CGNode n) {
+      return null;
+    }
+
+    @Override
+    public Iterator<NewSiteReference> iterateNewSites(CGNode node) {
+      return EmptyIterator.instance();
+    }
+
+    @Override
+    public Iterator<FieldReference> iterateFieldsRead(CGNode node) {
+      return EmptyIterator.instance();
+    }
+
+    @Override
+    public Iterator<FieldReference> iterateFieldsWritten(CGNode node) {
+      return EmptyIterator.instance();
+    }
+
+    @Override
+    public boolean recordFactoryType(CGNode node, IClass klass) {
+      return false;
+    }
+
+    @Override
+    public Iterator<CallSiteReference> iterateCallSites(CGNode node) {
+      return EmptyIterator.instance();
+    }
+  }
+
+  private static Map<String, Set<String>> pointsToByName(PointerAnalysis pa) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (PointerKey k : pa.getPointerKeys()) {
+      Set<String> s = HashSetFactory.make();
+      for (InstanceKey ik : pa.getPointsToSet(k)) {
+        s.add(ik.toString());
+      }
+      result.put(k.toString(), s);
+    }
+    return result;
+  }
+
   /**
    * make main entrypoints, even in the primordial loader.
    */
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.callGraph;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.AllApplicationEntrypoints;
+import com.ibm.wala.ipa.callgraph.impl.CompactCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.heapTrace.HeapTracer;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * Test that a {@link CompactCallGraph} agrees with the call graph it was made from, and compare the space they use on the test data.
+ */
+public class CompactCallGraphTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CompactCallGraphTest.class);
+  }
+
+  private static AnalysisOptions makeOptions(AnalysisScope scope, ClassHierarchy cha, String mainClass) {
+    Iterable<Entrypoint> entrypoints = mainClass == null ? new AllApplicationEntrypoints(scope, cha) : Util.makeMainEntrypoints(
+        scope, cha, mainClass);
+    return CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+  }
+
+  /**
+   * @param mainClass the main class to analyze, or null for all application methods
+   */
+  private static SSAPropagationCallGraphBuilder build(String mainClass) throws Exception {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA, CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisOptions options = makeOptions(scope, cha, mainClass);
+    SSAPropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    builder.makeCallGraph(options, null);
+    return builder;
+  }
+
+  private static void assertSameCallGraph(CallGraph expected, CallGraph actual) {
+    Assert.assertEquals(expected.getNumberOfNodes(), actual.getNumberOfNodes());
+    Assert.assertEquals(expected.getFakeRootNode().toString(), actual.getFakeRootNode().toString());
+    Assert.assertEquals(expected.getEntrypointNodes().size(), actual.getEntrypointNodes().size());
+    for (CGNode n : expected) {
+      CGNode c = actual.getNode(n.getMethod(), n.getContext());
+      Assert.assertNotNull(n.toString(), c);
+      Assert.assertEquals(n.toString(), c.toString());
+      Assert.assertEquals(n.toString(), expected.getNodes(n.getMethod().getReference()).size(), actual.getNodes(
+          n.getMethod().getReference()).size());
+      Assert.assertTrue(n.toString(), IntSetUtil.make(numbers(actual, expected.getSuccNodes(n))).sameValue(
+          actual.getSuccNodeNumbers(c)));
+      Assert.assertTrue(n.toString(), IntSetUtil.make(numbers(actual, expected.getPredNodes(n))).sameValue(
+          actual.getPredNodeNumbers(c)));
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        Assert.assertEquals(expected.getNumberOfTargets(n, site), actual.getNumberOfTargets(c, site));
+        for (CGNode t : expected.getPossibleTargets(n, site)) {
+          CGNode ct = actual.getNode(t.getMethod(), t.getContext());
+          Assert.assertTrue(site.toString(), actual.getPossibleTargets(c, site).contains(ct));
+          Assert.assertTrue(site.toString(), actual.hasEdge(c, ct));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the numbers in cg of the nodes equivalent to some nodes of another call graph
+   */
+  private static int[] numbers(CallGraph cg, Iterator<CGNode> nodes) {
+    List<Integer> result = new ArrayList<Integer>();
+    while (nodes.hasNext()) {
+      CGNode n = nodes.next();
+      result.add(cg.getNumber(cg.getNode(n.getMethod(), n.getContext())));
+    }
+    int[] a = new int[result.size()];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = result.get(i);
+    }
+    return a;
+  }
+
+  @Test
+  public void testSameCallGraph() throws Exception {
+    ExplicitCallGraph cg = build(TestConstants.SLICE1_MAIN).getCallGraph();
+    CompactCallGraph compact = CompactCallGraph.make(cg);
+    assertSameCallGraph(cg, compact);
+    for (CGNode n : compact) {
+      if (n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        Assert.assertNotNull(n.toString(), n.getIR());
+        Assert.assertNotNull(n.toString(), n.getDU());
+      }
+    }
+  }
+
+  /**
+   * the bytes the call graph uses beyond what it shares with the class hierarchy, the analysis options and cache, and the
+   * interpreter
+   */
+  private static int footprint(CallGraph cg, SSAPropagationCallGraphBuilder builder) throws Exception {
+    List<Object> shared = new ArrayList<Object>();
+    shared.add(builder.getClassHierarchy());
+    shared.add(builder.getOptions());
+    shared.add(builder.getAnalysisCache());
+    shared.add(builder.getContextInterpreter());
+    List<Object> all = new ArrayList<Object>(shared);
+    all.add(cg);
+    return new HeapTracer(all, false).perform().getTotalSize() - new HeapTracer(shared, false).perform().getTotalSize();
+  }
+
+  /**
+   * The compact representation of the call graphs of the test data should use fewer bytes than the explicit one.
+   */
+  @Test
+  public void testFootprint() throws Exception {
+    for (String main : new String[] { TestConstants.SLICE1_MAIN, null }) {
+      SSAPropagationCallGraphBuilder builder = build(main);
+      ExplicitCallGraph cg = builder.getCallGraph();
+      CompactCallGraph compact = CompactCallGraph.make(cg);
+      int explicitBytes = footprint(cg, builder);
+      int compactBytes = footprint(compact, builder);
+      Assert.assertTrue((main == null ? "all application entrypoints" : main) + ": compact " + compactBytes + " vs explicit "
+          + explicitBytes + " bytes", compactBytes < explicitBytes);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassHierarchySnapshot;
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.warnings.Warnings;
+
+/**
+ * Test that a class hierarchy built from a {@link ClassHierarchySnapshot} is the same as one built from the class files.
+ */
+public class ClassHierarchySnapshotTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ClassHierarchySnapshotTest.class);
+  }
+
+  @Test
+  public void testSnapshot() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA,
+        (new FileProvider()).getFile("J2SEClassHierarchyExclusions.txt"), ClassHierarchySnapshotTest.class.getClassLoader());
+
+    Warnings.clear();
+    ClassHierarchy expected = ClassHierarchy.make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
+    String expectedWarnings = Warnings.asString();
+
+    File directory = File.createTempFile("snapshot", "");
+    directory.delete();
+    try {
+      // the first hierarchy writes the snapshots, and the second one is built from them
+      for (int i = 0; i < 2; i++) {
+        Warnings.clear();
+        ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+        factory.setSnapshot(new ClassHierarchySnapshot(directory));
+        ClassHierarchy cha = ClassHierarchy.make(scope, factory);
+        Assert.assertTrue(directory.list().length > 0);
+        assertSameHierarchy(expected, cha);
+        Assert.assertEquals(expectedWarnings, Warnings.asString());
+      }
+    } finally {
+      for (File f : directory.listFiles()) {
+        f.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  /**
+   * Snapshots whose counts or lengths are corrupt must be ignored, and the classes parsed from the class files instead.
+   */
+  @Test
+  public void testCorruptSnapshot() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA,
+        (new FileProvider()).getFile("J2SEClassHierarchyExclusions.txt"), ClassHierarchySnapshotTest.class.getClassLoader());
+
+    Warnings.clear();
+    ClassHierarchy expected = ClassHierarchy.make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
+    String expectedWarnings = Warnings.asString();
+
+    // what follows the magic number and the version: ints, bytes for the flags, and strings prefixed by their lengths
+    Object[][] corruptions = {
+        // a huge count
+        { Integer.MAX_VALUE },
+        // a negative count
+        { -1 },
+        // an entry name longer than the snapshot
+        { 1, Integer.MAX_VALUE },
+        // a null entry name
+        { 1, -1 },
+        // a null class name
+        { 1, "A.class", (byte) 1, -1 },
+        // a negative number of interfaces
+        { 1, "A.class", (byte) 1, "LA", 0, "Ljava/lang/Object", -5 },
+        // a huge number of interfaces
+        { 1, "A.class", (byte) 1, "LA", 0, "Ljava/lang/Object", Integer.MAX_VALUE } };
+
+    File directory = File.createTempFile("snapshot", "");
+    directory.delete();
+    try {
+      ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+      factory.setSnapshot(new ClassHierarchySnapshot(directory));
+      ClassHierarchy.make(scope, factory);
+      File[] snapshots = directory.listFiles();
+      Assert.assertTrue(snapshots.length > 0);
+      for (Object[] corruption : corruptions) {
+        for (File f : snapshots) {
+          writeCorruptSnapshot(f, corruption);
+        }
+        Warnings.clear();
+        factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+        factory.setSnapshot(new ClassHierarchySnapshot(directory));
+        ClassHierarchy cha = ClassHierarchy.make(scope, factory);
+        assertSameHierarchy(expected, cha);
+        Assert.assertEquals(expectedWarnings, Warnings.asString());
+      }
+    } finally {
+      for (File f : directory.listFiles()) {
+        f.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  /**
+   * Overwrite a snapshot with a valid header followed by the given contents.
+   */
+  private static void writeCorruptSnapshot(File f, Object[] contents) throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+    try {
+      // the magic number and the version of the current format
+      out.writeInt(0x57414c41);
+      out.writeInt(1);
+      for (Object o : contents) {
+        if (o instanceof Integer) {
+          out.writeInt((Integer) o);
+        } else if (o instanceof Byte) {
+          out.writeByte((Byte) o);
+        } else {
+          byte[] b = ((String) o).getBytes("UTF-8");
+          out.writeInt(b.length);
+          out.write(b);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void assertSameHierarchy(ClassHierarchy expected, ClassHierarchy actual) {
+    Assert.assertEquals(expected.getNumberOfClasses(), actual.getNumberOfClasses());
+    for (IClassLoader loader : expected.getLoaders()) {
+      IClassLoader other = actual.getLoader(loader.getReference());
+      Assert.assertEquals(loader.getNumberOfClasses(), other.getNumberOfClasses());
+      for (Iterator<IClass> it = loader.iterateAllClasses(); it.hasNext();) {
+        IClass klass = it.next();
+        IClass otherKlass = other.lookupClass(klass.getName());
+        Assert.assertNotNull(otherKlass);
+        Assert.assertEquals(klass.getModifiers(), otherKlass.getModifiers());
+        Assert.assertEquals(String.valueOf(klass.getSuperclass()), String.valueOf(otherKlass.getSuperclass()));
+        Assert.assertEquals(klass.getAllImplementedInterfaces().toString(), otherKlass.getAllImplementedInterfaces().toString());
+        Assert.assertEquals(klass.getDeclaredInstanceFields().toString(), otherKlass.getDeclaredInstanceFields().toString());
+        Assert.assertEquals(klass.getDeclaredStaticFields().toString(), otherKlass.getDeclaredStaticFields().toString());
+      }
+    }
+  }
+}
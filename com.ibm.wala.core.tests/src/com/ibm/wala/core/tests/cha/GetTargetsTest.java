@@ -19,12 +19,14 @@ import org.junit.Test;
 
 import com.ibm.wala.classLoader.ClassLoaderFactory;
 import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.core.tests.util.WalaTestCase;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyStats;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeReference;
@@ -95,4 +97,21 @@ public class GetTargetsTest extends WalaTestCase {
     }
     Assert.assertEquals(1, c.size());
   }
+
+  /**
+   * test that repeated queries are answered from the caches, with the same results
+   */
+  @Test public void testCachedQueries() {
+    MethodReference m = MethodReference.findOrCreate(TypeReference.JavaLangObject, "toString", "()Ljava/lang/String;");
+    Collection<IMethod> c1 = cha.getPossibleTargets(m);
+    Collection<IMethod> c2 = cha.getPossibleTargets(m);
+    Assert.assertEquals(c1, c2);
+    Assert.assertTrue(c1.size() > 1);
+    Assert.assertTrue(ClassHierarchyStats.getTargetCacheHitRate(cha) > 0);
+
+    Collection<IClass> s1 = cha.computeSubClasses(TypeReference.JavaLangThread);
+    Collection<IClass> s2 = cha.computeSubClasses(TypeReference.JavaLangThread);
+    Assert.assertSame(s1, s2);
+    Assert.assertTrue(ClassHierarchyStats.getSubclassCacheHitRate(cha) > 0);
+  }
 }
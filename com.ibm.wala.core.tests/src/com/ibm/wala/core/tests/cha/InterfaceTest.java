@@ -10,6 +10,9 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.cha;
 
+import java.util.Iterator;
+import java.util.Set;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -98,4 +101,22 @@ public class InterfaceTest extends WalaTestCase {
     Assert.assertTrue(cha.implementsInterface(stringArrayClass, serializableClass));
   }
 
+  /**
+   * check that implementsInterface agrees with the implementors of each interface, for the application classes
+   */
+  @Test public void test3() {
+    for (IClass i : cha) {
+      if (!i.isInterface()) {
+        continue;
+      }
+      Set<IClass> impls = cha.getImplementors(i.getReference());
+      for (Iterator<IClass> it = cha.getLoader(ClassLoaderReference.Application).iterateAllClasses(); it.hasNext();) {
+        IClass c = it.next();
+        if (cha.implementsInterface(c, i) != (c.equals(i) || impls.contains(c))) {
+          Assert.fail(c + " implements " + i + ": " + cha.implementsInterface(c, i));
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+import com.ibm.wala.util.warnings.Warnings;
+
+/**
+ * Test that parsing class files in parallel does not change what the class loaders load.
+ */
+public class ParallelClassLoadingTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ParallelClassLoadingTest.class);
+  }
+
+  @Test
+  public void testParallelClassLoading() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA,
+        (new FileProvider()).getFile("J2SEClassHierarchyExclusions.txt"), ParallelClassLoadingTest.class.getClassLoader());
+
+    Warnings.clear();
+    ClassHierarchy sequential = ClassHierarchy.make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
+    String sequentialWarnings = Warnings.asString();
+
+    Warnings.clear();
+    ClassLoaderFactoryImpl factory = new ClassLoaderFactoryImpl(scope.getExclusions());
+    factory.setParallelism(4);
+    ClassHierarchy parallel = ClassHierarchy.make(scope, factory);
+    String parallelWarnings = Warnings.asString();
+
+    Assert.assertEquals(sequential.getNumberOfClasses(), parallel.getNumberOfClasses());
+    for (IClassLoader loader : sequential.getLoaders()) {
+      IClassLoader other = parallel.getLoader(loader.getReference());
+      Assert.assertEquals(loader.getNumberOfClasses(), other.getNumberOfClasses());
+      Assert.assertEquals(classesOf(loader), classesOf(other));
+    }
+    Assert.assertEquals(sequentialWarnings, parallelWarnings);
+  }
+
+  /**
+   * @return the names of the classes a loader defines, in the order the loader registered them
+   */
+  private static List<String> classesOf(IClassLoader loader) {
+    List<String> result = new ArrayList<String>();
+    for (Iterator<IClass> it = loader.iterateAllClasses(); it.hasNext();) {
+      result.add(it.next().getName().toString());
+    }
+    return result;
+  }
+}
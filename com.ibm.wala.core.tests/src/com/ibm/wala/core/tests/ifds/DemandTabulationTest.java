@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+
+/**
+ * Test that tabulating on demand gives the same results as tabulating exhaustively, while tabulating less for each query.
+ */
+public class DemandTabulationTest extends WalaTestCase {
+
+  private static CallGraph cg;
+
+  public static void main(String[] args) {
+    justThisTest(DemandTabulationTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    cg = EnteredProceduresProblem.makeCallGraph();
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    cg = null;
+  }
+
+  @Test
+  public void testOnDemand() throws CancelException {
+    EnteredProceduresProblem problem = new EnteredProceduresProblem(cg);
+    ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> supergraph = problem.getSupergraph();
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> expected = TabulationSolver.make(problem).solve();
+
+    TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> solver = TabulationSolver.make(problem);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> actual = solver.solveOnDemand();
+    Assert.assertTrue(actual.getSupergraphNodesReached().isEmpty());
+
+    // only the path from the fake root to main is needed for the entry of main
+    CGNode main = cg.getEntrypointNodes().iterator().next();
+    BasicBlockInContext<IExplodedBasicBlock> mainEntry = supergraph.getEntriesForProcedure(main)[0];
+    Assert.assertTrue(expected.getResult(mainEntry).sameValue(actual.getResult(mainEntry)));
+    int reached = actual.getSupergraphNodesReached().size();
+    Assert.assertTrue(reached > 0);
+    Assert.assertTrue(reached < expected.getSupergraphNodesReached().size());
+
+    for (BasicBlockInContext<IExplodedBasicBlock> n : supergraph) {
+      Assert.assertTrue(n.toString(), expected.getResult(n).sameValue(actual.getResult(n)));
+    }
+    Assert.assertEquals(expected.getSupergraphNodesReached(), actual.getSupergraphNodesReached());
+  }
+
+  @Test
+  public void testSolveAfterQueries() throws CancelException {
+    EnteredProceduresProblem problem = new EnteredProceduresProblem(cg);
+    ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> supergraph = problem.getSupergraph();
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> expected = TabulationSolver.make(problem).solve();
+
+    TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> solver = TabulationSolver.make(problem);
+    solver.setParallelism(4);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> onDemand = solver.solveOnDemand();
+    CGNode main = cg.getEntrypointNodes().iterator().next();
+    onDemand.getResult(supergraph.getExitsForProcedure(main)[0]);
+
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> actual = solver.solve();
+    for (BasicBlockInContext<IExplodedBasicBlock> n : supergraph) {
+      Assert.assertTrue(n.toString(), expected.getResult(n).sameValue(actual.getResult(n)));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.Collections;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.dataflow.IFDS.ICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IFlowFunctionMap;
+import com.ibm.wala.dataflow.IFDS.IMergeFunction;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IdentityFlowFunction;
+import com.ibm.wala.dataflow.IFDS.PathEdge;
+import com.ibm.wala.dataflow.IFDS.TabulationDomain;
+import com.ibm.wala.dataflow.IFDS.TabulationProblem;
+import com.ibm.wala.dataflow.IFDS.UnorderedDomain;
+import com.ibm.wala.dataflow.IFDS.VectorGenFlowFunction;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.config.FileOfClasses;
+import com.ibm.wala.util.intset.SparseIntSet;
+
+/**
+ * A problem computing, for each node, which procedures may have been entered on some valid path to it. Fact 0 is the zero fact,
+ * and fact i > 0 is the procedure numbered i - 1 in the call graph.
+ */
+class EnteredProceduresProblem implements TabulationProblem<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> {
+
+  private static final String EXCLUSIONS = "java\\/awt\\/.*\n" + "javax\\/swing\\/.*\n" + "sun\\/.*\n" + "com\\/sun\\/.*\n"
+      + "java\\/security\\/.*\n";
+
+  private final CallGraph cg;
+
+  private final ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> supergraph;
+
+  private final UnorderedDomain<Object, BasicBlockInContext<IExplodedBasicBlock>> domain = new UnorderedDomain<Object, BasicBlockInContext<IExplodedBasicBlock>>();
+
+  EnteredProceduresProblem(CallGraph cg) {
+    this(cg, ICFGSupergraph.make(cg, new AnalysisCache()));
+  }
+
+  EnteredProceduresProblem(CallGraph cg, ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> supergraph) {
+    this.cg = cg;
+    this.supergraph = supergraph;
+    domain.add("zero");
+    for (CGNode n : cg) {
+      domain.add(n);
+    }
+  }
+
+  /**
+   * @return a 0-1-CFA call graph for the test program the problems are solved on
+   */
+  static CallGraph makeCallGraph() throws Exception {
+    return makeCallGraphBuilder().getCallGraph();
+  }
+
+  /**
+   * @return a builder which has made the call graph of the test program, and so holds its pointer analysis
+   */
+  static PropagationCallGraphBuilder makeCallGraphBuilder() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, null,
+        EnteredProceduresProblem.class.getClassLoader());
+    scope.setExclusions(new FileOfClasses(new ByteArrayInputStream(EXCLUSIONS.getBytes("UTF-8"))));
+    IClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, "Ldataflow/StaticDataflow");
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    PropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    builder.makeCallGraph(options, null);
+    return builder;
+  }
+
+  @Override
+  public ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> getSupergraph() {
+    return supergraph;
+  }
+
+  @Override
+  public TabulationDomain<Object, BasicBlockInContext<IExplodedBasicBlock>> getDomain() {
+    return domain;
+  }
+
+  @Override
+  public IFlowFunctionMap<BasicBlockInContext<IExplodedBasicBlock>> getFunctionMap() {
+    return new IFlowFunctionMap<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public IUnaryFlowFunction getNormalFlowFunction(BasicBlockInContext<IExplodedBasicBlock> src,
+          BasicBlockInContext<IExplodedBasicBlock> dest) {
+        return IdentityFlowFunction.identity();
+      }
+
+      @Override
+      public IUnaryFlowFunction getCallFlowFunction(BasicBlockInContext<IExplodedBasicBlock> src,
+          BasicBlockInContext<IExplodedBasicBlock> dest, BasicBlockInContext<IExplodedBasicBlock> ret) {
+        return VectorGenFlowFunction.make(SparseIntSet.pair(0, domain.getMappedIndex(dest.getNode())));
+      }
+
+      @Override
+      public IFlowFunction getReturnFlowFunction(BasicBlockInContext<IExplodedBasicBlock> call,
+          BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dest) {
+        return IdentityFlowFunction.identity();
+      }
+
+      @Override
+      public IUnaryFlowFunction getCallToReturnFlowFunction(BasicBlockInContext<IExplodedBasicBlock> src,
+          BasicBlockInContext<IExplodedBasicBlock> dest) {
+        return IdentityFlowFunction.identity();
+      }
+
+      @Override
+      public IUnaryFlowFunction getCallNoneToReturnFlowFunction(BasicBlockInContext<IExplodedBasicBlock> src,
+          BasicBlockInContext<IExplodedBasicBlock> dest) {
+        return IdentityFlowFunction.identity();
+      }
+    };
+  }
+
+  @Override
+  public Collection<PathEdge<BasicBlockInContext<IExplodedBasicBlock>>> initialSeeds() {
+    BasicBlockInContext<IExplodedBasicBlock> root = supergraph.getEntriesForProcedure(cg.getFakeRootNode())[0];
+    return Collections.singleton(PathEdge.createPathEdge(root, 0, root, 0));
+  }
+
+  @Override
+  public IMergeFunction getMergeFunction() {
+    return null;
+  }
+}
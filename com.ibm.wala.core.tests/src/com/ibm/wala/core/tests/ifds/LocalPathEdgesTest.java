@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.CompactLocalPathEdges;
+import com.ibm.wala.dataflow.IFDS.LocalPathEdges;
+import com.ibm.wala.util.heapTrace.HeapTracer;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Test that the representations of path edges agree, and compare the space they use per path edge.
+ */
+public class LocalPathEdgesTest extends WalaTestCase {
+
+  private static final int NODES = 300;
+
+  private static final int FACTS = 2000;
+
+  public static void main(String[] args) {
+    justThisTest(LocalPathEdgesTest.class);
+  }
+
+  /**
+   * Add the same pseudo-random path edges to each of the given representations, in the same order. At each node, a few dozen facts
+   * are reached, each from the zero fact, from itself or from one to three other facts.
+   *
+   * @return the number of distinct path edges added
+   */
+  private static int fill(LocalPathEdges... edges) {
+    Random r = new Random(42);
+    int total = 0;
+    for (int n = 0; n < NODES; n++) {
+      int reached = 20 + r.nextInt(40);
+      for (int k = 0; k < reached; k++) {
+        int d2 = 1 + r.nextInt(FACTS);
+        int sources = r.nextInt(4);
+        for (int s = 0; s < Math.max(1, sources); s++) {
+          int d1 = sources == 0 ? (r.nextBoolean() ? 0 : d2) : 1 + r.nextInt(FACTS);
+          if (!edges[0].contains(d1, n, d2)) {
+            total++;
+          }
+          for (LocalPathEdges e : edges) {
+            e.addPathEdge(d1, n, d2);
+          }
+        }
+      }
+    }
+    return total;
+  }
+
+  private static void assertSameSet(String msg, IntSet expected, IntSet actual) {
+    boolean expectedEmpty = expected == null || expected.isEmpty();
+    boolean actualEmpty = actual == null || actual.isEmpty();
+    if (expectedEmpty || actualEmpty) {
+      Assert.assertEquals(msg + ": expected " + expected + " but was " + actual, expectedEmpty, actualEmpty);
+    } else {
+      Assert.assertTrue(msg + ": expected " + expected + " but was " + actual, expected.sameValue(actual));
+    }
+  }
+
+  @Test
+  public void testSameAnswers() {
+    LocalPathEdges plain = new LocalPathEdges(false);
+    LocalPathEdges fastMerge = new LocalPathEdges(true);
+    CompactLocalPathEdges compact = new CompactLocalPathEdges();
+    fill(plain, fastMerge, compact);
+
+    assertSameSet("reached nodes", plain.getReachedNodeNumbers(), compact.getReachedNodeNumbers());
+    Random r = new Random(17);
+    for (int n = 0; n < NODES; n++) {
+      IntSet reachable = plain.getReachable(n);
+      assertSameSet("reachable at " + n, reachable, compact.getReachable(n));
+      for (IntIterator it = reachable.intIterator(); it.hasNext();) {
+        int d2 = it.next();
+        IntSet inverse = plain.getInverse(n, d2);
+        assertSameSet("inverse " + n + "," + d2, inverse, compact.getInverse(n, d2));
+        for (IntIterator it2 = inverse.intIterator(); it2.hasNext();) {
+          int d1 = it2.next();
+          assertSameSet("reachable from " + n + "," + d1, fastMerge.getReachable(n, d1), compact.getReachable(n, d1));
+          Assert.assertTrue(compact.contains(d1, n, d2));
+        }
+      }
+      for (int k = 0; k < 20; k++) {
+        int d = r.nextInt(FACTS + 1);
+        assertSameSet("inverse " + n + "," + d, plain.getInverse(n, d), compact.getInverse(n, d));
+        assertSameSet("reachable from " + n + "," + d, fastMerge.getReachable(n, d), compact.getReachable(n, d));
+      }
+      for (int k = 0; k < 20; k++) {
+        int d1 = r.nextInt(FACTS + 1);
+        int d2 = r.nextInt(FACTS + 1);
+        Assert.assertEquals(plain.contains(d1, n, d2), compact.contains(d1, n, d2));
+      }
+    }
+  }
+
+  private static int sizeOf(Object o) throws Exception {
+    return new HeapTracer(Collections.singleton(o), false).perform().getTotalSize();
+  }
+
+  /**
+   * The compact representation should use fewer bytes per path edge than the others.
+   */
+  @Test
+  public void testMemoryPerEdge() throws Exception {
+    LocalPathEdges plain = new LocalPathEdges(false);
+    int edges = fill(plain);
+    LocalPathEdges fastMerge = new LocalPathEdges(true);
+    fill(fastMerge);
+    CompactLocalPathEdges compact = new CompactLocalPathEdges();
+    fill(compact);
+
+    double plainBytes = (double) sizeOf(plain) / edges;
+    double fastMergeBytes = (double) sizeOf(fastMerge) / edges;
+    double compactBytes = (double) sizeOf(compact) / edges;
+    Assert.assertTrue("compact " + compactBytes + " vs plain " + plainBytes + " bytes per edge", compactBytes < plainBytes);
+    Assert.assertTrue("compact " + compactBytes + " vs fastMerge " + fastMergeBytes + " bytes per edge",
+        compactBytes < fastMergeBytes);
+  }
+}
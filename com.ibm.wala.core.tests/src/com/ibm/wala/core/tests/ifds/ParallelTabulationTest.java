@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.TabulationCancelException;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Test that tabulating with several threads, or with compact path edges, gives the same result as tabulating sequentially.
+ */
+public class ParallelTabulationTest extends WalaTestCase {
+
+  private static CallGraph cg;
+
+  public static void main(String[] args) {
+    justThisTest(ParallelTabulationTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    cg = EnteredProceduresProblem.makeCallGraph();
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    cg = null;
+  }
+
+  @Test
+  public void testParallelTabulation() throws CancelException {
+    EnteredProceduresProblem problem = new EnteredProceduresProblem(cg);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> expected = TabulationSolver.make(problem).solve();
+
+    TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> solver = TabulationSolver.make(problem);
+    solver.setParallelism(4);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> actual = solver.solve();
+
+    Assert.assertEquals(expected.getSupergraphNodesReached(), actual.getSupergraphNodesReached());
+    int nonTrivial = 0;
+    for (BasicBlockInContext<IExplodedBasicBlock> n : problem.getSupergraph()) {
+      IntSet e = expected.getResult(n);
+      Assert.assertTrue(n.toString(), e.sameValue(actual.getResult(n)));
+      if (e.size() > 1) {
+        nonTrivial++;
+      }
+    }
+    Assert.assertTrue(nonTrivial > 0);
+  }
+
+  @Test
+  public void testCompactPathEdges() throws CancelException {
+    EnteredProceduresProblem problem = new EnteredProceduresProblem(cg);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> expected = TabulationSolver.make(problem).solve();
+
+    TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> solver = TabulationSolver.make(problem);
+    solver.setCompactPathEdges(true);
+    solver.setParallelism(4);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> actual = solver.solve();
+
+    for (BasicBlockInContext<IExplodedBasicBlock> n : problem.getSupergraph()) {
+      Assert.assertTrue(n.toString(), expected.getResult(n).sameValue(actual.getResult(n)));
+    }
+  }
+
+  @Test
+  public void testCancel() {
+    EnteredProceduresProblem problem = new EnteredProceduresProblem(cg);
+    IProgressMonitor canceled = new IProgressMonitor() {
+      @Override
+      public void beginTask(String task, int totalWork) {
+      }
+
+      @Override
+      public boolean isCanceled() {
+        return true;
+      }
+
+      @Override
+      public void done() {
+      }
+
+      @Override
+      public void worked(int units) {
+      }
+    };
+    TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> solver = new TabulationSolver<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object>(
+        problem, canceled) {
+    };
+    solver.setParallelism(4);
+    try {
+      solver.solve();
+      Assert.fail("tabulation should have been canceled");
+    } catch (TabulationCancelException e) {
+      Assert.assertNotNull(e.getResult());
+    } catch (CancelException e) {
+      Assert.fail("expected a TabulationCancelException");
+    }
+  }
+}
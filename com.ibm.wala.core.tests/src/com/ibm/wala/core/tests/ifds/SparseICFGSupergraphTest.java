@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ifds;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.dataflow.IFDS.ICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.SparseICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.TabulationDomain;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.examples.analysis.dataflow.ContextSensitiveReachingDefs;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.modref.DelegatingExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPutInstruction;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * Test that solving over a {@link SparseICFGSupergraph} gives the same results at the nodes it keeps as solving over the whole
+ * exploded supergraph.
+ */
+public class SparseICFGSupergraphTest extends WalaTestCase {
+
+  private static CallGraph cg;
+
+  private static PointerAnalysis pa;
+
+  public static void main(String[] args) {
+    justThisTest(SparseICFGSupergraphTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    PropagationCallGraphBuilder builder = EnteredProceduresProblem.makeCallGraphBuilder();
+    cg = builder.getCallGraph();
+    pa = builder.getPointerAnalysis();
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    cg = null;
+    pa = null;
+  }
+
+  private static void checkSparse(Predicate<BasicBlockInContext<IExplodedBasicBlock>> relevant) throws CancelException {
+    EnteredProceduresProblem full = new EnteredProceduresProblem(cg);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> expected = TabulationSolver.make(full).solve();
+
+    SparseICFGSupergraph supergraph = SparseICFGSupergraph.make(cg, new AnalysisCache(), relevant);
+    EnteredProceduresProblem sparse = new EnteredProceduresProblem(cg, supergraph);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Object> actual = TabulationSolver.make(sparse).solve();
+
+    int kept = 0;
+    for (BasicBlockInContext<IExplodedBasicBlock> n : supergraph) {
+      Assert.assertTrue(n.toString(), expected.getResult(n).sameValue(actual.getResult(n)));
+      kept++;
+    }
+    Assert.assertEquals(kept, supergraph.getNumberOfNodes());
+    Assert.assertTrue(kept < full.getSupergraph().getNumberOfNodes());
+  }
+
+  /**
+   * keep only entries, exits, calls and return sites
+   */
+  @Test
+  public void testInterproceduralNodesOnly() throws CancelException {
+    checkSparse(new Predicate<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public boolean test(BasicBlockInContext<IExplodedBasicBlock> o) {
+        return false;
+      }
+    });
+  }
+
+  /**
+   * also keep the nodes using the parameters
+   */
+  @Test
+  public void testUsesOfParameters() throws CancelException {
+    checkSparse(SparseICFGSupergraph.usesOf(new Function<CGNode, IntSet>() {
+      @Override
+      public IntSet apply(CGNode n) {
+        IR ir = n.getIR();
+        return ir == null ? null : IntSetUtil.make(ir.getParameterValueNumbers());
+      }
+    }));
+  }
+
+  /**
+   * keep the nodes which access the static fields that some instruction writes. The predicate agrees with {@link ModRef}, and
+   * reaching definitions of static fields get the same results at the nodes kept.
+   */
+  @Test
+  public void testAccessesHeap() {
+    ExtendedHeapModel h = new DelegatingExtendedHeapModel(pa.getHeapModel());
+    Collection<PointerKey> locations = HashSetFactory.make();
+    for (CGNode n : cg) {
+      IR ir = n.getIR();
+      if (ir != null) {
+        for (SSAInstruction s : ir.getInstructions()) {
+          if (s instanceof SSAPutInstruction && ((SSAPutInstruction) s).isStatic()) {
+            IField f = cg.getClassHierarchy().resolveField(((SSAPutInstruction) s).getDeclaredField());
+            if (f != null) {
+              locations.add(h.getPointerKeyForStaticField(f));
+            }
+          }
+        }
+      }
+    }
+    Predicate<BasicBlockInContext<IExplodedBasicBlock>> relevant = SparseICFGSupergraph.accessesHeap(pa, locations);
+
+    ModRef modRef = ModRef.make();
+    ICFGSupergraph full = ICFGSupergraph.make(cg, new AnalysisCache());
+    int accessing = 0;
+    for (BasicBlockInContext<IExplodedBasicBlock> n : full) {
+      SSAInstruction s = n.getDelegate().getInstruction();
+      boolean accesses = s != null
+          && (!Collections.disjoint(modRef.getMod(n.getNode(), h, pa, s, null), locations) || !Collections.disjoint(
+              modRef.getRef(n.getNode(), h, pa, s, null), locations));
+      Assert.assertEquals(n.toString(), accesses, relevant.test(n));
+      if (accesses) {
+        accessing++;
+      }
+    }
+    Assert.assertTrue(accessing > 0);
+
+    ContextSensitiveReachingDefs fullDefs = new ContextSensitiveReachingDefs(cg, full);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Pair<CGNode, Integer>> expected = fullDefs.analyze();
+    SparseICFGSupergraph sparse = SparseICFGSupergraph.make(cg, new AnalysisCache(), relevant);
+    ContextSensitiveReachingDefs sparseDefs = new ContextSensitiveReachingDefs(cg, sparse);
+    TabulationResult<BasicBlockInContext<IExplodedBasicBlock>, CGNode, Pair<CGNode, Integer>> actual = sparseDefs.analyze();
+    for (BasicBlockInContext<IExplodedBasicBlock> n : sparse) {
+      Assert.assertEquals(n.toString(), facts(fullDefs.getDomain(), expected.getResult(n)), facts(sparseDefs.getDomain(),
+          actual.getResult(n)));
+    }
+    Assert.assertTrue(sparse.getNumberOfNodes() < full.getNumberOfNodes());
+  }
+
+  private static Set<Pair<CGNode, Integer>> facts(TabulationDomain<Pair<CGNode, Integer>, ?> domain, IntSet numbers) {
+    Set<Pair<CGNode, Integer>> result = HashSetFactory.make();
+    for (IntIterator it = numbers.intIterator(); it.hasNext();) {
+      result.add(domain.getMappedObject(it.next()));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Test the bounds and the thread safety of the {@link SSACache}.
+ */
+public class SSACacheTest extends WalaTestCase {
+
+  private static AnalysisOptions options;
+
+  private static ClassHierarchy cha;
+
+  public static void main(String[] args) {
+    justThisTest(SSACacheTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    AnalysisScope scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA,
+        (new FileProvider()).getFile("J2SEClassHierarchyExclusions.txt"), SSACacheTest.class.getClassLoader());
+    options = new AnalysisOptions(scope, null);
+    cha = ClassHierarchy.make(scope, new ClassLoaderFactoryImpl(scope.getExclusions()));
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    options = null;
+    cha = null;
+  }
+
+  private static List<IMethod> concreteMethods(TypeReference type) {
+    IClass klass = cha.lookupClass(type);
+    List<IMethod> result = new ArrayList<IMethod>();
+    for (IMethod m : klass.getDeclaredMethods()) {
+      if (!m.isAbstract() && !m.isNative()) {
+        result.add(m);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * the cache keeps no more than its capacity, and answers repeated queries without building the IR again
+   */
+  @Test
+  public void testBounded() {
+    List<IMethod> methods = concreteMethods(TypeReference.JavaLangString);
+    Assert.assertTrue(methods.size() > 20);
+    SSACache cache = new AnalysisCache(new DefaultIRFactory(), 10).getSSACache();
+    for (IMethod m : methods) {
+      cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
+    }
+    SSACache.Statistics stats = cache.getIRStatistics();
+    Assert.assertTrue(stats.toString(), stats.getSize() <= 10);
+    Assert.assertTrue(stats.toString(), stats.getEvictions() >= methods.size() - 10);
+    Assert.assertEquals(methods.size(), stats.getMisses());
+
+    IMethod last = methods.get(methods.size() - 1);
+    IR ir = cache.findOrCreateIR(last, Everywhere.EVERYWHERE, options.getSSAOptions());
+    Assert.assertSame(ir, cache.findOrCreateIR(last, Everywhere.EVERYWHERE, options.getSSAOptions()));
+    Assert.assertTrue(cache.getIRStatistics().getHits() >= 2);
+  }
+
+  /**
+   * threads asking for the same IRs and def-use information all get the same instances, and each is built once. The cache holds
+   * its values softly, so the threads hold on to all they get; otherwise the collector could clear a value, and it would be built
+   * again.
+   */
+  @Test
+  public void testConcurrent() throws Exception {
+    final List<IMethod> methods = concreteMethods(TypeReference.JavaUtilArrayList);
+    final SSACache cache = new AnalysisCache().getSSACache();
+    List<Callable<List<Object>>> tasks = new ArrayList<Callable<List<Object>>>();
+    for (int t = 0; t < 8; t++) {
+      tasks.add(new Callable<List<Object>>() {
+        @Override
+        public List<Object> call() {
+          List<Object> result = new ArrayList<Object>();
+          for (IMethod m : methods) {
+            IR ir = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
+            result.add(ir);
+            result.add(cache.findOrCreateDU(ir, Everywhere.EVERYWHERE));
+          }
+          return result;
+        }
+      });
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<List<Object>> held = new ArrayList<List<Object>>();
+    try {
+      for (Future<List<Object>> f : pool.invokeAll(tasks)) {
+        held.add(f.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+    List<Object> expected = held.get(0);
+    for (List<Object> actual : held) {
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertSame(expected.get(i), actual.get(i));
+      }
+    }
+    // nothing was built twice while it was held
+    Assert.assertEquals(methods.size(), cache.getIRStatistics().getMisses());
+    Assert.assertEquals(methods.size(), cache.getDUStatistics().getMisses());
+  }
+}
@@ -10,19 +10,26 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.slicer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
 import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.examples.drivers.PDFSlice;
@@ -34,17 +41,22 @@ import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.PartialCallGraph;
+import com.ibm.wala.ipa.callgraph.impl.SetOfClasses;
 import com.ibm.wala.ipa.callgraph.impl.Util;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.slicer.HeapExclusions;
 import com.ibm.wala.ipa.slicer.MethodEntryStatement;
 import com.ibm.wala.ipa.slicer.NormalStatement;
 import com.ibm.wala.ipa.slicer.SDG;
 import com.ibm.wala.ipa.slicer.Slicer;
 import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
 import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.MultiSlice;
 import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ipa.slicer.SummaryStore;
 import com.ibm.wala.ipa.slicer.thin.ThinSlicer;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
@@ -58,7 +70,11 @@ import com.ibm.wala.ssa.SSANewInstruction;
 import com.ibm.wala.ssa.SSAPutInstruction;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.graph.GraphIntegrity;
 import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
@@ -692,6 +708,182 @@ public class SlicerTest {
     GraphIntegrity.check(sdg);
   }
 
+  /**
+   * building the PDGs on several threads should give the same SDG as building them on one
+   */
+  @Test
+  public void testParallelSDG() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+
+    // keep the test fast by ignoring the heap locations of library objects
+    HeapExclusions exclusions = new HeapExclusions(new SetOfClasses() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public boolean contains(String klassName) {
+        return false;
+      }
+
+      @Override
+      public boolean contains(TypeReference klass) {
+        return klass.getClassLoader().equals(ClassLoaderReference.Primordial);
+      }
+
+      @Override
+      public void add(IClass klass) {
+        throw new UnsupportedOperationException();
+      }
+    });
+    SDG expected = new SDG(cg, builder.getPointerAnalysis(), ModRef.make(), DataDependenceOptions.FULL,
+        ControlDependenceOptions.FULL, exclusions);
+    expected.eagerConstruction();
+    SDG actual = new SDG(cg, builder.getPointerAnalysis(), ModRef.make(), DataDependenceOptions.FULL,
+        ControlDependenceOptions.FULL, exclusions);
+    actual.setParallelism(4);
+    actual.eagerConstruction();
+
+    // statements which wrap instructions without value numbers, like getCaughtException, are only equal within one IR, and both
+    // SDGs need not see the same IRs, so compare the statements by their printed form
+    Assert.assertEquals(expected.getNumberOfNodes(), actual.getNumberOfNodes());
+    Assert.assertEquals(toStrings(expected), toStrings(actual));
+
+    CGNode main = findMainMethod(cg);
+    Statement s = findCallTo(main, "println");
+    Collection<Statement> slice = Slicer.computeBackwardSlice(actual, s);
+    Collection<Statement> expectedSlice = Slicer.computeBackwardSlice(expected, s);
+    Assert.assertEquals(toStrings(expectedSlice.iterator()), toStrings(slice.iterator()));
+  }
+
+  /**
+   * slicing from several statements at once should give each statement the slice it gets alone
+   */
+  @Test
+  public void testMultiSlice() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    SDG sdg = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.NO_HEAP, ControlDependenceOptions.FULL);
+
+    CGNode main = findMainMethod(cg);
+    List<Statement> seeds = new ArrayList<Statement>();
+    SSAInstruction[] instructions = main.getIR().getInstructions();
+    for (int i = 0; i < instructions.length; i++) {
+      if (instructions[i] != null) {
+        seeds.add(new NormalStatement(main, i));
+      }
+    }
+    Assert.assertTrue(seeds.size() > 1);
+
+    MultiSlice backward = Slicer.computeBackwardSlices(sdg, seeds);
+    MultiSlice forward = Slicer.computeForwardSlices(sdg, seeds);
+    for (int i = 0; i < seeds.size(); i++) {
+      Statement s = seeds.get(i);
+      Collection<Statement> slice = Slicer.computeBackwardSlice(sdg, s);
+      Assert.assertEquals(s.toString(), slice, backward.getSlice(i));
+      for (Statement st : slice) {
+        Assert.assertTrue(backward.getSeedsReaching(st).contains(i));
+      }
+      Assert.assertEquals(s.toString(), Slicer.computeForwardSlice(sdg, s), forward.getSlice(i));
+    }
+  }
+
+  /**
+   * slicing with summaries of the library, reloaded from their serialized form, should step over library calls and give the same
+   * application statements as slicing through the library
+   */
+  @Test
+  public void testSummaryStore() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    SDG sdg = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.NO_HEAP, ControlDependenceOptions.FULL);
+
+    Predicate<CGNode> library = new Predicate<CGNode>() {
+      @Override
+      public boolean test(CGNode n) {
+        return n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Primordial);
+      }
+    };
+    SummaryStore store = new SummaryStore(DataDependenceOptions.NO_HEAP, ControlDependenceOptions.FULL);
+    store.summarize(sdg, library);
+    Assert.assertTrue(store.size() > 0);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    store.write(bytes);
+    SummaryStore reloaded = SummaryStore.read(new ByteArrayInputStream(bytes.toByteArray()));
+    Assert.assertEquals(store.size(), reloaded.size());
+
+    // a later run, with a new SDG
+    SDG later = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.NO_HEAP, ControlDependenceOptions.FULL);
+    CGNode main = findMainMethod(cg);
+    SSAInstruction[] instructions = main.getIR().getInstructions();
+    boolean stepped = false;
+    for (int i = 0; i < instructions.length; i++) {
+      if (instructions[i] != null) {
+        Collection<Statement> seed = Collections.<Statement> singleton(new NormalStatement(main, i));
+        Collection<Statement> backward = Slicer.computeBackwardSlice(later, seed, reloaded);
+        Assert.assertEquals(seed.toString(), filter(Slicer.computeBackwardSlice(later, seed), library), filter(backward, library));
+        Collection<Statement> forward = Slicer.computeForwardSlice(later, seed, reloaded);
+        Collection<Statement> full = new Slicer().slice(later, seed, false);
+        Assert.assertEquals(seed.toString(), filter(full, library), filter(forward, library));
+        stepped |= forward.size() < full.size();
+      }
+    }
+    Assert.assertTrue(stepped);
+
+    // summaries computed for other options are not used
+    SDG other = new SDG(cg, builder.getPointerAnalysis(), DataDependenceOptions.NO_HEAP_NO_EXCEPTIONS,
+        ControlDependenceOptions.FULL);
+    Collection<Statement> seed = Collections.<Statement> singleton(new MethodEntryStatement(main));
+    Assert.assertEquals(new Slicer().slice(other, seed, false), Slicer.computeForwardSlice(other, seed, reloaded));
+  }
+
+  /**
+   * @return the statements of the slice outside the filtered procedures
+   */
+  private static Set<Statement> filter(Collection<Statement> slice, Predicate<CGNode> excluded) {
+    Set<Statement> result = HashSetFactory.make();
+    for (Statement s : slice) {
+      if (!excluded.test(s.getNode())) {
+        result.add(s);
+      }
+    }
+    return result;
+  }
+
+  private static Map<String, Set<String>> toStrings(SDG sdg) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (Statement st : sdg) {
+      result.put(st.toString(), toStrings(sdg.getSuccNodes(st)));
+    }
+    return result;
+  }
+
+  private static Set<String> toStrings(Iterator<? extends Statement> statements) {
+    Set<String> result = HashSetFactory.make();
+    while (statements.hasNext()) {
+      result.add(statements.next().toString());
+    }
+    return result;
+  }
+
   public static int countAllocations(Collection<Statement> slice) {
     int count = 0;
     for (Statement s : slice) {
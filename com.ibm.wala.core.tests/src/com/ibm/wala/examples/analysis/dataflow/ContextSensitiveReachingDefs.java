@@ -24,6 +24,7 @@ import com.ibm.wala.dataflow.IFDS.KillEverything;
 import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationProblem;
 import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationSolver;
 import com.ibm.wala.dataflow.IFDS.PathEdge;
+import com.ibm.wala.dataflow.IFDS.SparseICFGSupergraph;
 import com.ibm.wala.dataflow.IFDS.TabulationDomain;
 import com.ibm.wala.dataflow.IFDS.TabulationResult;
 import com.ibm.wala.dataflow.IFDS.TabulationSolver;
@@ -64,9 +65,17 @@ public class ContextSensitiveReachingDefs {
   private final ReachingDefsDomain domain = new ReachingDefsDomain();
 
   public ContextSensitiveReachingDefs(CallGraph cg, AnalysisCache cache) {
-    this.cha = cg.getClassHierarchy();
     // we use an ICFGSupergraph, which basically adapts ExplodedInterproceduralCFG to the ISupergraph interface
-    this.supergraph = ICFGSupergraph.make(cg, cache);
+    this(cg, ICFGSupergraph.make(cg, cache));
+  }
+
+  /**
+   * @param supergraph a supergraph over the exploded control-flow graphs of cg, such as a {@link SparseICFGSupergraph} which keeps
+   *          the nodes that write static fields
+   */
+  public ContextSensitiveReachingDefs(CallGraph cg, ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> supergraph) {
+    this.cha = cg.getClassHierarchy();
+    this.supergraph = supergraph;
   }
 
   /**
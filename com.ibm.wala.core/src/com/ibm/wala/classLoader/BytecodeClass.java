@@ -327,6 +327,7 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
    */
   @Override
   public Collection<IField> getDeclaredInstanceFields() {
+    computeFieldsIfNeeded();
     return Collections.unmodifiableList(Arrays.asList(instanceFields));
   }
 
@@ -335,6 +336,7 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
    */
   @Override
   public Collection<IField> getDeclaredStaticFields() {
+    computeFieldsIfNeeded();
     return Collections.unmodifiableList(Arrays.asList(staticFields));
   }
 
@@ -531,7 +533,8 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
   }
 
   protected List<IField> findDeclaredField(Atom name) {
-    
+    computeFieldsIfNeeded();
+
     List<IField> result = new ArrayList<IField>(1);
     
     if (instanceFields != null) {
@@ -567,6 +570,12 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
     L.add(f);
   }
 
+  /**
+   * Compute the declared fields, for subclasses that do not compute them when the class is created. By default, does nothing.
+   */
+  protected void computeFieldsIfNeeded() {
+  }
+
   /**
    * set up the methodMap mapping
    */
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.strings.ImmutableByteArray;
+import com.ibm.wala.util.strings.UTF8Convert;
+
+/**
+ * A directory of snapshots of the class headers in jar files, which lets a {@link ClassLoaderImpl} build the classes of an
+ * unchanged jar file without parsing its class files. Each jar file has its own snapshot, named by a hash of the jar's contents,
+ * so a changed jar file simply gets a new snapshot and the others remain valid.
+ *
+ * A snapshot records, for each class file entry that was loaded, the name, modifiers, superclass and interfaces of the class it
+ * defines, or that the entry is not a valid class file. Fields, methods and everything else are read from the jar file on demand,
+ * as usual.
+ *
+ * @see ClassLoaderFactoryImpl#setSnapshot(ClassHierarchySnapshot)
+ */
+public class ClassHierarchySnapshot {
+
+  private static final int MAGIC = 0x57414c41;
+
+  /**
+   * change this whenever the format changes; snapshots in other formats are ignored
+   */
+  private static final int VERSION = 1;
+
+  private static final String SUFFIX = ".snapshot";
+
+  /**
+   * the directory holding the snapshots
+   */
+  private final File directory;
+
+  /**
+   * @param directory directory holding the snapshots; created if it does not exist
+   */
+  public ClassHierarchySnapshot(File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("null directory");
+    }
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * The header of a class, as recorded in a snapshot. A summary with a null name records an invalid class file.
+   */
+  static class ClassSummary {
+
+    static final ClassSummary INVALID = new ClassSummary(null, 0, null, null);
+
+    private final TypeName name;
+
+    private final int modifiers;
+
+    private final ImmutableByteArray superName;
+
+    private final ImmutableByteArray[] interfaceNames;
+
+    ClassSummary(TypeName name, int modifiers, ImmutableByteArray superName, ImmutableByteArray[] interfaceNames) {
+      this.name = name;
+      this.modifiers = modifiers;
+      this.superName = superName;
+      this.interfaceNames = interfaceNames;
+    }
+
+    boolean isValid() {
+      return name != null;
+    }
+
+    TypeName getName() {
+      return name;
+    }
+
+    int getModifiers() {
+      return modifiers;
+    }
+
+    ImmutableByteArray getSuperName() {
+      return superName;
+    }
+
+    ImmutableByteArray[] getInterfaceNames() {
+      return interfaceNames;
+    }
+  }
+
+  /**
+   * The snapshot of one jar file: a mapping from entry name to {@link ClassSummary}.
+   */
+  static class JarSnapshot {
+
+    private final String hash;
+
+    private final Map<String, ClassSummary> summaries;
+
+    /**
+     * have summaries been added since the snapshot was read?
+     */
+    private boolean dirty;
+
+    private JarSnapshot(String hash, Map<String, ClassSummary> summaries) {
+      this.hash = hash;
+      this.summaries = summaries;
+    }
+
+    ClassSummary get(String entryName) {
+      return summaries.get(entryName);
+    }
+
+    void put(String entryName, ClassSummary summary) {
+      summaries.put(entryName, summary);
+      dirty = true;
+    }
+
+    boolean isDirty() {
+      return dirty;
+    }
+
+    int size() {
+      return summaries.size();
+    }
+  }
+
+  /**
+   * Read the snapshot of a jar file. If there is no usable snapshot for the current contents of the jar file, return an empty one
+   * to be filled in as its classes are loaded.
+   */
+  JarSnapshot read(JarFileModule module) throws IOException {
+    String hash = hash(new File(module.getAbsolutePath()));
+    Map<String, ClassSummary> summaries = HashMapFactory.make();
+    File f = new File(directory, hash + SUFFIX);
+    if (f.isFile()) {
+      RandomAccessFile file = new RandomAccessFile(f, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (!decode(buffer, summaries)) {
+          summaries.clear();
+        }
+      } finally {
+        file.close();
+      }
+    }
+    return new JarSnapshot(hash, summaries);
+  }
+
+  /**
+   * Write the snapshot of a jar file, replacing any previous one.
+   */
+  void write(JarSnapshot snapshot) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("could not create snapshot directory " + directory);
+    }
+    // write to a temporary file and rename it, so that other processes never see a partial snapshot
+    File tmp = File.createTempFile(snapshot.hash, ".tmp", directory);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      encode(snapshot.summaries, out);
+    } finally {
+      out.close();
+    }
+    File f = new File(directory, snapshot.hash + SUFFIX);
+    if (!tmp.renameTo(f)) {
+      // on some platforms, rename does not replace an existing file
+      f.delete();
+      if (!tmp.renameTo(f)) {
+        tmp.delete();
+        throw new IOException("could not write snapshot " + f);
+      }
+    }
+    snapshot.dirty = false;
+  }
+
+  private static void encode(Map<String, ClassSummary> summaries, DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(summaries.size());
+    for (Map.Entry<String, ClassSummary> e : summaries.entrySet()) {
+      writeBytes(out, ImmutableByteArray.make(e.getKey()));
+      ClassSummary s = e.getValue();
+      if (!s.isValid()) {
+        out.writeBoolean(false);
+        continue;
+      }
+      out.writeBoolean(true);
+      writeBytes(out, ImmutableByteArray.make(s.getName().toUnicodeString()));
+      out.writeInt(s.getModifiers());
+      writeBytes(out, s.getSuperName());
+      ImmutableByteArray[] interfaces = s.getInterfaceNames();
+      out.writeInt(interfaces.length);
+      for (int i = 0; i < interfaces.length; i++) {
+        writeBytes(out, interfaces[i]);
+      }
+    }
+  }
+
+  /**
+   * @return false if the buffer does not hold a snapshot in the current format. The snapshot may be truncated or otherwise
+   *         corrupt, so every count and length is checked against what remains of the buffer before anything is allocated.
+   */
+  private static boolean decode(MappedByteBuffer in, Map<String, ClassSummary> summaries) {
+    try {
+      if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+        return false;
+      }
+      int count = in.getInt();
+      // each summary takes at least the length of its entry name and a flag
+      if (count < 0 || count > in.remaining() / 5) {
+        return false;
+      }
+      for (int c = 0; c < count; c++) {
+        ImmutableByteArray entryName = readBytes(in);
+        if (entryName == null) {
+          return false;
+        }
+        if (in.get() == 0) {
+          summaries.put(UTF8Convert.fromUTF8(entryName), ClassSummary.INVALID);
+          continue;
+        }
+        ImmutableByteArray className = readBytes(in);
+        if (className == null) {
+          return false;
+        }
+        TypeName name = TypeName.findOrCreate(className);
+        int modifiers = in.getInt();
+        ImmutableByteArray superName = readBytes(in);
+        int interfaceCount = in.getInt();
+        // each interface name takes at least its length
+        if (interfaceCount < 0 || interfaceCount > in.remaining() / 4) {
+          return false;
+        }
+        ImmutableByteArray[] interfaces = new ImmutableByteArray[interfaceCount];
+        for (int i = 0; i < interfaces.length; i++) {
+          interfaces[i] = readBytes(in);
+        }
+        summaries.put(UTF8Convert.fromUTF8(entryName), new ClassSummary(name, modifiers, superName, interfaces));
+      }
+      return true;
+    } catch (RuntimeException e) {
+      // a truncated or corrupt snapshot, which is ignored like any other unusable one
+      return false;
+    }
+  }
+
+  /**
+   * write a possibly-null byte array, prefixed by its length, or -1 for null
+   */
+  private static void writeBytes(DataOutputStream out, ImmutableByteArray b) throws IOException {
+    if (b == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(b.length());
+      out.write(b.substring(0, b.length()));
+    }
+  }
+
+  /**
+   * @throws BufferUnderflowException if the buffer holds fewer bytes than the length read
+   */
+  private static ImmutableByteArray readBytes(MappedByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > in.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] b = new byte[length];
+    in.get(b);
+    return new ImmutableByteArray(b);
+  }
+
+  /**
+   * @return a hex string of the SHA-1 hash of a file's contents
+   */
+  private static String hash(File f) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    InputStream s = new FileInputStream(f);
+    try {
+      byte[] buffer = new byte[65536];
+      for (int n = s.read(buffer); n != -1; n = s.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    } finally {
+      s.close();
+    }
+    StringBuffer result = new StringBuffer();
+    for (byte b : digest.digest()) {
+      result.append(Integer.toHexString((b >> 4) & 0xf)).append(Integer.toHexString(b & 0xf));
+    }
+    return result.toString();
+  }
+}
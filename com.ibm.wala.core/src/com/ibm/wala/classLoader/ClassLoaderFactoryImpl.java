@@ -38,6 +38,16 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
    */
   final private HashMap<ClassLoaderReference, IClassLoader> map = HashMapFactory.make(3);
 
+  /**
+   * number of threads each {@link ClassLoaderImpl} uses to parse its class files
+   */
+  private int parallelism = 1;
+
+  /**
+   * if non-null, snapshots of jar files that each {@link ClassLoaderImpl} uses and keeps up to date
+   */
+  private ClassHierarchySnapshot snapshot;
+
   /**
    * @param exclusions
    *          A set of classes that class loaders should pretend don't exist.
@@ -112,6 +122,10 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
           cl = new ClassLoaderImpl(classLoaderReference, scope.getArrayClassLoader(), parent, exclusions, cha);
         }
       }
+    if (cl instanceof ClassLoaderImpl) {
+      ((ClassLoaderImpl) cl).setParallelism(parallelism);
+      ((ClassLoaderImpl) cl).setSnapshot(snapshot);
+    }
     cl.init(scope.getModules(classLoaderReference));
     return cl;
   }
@@ -138,6 +152,38 @@ public class ClassLoaderFactoryImpl implements ClassLoaderFactory {
     }
   }
 
+  /**
+   * @return the number of threads each new {@link ClassLoaderImpl} uses to parse its class files
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism the number of threads each new {@link ClassLoaderImpl} uses to parse its class files; 1 means parse
+   *          sequentially
+   * @see ClassLoaderImpl#setParallelism(int)
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public ClassHierarchySnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @param snapshot snapshots of jar files that each new {@link ClassLoaderImpl} builds unchanged jar files from, or null to always
+   *          parse the class files
+   * @see ClassLoaderImpl#setSnapshot(ClassHierarchySnapshot)
+   */
+  public void setSnapshot(ClassHierarchySnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
   /**
    * @return the set of classes that will be ignored.
    */
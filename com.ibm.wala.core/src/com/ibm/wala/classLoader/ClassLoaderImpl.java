@@ -17,6 +17,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,6 +25,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
@@ -54,6 +60,11 @@ public class ClassLoaderImpl implements IClassLoader {
 
   private static final boolean OPTIMIZE_JAR_FILE_IO = true;
 
+  /**
+   * A tuning parameter: the fewest class files handed to one thread at a time when parsing in parallel.
+   */
+  private static final int MIN_CLASSES_PER_TASK = 16;
+
   /**
    * classes to ignore
    */
@@ -89,6 +100,16 @@ public class ClassLoaderImpl implements IClassLoader {
    */
   private final ArrayClassLoader arrayClassLoader;
 
+  /**
+   * number of threads used to parse class files in {@link #init(List)}
+   */
+  private int parallelism = 1;
+
+  /**
+   * if non-null, snapshots of the jar files this loader reads
+   */
+  private ClassHierarchySnapshot snapshot;
+
   /**
    * @param loader class loader reference identifying this loader
    * @param parent parent loader for delegation
@@ -243,8 +264,16 @@ public class ClassLoaderImpl implements IClassLoader {
 
   /**
    * Set up the set of classes loaded by this object.
+   * 
+   * @param pool if non-null, the class files are parsed on this pool before they are registered
+   * @param jarSnapshot if non-null, a snapshot of the jar file the entries come from; classes it summarizes are not parsed, and the
+   *          others are added to it
    */
-  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents) {
+  private void loadAllClasses(Collection<ModuleEntry> moduleEntries, Map<String, Object> fileContents, ExecutorService pool,
+      ClassHierarchySnapshot.JarSnapshot jarSnapshot) throws IOException {
+    Map<ModuleEntry, ParsedClass> parsed = pool == null ? null : parseAllClasses(moduleEntries, fileContents, pool, jarSnapshot);
+    // register the classes in the order of the entries, so that the warnings and the precedence among
+    // duplicate definitions are the same whether or not the class files were parsed in parallel
     for (Iterator<ModuleEntry> it = moduleEntries.iterator(); it.hasNext();) {
       ModuleEntry entry = it.next();
       if (!entry.isClassFile()) {
@@ -264,8 +293,6 @@ public class ClassLoaderImpl implements IClassLoader {
         continue;
       }
 
-      ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
-
       className = "L" + className;
       if (DEBUG_LEVEL > 0) {
         System.err.println("Load class " + className);
@@ -277,20 +304,22 @@ public class ClassLoaderImpl implements IClassLoader {
         } else if (parent != null && parent.lookupClass(T) != null) {
           Warnings.add(MultipleImplementationsWarning.create(className));
         } else {
-          // try to read from memory
-          ShrikeClassReaderHandle reader = entryReader;
-          if (fileContents != null) {
-            final Object contents = fileContents.get(entry.getName());
-            if (contents != null) {
-              // reader that uses the in-memory bytes
-              reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
+          ShrikeClass klass;
+          ClassHierarchySnapshot.ClassSummary summary = getSummary(jarSnapshot, entry);
+          if (summary != null) {
+            klass = summary.isValid() && summary.getName().equals(T) ? new ShrikeClass(new ShrikeClassReaderHandle(entry), this,
+                cha, summary) : null;
+          } else {
+            try {
+              klass = parsed == null ? readClass(entry, T, fileContents) : parsed.get(entry).get();
+            } catch (InvalidClassFileException e) {
+              putSummary(jarSnapshot, entry, ClassHierarchySnapshot.ClassSummary.INVALID);
+              throw e;
             }
+            putSummary(jarSnapshot, entry, klass == null ? ClassHierarchySnapshot.ClassSummary.INVALID : klass.getSummary());
           }
-          ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
-          if (tmpKlass.getReference().getName().equals(T)) {
-            // always used the reader based on the entry after this point,
-            // so we can null out and re-read class file contents
-            loadedClasses.put(T, new ShrikeClass(entryReader, this, cha));
+          if (klass != null) {
+            loadedClasses.put(T, klass);
             if (DEBUG_LEVEL > 1) {
               System.err.println("put " + T + " ");
             }
@@ -307,6 +336,143 @@ public class ClassLoaderImpl implements IClassLoader {
     }
   }
 
+  /**
+   * @return the summary of the class defined by an entry in a jar snapshot, or null if there is none
+   */
+  private static ClassHierarchySnapshot.ClassSummary getSummary(ClassHierarchySnapshot.JarSnapshot jarSnapshot, ModuleEntry entry) {
+    // entries of jar files nested in the jar file are not in its snapshot
+    return jarSnapshot != null && entry instanceof JarFileEntry ? jarSnapshot.get(entry.getName()) : null;
+  }
+
+  private static void putSummary(ClassHierarchySnapshot.JarSnapshot jarSnapshot, ModuleEntry entry,
+      ClassHierarchySnapshot.ClassSummary summary) {
+    if (jarSnapshot != null && entry instanceof JarFileEntry) {
+      jarSnapshot.put(entry.getName(), summary);
+    }
+  }
+
+  /**
+   * Read the class defined by a class file.
+   * 
+   * @param T the name of the class the entry should define
+   * @return the class, or null if the entry defines some class other than T
+   */
+  private ShrikeClass readClass(ModuleEntry entry, TypeName T, Map<String, Object> fileContents)
+      throws InvalidClassFileException {
+    ShrikeClassReaderHandle entryReader = new ShrikeClassReaderHandle(entry);
+    // try to read from memory
+    ShrikeClassReaderHandle reader = entryReader;
+    if (fileContents != null) {
+      final Object contents = fileContents.get(entry.getName());
+      if (contents != null) {
+        // reader that uses the in-memory bytes
+        reader = new ByteArrayReaderHandle(entry, (byte[]) contents);
+      }
+    }
+    ShrikeClass tmpKlass = new ShrikeClass(reader, this, cha);
+    if (tmpKlass.getReference().getName().equals(T)) {
+      // always used the reader based on the entry after this point,
+      // so we can null out and re-read class file contents
+      return new ShrikeClass(entryReader, this, cha);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * The outcome of parsing one class file on the pool: either a class (possibly null, see
+   * {@link ClassLoaderImpl#readClass(ModuleEntry, TypeName, Map)}) or whatever was thrown while parsing it. A failure is only
+   * rethrown if the class is registered, just as it would have been had the class been parsed sequentially.
+   */
+  private static class ParsedClass {
+    private final ShrikeClass klass;
+
+    private final Throwable failure;
+
+    ParsedClass(ShrikeClass klass, Throwable failure) {
+      this.klass = klass;
+      this.failure = failure;
+    }
+
+    ShrikeClass get() throws InvalidClassFileException {
+      if (failure instanceof InvalidClassFileException) {
+        throw (InvalidClassFileException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      return klass;
+    }
+  }
+
+  /**
+   * Parse all class files that {@link #loadAllClasses(Collection, Map, ExecutorService, ClassHierarchySnapshot.JarSnapshot)} may
+   * register, on a pool of threads.
+   * Nothing is registered and no warnings are raised here; classes that turn out to be duplicates are parsed and dropped. Classes
+   * summarized in the jar snapshot are not parsed.
+   */
+  private Map<ModuleEntry, ParsedClass> parseAllClasses(Collection<ModuleEntry> moduleEntries,
+      final Map<String, Object> fileContents, ExecutorService pool, ClassHierarchySnapshot.JarSnapshot jarSnapshot)
+      throws IOException {
+    final List<ModuleEntry> entries = new ArrayList<ModuleEntry>();
+    for (ModuleEntry entry : moduleEntries) {
+      if (entry.isClassFile() && (exclusions == null || !exclusions.contains(entry.getClassName().replace('.', '/')))
+          && getSummary(jarSnapshot, entry) == null) {
+        entries.add(entry);
+      }
+    }
+    final ParsedClass[] results = new ParsedClass[entries.size()];
+    // chunks of several entries each, so that the threads are not too busy taking tasks off the pool's queue
+    int chunk = Math.max(MIN_CLASSES_PER_TASK, (entries.size() + parallelism - 1) / (4 * parallelism));
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int start = 0; start < entries.size(); start += chunk) {
+      final int from = start;
+      final int to = Math.min(start + chunk, entries.size());
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          for (int i = from; i < to; i++) {
+            ModuleEntry entry = entries.get(i);
+            TypeName T = TypeName.string2TypeName("L" + entry.getClassName().replace('.', '/'));
+            try {
+              results[i] = new ParsedClass(readClass(entry, T, fileContents), null);
+            } catch (InvalidClassFileException e) {
+              results[i] = new ParsedClass(null, e);
+            } catch (RuntimeException e) {
+              results[i] = new ParsedClass(null, e);
+            } catch (Error e) {
+              results[i] = new ParsedClass(null, e);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Object> f : pool.invokeAll(tasks)) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while parsing class files");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+    Map<ModuleEntry, ParsedClass> result = HashMapFactory.make(entries.size());
+    for (int i = 0; i < results.length; i++) {
+      result.put(entries.get(i), results[i]);
+    }
+    return result;
+  }
+
   @SuppressWarnings("unused")
   private Map<String, Object> getAllClassAndSourceFileContents(byte[] jarFileContents, String fileName,
       Map<String, Map<String, Long>> entrySizes) {
@@ -438,6 +604,17 @@ public class ClassLoaderImpl implements IClassLoader {
       throw new IllegalArgumentException("modules is null");
     }
 
+    ExecutorService pool = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+    try {
+      loadAllModules(modules, pool);
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  private void loadAllModules(List<Module> modules, ExecutorService pool) throws IOException {
     // module are loaded according to the given order (same as in Java VM)
     Set<ModuleEntry> classModuleEntries = HashSetFactory.make();
     Set<ModuleEntry> sourceModuleEntries = HashSetFactory.make();
@@ -474,7 +651,12 @@ public class ClassLoaderImpl implements IClassLoader {
         // }
         // jarFileContents = null;
       }
-      loadAllClasses(classFiles, allClassAndSourceFileContents);
+      ClassHierarchySnapshot.JarSnapshot jarSnapshot = snapshot != null && archive instanceof JarFileModule ? snapshot
+          .read((JarFileModule) archive) : null;
+      loadAllClasses(classFiles, allClassAndSourceFileContents, pool, jarSnapshot);
+      if (jarSnapshot != null && jarSnapshot.isDirty()) {
+        snapshot.write(jarSnapshot);
+      }
       loadAllSources(sourceFiles);
       for (Iterator<ModuleEntry> it2 = classFiles.iterator(); it2.hasNext();) {
         ModuleEntry file = it2.next();
@@ -530,6 +712,40 @@ public class ClassLoaderImpl implements IClassLoader {
     }
   }
 
+  /**
+   * @return the number of threads used to parse class files when the loader is initialized
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Parse class files on several threads when the loader is initialized. The classes are still registered one at a time in
+   * module order, so the loaded classes and warnings do not depend on this setting. Must be called before {@link #init(List)}.
+   * 
+   * @param parallelism the number of threads used to parse class files; 1 means parse sequentially
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public ClassHierarchySnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Build the classes of unchanged jar files from their snapshots, rather than parsing their class files, and record snapshots of
+   * new or changed jar files. Must be called before {@link #init(List)}.
+   * 
+   * @param snapshot the snapshots to use, or null to always parse the class files
+   */
+  public void setSnapshot(ClassHierarchySnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
   @Override
   public ClassLoaderReference getReference() {
     return loader;
@@ -67,6 +67,46 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
     computeFields();
   }
 
+  /**
+   * Create a class from a summary of its class file, without reading the class file. The fields are read from the class file
+   * when they are first needed.
+   */
+  ShrikeClass(ShrikeClassReaderHandle reader, IClassLoader loader, IClassHierarchy cha, ClassHierarchySnapshot.ClassSummary summary) {
+    super(loader, cha);
+    if (reader == null) {
+      throw new IllegalArgumentException("reader is null");
+    }
+    this.reader = reader;
+    typeReference = TypeReference.findOrCreate(loader.getReference(), summary.getName());
+    this.hashCode = 2161 * getReference().hashCode();
+    superName = summary.getSuperName();
+    modifiers = summary.getModifiers();
+    interfaceNames = summary.getInterfaceNames();
+  }
+
+  /**
+   * @return the summary of this class that is kept in a {@link ClassHierarchySnapshot}
+   */
+  ClassHierarchySnapshot.ClassSummary getSummary() {
+    return new ClassHierarchySnapshot.ClassSummary(getName(), modifiers, superName, interfaceNames);
+  }
+
+  @Override
+  protected void computeFieldsIfNeeded() {
+    if (instanceFields == null) {
+      synchronized (this) {
+        if (instanceFields == null) {
+          try {
+            computeFields();
+          } catch (InvalidClassFileException e) {
+            e.printStackTrace();
+            Assertions.UNREACHABLE();
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Compute the fields declared by this class
    * 
@@ -93,10 +133,12 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
           addFieldToList(staticList, name, b, accessFlags, annotations);
         }
       }
-      instanceFields = new IField[instanceList.size()];
-      populateFieldArrayFromList(instanceList, instanceFields);
+      IField[] instance = new IField[instanceList.size()];
+      populateFieldArrayFromList(instanceList, instance);
       staticFields = new IField[staticList.size()];
       populateFieldArrayFromList(staticList, staticFields);
+      // set last: computeFieldsIfNeeded() takes a non-null instanceFields to mean that all fields are computed
+      instanceFields = instance;
 
     } catch (InvalidClassFileException e) {
       e.printStackTrace();
@@ -38,6 +38,14 @@ public class BoundedTabulationSolver<T, P, F> extends TabulationSolver<T, P, F>
     this.bound = bound;
   }
   
+  /**
+   * This solver always tabulates sequentially, since the bound is on the number of steps in sequential order.
+   */
+  @Override
+  protected boolean canTabulateInParallel() {
+    return false;
+  }
+
   @Override
   protected boolean propagate(T s_p, int i,T n, int j) {
     if (numSteps < bound) {
@@ -21,6 +21,8 @@ import com.ibm.wala.util.intset.SparseIntSet;
 
 /**
  * A set of call flow edges which lead to a particular procedure entry s_p.
+ * 
+ * The methods are synchronized; see {@link LocalPathEdges} about the sets returned.
  */
 public class CallFlowEdges {
 
@@ -53,7 +55,7 @@ public class CallFlowEdges {
    * @param d1 source fact at the call edge
    * @param d2 result fact (result of the call flow function)
    */
-  public void addCallEdge(int c, int d1, int d2) {
+  public synchronized void addCallEdge(int c, int d1, int d2) {
     if (TabulationSolver.DEBUG_LEVEL > 0) {
       System.err.println("addCallEdge " + c + " " + d1 + " " + d2);
     }
@@ -80,7 +82,7 @@ public class CallFlowEdges {
    * @param d2
    * @return set of d1 s.t. <c, d1> -> <s_p, d2> was recorded as call flow, or null if none found.
    */
-  public IntSet getCallFlowSources(int c, int d2) {
+  public synchronized IntSet getCallFlowSources(int c, int d2) {
     if (c < 0) {
       throw new IllegalArgumentException("invalid c : " + c);
     }
@@ -121,7 +123,7 @@ public class CallFlowEdges {
    * @param d2
    * @return set of c s.t. <c, d1> -> <s_p, d2> was recorded as call flow (for some d1), or null if none found.
    */
-  public IntSet getCallFlowSourceNodes(int d2) {
+  public synchronized IntSet getCallFlowSourceNodes(int d2) {
     IntSet s = identityEdges.get(d2);
     IBinaryNaturalRelation R = edges.get(d2);
     IntSet result = null;
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.Arrays;
+
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A set of path edges for a particular procedure entry s_p, using less space than {@link LocalPathEdges} when there are many path
+ * edges <s_p, d1> -> <n, d2> with d1 != 0 and d1 != d2.
+ *
+ * Path edges from fact 0 and path edges from a fact to itself are kept in bit vectors, as in {@link LocalPathEdges}. Each other
+ * path edge is packed into a single long, and the longs for a block n are kept in one array, mostly sorted. So such a path edge
+ * costs 8 bytes plus the slack in the array, instead of the several objects per (d2, n) pair of a {@link LocalPathEdges}.
+ *
+ * Finding the d1's for an (n, d2) pair is a binary search. Finding the d2's for an (n, d1) pair scans the path edges of n, which
+ * is usually cheap enough to serve merge functions without the redundant representation {@link LocalPathEdges} keeps for them.
+ */
+public class CompactLocalPathEdges extends LocalPathEdges {
+
+  /**
+   * the number of path edges to append to a block's array before sorting them into it
+   */
+  private final static int MAX_UNSORTED = 32;
+
+  /**
+   * For local block number n, packed[n] holds the path edges <s_p, d1> -> <n, d2> not kept by the superclass, as d2 << 32 | d1.
+   * The first sorted[n] entries are sorted; the rest, up to count[n], were appended since.
+   */
+  private long[][] packed = new long[0][];
+
+  private int[] count = new int[0];
+
+  private int[] sorted = new int[0];
+
+  public CompactLocalPathEdges() {
+    super(false);
+  }
+
+  private static long pack(int d1, int d2) {
+    return ((long) d2 << 32) | (d1 & 0xffffffffL);
+  }
+
+  private static int d1(long edge) {
+    return (int) edge;
+  }
+
+  private static int d2(long edge) {
+    return (int) (edge >>> 32);
+  }
+
+  @Override
+  public synchronized void addPathEdge(int i, int n, int j) {
+    if (i == 0 || i == j) {
+      super.addPathEdge(i, n, j);
+      return;
+    }
+    if (n < 0) {
+      throw new IllegalArgumentException("invalid n: " + n);
+    }
+    long edge = pack(i, j);
+    if (n >= packed.length) {
+      int size = Math.max(n + 1, packed.length + packed.length / 2);
+      packed = Arrays.copyOf(packed, size);
+      count = Arrays.copyOf(count, size);
+      sorted = Arrays.copyOf(sorted, size);
+    } else if (containsPacked(n, edge)) {
+      return;
+    }
+    long[] a = packed[n];
+    int c = count[n];
+    if (a == null) {
+      a = packed[n] = new long[4];
+    } else if (c == a.length) {
+      a = packed[n] = Arrays.copyOf(a, c + c / 2);
+    }
+    a[c] = edge;
+    count[n] = c + 1;
+    if (c + 1 - sorted[n] > MAX_UNSORTED) {
+      settle(n);
+    }
+  }
+
+  private boolean containsPacked(int n, long edge) {
+    if (n >= packed.length || packed[n] == null) {
+      return false;
+    }
+    long[] a = packed[n];
+    if (Arrays.binarySearch(a, 0, sorted[n], edge) >= 0) {
+      return true;
+    }
+    for (int k = sorted[n]; k < count[n]; k++) {
+      if (a[k] == edge) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * sort the path edges appended to packed[n] into the sorted ones
+   */
+  private void settle(int n) {
+    long[] a = packed[n];
+    int s = sorted[n];
+    int c = count[n];
+    if (s == c) {
+      return;
+    }
+    Arrays.sort(a, s, c);
+    long[] tail = Arrays.copyOfRange(a, s, c);
+    // merge from the back, so the sorted entries can be moved in place
+    int i = s - 1;
+    int j = tail.length - 1;
+    int k = c - 1;
+    while (j >= 0) {
+      if (i >= 0 && a[i] > tail[j]) {
+        a[k--] = a[i--];
+      } else {
+        a[k--] = tail[j--];
+      }
+    }
+    sorted[n] = c;
+  }
+
+  /**
+   * @return the number of path edges <s_p, d1> -> <n, d2> for n, with d1 != 0 and d1 != d2, sorted
+   */
+  private int settledCount(int n) {
+    if (n < 0 || n >= packed.length || packed[n] == null) {
+      return 0;
+    }
+    settle(n);
+    return count[n];
+  }
+
+  @Override
+  public synchronized IntSet getInverse(int n, int d2) {
+    IntSet s = super.getInverse(n, d2);
+    int c = settledCount(n);
+    if (c == 0) {
+      return s;
+    }
+    long[] a = packed[n];
+    int k = Arrays.binarySearch(a, 0, c, pack(0, d2));
+    if (k < 0) {
+      k = -k - 1;
+    }
+    if (k == c || d2(a[k]) != d2) {
+      return s;
+    }
+    MutableSparseIntSet result = s == null ? MutableSparseIntSet.makeEmpty() : MutableSparseIntSet.make(s);
+    for (; k < c && d2(a[k]) == d2; k++) {
+      result.add(d1(a[k]));
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized boolean contains(int i, int n, int j) {
+    if (i == 0 || i == j) {
+      return super.contains(i, n, j);
+    }
+    if (n < 0) {
+      throw new IllegalArgumentException("invalid n: " + n);
+    }
+    return containsPacked(n, pack(i, j));
+  }
+
+  @Override
+  public synchronized IntSet getReachable(int n, int d1) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    IntSet s = super.getReachable(n, d1);
+    if (s != null) {
+      result.addAll(s);
+    }
+    if (d1 != 0) {
+      int c = settledCount(n);
+      long[] a = c == 0 ? null : packed[n];
+      for (int k = 0; k < c; k++) {
+        if (d1(a[k]) == d1) {
+          result.add(d2(a[k]));
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized IntSet getReachable(int n) {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    IntSet s = super.getReachable(n);
+    if (s != null) {
+      result.addAll(s);
+    }
+    int c = settledCount(n);
+    long[] a = c == 0 ? null : packed[n];
+    for (int k = 0; k < c; k++) {
+      result.add(d2(a[k]));
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized IntSet getReachedNodeNumbers() {
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    result.addAll(super.getReachedNodeNumbers());
+    for (int n = 0; n < packed.length; n++) {
+      if (count[n] > 0) {
+        result.add(n);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A work-stealing worklist for tabulating with several threads.
+ *
+ * Each worker thread has its own deque. A worker inserts path edges at the front of its own deque and takes them from there, so it
+ * tends to follow a path depth-first; when its deque is empty, it steals from the back of the other deques. Path edges inserted by
+ * threads that are not workers are spread over the deques.
+ *
+ * The worklist also counts the path edges that have been inserted but not yet fully processed, so that the workers can tell when
+ * the tabulation is done: a worker must call {@link #finished()} after processing each path edge it takes, once it has inserted any
+ * path edges the processing produced. A worker that finds no path edge to take waits in {@link #awaitWork(long)} until another
+ * worker inserts one, or the tabulation is done.
+ *
+ * This worklist ignores the priorities given by the {@link TabulationDomain}.
+ *
+ * @param <T> represents type of nodes in the supergraph.
+ */
+class ConcurrentTabulationWorklist<T> implements ITabulationWorklist<T> {
+
+  private final LinkedBlockingDeque<PathEdge<T>>[] deques;
+
+  /**
+   * the index of the current thread's deque, for worker threads
+   */
+  private final ThreadLocal<Integer> worker = new ThreadLocal<Integer>();
+
+  /**
+   * where to insert the next path edge from a thread that is not a worker
+   */
+  private final AtomicInteger nextDeque = new AtomicInteger();
+
+  /**
+   * the number of path edges inserted but not yet finished
+   */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /**
+   * the number of workers in {@link #awaitWork(long)}; the other threads signal {@link #idle} only if there are any
+   */
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  /**
+   * the monitor on which idle workers wait
+   */
+  private final Object idle = new Object();
+
+  /**
+   * @param nWorkers the number of worker threads
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  ConcurrentTabulationWorklist(int nWorkers) {
+    if (nWorkers < 1) {
+      throw new IllegalArgumentException("nWorkers must be positive: " + nWorkers);
+    }
+    deques = new LinkedBlockingDeque[nWorkers];
+    for (int i = 0; i < nWorkers; i++) {
+      deques[i] = new LinkedBlockingDeque<PathEdge<T>>();
+    }
+  }
+
+  /**
+   * make the current thread worker i
+   */
+  void register(int i) {
+    if (i < 0 || i >= deques.length) {
+      throw new IllegalArgumentException("invalid worker: " + i);
+    }
+    worker.set(i);
+  }
+
+  /**
+   * @return a path edge from the current thread's deque, or stolen from another deque; null if all deques are empty
+   */
+  @Override
+  public PathEdge<T> take() {
+    Integer w = worker.get();
+    int self = w == null ? 0 : w;
+    PathEdge<T> result = deques[self].pollFirst();
+    for (int i = 1; result == null && i < deques.length; i++) {
+      result = deques[(self + i) % deques.length].pollLast();
+    }
+    return result;
+  }
+
+  @Override
+  public void insert(PathEdge<T> elt) {
+    pending.incrementAndGet();
+    Integer w = worker.get();
+    if (w == null) {
+      deques[(nextDeque.getAndIncrement() & Integer.MAX_VALUE) % deques.length].addLast(elt);
+    } else {
+      deques[w].addFirst(elt);
+    }
+    // one more path edge, for one worker
+    wakeIdle(false);
+  }
+
+  /**
+   * record that a path edge returned by {@link #take()} has been processed
+   */
+  void finished() {
+    if (pending.decrementAndGet() == 0) {
+      // done, for every worker
+      wakeIdle(true);
+    }
+  }
+
+  /**
+   * Wait until there may be a path edge to take, or the tabulation is done. A worker waiting here checks the insertion or
+   * completion it waits for under {@link #idle} after announcing itself in {@link #waiting}, and the thread that inserts or
+   * completes reads {@link #waiting} after doing so, so no wakeup is lost.
+   * 
+   * @param timeout the longest time to wait, in milliseconds, so that the caller can check whether it should stop
+   * @return false iff the tabulation is done
+   */
+  boolean awaitWork(long timeout) throws InterruptedException {
+    waiting.incrementAndGet();
+    try {
+      synchronized (idle) {
+        if (size() == 0 && !isQuiescent()) {
+          idle.wait(timeout);
+        }
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+    return !isQuiescent();
+  }
+
+  private void wakeIdle(boolean all) {
+    if (waiting.get() > 0) {
+      synchronized (idle) {
+        if (all) {
+          idle.notifyAll();
+        } else {
+          idle.notify();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true iff every path edge inserted has been processed, in which case no more will be inserted
+   */
+  boolean isQuiescent() {
+    return pending.get() == 0;
+  }
+
+  /**
+   * @return the number of path edges waiting to be taken
+   */
+  @Override
+  public int size() {
+    int result = 0;
+    for (LinkedBlockingDeque<PathEdge<T>> d : deques) {
+      result += d.size();
+    }
+    return result;
+  }
+}
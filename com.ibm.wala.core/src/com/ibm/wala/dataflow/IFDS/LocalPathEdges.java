@@ -24,6 +24,10 @@ import com.ibm.wala.util.intset.SparseIntSet;
 
 /**
  * A set of path edges for a particular procedure entry s_p.
+ * 
+ * The methods are synchronized, so several threads may add and query path edges. The sets returned may be views of the internal
+ * representation; a thread that needs a stable set while other threads add path edges should copy it while holding the lock on
+ * this object.
  */
 public class LocalPathEdges {
 
@@ -99,7 +103,7 @@ public class LocalPathEdges {
    * 
    * @param j
    */
-  public void addPathEdge(int i, int n, int j) {
+  public synchronized void addPathEdge(int i, int n, int j) {
 
     if (i == 0) {
       addZeroPathEdge(n, j);
@@ -201,7 +205,7 @@ public class LocalPathEdges {
    * @param d2
    * @return the sparse int set of d1 s.t. <s_p, d1> -> <n, d2> are recorded as path edges. null if none found
    */
-  public IntSet getInverse(int n, int d2) {
+  public synchronized IntSet getInverse(int n, int d2) {
     IBinaryNaturalRelation R = paths.get(d2);
     BitVectorIntSet s = (BitVectorIntSet) identityPaths.get(d2);
     BitVectorIntSet z = (BitVectorIntSet) zeroPaths.get(d2);
@@ -220,7 +224,7 @@ public class LocalPathEdges {
             return z.contains(n) ? SparseIntSet.pair(0, d2) : SparseIntSet.singleton(d2);
           }
         } else {
-          return null;
+          return (z != null && z.contains(n)) ? SparseIntSet.singleton(0) : null;
         }
       }
     } else {
@@ -278,7 +282,7 @@ public class LocalPathEdges {
    * @param j
    * @return true iff we have a path edge <s_p,i>-><n, j>
    */
-  public boolean contains(int i, int n, int j) {
+  public synchronized boolean contains(int i, int n, int j) {
 
     if (n < 0) {
       throw new IllegalArgumentException("invalid n: " + n);
@@ -313,7 +317,7 @@ public class LocalPathEdges {
    * @param n
    * @return set of d2 s.t. d1->d2 is a path edge for node n.
    */
-  public IntSet getReachable(int n, int d1) {
+  public synchronized IntSet getReachable(int n, int d1) {
     if (PARANOID) {
       assert getReachableSlow(n, d1).sameValue(getReachableFast(n, d1));
     }
@@ -380,7 +384,7 @@ public class LocalPathEdges {
    * @param n the local block number of a node
    * @return set of d2 s.t \exists d1 s.t. d1->d2 is a path edge for node n
    */
-  public IntSet getReachable(int n) {
+  public synchronized IntSet getReachable(int n) {
     MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
     if (paths.size() > 0) {
       // this is convoluted on purpose for efficiency: to avoid random access to
@@ -429,7 +433,7 @@ public class LocalPathEdges {
    * 
    * @return set of node numbers that are reached by any fact
    */
-  public IntSet getReachedNodeNumbers() {
+  public synchronized IntSet getReachedNodeNumbers() {
     MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
     if (paths.size() > 0) {
       for (IBinaryNaturalRelation R : paths) {
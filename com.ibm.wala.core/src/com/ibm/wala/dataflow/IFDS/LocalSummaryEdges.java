@@ -23,6 +23,9 @@ import com.ibm.wala.util.math.LongUtil;
 
 /**
  * A set of summary edges for a particular procedure.
+ * 
+ * The methods are synchronized, so several threads may add and query summary edges. As with {@link LocalPathEdges}, copy a returned
+ * set while holding the lock on this object if other threads may still add summary edges.
  */
 public class LocalSummaryEdges {
 
@@ -70,7 +73,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @param d2 target dataflow fact
    */
-  public void insertSummaryEdge(int s_p, int x, int d1, int d2) {
+  public synchronized void insertSummaryEdge(int s_p, int x, int d1, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -92,7 +95,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @param d2 target dataflow fact
    */
-  public boolean contains(int s_p, int x, int d1, int d2) {
+  public synchronized boolean contains(int s_p, int x, int d1, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -108,7 +111,7 @@ public class LocalSummaryEdges {
    * @param d1 source dataflow fact
    * @return set of d2 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
-  public IntSet getSummaryEdges(int s_p, int x, int d1) {
+  public synchronized IntSet getSummaryEdges(int s_p, int x, int d1) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -126,7 +129,7 @@ public class LocalSummaryEdges {
    * @param d2 target dataflow fact
    * @return set of d1 s.t. d1->d2 recorded as a summary edge for (s_p,x), or null if none
    */
-  public IntSet getInvertedSummaryEdgesForTarget(int s_p, int x, int d2) {
+  public synchronized IntSet getInvertedSummaryEdgesForTarget(int s_p, int x, int d2) {
     int n = getIndexForEntryExitPair(s_p, x);
     IBinaryNaturalRelation R = summaries.get(n);
     if (R == null) {
@@ -40,6 +40,14 @@ public class PartiallyBalancedTabulationSolver<T, P, F> extends TabulationSolver
     super(p, monitor);
   }
 
+  /**
+   * This solver always tabulates sequentially, since the unbalanced seeds are not thread-safe.
+   */
+  @Override
+  protected boolean canTabulateInParallel() {
+    return false;
+  }
+
   @Override
   protected boolean propagate(T s_p, int i, T n, int j) {
     boolean result = super.propagate(s_p, i, n, j);
@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.cfg.ExplodedInterproceduralCFG;
+import com.ibm.wala.ipa.modref.DelegatingExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPhiInstruction;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A forward supergraph over an {@link ExplodedInterproceduralCFG} that skips the nodes irrelevant to a problem.
+ *
+ * A client names the relevant nodes with a predicate; entries, exits, calls and return sites are always kept. Each kept node is
+ * connected directly to the kept nodes it reaches through irrelevant ones, so the solver never applies flow functions at the
+ * skipped nodes. This is sound when the flow through each skipped node is the identity, and when the normal flow function of an
+ * edge depends on its source but not on its destination. Value-flow problems typically satisfy both; see
+ * {@link #usesOf(Function)} and {@link #accessesHeap(PointerAnalysis, Collection)} for predicates built from def-use chains and
+ * mod-ref information.
+ *
+ * The solver computes results only for the kept nodes. Like {@link ICFGSupergraph}, this is built lazily as it is explored.
+ */
+public class SparseICFGSupergraph extends ICFGSupergraph {
+
+  private final Predicate<BasicBlockInContext<IExplodedBasicBlock>> relevant;
+
+  /**
+   * the number of kept nodes, or -1 if not counted yet
+   */
+  private volatile int numberOfNodes = -1;
+
+  /**
+   * kept node -> kept nodes reached from it, directly or through skipped nodes
+   */
+  private final ConcurrentMap<BasicBlockInContext<IExplodedBasicBlock>, Collection<BasicBlockInContext<IExplodedBasicBlock>>> succs = new ConcurrentHashMap<BasicBlockInContext<IExplodedBasicBlock>, Collection<BasicBlockInContext<IExplodedBasicBlock>>>();
+
+  /**
+   * kept node -> kept nodes reaching it, directly or through skipped nodes
+   */
+  private final ConcurrentMap<BasicBlockInContext<IExplodedBasicBlock>, Collection<BasicBlockInContext<IExplodedBasicBlock>>> preds = new ConcurrentHashMap<BasicBlockInContext<IExplodedBasicBlock>, Collection<BasicBlockInContext<IExplodedBasicBlock>>>();
+
+  protected SparseICFGSupergraph(ExplodedInterproceduralCFG icfg, AnalysisCache cache,
+      Predicate<BasicBlockInContext<IExplodedBasicBlock>> relevant) {
+    super(icfg, cache);
+    if (relevant == null) {
+      throw new IllegalArgumentException("null relevant");
+    }
+    this.relevant = relevant;
+  }
+
+  /**
+   * @param relevant holds for the nodes whose flow functions may not be the identity
+   */
+  public static SparseICFGSupergraph make(CallGraph cg, AnalysisCache cache,
+      Predicate<BasicBlockInContext<IExplodedBasicBlock>> relevant) {
+    return new SparseICFGSupergraph(ExplodedInterproceduralCFG.make(cg), cache, relevant);
+  }
+
+  /**
+   * @return true iff n is a node of this supergraph
+   */
+  public boolean isKept(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return isEntry(n) || isExit(n) || isCall(n) || isReturn(n) || relevant.test(n);
+  }
+
+  private Collection<BasicBlockInContext<IExplodedBasicBlock>> findOrCreateSuccs(BasicBlockInContext<IExplodedBasicBlock> n) {
+    Collection<BasicBlockInContext<IExplodedBasicBlock>> result = succs.get(n);
+    if (result == null) {
+      result = skip(n, true);
+      succs.put(n, result);
+    }
+    return result;
+  }
+
+  private Collection<BasicBlockInContext<IExplodedBasicBlock>> findOrCreatePreds(BasicBlockInContext<IExplodedBasicBlock> n) {
+    Collection<BasicBlockInContext<IExplodedBasicBlock>> result = preds.get(n);
+    if (result == null) {
+      result = skip(n, false);
+      preds.put(n, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the kept nodes adjacent to n in the underlying supergraph, or reached from there through skipped nodes
+   */
+  private Collection<BasicBlockInContext<IExplodedBasicBlock>> skip(BasicBlockInContext<IExplodedBasicBlock> n, boolean forward) {
+    Set<BasicBlockInContext<IExplodedBasicBlock>> result = HashSetFactory.make(2);
+    Set<BasicBlockInContext<IExplodedBasicBlock>> visited = HashSetFactory.make();
+    List<BasicBlockInContext<IExplodedBasicBlock>> worklist = new ArrayList<BasicBlockInContext<IExplodedBasicBlock>>();
+    worklist.add(n);
+    while (!worklist.isEmpty()) {
+      BasicBlockInContext<IExplodedBasicBlock> m = worklist.remove(worklist.size() - 1);
+      Iterator<BasicBlockInContext<IExplodedBasicBlock>> it = forward ? super.getSuccNodes(m) : super.getPredNodes(m);
+      while (it.hasNext()) {
+        BasicBlockInContext<IExplodedBasicBlock> o = it.next();
+        if (isKept(o)) {
+          result.add(o);
+        } else if (visited.add(o)) {
+          worklist.add(o);
+        }
+      }
+    }
+    return result.isEmpty() ? Collections.<BasicBlockInContext<IExplodedBasicBlock>> emptySet() : result;
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> getSuccNodes(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return findOrCreateSuccs(n).iterator();
+  }
+
+  @Override
+  public int getSuccNodeCount(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return findOrCreateSuccs(n).size();
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> getPredNodes(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return findOrCreatePreds(n).iterator();
+  }
+
+  @Override
+  public int getPredNodeCount(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return findOrCreatePreds(n).size();
+  }
+
+  @Override
+  public boolean hasEdge(BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dst) {
+    return findOrCreateSuccs(src).contains(dst);
+  }
+
+  @Override
+  public IntSet getSuccNodeNumbers(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return numbers(findOrCreateSuccs(n));
+  }
+
+  @Override
+  public IntSet getPredNodeNumbers(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return numbers(findOrCreatePreds(n));
+  }
+
+  private IntSet numbers(Collection<BasicBlockInContext<IExplodedBasicBlock>> nodes) {
+    MutableIntSet result = MutableSparseIntSet.makeEmpty();
+    for (BasicBlockInContext<IExplodedBasicBlock> n : nodes) {
+      result.add(getNumber(n));
+    }
+    return result;
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> iterator() {
+    return Predicate.filter(super.iterator(), new Predicate<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public boolean test(BasicBlockInContext<IExplodedBasicBlock> n) {
+        return isKept(n);
+      }
+    }).iterator();
+  }
+
+  /**
+   * The first call walks the whole supergraph to count the kept nodes; later calls answer the count.
+   */
+  @Override
+  public int getNumberOfNodes() {
+    int result = numberOfNodes;
+    if (result == -1) {
+      result = 0;
+      for (Iterator<BasicBlockInContext<IExplodedBasicBlock>> it = iterator(); it.hasNext();) {
+        it.next();
+        result++;
+      }
+      numberOfNodes = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean containsNode(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return super.containsNode(n) && isKept(n);
+  }
+
+  /**
+   * A predicate for problems whose facts are SSA values: it holds for the nodes that define one of the given values of their procedure,
+   * and the nodes whose instruction or phis use a value that flows from one of them along def-use chains.
+   *
+   * @param values the values of interest in each procedure; may return null
+   */
+  public static Predicate<BasicBlockInContext<IExplodedBasicBlock>> usesOf(final Function<CGNode, IntSet> values) {
+    if (values == null) {
+      throw new IllegalArgumentException("null values");
+    }
+    final ConcurrentMap<CGNode, IntSet[]> flows = new ConcurrentHashMap<CGNode, IntSet[]>();
+    return new Predicate<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public boolean test(BasicBlockInContext<IExplodedBasicBlock> n) {
+        IntSet[] f = flows.get(n.getNode());
+        if (f == null) {
+          IntSet seeds = values.apply(n.getNode());
+          f = new IntSet[] { seeds, seeds == null ? null : flowsFrom(n.getNode().getDU(), seeds) };
+          flows.put(n.getNode(), f);
+        }
+        if (f[0] == null) {
+          return false;
+        }
+        SSAInstruction s = n.getDelegate().getInstruction();
+        if (s != null && (definesAny(s, f[0]) || usesAny(s, f[1]))) {
+          return true;
+        }
+        for (Iterator<SSAPhiInstruction> it = n.getDelegate().iteratePhis(); it.hasNext();) {
+          if (usesAny(it.next(), f[1])) {
+            return true;
+          }
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the values defined by instructions that use one of the seeds, transitively, including the seeds
+   */
+  private static IntSet flowsFrom(DefUse du, IntSet seeds) {
+    MutableIntSet result = MutableSparseIntSet.make(seeds);
+    List<Integer> worklist = new ArrayList<Integer>();
+    for (IntIterator it = seeds.intIterator(); it.hasNext();) {
+      worklist.add(it.next());
+    }
+    while (!worklist.isEmpty()) {
+      int v = worklist.remove(worklist.size() - 1);
+      for (Iterator<SSAInstruction> it = du.getUses(v); it.hasNext();) {
+        SSAInstruction s = it.next();
+        for (int i = 0; i < s.getNumberOfDefs(); i++) {
+          int d = s.getDef(i);
+          if (d > 0 && result.add(d)) {
+            worklist.add(d);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean definesAny(SSAInstruction s, IntSet values) {
+    for (int i = 0; i < s.getNumberOfDefs(); i++) {
+      if (values.contains(s.getDef(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean usesAny(SSAInstruction s, IntSet values) {
+    for (int i = 0; i < s.getNumberOfUses(); i++) {
+      if (values.contains(s.getUse(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A predicate for problems whose facts include heap locations: it holds for the nodes whose instruction may read or write one
+   * of the given locations, according to {@link ModRef}. The mod-ref sets of a procedure's instructions are computed once, on the
+   * first query about one of its nodes.
+   */
+  public static Predicate<BasicBlockInContext<IExplodedBasicBlock>> accessesHeap(final PointerAnalysis pa,
+      final Collection<PointerKey> locations) {
+    if (pa == null) {
+      throw new IllegalArgumentException("null pa");
+    }
+    if (locations == null) {
+      throw new IllegalArgumentException("null locations");
+    }
+    final ModRef modRef = ModRef.make();
+    final ExtendedHeapModel h = new DelegatingExtendedHeapModel(pa.getHeapModel());
+    // procedure -> indices of its instructions which access the locations
+    final ConcurrentMap<CGNode, IntSet> accesses = new ConcurrentHashMap<CGNode, IntSet>();
+    return new Predicate<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public boolean test(BasicBlockInContext<IExplodedBasicBlock> n) {
+        if (n.getDelegate().getInstruction() == null) {
+          return false;
+        }
+        IntSet a = accesses.get(n.getNode());
+        if (a == null) {
+          a = findAccesses(n.getNode());
+          accesses.put(n.getNode(), a);
+        }
+        return a.contains(n.getDelegate().getFirstInstructionIndex());
+      }
+
+      private IntSet findAccesses(CGNode node) {
+        MutableIntSet result = MutableSparseIntSet.makeEmpty();
+        IR ir = node.getIR();
+        if (ir != null) {
+          SSAInstruction[] instructions = ir.getInstructions();
+          for (int i = 0; i < instructions.length; i++) {
+            SSAInstruction s = instructions[i];
+            if (s != null
+                && (!Collections.disjoint(modRef.getMod(node, h, pa, s, null), locations) || !Collections.disjoint(
+                    modRef.getRef(node, h, pa, s, null), locations))) {
+              result.add(i);
+            }
+          }
+        }
+        return result;
+      }
+    };
+  }
+}
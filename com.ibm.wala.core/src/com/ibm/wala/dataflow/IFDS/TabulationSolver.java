@@ -10,16 +10,28 @@
  *******************************************************************************/
 package com.ibm.wala.dataflow.IFDS;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.ibm.wala.cfg.IBasicBlock;
 import com.ibm.wala.util.CancelException;
@@ -32,7 +44,9 @@ import com.ibm.wala.util.collections.Heap;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.collections.ToStringComparator;
+import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.heapTrace.HeapTracer;
+import com.ibm.wala.util.intset.BitVectorIntSet;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
@@ -50,6 +64,8 @@ import com.ibm.wala.util.ref.ReferenceCleanser;
  * <li>to support exceptional control flow ... there may be several return sites for each call site.
  * <li>it supports an optional merge operator, useful for non-IFDS problems and widening.
  * <li>it stores summary edges at each callee instead of at each call site.
+ * <li>it can process path edges with several threads; see {@link #setParallelism(int)}.
+ * <li>it can tabulate on demand, only as much as the nodes queried need; see {@link #solveOnDemand()}.
  * </ul>
  * <p>
  * 
@@ -94,6 +110,11 @@ public class TabulationSolver<T, P, F> {
    */
   private static int wipeCount = WIPE_SOFT_CACHE_INTERVAL;
 
+  /**
+   * How often, in milliseconds, the thread waiting for the workers of a parallel tabulation checks the progress monitor
+   */
+  private final static long CANCEL_POLL_INTERVAL = 10;
+
   /**
    * The supergraph which induces this dataflow problem
    */
@@ -115,7 +136,7 @@ public class TabulationSolver<T, P, F> {
    * Logically, this represents a set of edges (s_p,d_i) -> (n, d_j). The data structure is chosen to attempt to save space over
    * representing each edge explicitly.
    */
-  final private Map<T, LocalPathEdges> pathEdges = HashMapFactory.make();
+  final private ConcurrentMap<T, LocalPathEdges> pathEdges = new ConcurrentHashMap<T, LocalPathEdges>();
 
   /**
    * A map from Object (entry node in supergraph) -> CallFlowEdges.
@@ -123,13 +144,13 @@ public class TabulationSolver<T, P, F> {
    * Logically, this represents a set of edges (c,d_i) -> (s_p, d_j). The data structure is chosen to attempt to save space over
    * representing each edge explicitly.
    */
-  final private Map<T, CallFlowEdges> callFlowEdges = HashMapFactory.make();
+  final private ConcurrentMap<T, CallFlowEdges> callFlowEdges = new ConcurrentHashMap<T, CallFlowEdges>();
 
   /**
    * A map from Object (procedure) -> LocalSummaryEdges.
    * 
    */
-  final protected Map<P, LocalSummaryEdges> summaryEdges = HashMapFactory.make();
+  final protected ConcurrentMap<P, LocalSummaryEdges> summaryEdges = new ConcurrentHashMap<P, LocalSummaryEdges>();
 
   /**
    * the set of all {@link PathEdge}s that were used as seeds during the tabulation, grouped by procedure.
@@ -152,18 +173,56 @@ public class TabulationSolver<T, P, F> {
   protected final IProgressMonitor progressMonitor;
 
   /**
-   * the path edge currently being processed in the main loop of {@link #forwardTabulateSLRPs()}; <code>null</code> if
-   * {@link #forwardTabulateSLRPs()} is not currently running. Note that if we are applying a summary edge in
-   * {@link #processExit(PathEdge)}, curPathEdge is modified to be the path edge terminating at the call node in the caller, to
-   * match the behavior in {@link #processCall(PathEdge)}.
+   * The number of threads processing path edges. If 1, or if {@link #canTabulateInParallel()} is false, the solver runs
+   * sequentially.
+   */
+  private int parallelism = 1;
+
+  /**
+   * Should path edges be kept in {@link CompactLocalPathEdges}?
    */
-  private PathEdge<T> curPathEdge;
+  private boolean compactPathEdges = false;
 
   /**
-   * the summary edge currently being applied in {@link #processCall(PathEdge)} or {@link #processExit(PathEdge)}, or
-   * <code>null</code> if summary edges are not currently being processed.
+   * When solving on demand, the numbers of the supergraph nodes whose results were asked for, and of every node that can reach them
+   * in the supergraph. null when solving exhaustively.
    */
-  private PathEdge<T> curSummaryEdge;
+  private BitVectorIntSet demanded;
+
+  /**
+   * When solving on demand, a map from supergraph node -> path edges to it that were discovered but not propagated, since the node
+   * was not demanded. Guarded by itself.
+   */
+  private Map<T, Set<PathEdge<T>>> deferred;
+
+  /**
+   * The edges being processed by a thread.
+   */
+  private class CurrentEdges {
+    /**
+     * the path edge currently being processed in the main loop of {@link #forwardTabulateSLRPs()}; <code>null</code> if
+     * {@link #forwardTabulateSLRPs()} is not currently running. Note that if we are applying a summary edge in
+     * {@link #processExit(PathEdge)}, curPathEdge is modified to be the path edge terminating at the call node in the caller, to
+     * match the behavior in {@link #processCall(PathEdge)}.
+     */
+    private PathEdge<T> curPathEdge;
+
+    /**
+     * the summary edge currently being applied in {@link #processCall(PathEdge)} or {@link #processExit(PathEdge)}, or
+     * <code>null</code> if summary edges are not currently being processed.
+     */
+    private PathEdge<T> curSummaryEdge;
+  }
+
+  /**
+   * the edges being processed when tabulating sequentially
+   */
+  private final CurrentEdges sequentialEdges = new CurrentEdges();
+
+  /**
+   * the edges being processed by each thread when tabulating in parallel; null otherwise
+   */
+  private volatile ThreadLocal<CurrentEdges> parallelEdges;
 
   /**
    * @param p a description of the dataflow problem to solve
@@ -194,6 +253,53 @@ public class TabulationSolver<T, P, F> {
     return new TabulationSolver<T, P, F>(p, null);
   }
 
+  /**
+   * @return the number of threads that process path edges
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Process path edges with several threads. The result is the same as when solving sequentially, but the supergraph and the flow
+   * functions must then answer queries from several threads at once. A lazily built supergraph like {@link ICFGSupergraph} is
+   * safe, since the solver asks it for its size before starting the threads, which makes it build itself fully.
+   * 
+   * Problems with a merge function are always solved sequentially, since the result of merging depends on the order in which
+   * path edges are processed; so are problems solved by subclasses for which {@link #canTabulateInParallel()} is false.
+   * 
+   * @param parallelism the number of threads; 1 means solve sequentially
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return true iff path edges are kept in {@link CompactLocalPathEdges}
+   */
+  public boolean isCompactPathEdges() {
+    return compactPathEdges;
+  }
+
+  /**
+   * Keep path edges in {@link CompactLocalPathEdges}, which take less space than {@link LocalPathEdges} when many path edges
+   * connect distinct non-zero facts. Call this before solving.
+   */
+  public void setCompactPathEdges(boolean compactPathEdges) {
+    this.compactPathEdges = compactPathEdges;
+  }
+
+  /**
+   * Can this solver process path edges with several threads? Not if the problem has a merge function. Subclasses which keep state
+   * of their own during tabulation should return false, unless that state is thread-safe.
+   */
+  protected boolean canTabulateInParallel() {
+    return problem.getMergeFunction() == null;
+  }
+
   /**
    * Solve the dataflow problem.
    * 
@@ -202,6 +308,11 @@ public class TabulationSolver<T, P, F> {
   public TabulationResult<T, P, F> solve() throws CancelException {
 
     try {
+      if (demanded != null) {
+        // stop solving on demand
+        demanded = null;
+        propagateDeferred(deferred.keySet());
+      }
       initialize();
       forwardTabulateSLRPs();
       Result r = new Result();
@@ -217,6 +328,90 @@ public class TabulationSolver<T, P, F> {
     }
   }
 
+  /**
+   * Prepare to solve the dataflow problem on demand. Nothing is tabulated until a result is asked for; then the solver tabulates
+   * only the path edges to the nodes that can reach the node in question. Path edges and summary edges are kept across queries, so
+   * each query only pays for the part of the supergraph no earlier query needed.
+   * 
+   * The {@link TabulationResult#getResult(Object)} of the result returned tabulates for its argument first, and throws a
+   * {@link CancelRuntimeException} if the progress monitor cancels that; its other methods describe only what has been tabulated so
+   * far. Calling {@link #solve()} afterwards tabulates everything.
+   * 
+   * @return a result which tabulates as it is queried
+   * @throws IllegalArgumentException if the problem has a merge function, since the result of merging depends on which path edges
+   *           have been tabulated
+   */
+  public TabulationResult<T, P, F> solveOnDemand() throws IllegalArgumentException {
+    if (problem.getMergeFunction() != null) {
+      throw new IllegalArgumentException("cannot solve a problem with a merge function on demand");
+    }
+    demanded = new BitVectorIntSet();
+    deferred = HashMapFactory.make();
+    initialize();
+    return new DemandResult();
+  }
+
+  /**
+   * When solving on demand, tabulate all path edges to the given nodes. Afterwards {@link #getResult(Object)} is complete for each
+   * of them.
+   * 
+   * A path edge to a node n can only arise from path edges to predecessors of n in the supergraph or, if n is a return site, to the
+   * corresponding call sites; so it suffices to tabulate the path edges to the nodes which can reach one of the given nodes in this
+   * sense.
+   * 
+   * @throws IllegalStateException if not solving on demand
+   */
+  public void tabulateFor(Collection<? extends T> nodes) throws CancelException {
+    if (demanded == null) {
+      throw new IllegalStateException("not solving on demand; see solveOnDemand()");
+    }
+    List<T> todo = new ArrayList<T>();
+    for (T n : nodes) {
+      if (demanded.add(supergraph.getNumber(n))) {
+        todo.add(n);
+      }
+    }
+    List<T> newlyDemanded = new ArrayList<T>();
+    while (!todo.isEmpty()) {
+      T n = todo.remove(todo.size() - 1);
+      newlyDemanded.add(n);
+      for (Iterator<? extends T> it = supergraph.getPredNodes(n); it.hasNext();) {
+        T pred = it.next();
+        if (demanded.add(supergraph.getNumber(pred))) {
+          todo.add(pred);
+        }
+      }
+      if (supergraph.isReturn(n)) {
+        for (Iterator<? extends T> it = supergraph.getCallSites(n, null); it.hasNext();) {
+          T call = it.next();
+          if (demanded.add(supergraph.getNumber(call))) {
+            todo.add(call);
+          }
+        }
+      }
+    }
+    propagateDeferred(newlyDemanded);
+    forwardTabulateSLRPs();
+  }
+
+  /**
+   * propagate the path edges deferred for the given nodes
+   */
+  private void propagateDeferred(Collection<T> nodes) {
+    List<PathEdge<T>> edges = new ArrayList<PathEdge<T>>();
+    synchronized (deferred) {
+      for (T n : new ArrayList<T>(nodes)) {
+        Set<PathEdge<T>> s = deferred.remove(n);
+        if (s != null) {
+          edges.addAll(s);
+        }
+      }
+    }
+    for (PathEdge<T> e : edges) {
+      propagate(e.entry, e.d1, e.target, e.d2);
+    }
+  }
+
   /**
    * Start tabulation with the initial seeds.
    */
@@ -242,7 +437,11 @@ public class TabulationSolver<T, P, F> {
    * @throws CancelException
    */
   private void forwardTabulateSLRPs() throws CancelException {
-    assert curPathEdge == null : "curPathEdge should not be non-null here";
+    if (parallelism > 1 && canTabulateInParallel()) {
+      forwardTabulateSLRPsInParallel();
+      return;
+    }
+    assert sequentialEdges.curPathEdge == null : "curPathEdge should not be non-null here";
     if (worklist == null) {
       worklist = makeWorklist();
     }
@@ -256,38 +455,154 @@ public class TabulationSolver<T, P, F> {
       }
 
       final PathEdge<T> edge = popFromWorkList();
-      if (DEBUG_LEVEL > 0) {
-        System.err.println("TABULATE " + edge);
+      processPathEdge(edge);
+    }
+    sequentialEdges.curPathEdge = null;
+  }
+
+  /**
+   * The body of the main loop of the algorithm: process one path edge taken from the worklist
+   */
+  private void processPathEdge(final PathEdge<T> edge) {
+    if (DEBUG_LEVEL > 0) {
+      System.err.println("TABULATE " + edge);
+    }
+    currentEdges().curPathEdge = edge;
+    int j = merge(edge.entry, edge.d1, edge.target, edge.d2);
+    if (j == -1 && DEBUG_LEVEL > 0) {
+      System.err.println("merge -1: DROPPING");
+    }
+    if (j != -1) {
+      if (j != edge.d2) {
+        // this means that we don't want to push the edge. instead,
+        // we'll push the merged fact. a little tricky, but i think should
+        // work.
+        if (DEBUG_LEVEL > 0) {
+          System.err.println("propagating merged fact " + j);
+        }
+        propagate(edge.entry, edge.d1, edge.target, j);
+      } else {
+        if (supergraph.isCall(edge.target)) {
+          // [13]
+          processCall(edge);
+        } else if (supergraph.isExit(edge.target)) {
+          // [21]
+          processExit(edge);
+        } else {
+          // [33]
+          processNormal(edge);
+        }
       }
-      curPathEdge = edge;
-      int j = merge(edge.entry, edge.d1, edge.target, edge.d2);
-      if (j == -1 && DEBUG_LEVEL > 0) {
-        System.err.println("merge -1: DROPPING");
+    }
+  }
+
+  /**
+   * The main loop of the algorithm, run by {@link #parallelism} threads sharing a {@link ConcurrentTabulationWorklist}.
+   * 
+   * The threads share the path edges, call flow edges and summary edges, which are synchronized. Each test for a path edge is
+   * atomic with adding it, so every path edge is processed once. A thread processing an exit adds a summary edge and then looks for
+   * call flow edges, while a thread processing a call adds a call flow edge and then looks for summary edges; since both go through
+   * the locks, at least one of them sees the other's edge, so no flow is lost.
+   * 
+   * This thread waits for the workers and polls the progress monitor; if the monitor is canceled, or a worker fails, the other
+   * workers stop after the path edge they are processing, and the failure is thrown from this thread.
+   */
+  private void forwardTabulateSLRPsInParallel() throws CancelException {
+    // build lazily-constructed supergraphs fully, so that the workers only read them
+    supergraph.getNumberOfNodes();
+
+    final ConcurrentTabulationWorklist<T> w = new ConcurrentTabulationWorklist<T>(parallelism);
+    if (worklist != null) {
+      while (worklist.size() > 0) {
+        w.insert(worklist.take());
+      }
+    }
+    worklist = w;
+
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final AtomicBoolean stop = new AtomicBoolean();
+    parallelEdges = new ThreadLocal<CurrentEdges>() {
+      @Override
+      protected CurrentEdges initialValue() {
+        return new CurrentEdges();
       }
-      if (j != -1) {
-        if (j != edge.d2) {
-          // this means that we don't want to push the edge. instead,
-          // we'll push the merged fact. a little tricky, but i think should
-          // work.
-          if (DEBUG_LEVEL > 0) {
-            System.err.println("propagating merged fact " + j);
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<?>> workers = new ArrayList<Future<?>>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        final int index = i;
+        workers.add(pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            w.register(index);
+            try {
+              while (!stop.get()) {
+                PathEdge<T> edge = w.take();
+                if (edge == null) {
+                  // wake up now and then to see whether to stop
+                  if (!w.awaitWork(CANCEL_POLL_INTERVAL)) {
+                    return;
+                  }
+                  continue;
+                }
+                try {
+                  processPathEdge(edge);
+                } finally {
+                  w.finished();
+                }
+              }
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+              stop.set(true);
+            }
           }
-          propagate(edge.entry, edge.d1, edge.target, j);
-        } else {
-          if (supergraph.isCall(edge.target)) {
-            // [13]
-            processCall(edge);
-          } else if (supergraph.isExit(edge.target)) {
-            // [21]
-            processExit(edge);
-          } else {
-            // [33]
-            processNormal(edge);
+        }));
+      }
+      boolean interrupted = false;
+      for (Future<?> f : workers) {
+        while (true) {
+          try {
+            f.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            break;
+          } catch (TimeoutException e) {
+            if (progressMonitor != null && progressMonitor.isCanceled()) {
+              stop.set(true);
+            }
+          } catch (InterruptedException e) {
+            // stop the workers, but wait for them, so that the partial result does not change under the caller
+            interrupted = true;
+            stop.set(true);
+          } catch (ExecutionException e) {
+            // the workers catch everything they throw
+            Assertions.UNREACHABLE(e);
           }
         }
       }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+        throw CancelException.make("tabulation interrupted");
+      }
+    } finally {
+      pool.shutdown();
+      parallelEdges = null;
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
     }
-    curPathEdge = null;
+    MonitorUtil.throwExceptionIfCanceled(progressMonitor);
+  }
+
+  /**
+   * @return the edges being processed by the current thread
+   */
+  private CurrentEdges currentEdges() {
+    ThreadLocal<CurrentEdges> p = parallelEdges;
+    return p == null ? sequentialEdges : p.get();
   }
 
   /**
@@ -368,24 +683,31 @@ public class TabulationSolver<T, P, F> {
     if (!summaries.contains(s_p_n, x, edge.d1, edge.d2)) {
       summaries.insertSummaryEdge(s_p_n, x, edge.d1, edge.d2);
     }
-    assert curSummaryEdge == null : "curSummaryEdge should be null here";
-    curSummaryEdge = edge;
+    final CurrentEdges current = currentEdges();
+    assert current.curSummaryEdge == null : "curSummaryEdge should be null here";
+    current.curSummaryEdge = edge;
 
     final CallFlowEdges callFlow = findOrCreateCallFlowEdges(edge.entry);
 
     // [22] for each c /in callers(p)
-    IntSet callFlowSourceNodes = callFlow.getCallFlowSourceNodes(edge.d1);
+    IntSet callFlowSourceNodes;
+    synchronized (callFlow) {
+      callFlowSourceNodes = stable(callFlow.getCallFlowSourceNodes(edge.d1));
+    }
     if (callFlowSourceNodes != null) {
       for (IntIterator it = callFlowSourceNodes.intIterator(); it.hasNext();) {
         // [23] for each d4 s.t. <c,d4> -> <s_p,d1> occurred earlier
         int globalC = it.next();
-        final IntSet D4 = callFlow.getCallFlowSources(globalC, edge.d1);
+        final IntSet D4;
+        synchronized (callFlow) {
+          D4 = stable(callFlow.getCallFlowSources(globalC, edge.d1));
+        }
 
         // [23] for each d5 s.t. <e_p,d2> -> <returnSite(c),d5> ...
         propagateToReturnSites(edge, supergraph.getNode(globalC), D4);
       }
     }
-    curSummaryEdge = null;
+    current.curSummaryEdge = null;
   }
 
   /**
@@ -504,7 +826,7 @@ public class TabulationSolver<T, P, F> {
                 @Override
                 public void act(int d3) {
                   // set curPathEdge to be consistent with its setting in processCall() when applying a summary edge
-                  curPathEdge = PathEdge.createPathEdge(s_p, d3, c, d4);
+                  currentEdges().curPathEdge = PathEdge.createPathEdge(s_p, d3, c, d4);
                   propagate(s_p, d3, retSite, d5);
                 }
               });
@@ -527,7 +849,19 @@ public class TabulationSolver<T, P, F> {
     if (lp == null) {
       return null;
     }
-    return lp.getInverse(number, d2);
+    synchronized (lp) {
+      return stable(lp.getInverse(number, d2));
+    }
+  }
+
+  /**
+   * When tabulating in parallel, other threads may add to the sets held by the path edges, call flow edges and summary edges. So
+   * while holding the lock on the object holding s, copy s if needed.
+   * 
+   * @return a set with the contents of s that does not change while it is used
+   */
+  private IntSet stable(IntSet s) {
+    return (s == null || parallelEdges == null) ? s : MutableSparseIntSet.make(s);
   }
 
   /**
@@ -641,7 +975,6 @@ public class TabulationSolver<T, P, F> {
       System.err.println(" reached: " + reached);
     }
     if (reached != null) {
-      final LocalSummaryEdges summaries = summaryEdges.get(supergraph.getProcOf(calleeEntry));
       final CallFlowEdges callFlow = findOrCreateCallFlowEdges(calleeEntry);
       final int s_p_num = supergraph.getLocalBlockNumber(calleeEntry);
 
@@ -655,7 +988,10 @@ public class TabulationSolver<T, P, F> {
           // call flow
           callFlow.addCallEdge(callNodeNum, edge.d2, d1);
           // handle summary edges now as well. this is different from the PoPL
-          // 95 paper.
+          // 95 paper. we look for summary edges only after adding the call edge, so
+          // that a thread processing the callee's exit in parallel either finds the
+          // call edge or has already added the summary edge we find here.
+          final LocalSummaryEdges summaries = summaryEdges.get(supergraph.getProcOf(calleeEntry));
           if (summaries != null) {
             // for each exit from the callee
             P p = supergraph.getProcOf(calleeEntry);
@@ -668,7 +1004,10 @@ public class TabulationSolver<T, P, F> {
               int x_num = supergraph.getLocalBlockNumber(exit);
               // reachedBySummary := {d2} s.t. <callee,d1> -> <exit,d2>
               // was recorded as a summary edge
-              IntSet reachedBySummary = summaries.getSummaryEdges(s_p_num, x_num, d1);
+              IntSet reachedBySummary;
+              synchronized (summaries) {
+                reachedBySummary = stable(summaries.getSummaryEdges(s_p_num, x_num, d1));
+              }
               if (reachedBySummary != null) {
                 for (final T returnSite : returnSitesForCallee) {
                   // if "exit" is a valid exit from the callee to the return
@@ -678,8 +1017,9 @@ public class TabulationSolver<T, P, F> {
                     reachedBySummary.foreach(new IntSetAction() {
                       @Override
                       public void act(int d2) {
-                        assert curSummaryEdge == null : "curSummaryEdge should be null here";
-                        curSummaryEdge = PathEdge.createPathEdge(calleeEntry, d1, exit, d2);
+                        CurrentEdges current = currentEdges();
+                        assert current.curSummaryEdge == null : "curSummaryEdge should be null here";
+                        current.curSummaryEdge = PathEdge.createPathEdge(calleeEntry, d1, exit, d2);
                         if (retf instanceof IBinaryReturnFlowFunction) {
                           final IntSet D5 = computeBinaryFlow(edge.d2, d2, (IBinaryReturnFlowFunction) retf);
                           if (D5 != null) {
@@ -701,7 +1041,7 @@ public class TabulationSolver<T, P, F> {
                             });
                           }
                         }
-                        curSummaryEdge = null;
+                        current.curSummaryEdge = null;
                       }
                     });
                   }
@@ -791,19 +1131,27 @@ public class TabulationSolver<T, P, F> {
     }
     assert number >= 0;
 
+    if (demanded != null && !demanded.contains(supergraph.getNumber(n))) {
+      synchronized (deferred) {
+        return MapUtil.findOrCreateSet(deferred, n).add(PathEdge.createPathEdge(s_p, i, n, j));
+      }
+    }
+
     LocalPathEdges pLocal = findOrCreateLocalPathEdges(s_p);
 
     assert j >= 0;
 
-    if (!pLocal.contains(i, number, j)) {
+    synchronized (pLocal) {
+      if (pLocal.contains(i, number, j)) {
+        return false;
+      }
       if (DEBUG_LEVEL > 0) {
         System.err.println("propagate " + s_p + "  " + i + " " + number + " " + j);
       }
       pLocal.addPathEdge(i, number, j);
-      addToWorkList(s_p, i, n, j);
-      return true;
     }
-    return false;
+    addToWorkList(s_p, i, n, j);
+    return true;
   }
 
   public LocalPathEdges getLocalPathEdges(T s_p) {
@@ -853,21 +1201,34 @@ public class TabulationSolver<T, P, F> {
   protected LocalPathEdges findOrCreateLocalPathEdges(T s_p) {
     LocalPathEdges result = pathEdges.get(s_p);
     if (result == null) {
-      result = makeLocalPathEdges();
-      pathEdges.put(s_p, result);
+      LocalPathEdges l = makeLocalPathEdges();
+      result = pathEdges.putIfAbsent(s_p, l);
+      if (result == null) {
+        result = l;
+      }
     }
     return result;
   }
 
-  private LocalPathEdges makeLocalPathEdges() {
+  /**
+   * Create the structure holding the path edges for one procedure entry. Subclasses may override this to plug in another
+   * representation.
+   */
+  protected LocalPathEdges makeLocalPathEdges() {
+    if (compactPathEdges) {
+      return new CompactLocalPathEdges();
+    }
     return problem.getMergeFunction() == null ? new LocalPathEdges(false) : new LocalPathEdges(true);
   }
 
   protected LocalSummaryEdges findOrCreateLocalSummaryEdges(P proc) {
     LocalSummaryEdges result = summaryEdges.get(proc);
     if (result == null) {
-      result = new LocalSummaryEdges();
-      summaryEdges.put(proc, result);
+      LocalSummaryEdges l = new LocalSummaryEdges();
+      result = summaryEdges.putIfAbsent(proc, l);
+      if (result == null) {
+        result = l;
+      }
     }
     return result;
   }
@@ -875,8 +1236,11 @@ public class TabulationSolver<T, P, F> {
   protected CallFlowEdges findOrCreateCallFlowEdges(T s_p) {
     CallFlowEdges result = callFlowEdges.get(s_p);
     if (result == null) {
-      result = new CallFlowEdges();
-      callFlowEdges.put(s_p, result);
+      CallFlowEdges c = new CallFlowEdges();
+      result = callFlowEdges.putIfAbsent(s_p, c);
+      if (result == null) {
+        result = c;
+      }
     }
     return result;
   }
@@ -1010,6 +1374,22 @@ public class TabulationSolver<T, P, F> {
     }
   }
 
+  /**
+   * A result that tabulates for each node whose result is asked for
+   */
+  private class DemandResult extends Result {
+
+    @Override
+    public IntSet getResult(T node) {
+      try {
+        tabulateFor(Collections.singleton(node));
+      } catch (CancelException e) {
+        throw new CancelRuntimeException(e);
+      }
+      return super.getResult(node);
+    }
+  }
+
   /**
    * @return Returns the supergraph.
    */
@@ -1058,10 +1438,10 @@ public class TabulationSolver<T, P, F> {
   }
 
   protected PathEdge<T> getCurPathEdge() {
-    return curPathEdge;
+    return currentEdges().curPathEdge;
   }
 
   protected PathEdge<T> getCurSummaryEdge() {
-    return curSummaryEdge;
+    return currentEdges().curSummaryEdge;
   }
 }
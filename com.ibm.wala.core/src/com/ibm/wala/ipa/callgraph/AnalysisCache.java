@@ -31,9 +31,17 @@ public class AnalysisCache {
   private final SSACache ssaCache;
 
   public AnalysisCache(IRFactory<IMethod> irFactory) {
+    this(irFactory, SSACache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity the number of (method, context) pairs for which IRs and {@link DefUse}s are kept
+   * @see SSACache#getIRStatistics()
+   */
+  public AnalysisCache(IRFactory<IMethod> irFactory, int capacity) {
     super();
     this.irFactory = irFactory;
-    this.ssaCache = new SSACache(irFactory);
+    this.ssaCache = new SSACache(irFactory, capacity);
     ReferenceCleanser.registerCache(this);
   }
 
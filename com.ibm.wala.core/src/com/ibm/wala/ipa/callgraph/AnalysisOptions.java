@@ -60,6 +60,43 @@ public class AnalysisOptions {
    */
   private int maxEvalBetweenTopo = 1000000000;
 
+  /**
+   * A tuning parameter: how many threads should the pointer analysis solver use to propagate points-to sets along assignments? 1
+   * means that the solver runs sequentially. The solution does not depend on this setting.
+   */
+  private int solverParallelism = 1;
+
+  /**
+   * Should the pointer analysis solver propagate only the elements newly added to each points-to set (difference propagation)? The
+   * solution does not depend on this setting.
+   */
+  private boolean deltaPropagation = false;
+
+  /**
+   * Should the pointer analysis solver detect cycles of assignments while it runs, and unify the points-to sets on each cycle? The
+   * solution does not depend on this setting.
+   */
+  private boolean onlineCycleDetection = false;
+
+  /**
+   * Should the pointer analysis solver hash-cons the points-to sets, so that equal points-to sets share one copy? This saves memory
+   * when many points-to sets are equal; the solution does not depend on this setting.
+   */
+  private boolean sharePointsToSets = false;
+
+  /**
+   * Should the pointer analysis solver record which points-to sets each call graph node and each side effect writes, so that the
+   * call graph can later be updated after some methods change? This costs memory; the solution does not depend on this setting.
+   */
+  private boolean incrementalUpdates = false;
+
+  /**
+   * A tuning parameter: how many background threads should build IRs for newly discovered call graph nodes, ahead of the solver
+   * thread that adds their constraints? 0 means that the solver thread builds each IR when it first needs it. The call graph does
+   * not depend on this setting.
+   */
+  private int irPrefetchThreads = 0;
+
   /**
    * options for handling reflection during call graph construction
    */
@@ -293,6 +330,90 @@ public class AnalysisOptions {
   }
 
 
+  /**
+   * @return the number of threads the pointer analysis solver uses to propagate points-to sets
+   */
+  public int getSolverParallelism() {
+    return solverParallelism;
+  }
+
+  /**
+   * @param solverParallelism the number of threads the pointer analysis solver uses to propagate points-to sets; 1 means solve
+   *          sequentially
+   */
+  public void setSolverParallelism(int solverParallelism) {
+    if (solverParallelism < 1) {
+      throw new IllegalArgumentException("solverParallelism must be positive: " + solverParallelism);
+    }
+    this.solverParallelism = solverParallelism;
+  }
+
+  /**
+   * @return the number of background threads that build IRs for newly discovered call graph nodes
+   */
+  public int getIRPrefetchThreads() {
+    return irPrefetchThreads;
+  }
+
+  /**
+   * @param irPrefetchThreads the number of background threads that build IRs for newly discovered call graph nodes; 0 means the
+   *          solver thread builds each IR itself
+   */
+  public void setIRPrefetchThreads(int irPrefetchThreads) {
+    if (irPrefetchThreads < 0) {
+      throw new IllegalArgumentException("irPrefetchThreads must not be negative: " + irPrefetchThreads);
+    }
+    this.irPrefetchThreads = irPrefetchThreads;
+  }
+
+  public boolean getUseDeltaPropagation() {
+    return deltaPropagation;
+  }
+
+  /**
+   * @param deltaPropagation if true, the pointer analysis solver propagates only the elements newly added to each points-to set
+   */
+  public void setUseDeltaPropagation(boolean deltaPropagation) {
+    this.deltaPropagation = deltaPropagation;
+  }
+
+  public boolean getUseOnlineCycleDetection() {
+    return onlineCycleDetection;
+  }
+
+  /**
+   * @param onlineCycleDetection if true, the pointer analysis solver unifies the points-to sets on each cycle of assignments it finds
+   */
+  public void setUseOnlineCycleDetection(boolean onlineCycleDetection) {
+    this.onlineCycleDetection = onlineCycleDetection;
+  }
+
+  public boolean getSharePointsToSets() {
+    return sharePointsToSets;
+  }
+
+  /**
+   * @param sharePointsToSets if true, the pointer analysis solver hash-conses the points-to sets while it solves and after each of its
+   *          passes
+   */
+  public void setSharePointsToSets(boolean sharePointsToSets) {
+    this.sharePointsToSets = sharePointsToSets;
+  }
+
+  public boolean getSupportIncrementalUpdates() {
+    return incrementalUpdates;
+  }
+
+  /**
+   * @param incrementalUpdates if true, the call graph builder records what it needs to update the call graph after some methods
+   *          change. Online cycle detection is not used then, since points-to sets unified on a cycle cannot be retracted separately.
+   * @see com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder#updateCallGraph(AnalysisOptions, java.util.Collection,
+   *      com.ibm.wala.util.MonitorUtil.IProgressMonitor)
+   */
+  public void setSupportIncrementalUpdates(boolean incrementalUpdates) {
+    this.incrementalUpdates = incrementalUpdates;
+  }
+
   /**
    * @return options governing SSA construction
    */
@@ -30,8 +30,7 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.NonNullSingletonIterator;
-import com.ibm.wala.util.debug.Assertions;
-import com.ibm.wala.util.debug.UnimplementedError;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
 import com.ibm.wala.util.graph.AbstractNumberedGraph;
 import com.ibm.wala.util.graph.NumberedNodeManager;
 import com.ibm.wala.util.graph.impl.DelegatingNumberedNodeManager;
@@ -68,10 +67,9 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
   private final Set<CGNode> entrypointNodes = HashSetFactory.make();
 
   /**
-   * A mapping from Key to NodeImpls in the graph. Note that each node is created on demand. This Map does not include the root
-   * node.
+   * A mapping from Key to the numbers of the NodeImpls in the graph. Note that each node is created on demand.
    */
-  final private Map<Key, CGNode> nodes = HashMapFactory.make();
+  final private ObjectIntHashMap<Key> nodes = new ObjectIntHashMap<Key>();
 
   /**
    * A mapping from MethodReference to Set of nodes that represent this methodReference.
@@ -117,8 +115,8 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
   public abstract CGNode findOrCreateNode(IMethod method, Context C) throws CancelException;
 
   protected void registerNode(Key K, CGNode N) {
-    nodes.put(K, N);
     addNode(N);
+    nodes.put(K, getNumber(N));
     Set<CGNode> s = findOrCreateMr2Nodes(K.m);
     s.add(N);
     if (DEBUG) {
@@ -137,7 +135,8 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
   }
 
   protected NodeImpl getNode(Key K) {
-    return (NodeImpl) nodes.get(K);
+    int n = nodes.get(K);
+    return (n == -1) ? null : (NodeImpl) getNode(n);
   }
 
   @Override
@@ -250,9 +249,32 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
     return result.toString();
   }
 
+  /**
+   * Remove a node, its call graph edges, and its registration as an entrypoint. The fake root and fake world clinit nodes cannot be
+   * removed.
+   * 
+   * @throws IllegalArgumentException if N is not a node of this graph, or is one of the fake nodes
+   */
   @Override
-  public void removeNodeAndEdges(CGNode N) throws UnimplementedError {
-    Assertions.UNREACHABLE();
+  public void removeNodeAndEdges(CGNode N) throws IllegalArgumentException {
+    if (N == null) {
+      throw new IllegalArgumentException("N is null");
+    }
+    if (N.equals(fakeRoot) || N.equals(fakeWorldClinit)) {
+      throw new IllegalArgumentException("cannot remove " + N);
+    }
+    Key k = new Key(N.getMethod(), N.getContext());
+    if (!N.equals(getNode(k))) {
+      throw new IllegalArgumentException("not a node of this graph: " + N);
+    }
+    super.removeNodeAndEdges(N);
+    nodes.remove(k);
+    Set<CGNode> s = mr2Nodes.get(N.getMethod().getReference());
+    s.remove(N);
+    if (s.isEmpty()) {
+      mr2Nodes.remove(N.getMethod().getReference());
+    }
+    entrypointNodes.remove(N);
   }
 
   /**
@@ -328,13 +350,12 @@ public abstract class BasicCallGraph<T> extends AbstractNumberedGraph<CGNode> im
   }
 
   /**
-   * We override this since this class supports remove() on nodes, but the superclass doesn't.
-   * 
+   * @return the nodes, in the order they were registered
    * @see com.ibm.wala.util.graph.Graph#iterator()
    */
   @Override
   public Iterator<CGNode> iterator() {
-    return nodes.values().iterator();
+    return getNodeManager().iterator();
   }
 
   /**
@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.propagation.SSAContextInterpreter;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.util.collections.ArrayIterator;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.graph.impl.NodeWithNumber;
+import com.ibm.wala.util.graph.impl.NumberedNodeIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * A frozen copy of a call graph which keeps its edges in flat int arrays rather than in per-node sets, for clients that hold on to
+ * a large call graph after it is built.
+ *
+ * The successors of node i are succ[succStart[i]] .. succ[succStart[i+1]-1], sorted, and likewise for the predecessors and the call
+ * sites; the targets of call site s are numbered in the same way. The nodes carry only their method and context, and get their IRs
+ * and allocation sites from the context interpreter of the original call graph.
+ *
+ * The nodes are new objects, numbered densely in the order of the original graph, so keys of a pointer analysis that refer to the
+ * original nodes must be looked up with the original nodes; {@link #getNode(IMethod, Context)} finds the node of this graph for an
+ * original one.
+ */
+public class CompactCallGraph implements CallGraph {
+
+  private final IClassHierarchy cha;
+
+  private final SSAContextInterpreter interpreter;
+
+  private final CompactNode[] nodes;
+
+  private final int fakeRoot;
+
+  private final int[] entrypoints;
+
+  private final int[] succStart;
+
+  private final int[] succ;
+
+  private final int[] predStart;
+
+  private final int[] pred;
+
+  /**
+   * the call sites of each node, sorted by program counter
+   */
+  private final int[] siteStart;
+
+  private final CallSiteReference[] sites;
+
+  private final int[] targetStart;
+
+  private final int[] targets;
+
+  /**
+   * open-addressing hash table from the reference of a method to the numbers of its nodes; each slot holds a node number plus one,
+   * or 0 if empty
+   */
+  private final int[] byMethod;
+
+  /**
+   * Freeze a call graph built by a propagation call graph builder, with the context interpreter it was built with.
+   */
+  public static CompactCallGraph make(ExplicitCallGraph cg) {
+    if (cg == null) {
+      throw new IllegalArgumentException("cg is null");
+    }
+    return new CompactCallGraph(cg, cg.getInterpreter(cg.getFakeRootNode()));
+  }
+
+  /**
+   * @param interpreter interpreter to get the IRs and allocation sites of the nodes from
+   */
+  public CompactCallGraph(CallGraph cg, SSAContextInterpreter interpreter) {
+    if (cg == null) {
+      throw new IllegalArgumentException("cg is null");
+    }
+    if (interpreter == null) {
+      throw new IllegalArgumentException("interpreter is null");
+    }
+    this.cha = cg.getClassHierarchy();
+    this.interpreter = interpreter;
+
+    // number the nodes densely, since the original may have gaps after removals
+    int n = cg.getNumberOfNodes();
+    nodes = new CompactNode[n];
+    int[] number = new int[cg.getMaxNumber() + 1];
+    int next = 0;
+    for (CGNode node : cg) {
+      number[cg.getNumber(node)] = next;
+      nodes[next] = new CompactNode(next, node.getMethod(), node.getContext());
+      next++;
+    }
+    fakeRoot = number[cg.getNumber(cg.getFakeRootNode())];
+    entrypoints = new int[cg.getEntrypointNodes().size()];
+    int e = 0;
+    for (CGNode node : cg.getEntrypointNodes()) {
+      entrypoints[e++] = number[cg.getNumber(node)];
+    }
+
+    succStart = new int[n + 1];
+    predStart = new int[n + 1];
+    siteStart = new int[n + 1];
+    int succCount = 0;
+    int predCount = 0;
+    List<CallSiteReference> allSites = new ArrayList<CallSiteReference>();
+    for (CGNode node : cg) {
+      succCount += cg.getSuccNodeCount(node);
+      predCount += cg.getPredNodeCount(node);
+    }
+    succ = new int[succCount];
+    pred = new int[predCount];
+    List<int[]> siteTargets = new ArrayList<int[]>();
+    int i = 0;
+    for (CGNode node : cg) {
+      succStart[i + 1] = copy(cg.getSuccNodes(node), cg, number, succ, succStart[i]);
+      predStart[i + 1] = copy(cg.getPredNodes(node), cg, number, pred, predStart[i]);
+      List<CallSiteReference> s = new ArrayList<CallSiteReference>();
+      for (Iterator<CallSiteReference> it = node.iterateCallSites(); it.hasNext();) {
+        s.add(it.next());
+      }
+      Collections.sort(s, BY_PC);
+      for (CallSiteReference site : s) {
+        Set<CGNode> t = cg.getPossibleTargets(node, site);
+        int[] tn = new int[t.size()];
+        copy(t.iterator(), cg, number, tn, 0);
+        siteTargets.add(tn);
+      }
+      allSites.addAll(s);
+      siteStart[i + 1] = allSites.size();
+      i++;
+    }
+    sites = allSites.toArray(new CallSiteReference[allSites.size()]);
+    targetStart = new int[sites.length + 1];
+    for (int s = 0; s < sites.length; s++) {
+      targetStart[s + 1] = targetStart[s] + siteTargets.get(s).length;
+    }
+    targets = new int[targetStart[sites.length]];
+    for (int s = 0; s < sites.length; s++) {
+      System.arraycopy(siteTargets.get(s), 0, targets, targetStart[s], siteTargets.get(s).length);
+    }
+
+    int m = 2;
+    while (m < 2 * n) {
+      m <<= 1;
+    }
+    byMethod = new int[m];
+    for (int k = 0; k < n; k++) {
+      int slot = hash(nodes[k].getMethod().getReference()) & (m - 1);
+      while (byMethod[slot] != 0) {
+        slot = (slot + 1) & (m - 1);
+      }
+      byMethod[slot] = k + 1;
+    }
+  }
+
+  private static final Comparator<CallSiteReference> BY_PC = new Comparator<CallSiteReference>() {
+    @Override
+    public int compare(CallSiteReference o1, CallSiteReference o2) {
+      return o1.getProgramCounter() - o2.getProgramCounter();
+    }
+  };
+
+  /**
+   * Copy the numbers of some nodes into to, sorted, starting at from
+   *
+   * @return the index after the last number copied
+   */
+  private static int copy(Iterator<CGNode> it, CallGraph cg, int[] number, int[] to, int from) {
+    int end = from;
+    while (it.hasNext()) {
+      to[end++] = number[cg.getNumber(it.next())];
+    }
+    Arrays.sort(to, from, end);
+    return end;
+  }
+
+  private static int hash(MethodReference m) {
+    int h = m.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the index of the call site at pc in the node numbered n, or -1 if there is none
+   */
+  private int findSite(int n, int pc) {
+    int lo = siteStart[n];
+    int hi = siteStart[n + 1] - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int p = sites[mid].getProgramCounter();
+      if (p < pc) {
+        lo = mid + 1;
+      } else if (p > pc) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private List<CGNode> getNodes(int[] numbers, int from, int to) {
+    List<CGNode> result = new ArrayList<CGNode>(to - from);
+    for (int i = from; i < to; i++) {
+      result.add(nodes[numbers[i]]);
+    }
+    return result;
+  }
+
+  private static IntSet makeSet(int[] numbers, int from, int to) {
+    return IntSetUtil.make(Arrays.copyOfRange(numbers, from, to));
+  }
+
+  private int checkNode(CGNode n) {
+    int result = getNumber(n);
+    if (result == -1) {
+      throw new IllegalArgumentException("node not in callgraph " + n);
+    }
+    return result;
+  }
+
+  @Override
+  public CGNode getFakeRootNode() {
+    return nodes[fakeRoot];
+  }
+
+  @Override
+  public Collection<CGNode> getEntrypointNodes() {
+    return Collections.unmodifiableList(getNodes(entrypoints, 0, entrypoints.length));
+  }
+
+  @Override
+  public CGNode getNode(IMethod method, Context C) {
+    if (method == null || C == null) {
+      return null;
+    }
+    MethodReference ref = method.getReference();
+    for (int slot = hash(ref) & (byMethod.length - 1); byMethod[slot] != 0; slot = (slot + 1) & (byMethod.length - 1)) {
+      CompactNode n = nodes[byMethod[slot] - 1];
+      if (n.getMethod().equals(method) && n.getContext().equals(C)) {
+        return n;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Set<CGNode> getNodes(MethodReference m) {
+    IMethod im = cha.resolveMethod(m);
+    if (im == null) {
+      return Collections.emptySet();
+    }
+    MethodReference ref = im.getReference();
+    Set<CGNode> result = HashSetFactory.make(3);
+    for (int slot = hash(ref) & (byMethod.length - 1); byMethod[slot] != 0; slot = (slot + 1) & (byMethod.length - 1)) {
+      CompactNode n = nodes[byMethod[slot] - 1];
+      if (n.getMethod().getReference().equals(ref)) {
+        result.add(n);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public IClassHierarchy getClassHierarchy() {
+    return cha;
+  }
+
+  @Override
+  public Set<CGNode> getPossibleTargets(CGNode node, CallSiteReference site) {
+    int s = findSite(checkNode(node), site.getProgramCounter());
+    if (s == -1) {
+      return Collections.emptySet();
+    }
+    return HashSetFactory.make(getNodes(targets, targetStart[s], targetStart[s + 1]));
+  }
+
+  @Override
+  public int getNumberOfTargets(CGNode node, CallSiteReference site) {
+    int s = findSite(checkNode(node), site.getProgramCounter());
+    return s == -1 ? 0 : targetStart[s + 1] - targetStart[s];
+  }
+
+  @Override
+  public Iterator<CallSiteReference> getPossibleSites(CGNode src, CGNode target) {
+    int n = checkNode(src);
+    int t = checkNode(target);
+    List<CallSiteReference> result = new ArrayList<CallSiteReference>();
+    for (int s = siteStart[n]; s < siteStart[n + 1]; s++) {
+      if (Arrays.binarySearch(targets, targetStart[s], targetStart[s + 1], t) >= 0) {
+        result.add(sites[s]);
+      }
+    }
+    return result.iterator();
+  }
+
+  @Override
+  public Iterator<CGNode> iterator() {
+    return new ArrayIterator<CGNode>(nodes);
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return nodes.length;
+  }
+
+  @Override
+  public boolean containsNode(CGNode n) {
+    return getNumber(n) != -1;
+  }
+
+  /**
+   * @return the number of n, or -1 if it is not a node of this call graph
+   */
+  @Override
+  public int getNumber(CGNode n) {
+    if (n instanceof CompactNode && ((CompactNode) n).getCallGraph() == this) {
+      return n.getGraphNodeId();
+    }
+    return -1;
+  }
+
+  @Override
+  public CGNode getNode(int number) {
+    return number >= 0 && number < nodes.length ? nodes[number] : null;
+  }
+
+  @Override
+  public int getMaxNumber() {
+    return nodes.length - 1;
+  }
+
+  @Override
+  public Iterator<CGNode> iterateNodes(IntSet s) {
+    return new NumberedNodeIterator<CGNode>(s, this);
+  }
+
+  @Override
+  public Iterator<CGNode> getPredNodes(CGNode n) {
+    int i = checkNode(n);
+    return getNodes(pred, predStart[i], predStart[i + 1]).iterator();
+  }
+
+  @Override
+  public int getPredNodeCount(CGNode n) {
+    int i = checkNode(n);
+    return predStart[i + 1] - predStart[i];
+  }
+
+  @Override
+  public IntSet getPredNodeNumbers(CGNode node) {
+    int i = checkNode(node);
+    return makeSet(pred, predStart[i], predStart[i + 1]);
+  }
+
+  @Override
+  public Iterator<CGNode> getSuccNodes(CGNode n) {
+    int i = checkNode(n);
+    return getNodes(succ, succStart[i], succStart[i + 1]).iterator();
+  }
+
+  @Override
+  public int getSuccNodeCount(CGNode n) {
+    int i = checkNode(n);
+    return succStart[i + 1] - succStart[i];
+  }
+
+  @Override
+  public IntSet getSuccNodeNumbers(CGNode node) {
+    int i = checkNode(node);
+    return makeSet(succ, succStart[i], succStart[i + 1]);
+  }
+
+  @Override
+  public boolean hasEdge(CGNode src, CGNode dst) {
+    int x = getNumber(src);
+    int y = getNumber(dst);
+    return x != -1 && y != -1 && Arrays.binarySearch(succ, succStart[x], succStart[x + 1], y) >= 0;
+  }
+
+  @Override
+  public void addNode(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNode(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNodeAndEdges(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addEdge(CGNode src, CGNode dst) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeEdge(CGNode src, CGNode dst) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeAllIncidentEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeIncomingEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeOutgoingEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * A node of a compact call graph: just its method and context.
+   */
+  private final class CompactNode extends NodeWithNumber implements CGNode {
+
+    private final IMethod method;
+
+    private final Context context;
+
+    CompactNode(int number, IMethod method, Context context) {
+      setGraphNodeId(number);
+      this.method = method;
+      this.context = context;
+    }
+
+    CompactCallGraph getCallGraph() {
+      return CompactCallGraph.this;
+    }
+
+    @Override
+    public IMethod getMethod() {
+      return method;
+    }
+
+    @Override
+    public Context getContext() {
+      return context;
+    }
+
+    @Override
+    public IClassHierarchy getClassHierarchy() {
+      return cha;
+    }
+
+    @Override
+    @Deprecated
+    public boolean addTarget(CallSiteReference site, CGNode target) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IR getIR() {
+      return interpreter.getIR(this);
+    }
+
+    @Override
+    public DefUse getDU() {
+      return interpreter.getDU(this);
+    }
+
+    @Override
+    public Iterator<NewSiteReference> iterateNewSites() {
+      return interpreter.iterateNewSites(this);
+    }
+
+    @Override
+    public Iterator<CallSiteReference> iterateCallSites() {
+      int i = getGraphNodeId();
+      if (siteStart[i] == siteStart[i + 1]) {
+        return EmptyIterator.instance();
+      }
+      return new ArrayIterator<CallSiteReference>(sites, siteStart[i], siteStart[i + 1] - 1);
+    }
+
+    @Override
+    public int hashCode() {
+      return method.hashCode() * 8681 + context.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "Node: " + method + " Context: " + context;
+    }
+  }
+}
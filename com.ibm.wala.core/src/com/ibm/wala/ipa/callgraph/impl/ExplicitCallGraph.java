@@ -38,13 +38,13 @@ import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.IntMapIterator;
 import com.ibm.wala.util.collections.SparseVector;
-import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.functions.IntFunction;
 import com.ibm.wala.util.graph.NumberedEdgeManager;
 import com.ibm.wala.util.intset.BasicNaturalRelation;
 import com.ibm.wala.util.intset.IBinaryNaturalRelation;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableSharedBitVectorIntSet;
 import com.ibm.wala.util.intset.SparseIntSet;
@@ -276,6 +276,36 @@ public class ExplicitCallGraph extends BasicCallGraph<SSAContextInterpreter> imp
       }
     }
 
+    /**
+     * Remove the targets of a call site.
+     * 
+     * @return the numbers of the removed targets which this node no longer calls from any other site
+     */
+    protected IntSet removeTargets(CallSiteReference site) {
+      MutableIntSet result = IntSetUtil.make();
+      IntSet removed = getPossibleTargetNumbers(site);
+      if (removed == null) {
+        return result;
+      }
+      targets.remove(site.getProgramCounter());
+      MutableIntSet remaining = IntSetUtil.make();
+      for (IntIterator it = targets.iterateIndices(); it.hasNext();) {
+        Object t = targets.get(it.next());
+        if (t instanceof CGNode) {
+          remaining.add(getCallGraph().getNumber((CGNode) t));
+        } else {
+          remaining.addAll((IntSet) t);
+        }
+      }
+      for (IntIterator it = removed.intIterator(); it.hasNext();) {
+        int n = it.next();
+        if (!remaining.contains(n)) {
+          result.add(n);
+        }
+      }
+      return result;
+    }
+
     @Override
     public boolean equals(Object obj) {
       // we can use object equality since these objects are canonical as created
@@ -298,6 +328,14 @@ public class ExplicitCallGraph extends BasicCallGraph<SSAContextInterpreter> imp
       allTargets.clear();
     }
 
+    /**
+     * Forget the IR and {@link DefUse} cached for this node, so that they are built again after its method changes.
+     */
+    public void clearIR() {
+      ir = new WeakReference<IR>(null);
+      du = new WeakReference<DefUse>(null);
+    }
+
     @Override
     public IR getIR() {
       if (getMethod().isSynthetic()) {
@@ -425,8 +463,12 @@ public class ExplicitCallGraph extends BasicCallGraph<SSAContextInterpreter> imp
       predecessors.add(y, x);
     }
 
+    /**
+     * Remove all calls from src to dst, whatever their call sites.
+     */
     @Override
     public void removeEdge(CGNode src, CGNode dst) {
+      ((ExplicitNode) src).removeTarget(dst);
       int x = getNumber(src);
       int y = getNumber(dst);
       predecessors.remove(y, x);
@@ -439,19 +481,30 @@ public class ExplicitCallGraph extends BasicCallGraph<SSAContextInterpreter> imp
 
     @Override
     public void removeAllIncidentEdges(CGNode node) {
-      Assertions.UNREACHABLE();
+      removeIncomingEdges(node);
+      removeOutgoingEdges(node);
     }
 
     @Override
     public void removeIncomingEdges(CGNode node) {
-      Assertions.UNREACHABLE();
-
+      int y = getNumber(node);
+      IntSet preds = predecessors.getRelated(y);
+      if (preds != null) {
+        for (IntIterator it = IntSetUtil.makeMutableCopy(preds).intIterator(); it.hasNext();) {
+          ((ExplicitNode) getNode(it.next())).removeTarget(node);
+        }
+        predecessors.removeAll(y);
+      }
     }
 
     @Override
     public void removeOutgoingEdges(CGNode node) {
-      Assertions.UNREACHABLE();
-
+      ExplicitNode n = (ExplicitNode) node;
+      int x = getNumber(n);
+      for (IntIterator it = n.getAllTargetNumbers().intIterator(); it.hasNext();) {
+        predecessors.remove(it.next(), x);
+      }
+      n.clearAllTargets();
     }
 
     @Override
@@ -516,6 +569,20 @@ public class ExplicitCallGraph extends BasicCallGraph<SSAContextInterpreter> imp
     return n.getPossibleTargetNumbers(site);
   }
 
+  /**
+   * Remove the calls from a node at one of its call sites. The edges to the targets which the node also calls from other sites
+   * remain.
+   */
+  public void removeCalls(CGNode node, CallSiteReference site) {
+    if (!containsNode(node)) {
+      throw new IllegalArgumentException("node not in callgraph " + node);
+    }
+    assert (node instanceof ExplicitNode);
+    for (IntIterator it = ((ExplicitNode) node).removeTargets(site).intIterator(); it.hasNext();) {
+      removeEdge(node, getNode(it.next()));
+    }
+  }
+
   public AnalysisCache getAnalysisCache() {
     return cache;
   }
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.ExceptionReturnValueKey;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+
+/**
+ * Encodes call graph nodes, instance keys and pointer keys as the descriptors which identify them in a {@link StoredAnalysis}
+ * file. A descriptor is a sequence of big-endian ints: a kind, followed by the numbers of the strings, nodes and instance keys it
+ * refers to and by plain values such as program counters.
+ *
+ * Subclasses number the strings, nodes and instance keys: the writer of a file assigns numbers as it goes, while a reader looks
+ * them up in the file, and fails to encode a descriptor that refers to something the file does not have.
+ */
+abstract class DescriptorEncoder {
+
+  /*
+   * kinds of contexts
+   */
+  static final int C_EVERYWHERE = 0;
+
+  static final int C_RECEIVER = 1;
+
+  static final int C_OTHER = 2;
+
+  /*
+   * kinds of instance keys
+   */
+  static final int I_ALLOCATION = 0;
+
+  static final int I_MULTI_NEW_ARRAY = 1;
+
+  static final int I_CONCRETE_TYPE = 2;
+
+  static final int I_CLASS_CONSTANT = 3;
+
+  static final int I_CONSTANT = 4;
+
+  static final int I_OTHER = 5;
+
+  /*
+   * kinds of pointer keys
+   */
+  static final int P_LOCAL = 0;
+
+  static final int P_RETURN = 1;
+
+  static final int P_EXCEPTIONAL_RETURN = 2;
+
+  static final int P_STATIC_FIELD = 3;
+
+  static final int P_INSTANCE_FIELD = 4;
+
+  static final int P_ARRAY_CONTENTS = 5;
+
+  static final int P_OTHER = 6;
+
+  /**
+   * the classes of the constant values that {@link #I_CONSTANT} keys record, indexed by their kind
+   */
+  static final Class<?>[] CONSTANT_CLASSES = { String.class, Integer.class, Long.class, Float.class, Double.class, Boolean.class,
+      Character.class, Byte.class, Short.class };
+
+  /**
+   * @return the number of s, or -1 if it has none
+   */
+  protected abstract int string(String s);
+
+  /**
+   * @return the number of n, or -1 if it has none
+   */
+  protected abstract int node(CGNode n);
+
+  /**
+   * @return the number of ik, or -1 if it has none
+   */
+  protected abstract int instanceKey(InstanceKey ik);
+
+  /**
+   * @return the descriptor of the node for method m in context c, or null if it cannot be encoded
+   */
+  byte[] encodeNode(MethodReference m, Context c) {
+    Descriptor d = new Descriptor();
+    method(d, m);
+    if (c == Everywhere.EVERYWHERE) {
+      d.value(C_EVERYWHERE);
+    } else if (c instanceof ReceiverInstanceContext) {
+      d.value(C_RECEIVER);
+      d.ref(instanceKey(((ReceiverInstanceContext) c).getReceiver()));
+    } else {
+      d.value(C_OTHER);
+      d.ref(string(String.valueOf(c)));
+    }
+    return d.toBytes();
+  }
+
+  /**
+   * @return the descriptor of ik, or null if it cannot be encoded
+   */
+  byte[] encodeInstanceKey(InstanceKey ik) {
+    if (ik instanceof MultiNewArrayInNode) {
+      MultiNewArrayInNode m = (MultiNewArrayInNode) ik;
+      return encodeMultiNewArray(m.getNode(), m.getSite(), m.getDim());
+    } else if (ik instanceof AllocationSiteInNode) {
+      return encodeAllocation(((AllocationSiteInNode) ik).getNode(), ((AllocationSiteInNode) ik).getSite());
+    } else if (ik instanceof ConcreteTypeKey) {
+      return encodeConcreteType(((ConcreteTypeKey) ik).getType().getReference());
+    } else if (ik instanceof ConstantKey && isRecordedConstant(((ConstantKey) ik).getValue())) {
+      return encodeConstant(((ConstantKey) ik).getValue());
+    } else {
+      Descriptor d = new Descriptor();
+      d.value(I_OTHER);
+      d.ref(string(ik.toString()));
+      return d.toBytes();
+    }
+  }
+
+  /**
+   * @return the descriptor of the key for objects allocated at site in node, or null if it cannot be encoded
+   */
+  byte[] encodeAllocation(CGNode node, NewSiteReference site) {
+    Descriptor d = new Descriptor();
+    d.value(I_ALLOCATION);
+    d.ref(node(node));
+    d.value(site.getProgramCounter());
+    type(d, site.getDeclaredType());
+    return d.toBytes();
+  }
+
+  /**
+   * @return the descriptor of the key for the dim'th dimension of the arrays allocated at site in node, or null if it cannot be
+   *         encoded
+   */
+  byte[] encodeMultiNewArray(CGNode node, NewSiteReference site, int dim) {
+    Descriptor d = new Descriptor();
+    d.value(I_MULTI_NEW_ARRAY);
+    d.ref(node(node));
+    d.value(site.getProgramCounter());
+    type(d, site.getDeclaredType());
+    d.value(dim);
+    return d.toBytes();
+  }
+
+  /**
+   * @return the descriptor of the key for all objects of type t, or null if it cannot be encoded
+   */
+  byte[] encodeConcreteType(TypeReference t) {
+    Descriptor d = new Descriptor();
+    d.value(I_CONCRETE_TYPE);
+    type(d, t);
+    return d.toBytes();
+  }
+
+  /**
+   * @return the descriptor of the key for a constant, or null if it cannot be encoded
+   */
+  byte[] encodeConstant(Object value) {
+    Descriptor d = new Descriptor();
+    if (value instanceof IClass) {
+      d.value(I_CLASS_CONSTANT);
+      type(d, ((IClass) value).getReference());
+    } else if (constantKind(value) != -1) {
+      d.value(I_CONSTANT);
+      d.value(constantKind(value));
+      d.ref(string(value.toString()));
+    } else {
+      return null;
+    }
+    return d.toBytes();
+  }
+
+  /**
+   * @return true iff keys for the constant value are recorded as constants: class objects and values of the
+   *         {@link #CONSTANT_CLASSES}
+   */
+  static boolean isRecordedConstant(Object value) {
+    return value instanceof IClass || constantKind(value) != -1;
+  }
+
+  /**
+   * @return the kind of a constant value in {@link #CONSTANT_CLASSES}, or -1 if it has none
+   */
+  static int constantKind(Object value) {
+    if (value != null) {
+      for (int i = 0; i < CONSTANT_CLASSES.length; i++) {
+        if (CONSTANT_CLASSES[i].equals(value.getClass())) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the descriptor of pk, or null if it cannot be encoded
+   */
+  byte[] encodePointerKey(PointerKey pk) {
+    Descriptor d = new Descriptor();
+    if (pk instanceof LocalPointerKey) {
+      d.value(P_LOCAL);
+      d.ref(node(((LocalPointerKey) pk).getNode()));
+      d.value(((LocalPointerKey) pk).getValueNumber());
+    } else if (pk instanceof ExceptionReturnValueKey) {
+      d.value(P_EXCEPTIONAL_RETURN);
+      d.ref(node(((ExceptionReturnValueKey) pk).getNode()));
+    } else if (pk instanceof ReturnValueKey) {
+      d.value(P_RETURN);
+      d.ref(node(((ReturnValueKey) pk).getNode()));
+    } else if (pk instanceof StaticFieldKey) {
+      d.value(P_STATIC_FIELD);
+      field(d, ((StaticFieldKey) pk).getField());
+    } else if (pk instanceof InstanceFieldKey) {
+      d.value(P_INSTANCE_FIELD);
+      d.ref(instanceKey(((InstanceFieldKey) pk).getInstanceKey()));
+      field(d, ((InstanceFieldKey) pk).getField());
+    } else if (pk instanceof ArrayContentsKey) {
+      d.value(P_ARRAY_CONTENTS);
+      d.ref(instanceKey(((ArrayContentsKey) pk).getInstanceKey()));
+    } else {
+      d.value(P_OTHER);
+      d.ref(string(pk.toString()));
+    }
+    return d.toBytes();
+  }
+
+  /**
+   * a method: its declaring class and its selector
+   */
+  void method(Descriptor d, MethodReference m) {
+    type(d, m.getDeclaringClass());
+    d.ref(string(m.getSelector().toString()));
+  }
+
+  /**
+   * a field: its declaring class, name and type
+   */
+  void field(Descriptor d, IField f) {
+    type(d, f.getDeclaringClass().getReference());
+    d.ref(string(f.getName().toString()));
+    type(d, f.getFieldTypeReference());
+  }
+
+  /**
+   * a type: the name of its class loader and its name
+   */
+  void type(Descriptor d, TypeReference t) {
+    d.ref(string(t.getClassLoader().getName().toString()));
+    d.ref(string(t.getName().toString()));
+  }
+
+  /**
+   * A descriptor under construction.
+   */
+  static class Descriptor {
+
+    private int[] ints = new int[8];
+
+    private int size;
+
+    /**
+     * does the descriptor refer to something without a number?
+     */
+    private boolean absent;
+
+    void value(int v) {
+      if (size == ints.length) {
+        int[] old = ints;
+        ints = new int[2 * size];
+        System.arraycopy(old, 0, ints, 0, size);
+      }
+      ints[size++] = v;
+    }
+
+    /**
+     * @param number the number of a string, node or instance key, or -1 if it has none
+     */
+    void ref(int number) {
+      if (number == -1) {
+        absent = true;
+      }
+      value(number);
+    }
+
+    /**
+     * @return the descriptor as bytes, or null if it refers to something without a number
+     */
+    byte[] toBytes() {
+      if (absent) {
+        return null;
+      }
+      byte[] result = new byte[4 * size];
+      for (int i = 0; i < size; i++) {
+        result[4 * i] = (byte) (ints[i] >>> 24);
+        result[4 * i + 1] = (byte) (ints[i] >>> 16);
+        result[4 * i + 2] = (byte) (ints[i] >>> 8);
+        result[4 * i + 3] = (byte) ints[i];
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+/**
+ * An operator of a side effect whose additions to the system can be retracted alone, without retracting the node which added the
+ * side effect.
+ */
+public interface IRetractableOperator {
+
+  /**
+   * Forget which instances have been processed, so that the next evaluation adds again the constraints for all of them.
+   */
+  void forgetHistory();
+
+}
@@ -126,6 +126,18 @@ public class PointsToMap {
     pointsToSets.set(i, v);
   }
 
+  /**
+   * forget a pointer key which is not unified with another, so that it names no points-to set until it is put again
+   */
+  public void remove(PointerKey key) {
+    int i = pointerKeys.getMappedIndex(key);
+    if (i != -1) {
+      pointsToSets.set(i, null);
+      transitiveRoots.clear(i);
+      pointerKeys.deleteMappedObject(key);
+    }
+  }
+
   private int findOrCreateIndex(PointerKey key) {
     int result = pointerKeys.getMappedIndex(key);
     if (result == -1) {
@@ -20,6 +20,8 @@ import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.MutableSparseIntSet;
 
@@ -45,6 +47,16 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
 
   private PointerKey pointerKey;
 
+  /**
+   * if set, record the elements added to this variable since they were last propagated; see {@link #takeAdditions()}
+   */
+  private boolean trackAdditions = false;
+
+  /**
+   * elements added to this variable since the last call to {@link #takeAdditions()}, or null if there are none
+   */
+  private MutableIntSet additions;
+
   public PointsToSetVariable(PointerKey key) {
     super();
     if (key == null) {
@@ -75,6 +87,58 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     }
   }
   
+  /**
+   * Start recording the elements added to this variable, for difference propagation.
+   */
+  void trackAdditions() {
+    if (!trackAdditions) {
+      trackAdditions = true;
+      if (getValue() != null && !getValue().isEmpty()) {
+        additions = IntSetUtil.makeMutableCopy(getValue());
+      }
+    }
+  }
+
+  public boolean isTrackingAdditions() {
+    return trackAdditions;
+  }
+
+  /**
+   * @return the elements added to this variable since the last call to this method, or null if there are none. The caller owns the
+   *         returned set.
+   */
+  IntSet takeAdditions() {
+    IntSet result = additions;
+    additions = null;
+    return result;
+  }
+
+  private void recordAddition(int b) {
+    if (additions == null) {
+      additions = IntSetUtil.getDefaultIntSetFactory().make();
+    }
+    additions.add(b);
+  }
+
+  /**
+   * record the elements of B not already in this variable
+   */
+  private void recordAdditions(IntSet B) {
+    if (B == null) {
+      return;
+    }
+    IntSet V = getValue();
+    IntSet added = (V == null) ? B : IntSetUtil.diff(B, V);
+    if (added.isEmpty()) {
+      return;
+    }
+    if (additions == null) {
+      additions = IntSetUtil.getDefaultIntSetFactory().makeCopy(added);
+    } else {
+      additions.addAll(added);
+    }
+  }
+
   @Override
   public void add(int b) {
     if (PARANOID) {
@@ -82,6 +146,9 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
       m.add(b);
       checkTypes(m);
     }
+    if (trackAdditions && !contains(b)) {
+      recordAddition(b);
+    }
     super.add(b);
     cryIfTooBig();
   }
@@ -91,11 +158,58 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(B);
     }
+    if (trackAdditions) {
+      recordAdditions(B);
+    }
     boolean v = super.addAll(B);
     cryIfTooBig();
     return v;
   }
 
+  @Override
+  public boolean addAllInIntersection(PointsToSetVariable other, IntSet filter) {
+    if (trackAdditions) {
+      return (other.getValue() == null) ? false : addAllInIntersection(other.getValue(), filter);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) {
+    if (trackAdditions && other != null) {
+      // compute the intersection once, to record it and to add it
+      IntSet intersection = other.intersection(filter);
+      if (intersection.isEmpty()) {
+        return false;
+      }
+      recordAdditions(intersection);
+      return super.addAll(intersection);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  @Override
+  public void copyState(PointsToSetVariable other) {
+    if (trackAdditions) {
+      recordAdditions(other.getValue());
+    }
+    super.copyState(other);
+  }
+
+  @Override
+  public void remove(int i) {
+    if (additions != null) {
+      additions.remove(i);
+    }
+    super.remove(i);
+  }
+
+  @Override
+  public void removeAll() {
+    additions = null;
+    super.removeAll();
+  }
+
   /**
    * check that the types of all instance keys are assignable to declared type of pointer key
    */
@@ -143,6 +257,9 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(other.getValue());
     }
+    if (trackAdditions) {
+      return (other.getValue() == null) ? false : addAll(other.getValue());
+    }
     // TODO Auto-generated method stub
     boolean v = super.addAll(other);
     cryIfTooBig();
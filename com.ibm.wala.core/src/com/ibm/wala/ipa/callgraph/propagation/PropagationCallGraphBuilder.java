@@ -10,6 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -42,7 +44,9 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.graph.traverse.DFS;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
 import com.ibm.wala.util.intset.IntSetUtil;
@@ -223,6 +227,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       throw new IllegalArgumentException("options is null");
     }
     system = makeSystem(options);
+    configureSystem(options);
 
     if (DEBUG_GENERAL) {
       System.err.println("Enter makeCallGraph!");
@@ -232,10 +237,6 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       System.err.println("Initialized call graph");
     }
 
-    system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
-    system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
-    system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
-
     discoveredNodes = HashSetFactory.make();
     discoveredNodes.add(callGraph.getFakeRootNode());
 
@@ -256,6 +257,24 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
 
     customInit();
 
+    solve(monitor);
+
+    return callGraph;
+  }
+
+  private void configureSystem(AnalysisOptions options) {
+    system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
+    system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
+    system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
+    system.setParallelism(options.getSolverParallelism());
+    system.setDeltaPropagation(options.getUseDeltaPropagation());
+    // unified points-to sets cannot be retracted separately
+    system.setOnlineCycleDetection(options.getUseOnlineCycleDetection() && !options.getSupportIncrementalUpdates());
+    system.setSharePointsToSets(options.getSharePointsToSets());
+    system.setRecordWrites(options.getSupportIncrementalUpdates());
+  }
+
+  private void solve(IProgressMonitor monitor) throws CallGraphBuilderCancelException {
     solver = makeSolver();
     try {
       solver.solve(monitor);
@@ -268,7 +287,63 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
           system.extractPointerAnalysis(this));
       throw c;
     }
+  }
+
+  /**
+   * Update the call graph in place after the IRs of some of its nodes changed. What the changed nodes added to the system is
+   * retracted, and so are the side effects which may add less as a result, with whatever they added, including the calls they
+   * resolved; the points-to sets which may lose elements are emptied and solved again from the constraints that remain, the
+   * retracted side effects are evaluated again, and the changed nodes are visited again. Nodes which are no longer reachable then are
+   * retracted in turn and removed from the call graph, until all nodes are reachable.
+   * 
+   * @param changed the nodes whose IRs changed
+   * @throws IllegalStateException if no call graph that supports updates has been built
+   */
+  protected CallGraph updateNodes(Set<CGNode> changed, IProgressMonitor monitor) throws IllegalArgumentException,
+      CallGraphBuilderCancelException {
+    if (changed == null) {
+      throw new IllegalArgumentException("changed is null");
+    }
+    if (system == null || !system.isRecordingWrites()) {
+      throw new IllegalStateException("no call graph built with incremental updates supported");
+    }
+    Set<CGNode> unreachable = Collections.emptySet();
+    Collection<CGNode> nodes = changed;
+    while (!nodes.isEmpty()) {
+      Set<Object> retracted = HashSetFactory.make();
+      Set<PointsToSetVariable> invalid = HashSetFactory.make();
+      system.findRetracted(nodes, retracted, invalid);
+      for (Pair<CGNode, CallSiteReference> call : system.retract(retracted, invalid)) {
+        callGraph.removeCalls(call.fst, call.snd);
+      }
+      Set<CGNode> retractedNodes = HashSetFactory.make();
+      for (Object r : retracted) {
+        if (r instanceof CGNode) {
+          retractedNodes.add((CGNode) r);
+        }
+      }
+      system.forgetPointerKeys(retractedNodes);
+      for (CGNode n : unreachable) {
+        callGraph.removeNodeAndEdges(n);
+        alreadyVisited.remove(n);
+      }
+      for (CGNode n : retractedNodes) {
+        if (!unreachable.contains(n)) {
+          markChanged(n);
+        }
+      }
 
+      solve(monitor);
+
+      Set<CGNode> reachable = DFS.getReachableNodes(callGraph, Collections.singleton(callGraph.getFakeRootNode()));
+      unreachable = HashSetFactory.make();
+      for (CGNode n : callGraph) {
+        if (!reachable.contains(n)) {
+          unreachable.add(n);
+        }
+      }
+      nodes = unreachable;
+    }
     return callGraph;
   }
 
@@ -790,7 +865,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Binary op: <dummy>:= ArrayLoad( &lt;arrayref>) Side effect: Creates new equations.
    */
-  public final class ArrayLoadOperator extends UnarySideEffect implements IPointerOperator {
+  public final class ArrayLoadOperator extends UnarySideEffect implements IPointerOperator, IRetractableOperator {
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
 
     @Override
@@ -878,12 +953,19 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     public boolean isComplex() {
       return true;
     }
+
+    @Override
+    public void forgetHistory() {
+      if (priorInstances != null) {
+        priorInstances.clear();
+      }
+    }
   }
 
   /**
    * Binary op: <dummy>:= ArrayStore( &lt;arrayref>) Side effect: Creates new equations.
    */
-  public final class ArrayStoreOperator extends UnarySideEffect implements IPointerOperator {
+  public final class ArrayStoreOperator extends UnarySideEffect implements IPointerOperator, IRetractableOperator {
     @Override
     public String toString() {
       return "ArrayStore";
@@ -955,6 +1037,13 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       return true;
     }
 
+    /**
+     * this operator remembers nothing
+     */
+    @Override
+    public void forgetHistory() {
+    }
+
     @Override
     public boolean equals(Object o) {
       return super.equals(o);
@@ -969,7 +1058,7 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Binary op: <dummy>:= GetField( <ref>) Side effect: Creates new equations.
    */
-  public class GetFieldOperator extends UnarySideEffect implements IPointerOperator {
+  public class GetFieldOperator extends UnarySideEffect implements IPointerOperator, IRetractableOperator {
     private final IField field;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1074,12 +1163,19 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     public boolean isComplex() {
       return true;
     }
+
+    @Override
+    public void forgetHistory() {
+      if (priorInstances != null) {
+        priorInstances.clear();
+      }
+    }
   }
 
   /**
    * Operator that represents a putfield
    */
-  public class PutFieldOperator extends UnarySideEffect implements IPointerOperator {
+  public class PutFieldOperator extends UnarySideEffect implements IPointerOperator, IRetractableOperator {
     private final IField field;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1103,6 +1199,13 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       return true;
     }
 
+    @Override
+    public void forgetHistory() {
+      if (priorInstances != null) {
+        priorInstances.clear();
+      }
+    }
+
     @Override
     public byte evaluate(PointsToSetVariable rhs) {
       if (DEBUG_PUT) {
@@ -1200,7 +1303,8 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   /**
    * Update the points-to-set for a field to include a particular instance key.
    */
-  public final class InstancePutFieldOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+  public final class InstancePutFieldOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator,
+      IRetractableOperator {
     final private IField field;
 
     final private InstanceKey instance;
@@ -1272,12 +1376,20 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     public boolean isComplex() {
       return true;
     }
+
+    @Override
+    public void forgetHistory() {
+      if (priorInstances != null) {
+        priorInstances.clear();
+      }
+    }
   }
 
   /**
    * Update the points-to-set for an array contents to include a particular instance key.
    */
-  public final class InstanceArrayStoreOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator {
+  public final class InstanceArrayStoreOperator extends UnaryOperator<PointsToSetVariable> implements IPointerOperator,
+      IRetractableOperator {
     final private InstanceKey instance;
 
     protected final MutableIntSet priorInstances = rememberGetPutHistory ? IntSetUtil.make() : null;
@@ -1364,6 +1476,13 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     public boolean isComplex() {
       return true;
     }
+
+    @Override
+    public void forgetHistory() {
+      if (priorInstances != null) {
+        priorInstances.clear();
+      }
+    }
   }
 
   protected MutableIntSet getMutableInstanceKeysForClass(IClass klass) {
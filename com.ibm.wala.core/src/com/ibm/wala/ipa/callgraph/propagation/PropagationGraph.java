@@ -235,6 +235,8 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     assert getNumberOfStatementsThatDef(p) == 0;
     assert getNumberOfStatementsThatUse(p) == 0;
     delegateGraph.removeNode(p);
+    // the node manager does not reset the number; do so, so that p is no longer considered part of the graph
+    p.setGraphNodeId(-1);
   }
 
   private void addImplicitStatement(UnaryStatement<PointsToSetVariable> eq) {
@@ -431,11 +433,43 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     if (useImplicitRepresentation(eq)) {
       removeImplicitStatement((UnaryStatement<PointsToSetVariable>) eq);
     } else {
-      delegateStatements.remove(eq);
-      delegateGraph.removeNodeAndEdges(eq);
+      AbstractStatement<PointsToSetVariable, ?> s = findExplicitStatement((AbstractStatement<PointsToSetVariable, ?>) eq);
+      delegateStatements.remove(s);
+      delegateGraph.removeNodeAndEdges(s);
     }
   }
 
+  /**
+   * The graph is numbered by the statements it holds, so a statement equal to one of them, but made anew, must first be mapped to
+   * the statement held.
+   * 
+   * @return the statement of this graph which equals eq, or eq itself if there is none
+   */
+  AbstractStatement<PointsToSetVariable, ?> findExplicitStatement(AbstractStatement<PointsToSetVariable, ?> eq) {
+    int number = eq.getGraphNodeId();
+    if (number >= 0 && number <= delegateGraph.getMaxNumber() && delegateGraph.getNode(number) == eq) {
+      return eq;
+    }
+    Iterator<? extends INodeWithNumber> it;
+    if (eq.getLHS() != null) {
+      it = delegateGraph.getPredNodes((PointsToSetVariable) eq.getLHS());
+    } else if (eq instanceof UnaryStatement) {
+      it = delegateGraph.getSuccNodes((PointsToSetVariable) ((UnaryStatement<?>) eq).getRightHandSide());
+    } else {
+      it = delegateGraph.getSuccNodes((PointsToSetVariable) eq.getRHS()[0]);
+    }
+    while (it.hasNext()) {
+      INodeWithNumber s = it.next();
+      if (s.equals(eq)) {
+        // the nodes equal to a statement over points-to sets are such statements
+        @SuppressWarnings("unchecked")
+        AbstractStatement<PointsToSetVariable, ?> held = (AbstractStatement<PointsToSetVariable, ?>) s;
+        return held;
+      }
+    }
+    return eq;
+  }
+
   @Override
   public void reorder() {
     VariableGraphView graph = new VariableGraphView();
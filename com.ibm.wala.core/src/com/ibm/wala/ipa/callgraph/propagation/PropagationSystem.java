@@ -10,16 +10,24 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.ibm.wala.classLoader.ArrayClass;
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.fixedpoint.impl.DefaultFixedPointSolver;
 import com.ibm.wala.fixedpoint.impl.Worklist;
@@ -29,23 +37,33 @@ import com.ibm.wala.fixpoint.IFixedPointSystem;
 import com.ibm.wala.fixpoint.IVariable;
 import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.fixpoint.UnaryStatement;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder.FilterOperator;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyWarning;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.VerboseAction;
 import com.ibm.wala.util.graph.Graph;
 import com.ibm.wala.util.graph.NumberedGraph;
+import com.ibm.wala.util.graph.impl.GraphInverter;
+import com.ibm.wala.util.graph.traverse.DFS;
 import com.ibm.wala.util.heapTrace.HeapTracer;
+import com.ibm.wala.util.intset.BitVector;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.IntSetRepository;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableMapping;
@@ -117,6 +135,106 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
 
   private int periodicMaintainInterval = DEFAULT_PERIODIC_MAINTENANCE_INTERVAL;
 
+  /**
+   * A tuning parameter: the minimum number of assignments on the work list before the solver bothers to evaluate them in parallel.
+   */
+  private final static int MIN_ASSIGNMENTS_FOR_PARALLEL_WAVE = 1000;
+
+  /**
+   * number of threads used to evaluate assignment equations; 1 means solve sequentially
+   */
+  private int parallelism = 1;
+
+  /**
+   * if true, propagate only the elements newly added to each points-to set along assignments and filters, rather than re-evaluating
+   * these statements against the full set
+   */
+  private boolean deltaPropagation = false;
+
+  /**
+   * operator for the statements which propagate the elements newly added to a points-to set
+   */
+  private final DeltaOperator deltaOperator = new DeltaOperator();
+
+  /**
+   * if true, look for cycles of assignments while solving, and unify the points-to sets on each cycle found
+   */
+  private boolean onlineCycleDetection = false;
+
+  /**
+   * assignments evaluated since the last search for cycles, whose left- and right-hand sides may lie on a cycle
+   */
+  private final List<AssignEquation> cycleCandidates = new ArrayList<AssignEquation>();
+
+  /**
+   * assignments which have already triggered a search for cycles. Each assignment triggers at most one search, so the cost of a
+   * failed search is not paid over and over.
+   */
+  private final Set<AssignEquation> checkedForCycles = HashSetFactory.make();
+
+  /**
+   * if non-null, the repository of hash-consed points-to sets which the points-to sets share while the solver runs and after each of
+   * its passes
+   */
+  private IntSetRepository sharedSets = null;
+
+  /**
+   * A tuning parameter: the number of statements evaluated between the rounds in which the solver hash-conses the points-to sets that
+   * have stabilized, if the points-to sets are shared.
+   */
+  private final static int EVALUATIONS_BETWEEN_SHARING = 10000;
+
+  /**
+   * statements evaluated since the last round of sharing
+   */
+  private int evaluationsSinceSharing = 0;
+
+  /**
+   * the graph node ids of the points-to sets which changed since the last round of sharing, and so have not stabilized yet
+   */
+  private final BitVector changedSinceSharing = new BitVector();
+
+  /**
+   * number of points-to sets unified away by online cycle detection
+   */
+  private int numberOfCollapsedVariables = 0;
+
+  /**
+   * if non-null, what each writer added to this system, so that it can be retracted. A writer is a call graph node while the
+   * constraints for its instructions are added, or a side effect while it is evaluated; what is added on behalf of no writer is
+   * recorded under null, and is never retracted.
+   */
+  private Map<Object, Writes> writes;
+
+  /**
+   * if {@link #writes} is non-null, the writer which added each side effect
+   */
+  private Map<AbstractStatement, Object> sideEffectWriters;
+
+  /**
+   * the writer on whose behalf constraints are added now, or null
+   */
+  private Object writer;
+
+  /**
+   * The statements, instance keys and calls which a writer added. What several writers add is recorded for each of them.
+   */
+  private static final class Writes {
+    private final List<AbstractStatement<PointsToSetVariable, ?>> statements = new ArrayList<AbstractStatement<PointsToSetVariable, ?>>();
+
+    /**
+     * the points-to sets to which instances were added directly, in the order of {@link #instances}
+     */
+    private final List<PointerKey> keys = new ArrayList<PointerKey>();
+
+    private final List<InstanceKey> instances = new ArrayList<InstanceKey>();
+
+    /**
+     * the call sites whose targets were resolved, or null if there are none
+     */
+    private Set<Pair<CGNode, CallSiteReference>> calls;
+  }
+
   public PropagationSystem(CallGraph cg, PointerKeyFactory pointerKeyFactory, InstanceKeyFactory instanceKeyFactory) {
     if (cg == null) {
       throw new IllegalArgumentException("null cg");
@@ -267,6 +385,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     PointsToSetVariable result = pointsToMap.getPointsToSet(key);
     if (result == null) {
       result = new PointsToSetVariable(key);
+      if (deltaPropagation) {
+        result.trackAdditions();
+      }
       pointsToMap.put(key, result);
     } else {
       // check that the filter for this variable remains unique
@@ -299,6 +420,232 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return result;
   }
 
+  /**
+   * @param recordWrites if true, record what each writer adds to this system, so that it can be retracted later
+   * @see #findRetracted(Collection, Set, Set)
+   */
+  public void setRecordWrites(boolean recordWrites) {
+    if (recordWrites) {
+      writes = HashMapFactory.make();
+      sideEffectWriters = HashMapFactory.make();
+    } else {
+      writes = null;
+      sideEffectWriters = null;
+    }
+  }
+
+  public boolean isRecordingWrites() {
+    return writes != null;
+  }
+
+  /**
+   * Set the writer on whose behalf constraints are added from now on: a call graph node, or null for none.
+   * 
+   * @return the previous writer
+   */
+  public Object setWriter(Object writer) {
+    Object result = this.writer;
+    this.writer = writer;
+    return result;
+  }
+
+  private Writes findOrCreateWrites() {
+    Writes result = writes.get(writer);
+    if (result == null) {
+      result = new Writes();
+      writes.put(writer, result);
+    }
+    return result;
+  }
+
+  private void recordStatement(AbstractStatement<PointsToSetVariable, ?> s) {
+    findOrCreateWrites().statements.add(s);
+  }
+
+  private void recordSideEffect(AbstractStatement<PointsToSetVariable, ?> s) {
+    recordStatement(s);
+    if (!sideEffectWriters.containsKey(s)) {
+      sideEffectWriters.put(s, writer);
+    }
+  }
+
+  /**
+   * Record that the current writer resolved the targets of a call site, so that the call is removed from the call graph if the
+   * writer is retracted.
+   */
+  public void recordCall(CGNode caller, CallSiteReference site) {
+    if (writes != null) {
+      Writes w = findOrCreateWrites();
+      if (w.calls == null) {
+        w.calls = HashSetFactory.make();
+      }
+      w.calls.add(Pair.make(caller, site));
+    }
+  }
+
+  /**
+   * Find what retracting some writers invalidates. The points-to sets that a retracted writer wrote may lose elements, and so may
+   * the sets those flow into, and the side effects it added are retracted with it. A side effect that uses a set which may lose
+   * elements is retracted too, so that it is evaluated again from scratch; if its operator is not an {@link IRetractableOperator},
+   * the writer which added it is retracted instead.
+   * 
+   * @param writers the writers to retract
+   * @param retracted the writers retracted so far, to which the writers found are added
+   * @param invalid the points-to sets found so far that may lose elements, to which the sets found are added
+   */
+  void findRetracted(Collection<?> writers, Set<Object> retracted, Set<PointsToSetVariable> invalid) {
+    ArrayList<Object> work = new ArrayList<Object>();
+    for (Object w : writers) {
+      retract(w, retracted, work);
+    }
+    ArrayList<PointsToSetVariable> vars = new ArrayList<PointsToSetVariable>();
+    while (!work.isEmpty() || !vars.isEmpty()) {
+      if (!work.isEmpty()) {
+        Writes w = writes.get(work.remove(work.size() - 1));
+        if (w != null) {
+          for (AbstractStatement<PointsToSetVariable, ?> s : w.statements) {
+            if (s.getLHS() != null) {
+              invalidate((PointsToSetVariable) s.getLHS(), invalid, vars);
+            } else {
+              retract(s, retracted, work);
+            }
+          }
+          for (PointerKey key : w.keys) {
+            invalidate(pointsToMap.getPointsToSet(key), invalid, vars);
+          }
+        }
+      } else {
+        PointsToSetVariable v = vars.remove(vars.size() - 1);
+        for (Iterator<AbstractStatement> it = flowGraph.getStatementsThatUse(v); it.hasNext();) {
+          AbstractStatement s = it.next();
+          if (s.getLHS() != null) {
+            invalidate((PointsToSetVariable) s.getLHS(), invalid, vars);
+          } else if (s.getOperator() instanceof IRetractableOperator) {
+            retract(s, retracted, work);
+          } else {
+            // a side effect added on behalf of no writer stays, and is evaluated again as its arguments grow back
+            Object owner = sideEffectWriters.get(s);
+            if (owner != null) {
+              retract(owner, retracted, work);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return s, which is a statement of this system, and so a statement over points-to sets
+   */
+  @SuppressWarnings("unchecked")
+  private static AbstractStatement<PointsToSetVariable, ?> asStatement(Object s) {
+    return (AbstractStatement<PointsToSetVariable, ?>) s;
+  }
+
+  private static void retract(Object writer, Set<Object> retracted, List<Object> work) {
+    if (writer != null && retracted.add(writer)) {
+      work.add(writer);
+    }
+  }
+
+  private static void invalidate(PointsToSetVariable v, Set<PointsToSetVariable> invalid, List<PointsToSetVariable> vars) {
+    if (v != null && invalid.add(v)) {
+      vars.add(v);
+    }
+  }
+
+  /**
+   * Retract what some writers added, and empty the points-to sets which may have lost elements. The remaining constraints which
+   * define those sets are put on the work list, and so are the retracted side effects which remain, having forgotten what they
+   * processed, so that the next {@link #solve(IProgressMonitor)} computes the sets again; the constraints of retracted call graph
+   * nodes must be added again, as far as the nodes remain reachable.
+   * 
+   * @param retracted the writers to retract, as found by {@link #findRetracted(Collection, Set, Set)}
+   * @param invalid the points-to sets which may lose elements, as found by {@link #findRetracted(Collection, Set, Set)}
+   * @return the calls which only the retracted writers resolved, to be removed from the call graph
+   */
+  Set<Pair<CGNode, CallSiteReference>> retract(Set<Object> retracted, Set<PointsToSetVariable> invalid) {
+    Set<AbstractStatement<PointsToSetVariable, ?>> removed = HashSetFactory.make();
+    Set<Pair<CGNode, CallSiteReference>> calls = HashSetFactory.make();
+    for (Object r : retracted) {
+      Writes w = writes.remove(r);
+      if (w != null) {
+        removed.addAll(w.statements);
+        if (w.calls != null) {
+          calls.addAll(w.calls);
+        }
+      }
+    }
+    // keep what another writer added as well
+    for (Writes w : writes.values()) {
+      removed.removeAll(w.statements);
+      if (w.calls != null) {
+        calls.removeAll(w.calls);
+      }
+    }
+    for (AbstractStatement<PointsToSetVariable, ?> s : removed) {
+      // a side effect may already have been removed as fixed
+      if (flowGraph.containsStatement(s)) {
+        flowGraph.removeStatement(s);
+      }
+      if (s.getLHS() == null) {
+        sideEffectWriters.remove(s);
+      }
+    }
+
+    for (PointsToSetVariable v : invalid) {
+      v.removeAll();
+    }
+    for (Writes w : writes.values()) {
+      for (int i = 0; i < w.keys.size(); i++) {
+        PointsToSetVariable v = pointsToMap.getPointsToSet(w.keys.get(i));
+        if (invalid.contains(v)) {
+          addInstance(v, w.instances.get(i));
+        }
+      }
+    }
+    for (PointsToSetVariable v : invalid) {
+      for (Iterator<AbstractStatement> it = flowGraph.getStatementsThatDef(v); it.hasNext();) {
+        addToWorkList(it.next());
+      }
+    }
+    for (Object r : retracted) {
+      // a side effect which remains in the flow graph is evaluated again from scratch
+      if (r instanceof AbstractStatement && flowGraph.containsStatement(asStatement(r))) {
+        AbstractStatement<PointsToSetVariable, ?> s = flowGraph.findExplicitStatement(asStatement(r));
+        if (s.getOperator() instanceof IRetractableOperator) {
+          ((IRetractableOperator) s.getOperator()).forgetHistory();
+          addToWorkList(s);
+        }
+      }
+    }
+    return calls;
+  }
+
+  /**
+   * Forget the pointer keys local to some call graph nodes which no constraint uses and which point to nothing, so that they name
+   * no points-to set until a constraint uses them again. This includes the keys represented implicitly, since the IR of a changed
+   * method may define them differently.
+   */
+  void forgetPointerKeys(Set<CGNode> nodes) {
+    for (PointerKey key : Iterator2Collection.toList(pointsToMap.iterateKeys())) {
+      if (key instanceof AbstractLocalPointerKey && nodes.contains(((AbstractLocalPointerKey) key).getNode())) {
+        if (pointsToMap.isImplicit(key)) {
+          pointsToMap.remove(key);
+        } else {
+          PointsToSetVariable v = pointsToMap.getPointsToSet(key);
+          if (v != null && v.size() == 0 && flowGraph.getNumberOfStatementsThatDef(v) == 0
+              && flowGraph.getNumberOfStatementsThatUse(v) == 0) {
+            if (flowGraph.containsVariable(v)) {
+              flowGraph.removeVariable(v);
+            }
+            pointsToMap.remove(key);
+          }
+        }
+      }
+    }
+  }
+
   public int findOrCreateIndexForInstanceKey(InstanceKey key) {
     int result = instanceKeys.getMappedIndex(key);
     if (result == -1) {
@@ -341,6 +688,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
             + lhs.getClass());
       }
     }
+    if (writes != null) {
+      recordStatement(op.makeEquation(L, R));
+    }
     return newStatement(L, op, R, true, true);
   }
 
@@ -357,11 +707,15 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs);
+    assert !isUnexpectedlyUnified(lhs);
+    assert !isUnexpectedlyUnified(rhs);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R = findOrCreatePointsToSet(rhs);
-    return newStatement(L, op, new PointsToSetVariable[] { R }, true, true);
+    PointsToSetVariable[] rhsVars = new PointsToSetVariable[] { R };
+    if (writes != null) {
+      recordStatement(new Statement(L, op, rhsVars));
+    }
+    return newStatement(L, op, rhsVars, true, true);
   }
 
   public boolean newConstraint(PointerKey lhs, AbstractOperator<PointsToSetVariable> op, PointerKey rhs1, PointerKey rhs2) {
@@ -380,12 +734,15 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs1 + ", " + rhs2);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs1);
-    assert !pointsToMap.isUnified(rhs2);
+    assert !isUnexpectedlyUnified(lhs);
+    assert !isUnexpectedlyUnified(rhs1);
+    assert !isUnexpectedlyUnified(rhs2);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R1 = findOrCreatePointsToSet(rhs1);
     PointsToSetVariable R2 = findOrCreatePointsToSet(rhs2);
+    if (writes != null) {
+      recordStatement(new Statement(L, op, R1, R2));
+    }
     return newStatement(L, op, R1, R2, true, true);
   }
 
@@ -411,17 +768,29 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
       System.err.println("Add constraint B: " + lhs + " U= " + value);
     }
     pointsToMap.recordTransitiveRoot(lhs);
+    if (writes != null) {
+      Writes w = findOrCreateWrites();
+      w.keys.add(lhs);
+      w.instances.add(value);
+    }
 
     // we don't actually add a constraint.
     // instead, we immediately add the value to the points-to set.
     // This works since the solver is monotonic with TOP = {}
-    PointsToSetVariable L = findOrCreatePointsToSet(lhs);
+    return addInstance(findOrCreatePointsToSet(lhs), value);
+  }
+
+  private boolean addInstance(PointsToSetVariable L, InstanceKey value) {
     int index = findOrCreateIndexForInstanceKey(value);
     if (L.contains(index)) {
       // a no-op
       return false;
     } else {
       L.add(index);
+      if (sharedSets != null && L.size() == 1) {
+        // the singletons of each instance key are common, and seed the sharing of the sets they flow into
+        L.share(sharedSets);
+      }
 
       // also register that we have an instanceKey for the klass
       assert value.getConcreteType() != null;
@@ -435,6 +804,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
       // variable.
       if (L.getGraphNodeId() > -1) {
         changedVariable(L);
+      } else {
+        // any statement added later that uses L will be evaluated against all of L
+        L.takeAdditions();
       }
       return true;
     }
@@ -567,8 +939,11 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
+    assert !isUnexpectedlyUnified(arg0);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
+    if (writes != null) {
+      recordSideEffect(op.makeEquation(null, v1));
+    }
     newStatement(null, op, v1, true, true);
   }
 
@@ -581,9 +956,12 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable[] vs = new PointsToSetVariable[ arg0.length ];
     for(int i = 0; i < arg0.length; i++) {
-      assert !pointsToMap.isUnified(arg0[i]);
+      assert !isUnexpectedlyUnified(arg0[i]);
       vs[i] = findOrCreatePointsToSet(arg0[i]);
     }
+    if (writes != null) {
+      recordSideEffect(new Statement(null, op, vs));
+    }
     newStatement(null, op, vs, true, true);
   }
 
@@ -591,10 +969,13 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
-    assert !pointsToMap.isUnified(arg1);
+    assert !isUnexpectedlyUnified(arg0);
+    assert !isUnexpectedlyUnified(arg1);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     PointsToSetVariable v2 = findOrCreatePointsToSet(arg1);
+    if (writes != null) {
+      recordSideEffect(new Statement(null, op, v1, v2));
+    }
     newStatement(null, op, v1, v2, true, true);
   }
 
@@ -763,6 +1144,534 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     this.periodicMaintainInterval = periodicMaintainInteval;
   }
 
+  /**
+   * @return the number of threads used to evaluate assignment equations
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism the number of threads used to evaluate assignment equations; 1 means solve sequentially
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public boolean isDeltaPropagation() {
+    return deltaPropagation;
+  }
+
+  /**
+   * Turn difference propagation on or off. This only affects points-to sets created afterwards, so set it before adding any
+   * constraints.
+   * 
+   * @param deltaPropagation if true, propagate only the elements newly added to each points-to set along assignments and filters
+   */
+  public void setDeltaPropagation(boolean deltaPropagation) {
+    this.deltaPropagation = deltaPropagation;
+  }
+
+  /**
+   * With difference propagation, a change to v schedules a single statement which later pushes the new elements of v to the
+   * statements that use it; see {@link #propagateAdditions(PointsToSetVariable, IntSet, Inflows)}.
+   */
+  @Override
+  public void changedVariable(PointsToSetVariable v) {
+    if (sharedSets != null && v.getGraphNodeId() > -1) {
+      changedSinceSharing.set(v.getGraphNodeId());
+    }
+    if (v.isTrackingAdditions()) {
+      addToWorkList(deltaOperator.makeEquation(v, v));
+    } else {
+      super.changedVariable(v);
+    }
+  }
+
+  /**
+   * Propagate the elements newly added to v along the assignments and filters that use v. Since these operators distribute over
+   * union, it suffices to apply them to the delta rather than to all of v. Other statements that use v are added to the work list,
+   * to be evaluated against the full value of v.
+   * 
+   * @param inflows if non-null, defer the assignments by recording them here instead of evaluating them
+   */
+  private void propagateAdditions(PointsToSetVariable v, IntSet delta, Inflows inflows) {
+    PointsToSetVariable deltaVariable = null;
+    for (Iterator<AbstractStatement> it = flowGraph.getStatementsThatUse(v); it.hasNext();) {
+      AbstractStatement s = it.next();
+      if (s instanceof AssignEquation) {
+        PointsToSetVariable L = ((AssignEquation) s).getLHS();
+        if (inflows != null) {
+          inflows.add(L, delta);
+        } else {
+          incNumberOfEvaluations();
+          if (L.addAll(delta)) {
+            changedVariable(L);
+          }
+        }
+        noteAssignment((AssignEquation) s);
+      } else if (s.getOperator() instanceof FilterOperator) {
+        if (deltaVariable == null) {
+          deltaVariable = new PointsToSetVariable(v.getPointerKey());
+          deltaVariable.addAll(delta);
+        }
+        PointsToSetVariable L = (PointsToSetVariable) s.getLHS();
+        incNumberOfEvaluations();
+        if (isChanged(((FilterOperator) s.getOperator()).evaluate(L, deltaVariable))) {
+          changedVariable(L);
+        }
+      } else {
+        addToWorkList(s);
+      }
+    }
+  }
+
+  /**
+   * The operator for a statement v := Delta(v), which propagates the elements newly added to v. Changes are reported directly to the
+   * variables that use v, so the statement itself never changes.
+   */
+  private final class DeltaOperator extends UnaryOperator<PointsToSetVariable> {
+
+    @Override
+    public byte evaluate(PointsToSetVariable lhs, PointsToSetVariable rhs) {
+      IntSet delta = rhs.takeAdditions();
+      if (delta != null) {
+        propagateAdditions(rhs, delta, null);
+      }
+      return NOT_CHANGED;
+    }
+
+    @Override
+    public String toString() {
+      return "Delta";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+      return 9811;
+    }
+  }
+
+  public boolean isOnlineCycleDetection() {
+    return onlineCycleDetection;
+  }
+
+  /**
+   * @param onlineCycleDetection if true, look for cycles of assignments while solving, and unify the points-to sets on each cycle
+   *          found
+   */
+  public void setOnlineCycleDetection(boolean onlineCycleDetection) {
+    this.onlineCycleDetection = onlineCycleDetection;
+  }
+
+  /**
+   * @param share if true, hash-cons the singleton and the stabilized points-to sets while solving, and all points-to sets after each
+   *          pass of the solver, so that equal points-to sets share one copy until one of them changes, and the unions of shared sets
+   *          are memoized
+   */
+  public void setSharePointsToSets(boolean share) {
+    if (!share) {
+      sharedSets = null;
+    } else if (sharedSets == null) {
+      sharedSets = new IntSetRepository();
+    }
+  }
+
+  /**
+   * @return the repository of the shared points-to sets, or null if they are not shared
+   */
+  public IntSetRepository getSharedPointsToSets() {
+    return sharedSets;
+  }
+
+  /**
+   * Hash-cons the values of the points-to sets in the system, and let the repository forget the sets that no points-to set holds any
+   * more.
+   * 
+   * @param stableOnly if true, share only the sets which have not changed since the last round of sharing
+   */
+  private void sharePointsToSets(boolean stableOnly) {
+    Set<IntSetRepository.SharedSet> live = Collections.newSetFromMap(new IdentityHashMap<IntSetRepository.SharedSet, Boolean>());
+    for (Iterator<PointerKey> it = pointsToMap.iterateKeys(); it.hasNext();) {
+      PointerKey key = it.next();
+      if (pointsToMap.isImplicit(key)) {
+        continue;
+      }
+      PointsToSetVariable v = pointsToMap.getPointsToSet(pointsToMap.getIndex(key));
+      if (v == null) {
+        continue;
+      }
+      if (!stableOnly || (v.getGraphNodeId() > -1 && !changedSinceSharing.get(v.getGraphNodeId()))) {
+        v.share(sharedSets);
+      }
+      if (v.isShared()) {
+        live.add(v.getSharedSet());
+      }
+    }
+    sharedSets.retainAll(live);
+    changedSinceSharing.clearAll();
+    evaluationsSinceSharing = 0;
+  }
+
+  /**
+   * Every {@link #EVALUATIONS_BETWEEN_SHARING} evaluations, share the points-to sets that have stabilized. A set that has not changed
+   * for a while is likely to keep its value, so sharing it seldom costs a copy; and the assignments between shared sets then go
+   * through the union cache of the repository.
+   */
+  private void shareStablePointsToSets(int evaluations) {
+    if (sharedSets != null) {
+      evaluationsSinceSharing += evaluations;
+      if (evaluationsSinceSharing >= EVALUATIONS_BETWEEN_SHARING) {
+        sharePointsToSets(true);
+      }
+    }
+  }
+
+  /**
+   * @return the number of points-to sets unified away by online cycle detection
+   */
+  public int getNumberOfCollapsedVariables() {
+    return numberOfCollapsedVariables;
+  }
+
+  /**
+   * Skip statements that were removed from the system when their variables were unified, and then look for cycles through the
+   * assignments evaluated.
+   */
+  @Override
+  protected boolean evaluateStatement(AbstractStatement s) {
+    if (isRetired(s)) {
+      return false;
+    }
+    boolean result;
+    if (writes != null && s.getLHS() == null) {
+      // a side effect is the writer of whatever it adds
+      Object previous = setWriter(s);
+      try {
+        result = super.evaluateStatement(s);
+      } finally {
+        setWriter(previous);
+      }
+    } else {
+      result = super.evaluateStatement(s);
+    }
+    if (s instanceof AssignEquation) {
+      noteAssignment((AssignEquation) s);
+    }
+    collapseCycles();
+    shareStablePointsToSets(1);
+    return result;
+  }
+
+  /**
+   * @return true iff s was removed from the flow graph by unification; s may still be on the work list
+   */
+  private boolean isRetired(AbstractStatement s) {
+    return numberOfCollapsedVariables > 0 && s.getOperator() != deltaOperator && !flowGraph.containsStatement(asStatement(s));
+  }
+
+  private void noteAssignment(AssignEquation eq) {
+    if (onlineCycleDetection) {
+      cycleCandidates.add(eq);
+    }
+  }
+
+  /**
+   * Lazy cycle detection: if an assignment L := R leaves L and R with the same (non-empty) points-to set, then L and R are likely to
+   * lie on a cycle. In that case, search for the cycle, and unify the variables on it. Each assignment triggers at most one search.
+   */
+  private void collapseCycles() {
+    if (cycleCandidates.isEmpty()) {
+      return;
+    }
+    List<AssignEquation> candidates = new ArrayList<AssignEquation>(cycleCandidates);
+    cycleCandidates.clear();
+    for (AssignEquation eq : candidates) {
+      PointsToSetVariable L = eq.getLHS();
+      PointsToSetVariable R = eq.getRightHandSide();
+      if (L == R || !isCollapsible(L) || !isCollapsible(R)) {
+        continue;
+      }
+      IntSet lv = L.getValue();
+      IntSet rv = R.getValue();
+      if (lv == null || rv == null || lv.isEmpty() || lv.size() != rv.size()) {
+        continue;
+      }
+      if (checkedForCycles.contains(eq) || !flowGraph.containsStatement(eq) || !lv.sameValue(rv)) {
+        continue;
+      }
+      checkedForCycles.add(eq);
+      Collection<PointsToSetVariable> cycle = findCycle(L, R);
+      if (cycle != null) {
+        unifyCycle(cycle);
+      }
+    }
+  }
+
+  /**
+   * @return the variables on the strongly connected component of the assignment graph that holds L and R, or null if R is not
+   *         reachable from L
+   */
+  private Collection<PointsToSetVariable> findCycle(PointsToSetVariable L, final PointsToSetVariable R) {
+    NumberedGraph<PointsToSetVariable> G = flowGraph.getAssignmentGraph();
+    Collection<PointsToSetVariable> roots = Collections.singleton(L);
+    final Collection<PointsToSetVariable> forward = DFS.getReachableNodes(G, roots, new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        return isCollapsible(v);
+      }
+    });
+    if (!forward.contains(R)) {
+      return null;
+    }
+    return DFS.getReachableNodes(GraphInverter.invert(G), roots, new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        return forward.contains(v);
+      }
+    });
+  }
+
+  /**
+   * Unify the variables on a cycle of assignments, and then re-evaluate every statement that uses the representative, since
+   * unification moves statements that used other variables on the cycle onto the representative.
+   */
+  private void unifyCycle(Collection<PointsToSetVariable> cycle) {
+    MutableIntSet s = IntSetUtil.make();
+    for (PointsToSetVariable v : cycle) {
+      s.add(pointsToMap.getIndex(v.getPointerKey()));
+      // the statements that use the representative are all re-evaluated below
+      v.takeAdditions();
+    }
+    unify(s);
+    numberOfCollapsedVariables += cycle.size() - 1;
+    PointsToSetVariable rep = pointsToMap.getPointsToSet(s.intIterator().next());
+    rep.takeAdditions();
+    for (Iterator<AbstractStatement> it = flowGraph.getStatementsThatUse(rep); it.hasNext();) {
+      addToWorkList(it.next());
+    }
+  }
+
+  /**
+   * May the points-to set v be unified with others by online cycle detection? We must not unify a variable that has, or may later
+   * get, a type filter, since the filter governs the statements that define it. So, we exclude filtered variables and method
+   * parameters, which receive filters from dispatch; other locals receive their filters when the constraints for their method are
+   * generated, before they appear on any cycle.
+   */
+  private static boolean isCollapsible(PointsToSetVariable v) {
+    PointerKey key = v.getPointerKey();
+    if (key instanceof FilteredPointerKey) {
+      return false;
+    } else if (key instanceof LocalPointerKey) {
+      return !((LocalPointerKey) key).isParameter();
+    } else {
+      return key instanceof ReturnValueKey || key instanceof InstanceFieldKey || key instanceof ArrayContentsKey
+          || key instanceof StaticFieldKey;
+    }
+  }
+
+  /**
+   * Solve the system, in parallel waves if {@link #getParallelism()} is greater than one; then share all the points-to sets, if
+   * {@link #setSharePointsToSets(boolean)}.
+   */
+  @Override
+  public boolean solve(IProgressMonitor monitor) throws CancelException {
+    boolean result = (parallelism <= 1) ? super.solve(monitor) : solveInWaves(monitor);
+    if (sharedSets != null) {
+      sharePointsToSets(false);
+    }
+    return result;
+  }
+
+  /**
+   * Solve the system in waves. Each wave drains the work list, evaluates the {@link AssignEquation}s concurrently, and then
+   * evaluates the remaining statements sequentially, since those may add new constraints or instance keys to the system. Since all
+   * operators are monotone, the chaotic iteration reaches the same least fixed point as the sequential solver.
+   */
+  private boolean solveInWaves(IProgressMonitor monitor) throws CancelException {
+    if (isFirstSolve()) {
+      initForFirstSolve();
+    }
+    boolean globalChange = false;
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      while (!workList.isEmpty()) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        orderStatements();
+
+        ArrayList<AbstractStatement> assignments = new ArrayList<AbstractStatement>();
+        ArrayList<AbstractStatement> others = new ArrayList<AbstractStatement>();
+        while (!workList.isEmpty()) {
+          AbstractStatement s = workList.takeStatement();
+          if (s instanceof AssignEquation || s.getOperator() == deltaOperator) {
+            assignments.add(s);
+          } else {
+            others.add(s);
+          }
+        }
+
+        if (assignments.size() < MIN_ASSIGNMENTS_FOR_PARALLEL_WAVE) {
+          for (AbstractStatement s : assignments) {
+            globalChange |= evaluateStatement(s);
+          }
+        } else {
+          Inflows inflows = new Inflows();
+          for (AbstractStatement s : assignments) {
+            PointsToSetVariable L = (PointsToSetVariable) s.getLHS();
+            if (s instanceof AssignEquation) {
+              if (isRetired(s)) {
+                continue;
+              }
+              incNumberOfEvaluations();
+              IntSet value = ((AssignEquation) s).getRightHandSide().getValue();
+              if (value != null) {
+                inflows.add(L, value);
+              }
+              noteAssignment((AssignEquation) s);
+            } else {
+              // a Delta statement: the filters are evaluated here, and the assignments are deferred to the parallel phase
+              IntSet delta = L.takeAdditions();
+              if (delta != null) {
+                propagateAdditions(L, delta, inflows);
+              }
+            }
+          }
+          globalChange |= evaluateInParallel(pool, inflows);
+          collapseCycles();
+          shareStablePointsToSets(assignments.size());
+        }
+        for (AbstractStatement s : others) {
+          globalChange |= evaluateStatement(s);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return globalChange;
+  }
+
+  /**
+   * The sets that flow into each variable during one parallel wave, grouped by variable so that each variable is owned by exactly one
+   * task.
+   */
+  private static final class Inflows {
+    private final List<PointsToSetVariable> lhs = new ArrayList<PointsToSetVariable>();
+
+    private final Map<PointsToSetVariable, List<IntSet>> sources = HashMapFactory.make();
+
+    void add(PointsToSetVariable L, IntSet value) {
+      List<IntSet> S = sources.get(L);
+      if (S == null) {
+        S = new ArrayList<IntSet>(1);
+        sources.put(L, S);
+        lhs.add(L);
+      }
+      S.add(value);
+    }
+  }
+
+  /**
+   * Evaluate a batch of assignments on a thread pool, in two phases separated by a barrier. In the first phase, each task reads the
+   * sets that flow into the variables it owns, and computes the elements to add to each. In the second phase, each task adds these
+   * elements to the variables it owns. So, no variable is ever read and written concurrently.
+   * 
+   * @return true iff the value of some variable changed
+   */
+  private boolean evaluateInParallel(ExecutorService pool, Inflows inflows) throws CancelException {
+    final List<PointsToSetVariable> lhs = inflows.lhs;
+    final Map<PointsToSetVariable, List<IntSet>> rhs = inflows.sources;
+
+    final MutableIntSet[] deltas = new MutableIntSet[lhs.size()];
+    final boolean[] changed = new boolean[lhs.size()];
+    int chunk = (lhs.size() + parallelism - 1) / parallelism;
+
+    // phase 1: compute what flows into each variable
+    List<Callable<Object>> readers = new ArrayList<Callable<Object>>(parallelism);
+    for (int start = 0; start < lhs.size(); start += chunk) {
+      final int from = start;
+      final int to = Math.min(start + chunk, lhs.size());
+      readers.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          for (int i = from; i < to; i++) {
+            PointsToSetVariable L = lhs.get(i);
+            MutableIntSet delta = null;
+            for (IntSet value : rhs.get(L)) {
+              if (value.isEmpty()) {
+                continue;
+              }
+              if (delta == null) {
+                delta = IntSetUtil.getDefaultIntSetFactory().makeCopy(value);
+              } else {
+                delta.addAll(value);
+              }
+            }
+            deltas[i] = delta;
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(pool, readers);
+
+    // phase 2: update each variable from its delta
+    List<Callable<Object>> writers = new ArrayList<Callable<Object>>(parallelism);
+    for (int start = 0; start < lhs.size(); start += chunk) {
+      final int from = start;
+      final int to = Math.min(start + chunk, lhs.size());
+      writers.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          for (int i = from; i < to; i++) {
+            if (deltas[i] != null) {
+              changed[i] = lhs.get(i).addAll(deltas[i]);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(pool, writers);
+
+    // back on the solver thread: update the work list
+    boolean result = false;
+    for (int i = 0; i < lhs.size(); i++) {
+      if (changed[i]) {
+        result = true;
+        changedVariable(lhs.get(i));
+      }
+    }
+    return result;
+  }
+
+  private static void invokeAll(ExecutorService pool, List<Callable<Object>> tasks) throws CancelException {
+    try {
+      for (Future<Object> f : pool.invokeAll(tasks)) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw CancelException.make("interrupted during parallel propagation");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
   /**
    * Unify the points-to-sets for the variables identified by the set s
    * 
@@ -905,6 +1814,14 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return pointsToMap.isUnified(result);
   }
 
+  /**
+   * Clients should not add constraints over points-to sets they have unified away. Online cycle detection unifies points-to sets
+   * behind their backs, though; then the constraint applies to the representative.
+   */
+  private boolean isUnexpectedlyUnified(PointerKey key) {
+    return !onlineCycleDetection && pointsToMap.isUnified(key);
+  }
+
   public int getNumber(PointerKey p) {
     return pointsToMap.getIndex(p);
   }
@@ -18,6 +18,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.ibm.wala.analysis.reflection.CloneInterpreter;
 import com.ibm.wala.cfg.ControlFlowGraph;
@@ -33,9 +35,12 @@ import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
 import com.ibm.wala.ipa.callgraph.ContextKey;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
 import com.ibm.wala.ipa.callgraph.impl.FakeRootMethod;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -154,6 +159,17 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
 
   public IProgressMonitor monitor;
 
+  /**
+   * background threads that build the IRs of newly discovered nodes, so that they are cached by the time the solver thread adds
+   * constraints for the nodes; null unless {@link AnalysisOptions#getIRPrefetchThreads()} is positive
+   */
+  private ExecutorService irPrefetcher;
+
+  /**
+   * methods whose IRs have been handed to the irPrefetcher; accessed only by the solver thread
+   */
+  private final Set<IMethod> prefetched = HashSetFactory.make();
+
   protected SSAPropagationCallGraphBuilder(IClassHierarchy cha, AnalysisOptions options, AnalysisCache cache,
       PointerKeyFactory pointerKeyFactory) {
     super(cha, options, cache, pointerKeyFactory);
@@ -164,6 +180,107 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     return (SSAContextInterpreter) getContextInterpreter();
   }
 
+  @Override
+  public CallGraph makeCallGraph(AnalysisOptions options, IProgressMonitor monitor) throws IllegalArgumentException,
+      CallGraphBuilderCancelException {
+    startIRPrefetcher(options);
+    try {
+      return super.makeCallGraph(options, monitor);
+    } finally {
+      stopIRPrefetcher();
+    }
+  }
+
+  /**
+   * Update the call graph and pointer analysis after the code of some methods changed. The constraints of the nodes of the changed
+   * methods are retracted, and so are the side effects which the retraction may take elements from, and the nodes it makes
+   * unreachable; only these are evaluated or added again, and only the points-to sets they may shrink are solved again. The result is
+   * the same as that of building a new call graph, except that the class initializers called before the change remain reachable.
+   * 
+   * The IRs of the changed methods are dropped from the {@link AnalysisCache}, so that they are built again from the new code. The
+   * call graph must have been built with {@link AnalysisOptions#getSupportIncrementalUpdates()} set; it is updated in place, and nodes
+   * of methods no longer reachable are removed from it.
+   * 
+   * @param changed the methods whose code changed
+   * @throws IllegalStateException if no call graph that supports updates has been built
+   */
+  public CallGraph updateCallGraph(AnalysisOptions options, Collection<IMethod> changed, IProgressMonitor monitor)
+      throws IllegalArgumentException, CallGraphBuilderCancelException {
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
+    }
+    if (changed == null) {
+      throw new IllegalArgumentException("changed is null");
+    }
+    if (system == null || !system.isRecordingWrites()) {
+      throw new IllegalStateException("no call graph built with incremental updates supported");
+    }
+    for (IMethod m : changed) {
+      getAnalysisCache().invalidate(m, Everywhere.EVERYWHERE);
+    }
+    Set<IMethod> changedMethods = HashSetFactory.make(changed);
+    Set<CGNode> changedNodes = HashSetFactory.make();
+    for (CGNode n : callGraph) {
+      if (changedMethods.contains(n.getMethod())) {
+        changedNodes.add(n);
+        getAnalysisCache().invalidate(n.getMethod(), n.getContext());
+        ((ExplicitCallGraph.ExplicitNode) n).clearIR();
+      }
+    }
+
+    startIRPrefetcher(options);
+    try {
+      return updateNodes(changedNodes, monitor);
+    } finally {
+      stopIRPrefetcher();
+    }
+  }
+
+  private void startIRPrefetcher(AnalysisOptions options) {
+    if (options != null && options.getIRPrefetchThreads() > 0) {
+      irPrefetcher = Executors.newFixedThreadPool(options.getIRPrefetchThreads());
+    }
+  }
+
+  private void stopIRPrefetcher() {
+    if (irPrefetcher != null) {
+      irPrefetcher.shutdownNow();
+      irPrefetcher = null;
+    }
+    prefetched.clear();
+  }
+
+  @Override
+  public void markDiscovered(CGNode node) {
+    super.markDiscovered(node);
+    if (irPrefetcher != null) {
+      prefetchIR(node.getMethod());
+    }
+  }
+
+  /**
+   * Build the IR and DefUse of a method on a background thread. The SSA cache builds each IR at most once at a time, so if the
+   * solver thread asks for the IR while it is being built, it waits for the background thread and then uses its result.
+   * 
+   * We only prefetch the IRs that the default interpreters cache, under the {@link Everywhere} context; interpreters which build
+   * special IRs for some nodes simply don't find them.
+   */
+  private void prefetchIR(final IMethod method) {
+    if (method.isSynthetic() || method.isAbstract() || method.isNative() || !prefetched.add(method)) {
+      return;
+    }
+    irPrefetcher.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          getAnalysisCache().getSSACache().findOrCreateDU(method, Everywhere.EVERYWHERE, options.getSSAOptions());
+        } catch (Throwable e) {
+          // ignore; the solver thread builds the IR again when it needs it, and reports the failure then
+        }
+      }
+    });
+  }
+
   /**
    * @param node
    * @param x
@@ -226,10 +343,15 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
       return false;
     }
 
-    addNodeInstructionConstraints(node, monitor);
+    Object writer = system.setWriter(node);
+    try {
+      addNodeInstructionConstraints(node, monitor);
 
-    DefUse du = getCFAContextInterpreter().getDU(node);
-    addNodePassthruExceptionConstraints(node, ir, du);
+      DefUse du = getCFAContextInterpreter().getDU(node);
+      addNodePassthruExceptionConstraints(node, ir, du);
+    } finally {
+      system.setWriter(writer);
+    }
     // conservatively assume something changed
     return true;
   }
@@ -1433,7 +1555,13 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
           if (target != null && callGraph.getPredNodeCount(target) == 0) {
             SSAAbstractInvokeInstruction s = fakeWorldClinitMethod.addInvocation(new int[0], site);
             PointerKey uniqueCatch = getBuilder().getPointerKeyForExceptionalReturnValue(callGraph.getFakeRootNode());
-            getBuilder().processResolvedCall(callGraph.getFakeWorldClinitNode(), s, target, null, uniqueCatch);
+            // the node which found the class does not own the call: the class stays initialized when the node is retracted
+            Object writer = system.setWriter(null);
+            try {
+              getBuilder().processResolvedCall(callGraph.getFakeWorldClinitNode(), s, target, null, uniqueCatch);
+            } finally {
+              system.setWriter(writer);
+            }
           }
         }
       }
@@ -1467,6 +1595,7 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
       System.err.println("addTarget: " + caller + " ," + instruction + " , " + target);
     }
     caller.addTarget(instruction.getCallSite(), target);
+    system.recordCall(caller, instruction.getCallSite());
 
     if (FakeRootMethod.isFakeRootMethod(caller.getMethod().getReference())) {
       if (entrypointCallSites.contains(instruction.getCallSite())) {
@@ -1567,7 +1696,7 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
    * 
    * This operator will create a new callee context and constraints if necessary.
    */
-  final class DispatchOperator extends AbstractOperator<PointsToSetVariable> implements IPointerOperator {
+  final class DispatchOperator extends AbstractOperator<PointsToSetVariable> implements IPointerOperator, IRetractableOperator {
     private final SSAAbstractInvokeInstruction call;
 
     private final CGNode node;
@@ -1817,6 +1946,13 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     public boolean isComplex() {
       return true;
     }
+
+    @Override
+    public void forgetHistory() {
+      for (MutableIntSet s : previousPtrs) {
+        s.clear();
+      }
+    }
   }
 
   protected void iterateCrossProduct(final CGNode caller, final SSAAbstractInvokeInstruction call, IntSet parameters,
@@ -0,0 +1,539 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import com.ibm.wala.classLoader.ArrayClass;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.ContextItem;
+import com.ibm.wala.ipa.callgraph.ContextKey;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultPointerKeyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * A call graph and pointer analysis saved in a compact binary file, so that clients in other runs can query them without computing
+ * them again.
+ *
+ * {@link #write(CallGraph, PointerAnalysis, File)} saves the nodes of a call graph with their call sites, allocation sites and
+ * edges, and the pointer keys and instance keys of a pointer analysis with their points-to sets. {@link #read(File,
+ * IClassHierarchy, AnalysisOptions, AnalysisCache)} maps the file into memory and returns a view of it which decodes a node or key
+ * only when a client reaches it. Nodes, instance keys, pointer keys and strings each have a hash index in the file, so looking up a
+ * node or the points-to set of a key reads only the records involved.
+ *
+ * Nodes and keys are read back as the usual {@link CGNode}s, {@link InstanceKey}s and {@link PointerKey}s, resolved in the class
+ * hierarchy of the reading run, which must have the classes of the saved analysis. Contexts other than {@link Everywhere} and
+ * {@link ReceiverInstanceContext}, and keys of kinds other than the usual ones, are read back as opaque objects identified by
+ * their {@link Object#toString()}. The IRs of the nodes are built again when asked for, except for nodes of synthetic methods such
+ * as summaries of library methods, whose code is not saved and which have no IR.
+ *
+ * The call graph and pointer analysis read back cannot be changed, and like other pointer analyses they are not safe for
+ * concurrent use. Files are limited to 2GB.
+ */
+public class StoredAnalysis {
+
+  static final int MAGIC = 0x57414c43;
+
+  /**
+   * change this whenever the format changes; files in other formats are rejected
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The header is: {@link #MAGIC}, {@link #VERSION}, the number of call graph nodes, the number of the fake root node, and the
+   * offsets of the entrypoints and of the node, instance key, pointer key and string tables.
+   */
+  static final int HEADER_SIZE = 9;
+
+  private final ByteBuffer buffer;
+
+  private final IClassHierarchy cha;
+
+  private final AnalysisOptions options;
+
+  private final AnalysisCache cache;
+
+  final StoredTable nodes;
+
+  final StoredTable instanceKeys;
+
+  final StoredTable pointerKeys;
+
+  private final StoredTable strings;
+
+  private final String[] stringCache;
+
+  private final StoredCallGraph cg;
+
+  private final StoredPointerAnalysis pa;
+
+  /**
+   * numbers of the instance keys decoded so far
+   */
+  private final ObjectIntHashMap<InstanceKey> instanceKeyNumbers = new ObjectIntHashMap<InstanceKey>();
+
+  private final InstanceKey[] instanceKeyCache;
+
+  private final PointerKey[] pointerKeyCache;
+
+  /**
+   * makes the pointer keys of the usual kinds
+   */
+  private final PointerKeyFactory pointerKeyFactory = new DefaultPointerKeyFactory();
+
+  /**
+   * encodes the descriptors of queries, to look them up in the file
+   */
+  private final DescriptorEncoder lookup = new DescriptorEncoder() {
+    @Override
+    protected int string(String s) {
+      return strings.find(StoredAnalysisWriter.utf8(s));
+    }
+
+    @Override
+    protected int node(CGNode n) {
+      if (n instanceof StoredCallGraph.StoredNode && ((StoredCallGraph.StoredNode) n).getOwner() == cg) {
+        return n.getGraphNodeId();
+      }
+      return findNode(n.getMethod().getReference(), n.getContext());
+    }
+
+    @Override
+    protected int instanceKey(InstanceKey ik) {
+      return findInstanceKey(ik);
+    }
+  };
+
+  private StoredAnalysis(ByteBuffer buffer, IClassHierarchy cha, AnalysisOptions options, AnalysisCache cache) throws IOException {
+    this.buffer = buffer;
+    this.cha = cha;
+    this.options = options;
+    this.cache = cache;
+    if (buffer.capacity() < 4 * HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("not a stored analysis in format version " + VERSION);
+    }
+    nodes = new StoredTable(buffer, buffer.getInt(20));
+    instanceKeys = new StoredTable(buffer, buffer.getInt(24));
+    pointerKeys = new StoredTable(buffer, buffer.getInt(28));
+    strings = new StoredTable(buffer, buffer.getInt(32));
+    stringCache = new String[strings.size()];
+    instanceKeyCache = new InstanceKey[instanceKeys.size()];
+    pointerKeyCache = new PointerKey[pointerKeys.size()];
+    cg = new StoredCallGraph(this, buffer.getInt(8), buffer.getInt(12), buffer.getInt(16));
+    pa = new StoredPointerAnalysis(this);
+  }
+
+  /**
+   * Save a call graph and the pointer analysis it was built with, replacing the file if it exists.
+   *
+   * @throws IllegalArgumentException if the call graph has call sites of languages other than Java
+   */
+  public static void write(CallGraph cg, PointerAnalysis pa, File f) throws IOException {
+    if (cg == null) {
+      throw new IllegalArgumentException("cg is null");
+    }
+    if (pa == null) {
+      throw new IllegalArgumentException("pa is null");
+    }
+    if (f == null) {
+      throw new IllegalArgumentException("f is null");
+    }
+    new StoredAnalysisWriter(cg, pa).write(f);
+  }
+
+  /**
+   * Map a file written by {@link #write(CallGraph, PointerAnalysis, File)}.
+   *
+   * @param cha the class hierarchy to resolve the classes and methods of the saved analysis in
+   * @param options options to make the synthetic root methods of the call graph with
+   * @param cache cache of the IRs of the nodes
+   * @throws IOException if the file cannot be read, or is not in the current format
+   */
+  public static StoredAnalysis read(File f, IClassHierarchy cha, AnalysisOptions options, AnalysisCache cache) throws IOException {
+    if (f == null) {
+      throw new IllegalArgumentException("f is null");
+    }
+    if (cha == null) {
+      throw new IllegalArgumentException("cha is null");
+    }
+    if (options == null) {
+      throw new IllegalArgumentException("options is null");
+    }
+    if (cache == null) {
+      throw new IllegalArgumentException("cache is null");
+    }
+    RandomAccessFile file = new RandomAccessFile(f, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      // the mapping remains valid after the file is closed
+      return new StoredAnalysis(buffer, cha, options, cache);
+    } finally {
+      file.close();
+    }
+  }
+
+  public CallGraph getCallGraph() {
+    return cg;
+  }
+
+  public PointerAnalysis getPointerAnalysis() {
+    return pa;
+  }
+
+  IClassHierarchy getClassHierarchy() {
+    return cha;
+  }
+
+  AnalysisOptions getOptions() {
+    return options;
+  }
+
+  AnalysisCache getCache() {
+    return cache;
+  }
+
+  StoredCallGraph getStoredCallGraph() {
+    return cg;
+  }
+
+  int getInt(int offset) {
+    return buffer.getInt(offset);
+  }
+
+  String getString(int i) {
+    if (stringCache[i] == null) {
+      byte[] b = new byte[strings.descriptorLength(i)];
+      int p = strings.descriptor(i);
+      for (int k = 0; k < b.length; k++) {
+        b[k] = buffer.get(p + k);
+      }
+      try {
+        stringCache[i] = new String(b, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return stringCache[i];
+  }
+
+  /**
+   * @param offset offset of the numbers of the strings naming the class loader and the type
+   * @return the type, or null if both numbers are -1
+   */
+  TypeReference getType(int offset) {
+    int loader = buffer.getInt(offset);
+    if (loader == -1) {
+      return null;
+    }
+    Atom name = Atom.findOrCreateUnicodeAtom(getString(loader));
+    ClassLoaderReference ref = cha.getScope().getLoader(name);
+    if (ref == null) {
+      throw new IllegalStateException("no class loader " + name + " in the analysis scope");
+    }
+    return TypeReference.findOrCreate(ref, getString(buffer.getInt(offset + 4)));
+  }
+
+  /**
+   * @throws IllegalStateException if the class hierarchy does not have the class
+   */
+  IClass getClass(int offset) {
+    TypeReference t = getType(offset);
+    if (t == null) {
+      return null;
+    }
+    IClass result = cha.lookupClass(t);
+    if (result == null) {
+      throw new IllegalStateException("class hierarchy has no " + t);
+    }
+    return result;
+  }
+
+  /**
+   * @param offset offset of a type followed by the number of the string of a selector
+   */
+  MethodReference getMethod(int offset) {
+    return MethodReference.findOrCreate(getType(offset), Selector.make(getString(buffer.getInt(offset + 8))));
+  }
+
+  /**
+   * @param offset offset of the declaring class, name and type of a field
+   * @throws IllegalStateException if the class hierarchy does not have the field
+   */
+  private IField getField(int offset) {
+    FieldReference ref = FieldReference.findOrCreate(getType(offset), Atom.findOrCreateUnicodeAtom(getString(buffer
+        .getInt(offset + 8))), getType(offset + 12));
+    IField result = cha.resolveField(ref);
+    if (result == null) {
+      throw new IllegalStateException("class hierarchy has no " + ref);
+    }
+    return result;
+  }
+
+  /**
+   * @param offset offset of the context in a node descriptor
+   */
+  Context getContext(int offset) {
+    switch (buffer.getInt(offset)) {
+    case DescriptorEncoder.C_EVERYWHERE:
+      return Everywhere.EVERYWHERE;
+    case DescriptorEncoder.C_RECEIVER:
+      return new ReceiverInstanceContext(getInstanceKey(buffer.getInt(offset + 4)));
+    default:
+      return new StoredContext(getString(buffer.getInt(offset + 4)));
+    }
+  }
+
+  InstanceKey getInstanceKey(int i) {
+    if (instanceKeyCache[i] == null) {
+      InstanceKey ik = decodeInstanceKey(i);
+      instanceKeyCache[i] = ik;
+      instanceKeyNumbers.put(ik, i);
+    }
+    return instanceKeyCache[i];
+  }
+
+  private InstanceKey decodeInstanceKey(int i) {
+    int d = instanceKeys.descriptor(i);
+    IClass type = getClass(instanceKeys.payload(i));
+    switch (buffer.getInt(d)) {
+    case DescriptorEncoder.I_ALLOCATION:
+      return new NormalAllocationInNode(cg.getStoredNode(buffer.getInt(d + 4)), NewSiteReference.make(buffer.getInt(d + 8),
+          getType(d + 12)), type);
+    case DescriptorEncoder.I_MULTI_NEW_ARRAY:
+      return new MultiNewArrayInNode(cg.getStoredNode(buffer.getInt(d + 4)), NewSiteReference.make(buffer.getInt(d + 8),
+          getType(d + 12)), (ArrayClass) type, buffer.getInt(d + 20));
+    case DescriptorEncoder.I_CONCRETE_TYPE:
+      return new ConcreteTypeKey(type);
+    case DescriptorEncoder.I_CLASS_CONSTANT:
+      return new ConstantKey<IClass>(getClass(d + 4), type);
+    case DescriptorEncoder.I_CONSTANT:
+      return new ConstantKey<Object>(parseConstant(buffer.getInt(d + 4), getString(buffer.getInt(d + 8))), type);
+    default:
+      return new StoredInstanceKey(getString(buffer.getInt(d + 4)), type);
+    }
+  }
+
+  private static Object parseConstant(int kind, String s) {
+    switch (kind) {
+    case 0:
+      return s;
+    case 1:
+      return Integer.valueOf(s);
+    case 2:
+      return Long.valueOf(s);
+    case 3:
+      return Float.valueOf(s);
+    case 4:
+      return Double.valueOf(s);
+    case 5:
+      return Boolean.valueOf(s);
+    case 6:
+      return Character.valueOf(s.charAt(0));
+    case 7:
+      return Byte.valueOf(s);
+    case 8:
+      return Short.valueOf(s);
+    default:
+      throw new IllegalStateException("unexpected constant kind " + kind);
+    }
+  }
+
+  /**
+   * @return the number of ik, or -1 if the file does not have it
+   */
+  int findInstanceKey(InstanceKey ik) {
+    int result = instanceKeyNumbers.get(ik);
+    if (result != -1) {
+      return result;
+    }
+    return instanceKeys.find(lookup.encodeInstanceKey(ik));
+  }
+
+  /**
+   * @return the instance key the file has for descriptor d, or null if it has none
+   */
+  InstanceKey findInstanceKey(byte[] d) {
+    int i = instanceKeys.find(d);
+    return i == -1 ? null : getInstanceKey(i);
+  }
+
+  /**
+   * @return an encoder of the descriptors of queries, which fails to encode those referring to things the file does not have
+   */
+  DescriptorEncoder getLookup() {
+    return lookup;
+  }
+
+  PointerKey getPointerKey(int i) {
+    if (pointerKeyCache[i] == null) {
+      pointerKeyCache[i] = decodePointerKey(i);
+    }
+    return pointerKeyCache[i];
+  }
+
+  private PointerKey decodePointerKey(int i) {
+    int d = pointerKeys.descriptor(i);
+    switch (buffer.getInt(d)) {
+    case DescriptorEncoder.P_LOCAL:
+      return pointerKeyFactory.getPointerKeyForLocal(cg.getStoredNode(buffer.getInt(d + 4)), buffer.getInt(d + 8));
+    case DescriptorEncoder.P_RETURN:
+      return pointerKeyFactory.getPointerKeyForReturnValue(cg.getStoredNode(buffer.getInt(d + 4)));
+    case DescriptorEncoder.P_EXCEPTIONAL_RETURN:
+      return pointerKeyFactory.getPointerKeyForExceptionalReturnValue(cg.getStoredNode(buffer.getInt(d + 4)));
+    case DescriptorEncoder.P_STATIC_FIELD:
+      return pointerKeyFactory.getPointerKeyForStaticField(getField(d + 4));
+    case DescriptorEncoder.P_INSTANCE_FIELD:
+      return pointerKeyFactory.getPointerKeyForInstanceField(getInstanceKey(buffer.getInt(d + 4)), getField(d + 8));
+    case DescriptorEncoder.P_ARRAY_CONTENTS:
+      return pointerKeyFactory.getPointerKeyForArrayContents(getInstanceKey(buffer.getInt(d + 4)));
+    default:
+      return new StoredPointerKey(getString(buffer.getInt(d + 4)));
+    }
+  }
+
+  /**
+   * @return the number of pk, or -1 if the file does not have it
+   */
+  int findPointerKey(PointerKey pk) {
+    return pointerKeys.find(lookup.encodePointerKey(pk));
+  }
+
+  /**
+   * @return the number of the node for method m in context c, or -1 if the file does not have it
+   */
+  int findNode(MethodReference m, Context c) {
+    return nodes.find(lookup.encodeNode(m, c));
+  }
+
+  /**
+   * A context of a kind the format does not record, read back as its description.
+   */
+  private static final class StoredContext implements Context {
+
+    private final String description;
+
+    StoredContext(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public ContextItem get(ContextKey name) {
+      return null;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StoredContext && description.equals(((StoredContext) obj).description);
+    }
+
+    @Override
+    public int hashCode() {
+      return description.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return description;
+    }
+  }
+
+  /**
+   * An instance key of a kind the format does not record, read back as its description and concrete type.
+   */
+  private static final class StoredInstanceKey implements InstanceKey {
+
+    private final String description;
+
+    private final IClass type;
+
+    StoredInstanceKey(String description, IClass type) {
+      this.description = description;
+      this.type = type;
+    }
+
+    @Override
+    public IClass getConcreteType() {
+      return type;
+    }
+
+    @Override
+    public Iterator<Pair<CGNode, NewSiteReference>> getCreationSites(CallGraph CG) {
+      return EmptyIterator.instance();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StoredInstanceKey && description.equals(((StoredInstanceKey) obj).description);
+    }
+
+    @Override
+    public int hashCode() {
+      return description.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return description;
+    }
+  }
+
+  /**
+   * A pointer key of a kind the format does not record, read back as its description.
+   */
+  private static final class StoredPointerKey implements PointerKey {
+
+    private final String description;
+
+    StoredPointerKey(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof StoredPointerKey && description.equals(((StoredPointerKey) obj).description);
+    }
+
+    @Override
+    public int hashCode() {
+      return description.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return description;
+    }
+  }
+}
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.SyntheticMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.OrdinalSet;
+
+/**
+ * Writes a call graph and pointer analysis in the format of {@link StoredAnalysis}, numbering strings, nodes and instance keys as
+ * they are reached.
+ */
+class StoredAnalysisWriter extends DescriptorEncoder {
+
+  private final CallGraph cg;
+
+  private final PointerAnalysis pa;
+
+  private final Map<String, Integer> stringNumbers = HashMapFactory.make();
+
+  private final List<String> strings = new ArrayList<String>();
+
+  private final Map<CGNode, Integer> nodeNumbers = HashMapFactory.make();
+
+  /**
+   * the nodes of the call graph, followed by any other nodes the keys refer to
+   */
+  private final List<CGNode> nodes = new ArrayList<CGNode>();
+
+  private final Map<InstanceKey, Integer> instanceKeyNumbers = HashMapFactory.make();
+
+  private final List<InstanceKey> instanceKeys = new ArrayList<InstanceKey>();
+
+  StoredAnalysisWriter(CallGraph cg, PointerAnalysis pa) {
+    this.cg = cg;
+    this.pa = pa;
+  }
+
+  @Override
+  protected int string(String s) {
+    Integer result = stringNumbers.get(s);
+    if (result == null) {
+      result = strings.size();
+      stringNumbers.put(s, result);
+      strings.add(s);
+    }
+    return result;
+  }
+
+  @Override
+  protected int node(CGNode n) {
+    Integer result = nodeNumbers.get(n);
+    if (result == null) {
+      result = nodes.size();
+      nodeNumbers.put(n, result);
+      nodes.add(n);
+    }
+    return result;
+  }
+
+  @Override
+  protected int instanceKey(InstanceKey ik) {
+    Integer result = instanceKeyNumbers.get(ik);
+    if (result == null) {
+      result = instanceKeys.size();
+      instanceKeyNumbers.put(ik, result);
+      instanceKeys.add(ik);
+    }
+    return result;
+  }
+
+  void write(File f) throws IOException {
+    for (CGNode n : cg) {
+      node(n);
+    }
+    int callGraphNodes = nodes.size();
+    for (InstanceKey ik : pa.getInstanceKeyMapping()) {
+      if (ik != null) {
+        instanceKey(ik);
+      }
+    }
+
+    // the pointer keys first, since they may refer to nodes and instance keys not seen yet. Keys of kinds recorded by their
+    // descriptions may share a descriptor; only the first of them is kept.
+    List<byte[]> pointerKeyDescriptors = new ArrayList<byte[]>();
+    List<PointerKey> pointerKeys = new ArrayList<PointerKey>();
+    Set<Bytes> seen = HashSetFactory.make();
+    for (PointerKey pk : pa.getPointerKeys()) {
+      byte[] d = encodePointerKey(pk);
+      if (seen.add(new Bytes(d))) {
+        pointerKeys.add(pk);
+        pointerKeyDescriptors.add(d);
+      }
+    }
+    List<int[]> pointsTo = new ArrayList<int[]>(pointerKeys.size());
+    for (PointerKey pk : pointerKeys) {
+      pointsTo.add(numbers(pa.getPointsToSet(pk)));
+    }
+    // contexts refer to instance keys and instance keys to nodes, so encode both until no new ones appear
+    List<byte[]> nodeDescriptors = new ArrayList<byte[]>();
+    List<byte[]> instanceKeyDescriptors = new ArrayList<byte[]>();
+    while (nodeDescriptors.size() < nodes.size() || instanceKeyDescriptors.size() < instanceKeys.size()) {
+      while (nodeDescriptors.size() < nodes.size()) {
+        CGNode n = nodes.get(nodeDescriptors.size());
+        nodeDescriptors.add(encodeNode(n.getMethod().getReference(), n.getContext()));
+      }
+      while (instanceKeyDescriptors.size() < instanceKeys.size()) {
+        instanceKeyDescriptors.add(encodeInstanceKey(instanceKeys.get(instanceKeyDescriptors.size())));
+      }
+    }
+
+    FileOutputStream s = new FileOutputStream(f);
+    try {
+      FileChannel channel = s.getChannel();
+      Output out = new Output(channel);
+      int[] header = new int[StoredAnalysis.HEADER_SIZE];
+      for (int i = 0; i < header.length; i++) {
+        out.putInt(0);
+      }
+      header[0] = StoredAnalysis.MAGIC;
+      header[1] = StoredAnalysis.VERSION;
+      header[2] = callGraphNodes;
+      header[3] = node(cg.getFakeRootNode());
+
+      header[4] = out.position();
+      out.putInt(cg.getEntrypointNodes().size());
+      for (CGNode n : cg.getEntrypointNodes()) {
+        out.putInt(node(n));
+      }
+
+      int[] records = new int[nodes.size()];
+      for (int i = 0; i < records.length; i++) {
+        records[i] = writeDescriptor(out, nodeDescriptors.get(i));
+        writeNode(out, nodes.get(i), i < callGraphNodes);
+      }
+      header[5] = StoredTable.writeIndex(out, records, hashes(nodeDescriptors));
+
+      records = new int[instanceKeys.size()];
+      for (int i = 0; i < records.length; i++) {
+        records[i] = writeDescriptor(out, instanceKeyDescriptors.get(i));
+        IClass type = instanceKeys.get(i).getConcreteType();
+        writeType(out, type == null ? null : type.getReference());
+      }
+      header[6] = StoredTable.writeIndex(out, records, hashes(instanceKeyDescriptors));
+
+      records = new int[pointerKeys.size()];
+      for (int i = 0; i < records.length; i++) {
+        records[i] = writeDescriptor(out, pointerKeyDescriptors.get(i));
+        out.putInt(pa.isFiltered(pointerKeys.get(i)) ? 1 : 0);
+        int[] set = pointsTo.get(i);
+        out.putInt(set.length);
+        for (int j = 0; j < set.length; j++) {
+          out.putInt(set[j]);
+        }
+      }
+      header[7] = StoredTable.writeIndex(out, records, hashes(pointerKeyDescriptors));
+
+      // last, since everything else refers to strings
+      List<byte[]> stringDescriptors = new ArrayList<byte[]>(strings.size());
+      records = new int[strings.size()];
+      for (int i = 0; i < records.length; i++) {
+        stringDescriptors.add(utf8(strings.get(i)));
+        records[i] = writeDescriptor(out, stringDescriptors.get(i));
+      }
+      header[8] = StoredTable.writeIndex(out, records, hashes(stringDescriptors));
+      out.position();
+      out.flush();
+
+      ByteBuffer b = ByteBuffer.allocate(4 * header.length);
+      for (int i = 0; i < header.length; i++) {
+        b.putInt(header[i]);
+      }
+      b.flip();
+      for (long p = 0; b.hasRemaining();) {
+        p += channel.write(b, p);
+      }
+    } finally {
+      s.close();
+    }
+  }
+
+  /**
+   * The payload of a node: the flags of its method, the numbers of its successors and of its predecessors, its call sites
+   * with the numbers of their targets, and its allocation sites. Nodes outside the call graph have no edges or sites.
+   */
+  private void writeNode(Output out, CGNode n, boolean inCallGraph) throws IOException {
+    IMethod m = n.getMethod();
+    int flags = m.isStatic() ? StoredCallGraph.M_STATIC : 0;
+    if (m instanceof SyntheticMethod) {
+      flags |= StoredCallGraph.M_SYNTHETIC;
+      if (((SyntheticMethod) m).isFactoryMethod()) {
+        flags |= StoredCallGraph.M_FACTORY;
+      }
+    }
+    out.putInt(flags);
+    if (!inCallGraph) {
+      for (int i = 0; i < 4; i++) {
+        out.putInt(0);
+      }
+      return;
+    }
+    writeNumbers(out, cg.getSuccNodes(n));
+    writeNumbers(out, cg.getPredNodes(n));
+    List<CallSiteReference> sites = new ArrayList<CallSiteReference>();
+    for (Iterator<CallSiteReference> it = n.iterateCallSites(); it.hasNext();) {
+      sites.add(it.next());
+    }
+    out.putInt(sites.size());
+    for (CallSiteReference site : sites) {
+      if (!(site.getInvocationCode() instanceof IInvokeInstruction.Dispatch)) {
+        throw new IllegalArgumentException("cannot store call site " + site + " in " + n);
+      }
+      out.putInt(site.getProgramCounter());
+      out.putInt(((IInvokeInstruction.Dispatch) site.getInvocationCode()).ordinal());
+      writeType(out, site.getDeclaredTarget().getDeclaringClass());
+      out.putInt(string(site.getDeclaredTarget().getSelector().toString()));
+      writeNumbers(out, cg.getPossibleTargets(n, site).iterator());
+    }
+    List<NewSiteReference> news = new ArrayList<NewSiteReference>();
+    for (Iterator<NewSiteReference> it = n.iterateNewSites(); it.hasNext();) {
+      news.add(it.next());
+    }
+    out.putInt(news.size());
+    for (NewSiteReference site : news) {
+      out.putInt(site.getProgramCounter());
+      writeType(out, site.getDeclaredType());
+    }
+  }
+
+  /**
+   * write the sorted numbers of some nodes, preceded by how many there are
+   */
+  private void writeNumbers(Output out, Iterator<? extends CGNode> it) throws IOException {
+    List<CGNode> l = new ArrayList<CGNode>();
+    while (it.hasNext()) {
+      l.add(it.next());
+    }
+    int[] numbers = new int[l.size()];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = node(l.get(i));
+    }
+    Arrays.sort(numbers);
+    out.putInt(numbers.length);
+    for (int i = 0; i < numbers.length; i++) {
+      out.putInt(numbers[i]);
+    }
+  }
+
+  /**
+   * write the numbers of the strings naming a type, or -1 twice for none
+   */
+  private void writeType(Output out, TypeReference t) throws IOException {
+    if (t == null) {
+      out.putInt(-1);
+      out.putInt(-1);
+    } else {
+      out.putInt(string(t.getClassLoader().getName().toString()));
+      out.putInt(string(t.getName().toString()));
+    }
+  }
+
+  /**
+   * @return the offset of the record
+   */
+  private static int writeDescriptor(Output out, byte[] d) throws IOException {
+    int record = out.position();
+    out.putInt(d.length);
+    out.put(d);
+    return record;
+  }
+
+  private int[] numbers(OrdinalSet<InstanceKey> s) {
+    int[] result = new int[s.size()];
+    int i = 0;
+    for (InstanceKey ik : s) {
+      result[i++] = instanceKey(ik);
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static int[] hashes(List<byte[]> descriptors) {
+    int[] result = new int[descriptors.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = StoredTable.hash(descriptors.get(i));
+    }
+    return result;
+  }
+
+  static byte[] utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * a descriptor as a hash key
+   */
+  private static class Bytes {
+    private final byte[] b;
+
+    Bytes(byte[] b) {
+      this.b = b;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(b);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Bytes && Arrays.equals(b, ((Bytes) obj).b);
+    }
+  }
+
+  /**
+   * Buffered output to a file channel, which keeps track of the offset written to.
+   */
+  static class Output {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    private long position;
+
+    Output(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * @throws IOException if the file has outgrown the offsets of the format
+     */
+    int position() throws IOException {
+      if (position > Integer.MAX_VALUE) {
+        throw new IOException("stored analysis larger than " + Integer.MAX_VALUE + " bytes");
+      }
+      return (int) position;
+    }
+
+    void putInt(int v) throws IOException {
+      if (buffer.remaining() < 4) {
+        flush();
+      }
+      buffer.putInt(v);
+      position += 4;
+    }
+
+    void put(byte[] b) throws IOException {
+      for (int k = 0; k < b.length;) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        int n = Math.min(buffer.remaining(), b.length - k);
+        buffer.put(b, k, n);
+        k += n;
+      }
+      position += b.length;
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.SyntheticMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.FakeRootClass;
+import com.ibm.wala.ipa.callgraph.impl.FakeRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.FakeWorldClinitMethod;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.graph.impl.NodeWithNumber;
+import com.ibm.wala.util.graph.impl.NumberedNodeIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * The call graph of a {@link StoredAnalysis}, whose nodes are decoded from the file as they are reached.
+ *
+ * The payload of a node record is the {@link #M_STATIC flags} of its method, the sorted numbers of its successors and of its predecessors, its
+ * call sites, each with its program counter, invocation code, declared target and the sorted numbers of its targets, and its
+ * allocation sites, each with its program counter and type. The first records are the nodes of the call graph; any further ones are
+ * nodes that only keys refer to, with no edges or sites.
+ */
+class StoredCallGraph implements CallGraph {
+
+  /*
+   * flags of the method of a node
+   */
+  static final int M_STATIC = 1;
+
+  static final int M_SYNTHETIC = 2;
+
+  static final int M_FACTORY = 4;
+
+  private final StoredAnalysis analysis;
+
+  private final StoredTable nodes;
+
+  /**
+   * the number of nodes in the call graph
+   */
+  private final int size;
+
+  private final int fakeRoot;
+
+  /**
+   * offset of the entrypoint numbers
+   */
+  private final int entrypoints;
+
+  private final StoredNode[] nodeCache;
+
+  /**
+   * method -> the nodes for it; computed on first use
+   */
+  private Map<MethodReference, Set<CGNode>> nodesByMethod;
+
+  StoredCallGraph(StoredAnalysis analysis, int size, int fakeRoot, int entrypoints) {
+    this.analysis = analysis;
+    this.nodes = analysis.nodes;
+    this.size = size;
+    this.fakeRoot = fakeRoot;
+    this.entrypoints = entrypoints;
+    this.nodeCache = new StoredNode[nodes.size()];
+  }
+
+  /**
+   * @return node number i, which may be a node that only keys refer to
+   */
+  StoredNode getStoredNode(int i) {
+    if (nodeCache[i] == null) {
+      nodeCache[i] = new StoredNode(i);
+    }
+    return nodeCache[i];
+  }
+
+  /**
+   * @return the numbers stored at offset, preceded by how many there are
+   */
+  private int[] getNumbers(int offset) {
+    int[] result = new int[analysis.getInt(offset)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = analysis.getInt(offset + 4 * (i + 1));
+    }
+    return result;
+  }
+
+  private List<CGNode> getNodes(int[] numbers) {
+    List<CGNode> result = new ArrayList<CGNode>(numbers.length);
+    for (int i = 0; i < numbers.length; i++) {
+      result.add(getStoredNode(numbers[i]));
+    }
+    return result;
+  }
+
+  /**
+   * @return the offset of the successor numbers of a node
+   */
+  private int successors(CGNode n) {
+    return nodes.payload(getNumber(n)) + 4;
+  }
+
+  private int predecessors(CGNode n) {
+    int s = successors(n);
+    return s + 4 * (analysis.getInt(s) + 1);
+  }
+
+  /**
+   * @return the offset of the call sites of a node
+   */
+  private int sites(CGNode n) {
+    int p = predecessors(n);
+    return p + 4 * (analysis.getInt(p) + 1);
+  }
+
+  /**
+   * @return the size in bytes of the call site record at offset
+   */
+  private int siteSize(int offset) {
+    return 4 * (6 + analysis.getInt(offset + 20));
+  }
+
+  private CallSiteReference getSite(int offset) {
+    return CallSiteReference.make(analysis.getInt(offset), analysis.getMethod(offset + 8), IInvokeInstruction.Dispatch.values()[analysis
+        .getInt(offset + 4)]);
+  }
+
+  /**
+   * @return the offset of the record of the call site at pc in n, or -1 if there is none
+   */
+  private int findSite(CGNode n, int pc) {
+    int s = sites(n);
+    int count = analysis.getInt(s);
+    s += 4;
+    for (int i = 0; i < count; i++) {
+      if (analysis.getInt(s) == pc) {
+        return s;
+      }
+      s += siteSize(s);
+    }
+    return -1;
+  }
+
+  private void checkNode(CGNode n) {
+    if (!containsNode(n)) {
+      throw new IllegalArgumentException("not a node of this call graph: " + n);
+    }
+  }
+
+  @Override
+  public CGNode getFakeRootNode() {
+    return getStoredNode(fakeRoot);
+  }
+
+  @Override
+  public Collection<CGNode> getEntrypointNodes() {
+    return Collections.unmodifiableList(getNodes(getNumbers(entrypoints)));
+  }
+
+  @Override
+  public CGNode getNode(IMethod method, Context C) {
+    if (method == null || C == null) {
+      return null;
+    }
+    int i = analysis.findNode(method.getReference(), C);
+    return i == -1 || i >= size ? null : getStoredNode(i);
+  }
+
+  @Override
+  public Set<CGNode> getNodes(MethodReference m) {
+    if (nodesByMethod == null) {
+      nodesByMethod = HashMapFactory.make();
+      for (int i = 0; i < size; i++) {
+        MapUtil.findOrCreateSet(nodesByMethod, analysis.getMethod(nodes.descriptor(i))).add(getStoredNode(i));
+      }
+    }
+    Set<CGNode> result = nodesByMethod.get(m);
+    return result == null ? Collections.<CGNode> emptySet() : Collections.unmodifiableSet(result);
+  }
+
+  @Override
+  public IClassHierarchy getClassHierarchy() {
+    return analysis.getClassHierarchy();
+  }
+
+  @Override
+  public Set<CGNode> getPossibleTargets(CGNode node, CallSiteReference site) {
+    checkNode(node);
+    int s = findSite(node, site.getProgramCounter());
+    if (s == -1) {
+      return Collections.emptySet();
+    }
+    return HashSetFactory.make(getNodes(getNumbers(s + 20)));
+  }
+
+  @Override
+  public int getNumberOfTargets(CGNode node, CallSiteReference site) {
+    checkNode(node);
+    int s = findSite(node, site.getProgramCounter());
+    return s == -1 ? 0 : analysis.getInt(s + 20);
+  }
+
+  @Override
+  public Iterator<CallSiteReference> getPossibleSites(CGNode src, CGNode target) {
+    checkNode(src);
+    checkNode(target);
+    int t = getNumber(target);
+    List<CallSiteReference> result = new ArrayList<CallSiteReference>();
+    int s = sites(src);
+    int count = analysis.getInt(s);
+    s += 4;
+    for (int i = 0; i < count; i++) {
+      if (Arrays.binarySearch(getNumbers(s + 20), t) >= 0) {
+        result.add(getSite(s));
+      }
+      s += siteSize(s);
+    }
+    return result.iterator();
+  }
+
+  @Override
+  public Iterator<CGNode> iterator() {
+    return new Iterator<CGNode>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public CGNode next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        return getStoredNode(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return size;
+  }
+
+  @Override
+  public boolean containsNode(CGNode n) {
+    return getNumber(n) != -1;
+  }
+
+  /**
+   * @return the number of n, or -1 if it is not a node of this call graph
+   */
+  @Override
+  public int getNumber(CGNode n) {
+    if (n instanceof StoredNode && ((StoredNode) n).getOwner() == this && n.getGraphNodeId() < size) {
+      return n.getGraphNodeId();
+    }
+    return -1;
+  }
+
+  @Override
+  public CGNode getNode(int number) {
+    return number >= 0 && number < size ? getStoredNode(number) : null;
+  }
+
+  @Override
+  public int getMaxNumber() {
+    return size - 1;
+  }
+
+  @Override
+  public Iterator<CGNode> iterateNodes(IntSet s) {
+    return new NumberedNodeIterator<CGNode>(s, this);
+  }
+
+  @Override
+  public Iterator<CGNode> getPredNodes(CGNode n) {
+    checkNode(n);
+    return getNodes(getNumbers(predecessors(n))).iterator();
+  }
+
+  @Override
+  public int getPredNodeCount(CGNode n) {
+    checkNode(n);
+    return analysis.getInt(predecessors(n));
+  }
+
+  @Override
+  public IntSet getPredNodeNumbers(CGNode node) {
+    checkNode(node);
+    return IntSetUtil.make(getNumbers(predecessors(node)));
+  }
+
+  @Override
+  public Iterator<CGNode> getSuccNodes(CGNode n) {
+    checkNode(n);
+    return getNodes(getNumbers(successors(n))).iterator();
+  }
+
+  @Override
+  public int getSuccNodeCount(CGNode n) {
+    checkNode(n);
+    return analysis.getInt(successors(n));
+  }
+
+  @Override
+  public IntSet getSuccNodeNumbers(CGNode node) {
+    checkNode(node);
+    return IntSetUtil.make(getNumbers(successors(node)));
+  }
+
+  @Override
+  public boolean hasEdge(CGNode src, CGNode dst) {
+    return containsNode(src) && containsNode(dst) && Arrays.binarySearch(getNumbers(successors(src)), getNumber(dst)) >= 0;
+  }
+
+  @Override
+  public void addNode(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNode(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNodeAndEdges(CGNode n) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addEdge(CGNode src, CGNode dst) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeEdge(CGNode src, CGNode dst) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeAllIncidentEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeIncomingEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeOutgoingEdges(CGNode node) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * A node decoded from the file. Its method and context are resolved when first asked for.
+   */
+  class StoredNode extends NodeWithNumber implements CGNode {
+
+    private IMethod method;
+
+    private Context context;
+
+    StoredNode(int number) {
+      setGraphNodeId(number);
+    }
+
+    StoredCallGraph getOwner() {
+      return StoredCallGraph.this;
+    }
+
+    /**
+     * Resolve the method in the class hierarchy. Synthetic methods are made again without their code: the fake root methods as
+     * such, and others, such as summaries of library methods, as bare {@link SyntheticMethod}s whose nodes have no IR.
+     */
+    @Override
+    public IMethod getMethod() {
+      if (method == null) {
+        IClassHierarchy cha = analysis.getClassHierarchy();
+        MethodReference ref = analysis.getMethod(nodes.descriptor(getGraphNodeId()));
+        int flags = analysis.getInt(nodes.payload(getGraphNodeId()));
+        if ((flags & M_SYNTHETIC) == 0) {
+          method = cha.resolveMethod(ref);
+          if (method == null) {
+            throw new IllegalStateException("class hierarchy has no " + ref);
+          }
+        } else if (FakeRootMethod.isFakeRootMethod(ref)) {
+          method = new FakeRootMethod(cha, analysis.getOptions(), analysis.getCache());
+        } else if (ref.getDeclaringClass().equals(FakeRootClass.FAKE_ROOT_CLASS)) {
+          method = new FakeWorldClinitMethod(cha, analysis.getOptions(), analysis.getCache());
+        } else {
+          method = new SyntheticMethod(ref, cha.lookupClass(ref.getDeclaringClass()), (flags & M_STATIC) != 0,
+              (flags & M_FACTORY) != 0);
+        }
+      }
+      return method;
+    }
+
+    /**
+     * @return true iff the method of the node was saved with its code
+     */
+    private boolean hasCode() {
+      return !(getMethod() instanceof SyntheticMethod) || getMethod() instanceof AbstractRootMethod;
+    }
+
+    @Override
+    public Context getContext() {
+      if (context == null) {
+        context = analysis.getContext(nodes.descriptor(getGraphNodeId()) + 12);
+      }
+      return context;
+    }
+
+    @Override
+    @Deprecated
+    public boolean addTarget(CallSiteReference site, CGNode target) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IR getIR() {
+      if (!hasCode()) {
+        return null;
+      }
+      return analysis.getCache().getSSACache().findOrCreateIR(getMethod(), getContext(), analysis.getOptions().getSSAOptions());
+    }
+
+    @Override
+    public DefUse getDU() {
+      if (!hasCode()) {
+        return null;
+      }
+      return analysis.getCache().getSSACache().findOrCreateDU(getMethod(), getContext(), analysis.getOptions().getSSAOptions());
+    }
+
+    @Override
+    public Iterator<NewSiteReference> iterateNewSites() {
+      List<NewSiteReference> result = new ArrayList<NewSiteReference>();
+      if (getGraphNodeId() < size) {
+        int s = sites(this);
+        int count = analysis.getInt(s);
+        s += 4;
+        for (int i = 0; i < count; i++) {
+          s += siteSize(s);
+        }
+        count = analysis.getInt(s);
+        s += 4;
+        for (int i = 0; i < count; i++, s += 12) {
+          result.add(NewSiteReference.make(analysis.getInt(s), analysis.getType(s + 4)));
+        }
+      }
+      return result.iterator();
+    }
+
+    @Override
+    public Iterator<CallSiteReference> iterateCallSites() {
+      List<CallSiteReference> result = new ArrayList<CallSiteReference>();
+      if (getGraphNodeId() < size) {
+        int s = sites(this);
+        int count = analysis.getInt(s);
+        s += 4;
+        for (int i = 0; i < count; i++) {
+          result.add(getSite(s));
+          s += siteSize(s);
+        }
+      }
+      return result.iterator();
+    }
+
+    @Override
+    public IClassHierarchy getClassHierarchy() {
+      return analysis.getClassHierarchy();
+    }
+
+    @Override
+    public String toString() {
+      return "Node: " + getMethod() + " Context: " + getContext();
+    }
+  }
+}
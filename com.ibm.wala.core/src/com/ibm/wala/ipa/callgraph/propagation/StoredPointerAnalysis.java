@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.analysis.pointers.BasicHeapGraph;
+import com.ibm.wala.analysis.pointers.HeapGraph;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.ProgramCounter;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultPointerKeyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.OrdinalSet;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * The pointer analysis of a {@link StoredAnalysis}. Instance keys are numbered as in the file, and points-to sets are read from
+ * the file when asked for.
+ */
+class StoredPointerAnalysis implements PointerAnalysis {
+
+  private final StoredAnalysis analysis;
+
+  private final Mapping mapping = new Mapping();
+
+  private final HeapModel heapModel = new StoredHeapModel();
+
+  private HeapGraph heapGraph;
+
+  StoredPointerAnalysis(StoredAnalysis analysis) {
+    this.analysis = analysis;
+  }
+
+  @Override
+  public OrdinalSet<InstanceKey> getPointsToSet(PointerKey key) {
+    int i = analysis.findPointerKey(key);
+    if (i == -1) {
+      return OrdinalSet.empty();
+    }
+    int p = analysis.pointerKeys.payload(i);
+    int[] numbers = new int[analysis.getInt(p + 4)];
+    for (int k = 0; k < numbers.length; k++) {
+      numbers[k] = analysis.getInt(p + 8 + 4 * k);
+    }
+    return new OrdinalSet<InstanceKey>(IntSetUtil.make(numbers), mapping);
+  }
+
+  @Override
+  public boolean isFiltered(PointerKey pk) {
+    int i = analysis.findPointerKey(pk);
+    return i != -1 && analysis.getInt(analysis.pointerKeys.payload(i)) != 0;
+  }
+
+  @Override
+  public HeapModel getHeapModel() {
+    return heapModel;
+  }
+
+  @Override
+  public HeapGraph getHeapGraph() {
+    if (heapGraph == null) {
+      heapGraph = new BasicHeapGraph(this, analysis.getCallGraph());
+    }
+    return heapGraph;
+  }
+
+  @Override
+  public OrdinalSetMapping<InstanceKey> getInstanceKeyMapping() {
+    return mapping;
+  }
+
+  @Override
+  public Iterable<PointerKey> getPointerKeys() {
+    return new Iterable<PointerKey>() {
+      @Override
+      public Iterator<PointerKey> iterator() {
+        return iteratePointerKeys();
+      }
+    };
+  }
+
+  private Iterator<PointerKey> iteratePointerKeys() {
+    return new Iterator<PointerKey>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < analysis.pointerKeys.size();
+      }
+
+      @Override
+      public PointerKey next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return analysis.getPointerKey(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public Collection<InstanceKey> getInstanceKeys() {
+    return new AbstractCollection<InstanceKey>() {
+      @Override
+      public Iterator<InstanceKey> iterator() {
+        return mapping.iterator();
+      }
+
+      @Override
+      public int size() {
+        return mapping.getSize();
+      }
+    };
+  }
+
+  @Override
+  public IClassHierarchy getClassHierarchy() {
+    return analysis.getClassHierarchy();
+  }
+
+  /**
+   * The numbering of the instance keys in the file.
+   */
+  private class Mapping implements OrdinalSetMapping<InstanceKey> {
+
+    @Override
+    public InstanceKey getMappedObject(int n) throws NoSuchElementException {
+      if (n < 0 || n >= getSize()) {
+        throw new NoSuchElementException("no instance key " + n);
+      }
+      return analysis.getInstanceKey(n);
+    }
+
+    @Override
+    public int getMappedIndex(InstanceKey o) {
+      return analysis.findInstanceKey(o);
+    }
+
+    @Override
+    public boolean hasMappedIndex(InstanceKey o) {
+      return getMappedIndex(o) != -1;
+    }
+
+    @Override
+    public int getMaximumIndex() {
+      return getSize() - 1;
+    }
+
+    @Override
+    public int getSize() {
+      return analysis.instanceKeys.size();
+    }
+
+    @Override
+    public int add(InstanceKey o) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<InstanceKey> iterator() {
+      return new Iterator<InstanceKey>() {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < getSize();
+        }
+
+        @Override
+        public InstanceKey next() {
+          return getMappedObject(next++);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  /**
+   * A heap model which answers with the keys of the file. Instance keys the file does not have are null, as from a heap model
+   * which does not model the objects.
+   */
+  private class StoredHeapModel implements HeapModel {
+
+    private final PointerKeyFactory pointerKeys = new DefaultPointerKeyFactory();
+
+    @Override
+    public InstanceKey getInstanceKeyForAllocation(CGNode node, NewSiteReference allocation) {
+      return analysis.findInstanceKey(analysis.getLookup().encodeAllocation(node, allocation));
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForMultiNewArray(CGNode node, NewSiteReference allocation, int dim) {
+      return analysis.findInstanceKey(analysis.getLookup().encodeMultiNewArray(node, allocation, dim));
+    }
+
+    @Override
+    public <T> InstanceKey getInstanceKeyForConstant(TypeReference type, T S) {
+      InstanceKey result = null;
+      if (DescriptorEncoder.isRecordedConstant(S)) {
+        result = analysis.findInstanceKey(analysis.getLookup().encodeConstant(S));
+      }
+      return result != null ? result : concreteType(type);
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForPEI(CGNode node, ProgramCounter instr, TypeReference type) {
+      InstanceKey result = getInstanceKeyForAllocation(node, NewSiteReference.make(instr.getProgramCounter(), type));
+      return result != null ? result : concreteType(type);
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForClassObject(TypeReference type) {
+      IClass klass = analysis.getClassHierarchy().lookupClass(type);
+      if (klass == null) {
+        return null;
+      }
+      return analysis.findInstanceKey(analysis.getLookup().encodeConstant(klass));
+    }
+
+    private InstanceKey concreteType(TypeReference type) {
+      return analysis.findInstanceKey(analysis.getLookup().encodeConcreteType(type));
+    }
+
+    @Override
+    public PointerKey getPointerKeyForLocal(CGNode node, int valueNumber) {
+      return pointerKeys.getPointerKeyForLocal(node, valueNumber);
+    }
+
+    @Override
+    public FilteredPointerKey getFilteredPointerKeyForLocal(CGNode node, int valueNumber, FilteredPointerKey.TypeFilter filter) {
+      return pointerKeys.getFilteredPointerKeyForLocal(node, valueNumber, filter);
+    }
+
+    @Override
+    public PointerKey getPointerKeyForReturnValue(CGNode node) {
+      return pointerKeys.getPointerKeyForReturnValue(node);
+    }
+
+    @Override
+    public PointerKey getPointerKeyForExceptionalReturnValue(CGNode node) {
+      return pointerKeys.getPointerKeyForExceptionalReturnValue(node);
+    }
+
+    @Override
+    public PointerKey getPointerKeyForStaticField(IField f) {
+      return pointerKeys.getPointerKeyForStaticField(f);
+    }
+
+    @Override
+    public PointerKey getPointerKeyForInstanceField(InstanceKey I, IField field) {
+      return pointerKeys.getPointerKeyForInstanceField(I, field);
+    }
+
+    @Override
+    public PointerKey getPointerKeyForArrayContents(InstanceKey I) {
+      return pointerKeys.getPointerKeyForArrayContents(I);
+    }
+
+    @Override
+    public Iterator<PointerKey> iteratePointerKeys() {
+      return StoredPointerAnalysis.this.iteratePointerKeys();
+    }
+
+    @Override
+    public IClassHierarchy getClassHierarchy() {
+      return analysis.getClassHierarchy();
+    }
+  }
+}
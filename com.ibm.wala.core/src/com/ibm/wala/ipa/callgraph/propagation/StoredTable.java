@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A section of a {@link StoredAnalysis} file: numbered records, each a descriptor identifying it followed by a payload, with an
+ * index to find a record by its number or by its descriptor.
+ *
+ * A record is the length of its descriptor in bytes, the descriptor, and the payload. The index follows the records: the number n
+ * of records, the number m of hash slots (a power of two), the offsets of the n records, and the m slots of an open-addressing hash
+ * table over the descriptors, each holding a record number plus one, or 0 if empty. Numbers are big-endian ints, and offsets are
+ * from the start of the file.
+ *
+ * All reads are absolute, so a table does not change the position of its buffer.
+ */
+class StoredTable {
+
+  private final ByteBuffer buffer;
+
+  /**
+   * the number of records
+   */
+  private final int size;
+
+  /**
+   * the number of slots minus one
+   */
+  private final int mask;
+
+  /**
+   * offset of the record offsets
+   */
+  private final int offsets;
+
+  /**
+   * offset of the hash slots
+   */
+  private final int slots;
+
+  /**
+   * @param index offset of the index of the table
+   */
+  StoredTable(ByteBuffer buffer, int index) {
+    this.buffer = buffer;
+    this.size = buffer.getInt(index);
+    this.mask = buffer.getInt(index + 4) - 1;
+    this.offsets = index + 8;
+    this.slots = offsets + 4 * size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private int record(int i) {
+    return buffer.getInt(offsets + 4 * i);
+  }
+
+  /**
+   * @return the offset of the descriptor of record i
+   */
+  int descriptor(int i) {
+    return record(i) + 4;
+  }
+
+  /**
+   * @return the length in bytes of the descriptor of record i
+   */
+  int descriptorLength(int i) {
+    return buffer.getInt(record(i));
+  }
+
+  /**
+   * @return the offset of the payload of record i
+   */
+  int payload(int i) {
+    return descriptor(i) + descriptorLength(i);
+  }
+
+  /**
+   * @return the number of the first record with descriptor d, or -1 if there is none
+   */
+  int find(byte[] d) {
+    if (d == null) {
+      return -1;
+    }
+    for (int s = hash(d) & mask;; s = (s + 1) & mask) {
+      int e = buffer.getInt(slots + 4 * s);
+      if (e == 0) {
+        return -1;
+      }
+      if (matches(e - 1, d)) {
+        return e - 1;
+      }
+    }
+  }
+
+  private boolean matches(int i, byte[] d) {
+    if (descriptorLength(i) != d.length) {
+      return false;
+    }
+    int p = descriptor(i);
+    for (int k = 0; k < d.length; k++) {
+      if (buffer.get(p + k) != d[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * the FNV-1a hash of a descriptor
+   */
+  static int hash(byte[] d) {
+    int h = 0x811c9dc5;
+    for (int k = 0; k < d.length; k++) {
+      h = (h ^ (d[k] & 0xff)) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Write the index of a table whose records have been written.
+   *
+   * @param records the offsets of the records
+   * @param hashes the {@link #hash(byte[])}es of their descriptors
+   * @return the offset of the index
+   */
+  static int writeIndex(StoredAnalysisWriter.Output out, int[] records, int[] hashes) throws IOException {
+    int m = 2;
+    while (m < 2 * records.length) {
+      m <<= 1;
+    }
+    int[] table = new int[m];
+    for (int i = 0; i < records.length; i++) {
+      int s = hashes[i] & (m - 1);
+      while (table[s] != 0) {
+        s = (s + 1) & (m - 1);
+      }
+      table[s] = i + 1;
+    }
+    int index = out.position();
+    out.putInt(records.length);
+    out.putInt(m);
+    for (int i = 0; i < records.length; i++) {
+      out.putInt(records[i]);
+    }
+    for (int s = 0; s < m; s++) {
+      out.putInt(table[s]);
+    }
+    return index;
+  }
+}
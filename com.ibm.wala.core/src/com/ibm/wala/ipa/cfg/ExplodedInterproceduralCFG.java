@@ -10,7 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.cfg;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.ipa.callgraph.CGNode;
@@ -20,7 +21,6 @@ import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
 import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
 import com.ibm.wala.util.collections.Filter;
-import com.ibm.wala.util.collections.HashMapFactory;
 
 /**
  * Exploded interprocedural control-flow graph, constructed lazily.
@@ -28,9 +28,10 @@ import com.ibm.wala.util.collections.HashMapFactory;
 public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExplodedBasicBlock> {
 
   /**
-   * Caching to improve runtime .. hope it doesn't turn into a memory leak.
+   * Caching to improve runtime .. hope it doesn't turn into a memory leak. Concurrent, since a parallel
+   * {@link com.ibm.wala.dataflow.IFDS.TabulationSolver} asks for CFGs from several threads.
    */
-  private Map<CGNode, ExplodedControlFlowGraph> cfgMap;
+  private ConcurrentMap<CGNode, ExplodedControlFlowGraph> cfgMap;
 
   public static ExplodedInterproceduralCFG make(CallGraph cg) {
     return new ExplodedInterproceduralCFG(cg);
@@ -55,7 +56,7 @@ public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExpl
     }
     if (cfgMap == null) {
       // we have to initialize this lazily since this might be called from a super() constructor
-      cfgMap = HashMapFactory.make();
+      cfgMap = new ConcurrentHashMap<CGNode, ExplodedControlFlowGraph>();
     }
     ExplodedControlFlowGraph result = cfgMap.get(n);
     if (result == null) {
@@ -64,7 +65,10 @@ public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExpl
         return null;
       }
       result = ExplodedControlFlowGraph.make(ir);
-      cfgMap.put(n, result);
+      ExplodedControlFlowGraph old = cfgMap.putIfAbsent(n, result);
+      if (old != null) {
+        result = old;
+      }
     }
     return result;
   }
@@ -17,6 +17,7 @@ import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -42,10 +43,11 @@ import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.MapIterator;
 import com.ibm.wala.util.collections.MapUtil;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
 import com.ibm.wala.util.functions.Function;
-import com.ibm.wala.util.ref.CacheReference;
+import com.ibm.wala.util.intset.BitVector;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 import com.ibm.wala.util.strings.Atom;
 import com.ibm.wala.util.warnings.Warning;
@@ -99,9 +101,25 @@ public class ClassHierarchy implements IClassHierarchy {
   final private IClassLoader[] loaders;
 
   /**
-   * A mapping from IClass -> Selector -> Set of IMethod
+   * A tuning parameter: the most subclass sets that {@link #computeSubClasses(TypeReference)} keeps
    */
-  final private HashMap<IClass, Object> targetCache = HashMapFactory.make();
+  private static final int MAX_CACHED_SUBCLASS_SETS = 1000;
+
+  /**
+   * A tuning parameter: the most target sets that {@link #getPossibleTargets(IClass, MethodReference)} keeps
+   */
+  private static final int MAX_CACHED_TARGET_SETS = 10000;
+
+  /**
+   * A mapping from IClass -> Set of IClass, the subclasses of the class, for recently queried classes
+   */
+  final private LRUCache<IClass, Set<IClass>> subclassCache = new LRUCache<IClass, Set<IClass>>(MAX_CACHED_SUBCLASS_SETS);
+
+  /**
+   * A mapping from (IClass, Selector) -> Set of IMethod, the possible targets of a dispatch on the class, for recent dispatches
+   */
+  final private LRUCache<Pair<IClass, Selector>, Set<IMethod>> targetCache = new LRUCache<Pair<IClass, Selector>, Set<IMethod>>(
+      MAX_CACHED_TARGET_SETS);
 
   /**
    * Governing analysis scope
@@ -113,6 +131,11 @@ public class ClassHierarchy implements IClassHierarchy {
    */
   private final Map<IClass, Set<IClass>> implementors = HashMapFactory.make();
 
+  /**
+   * The number of interfaces that some class implements, each of which has a dense {@link Node#interfaceNumber}
+   */
+  private int numberOfInterfaces = 0;
+
   /**
    * A temporary hack : TODO: do intelligent caching somehow
    */
@@ -371,15 +394,37 @@ public class ClassHierarchy implements IClassHierarchy {
         recordImplements(klass, iface);
       }
     }
+    invalidateCaches();
     return true;
   }
 
+  /**
+   * Forget the cached subclass and target sets, which adding a class may have made stale
+   */
+  private void invalidateCaches() {
+    subclassCache.invalidate();
+    targetCache.invalidate();
+    subclassesOfError = null;
+    subTypeRefsOfError = null;
+    runtimeExceptionClasses = null;
+    runtimeExceptionTypeRefs = null;
+  }
+
   /**
    * Record that a klass implements a particular interface
    */
   private void recordImplements(IClass klass, IClass iface) {
     Set<IClass> impls = MapUtil.findOrCreateSet(implementors, iface);
     impls.add(klass);
+    Node inode = findOrCreateNode(iface);
+    if (inode.interfaceNumber == -1) {
+      inode.interfaceNumber = numberOfInterfaces++;
+    }
+    Node node = map.get(klass.getReference());
+    if (node.interfaces == null) {
+      node.interfaces = new BitVector(numberOfInterfaces);
+    }
+    node.interfaces.set(inode.interfaceNumber);
   }
 
   /**
@@ -407,41 +452,33 @@ public class ClassHierarchy implements IClassHierarchy {
       return Collections.emptySet();
     }
     Set<IMethod> targets = HashSetFactory.make();
-    targets.addAll(findOrCreateTargetSet(declaredClass, ref));
+    targets.addAll(getPossibleTargets(declaredClass, ref));
     return (targets);
   }
 
   /**
-   * Find the possible targets of a call to a method reference
+   * Find the possible receivers of a call to a method reference. The result is cached, since it depends only on the class and the
+   * selector.
    * 
    * @param ref method reference
    * @return the set of IMethods that this call can resolve to.
    */
-  @SuppressWarnings("unchecked")
-  private Set<IMethod> findOrCreateTargetSet(IClass declaredClass, MethodReference ref) {
-    Map<MethodReference, Set<IMethod>> classCache = (Map<MethodReference, Set<IMethod>>) CacheReference.get(targetCache
-        .get(declaredClass));
-    if (classCache == null) {
-      classCache = HashMapFactory.make(3);
-      targetCache.put(declaredClass, CacheReference.make(classCache));
-    }
-    Set<IMethod> result = classCache.get(ref);
+  @Override
+  public Set<IMethod> getPossibleTargets(IClass declaredClass, MethodReference ref) {
+    if (ref.getName().equals(MethodReference.initAtom)) {
+      // resolved through the declaring class of ref alone, and cheap
+      return computePossibleTargets(declaredClass, ref);
+    }
+    Pair<IClass, Selector> key = Pair.make(declaredClass, ref.getSelector());
+    Set<IMethod> result = targetCache.lookup(key);
     if (result == null) {
-      result = getPossibleTargets(declaredClass, ref);
-      classCache.put(ref, result);
+      result = Collections.unmodifiableSet(computePossibleTargets(declaredClass, ref));
+      targetCache.store(key, result);
     }
     return result;
   }
 
-  /**
-   * Find the possible receivers of a call to a method reference
-   * 
-   * @param ref method reference
-   * @return the set of IMethods that this call can resolve to.
-   */
-  @Override
-  public Set<IMethod> getPossibleTargets(IClass declaredClass, MethodReference ref) {
-
+  private Set<IMethod> computePossibleTargets(IClass declaredClass, MethodReference ref) {
     if (ref.getName().equals(MethodReference.initAtom)) {
       // for an object init method, use the method alone as a possible target,
       // rather than inspecting subclasses
@@ -667,6 +704,75 @@ public class ClassHierarchy implements IClassHierarchy {
     N.right = nextNumber++;
   }
 
+  /**
+   * A map that keeps at most a fixed number of entries, evicting the least recently used, and counts how often lookups succeed.
+   * Lookups and stores are synchronized, since a lookup reorders the entries.
+   */
+  private static final class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = -2817385928398143839L;
+
+    private final int capacity;
+
+    private long hits;
+
+    private long misses;
+
+    LRUCache(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > capacity;
+    }
+
+    synchronized V lookup(K key) {
+      V result = get(key);
+      if (result == null) {
+        misses++;
+      } else {
+        hits++;
+      }
+      return result;
+    }
+
+    synchronized void store(K key, V value) {
+      put(key, value);
+    }
+
+    synchronized void invalidate() {
+      if (!isEmpty()) {
+        clear();
+      }
+    }
+
+    synchronized long getHits() {
+      return hits;
+    }
+
+    synchronized long getMisses() {
+      return misses;
+    }
+  }
+
+  /**
+   * @return {hits, misses} of the cache of subclass sets
+   * @see ClassHierarchyStats
+   */
+  long[] getSubclassCacheStats() {
+    return new long[] { subclassCache.getHits(), subclassCache.getMisses() };
+  }
+
+  /**
+   * @return {hits, misses} of the cache of dispatch target sets
+   * @see ClassHierarchyStats
+   */
+  long[] getTargetCacheStats() {
+    return new long[] { targetCache.getHits(), targetCache.getMisses() };
+  }
+
   /**
    * internal representation of a node in the class hiearachy, representing one java class.
    */
@@ -685,6 +791,14 @@ public class ClassHierarchy implements IClassHierarchy {
 
     private int right = -1;
 
+    // the interfaces this class implements (or this interface extends), indexed by their interfaceNumber; null if none. Unlike
+    // the numbering above, this is kept up to date as classes are added.
+    private BitVector interfaces;
+
+    // if this is an interface that some class implements, its index into the interfaces of the classes that implement it; -1
+    // otherwise
+    private int interfaceNumber = -1;
+
     Node(IClass klass) {
       this.klass = klass;
     }
@@ -973,15 +1087,17 @@ public class ClassHierarchy implements IClassHierarchy {
       // arrays implement Cloneable and Serializable
       return i.equals(lookupClass(TypeReference.JavaLangCloneable)) || i.equals(lookupClass(TypeReference.JavaIoSerializable));
     }
-    Set impls = implementors.get(i);
-    if (impls != null && impls.contains(c)) {
-      return true;
+    Node in = map.get(i.getReference());
+    if (in == null || in.interfaceNumber == -1) {
+      // nothing implements i
+      return false;
     }
-    return false;
+    Node n = map.get(c.getReference());
+    return n != null && n.interfaces != null && n.interfaces.get(in.interfaceNumber);
   }
 
   /**
-   * Return set of all subclasses of type in the Class Hierarchy TODO: Tune this implementation. Consider caching if necessary.
+   * Return set of all subclasses of type in the Class Hierarchy. The sets for recently queried types are cached.
    */
   @Override
   public Collection<IClass> computeSubClasses(TypeReference type) {
@@ -989,19 +1105,24 @@ public class ClassHierarchy implements IClassHierarchy {
     if (t == null) {
       throw new IllegalArgumentException("could not find class for TypeReference " + type);
     }
-    // a hack: TODO: work on better caching
+    // Error and RuntimeException are queried for every exceptional edge, so they never leave the cache
     if (t.getReference().equals(TypeReference.JavaLangError)) {
       if (subclassesOfError == null) {
-        subclassesOfError = computeSubClassesInternal(t);
+        subclassesOfError = Collections.unmodifiableSet(computeSubClassesInternal(t));
       }
       return subclassesOfError;
     } else if (t.getReference().equals(TypeReference.JavaLangRuntimeException)) {
       if (runtimeExceptionClasses == null) {
-        runtimeExceptionClasses = computeSubClassesInternal(t);
+        runtimeExceptionClasses = Collections.unmodifiableSet(computeSubClassesInternal(t));
       }
       return runtimeExceptionClasses;
     } else {
-      return computeSubClassesInternal(t);
+      Set<IClass> result = subclassCache.lookup(t);
+      if (result == null) {
+        result = Collections.unmodifiableSet(computeSubClassesInternal(t));
+        subclassCache.store(t, result);
+      }
+      return result;
     }
   }
 
@@ -1042,7 +1163,7 @@ public class ClassHierarchy implements IClassHierarchy {
   }
 
   /**
-   * Return set of all subclasses of type in the Class Hierarchy TODO: Tune this implementation. Consider caching if necessary.
+   * Return set of all subclasses of type in the Class Hierarchy
    * 
    * @return Set of IClasses
    */
@@ -1053,12 +1174,18 @@ public class ClassHierarchy implements IClassHierarchy {
     Node node = findNode(T);
     assert node != null : "null node for class " + T;
     HashSet<IClass> result = HashSetFactory.make(3);
-    result.add(T);
+    collectSubClasses(node, result);
+    return result;
+  }
+
+  /**
+   * add the class of a node, and of all nodes below it, to a set
+   */
+  private static void collectSubClasses(Node node, Set<IClass> result) {
+    result.add(node.klass);
     for (Iterator<Node> it = node.getChildren(); it.hasNext();) {
-      Node child = it.next();
-      result.addAll(computeSubClasses(child.klass.getReference()));
+      collectSubClasses(it.next(), result);
     }
-    return result;
   }
 
   @Override
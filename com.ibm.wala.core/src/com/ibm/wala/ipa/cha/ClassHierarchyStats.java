@@ -30,5 +30,39 @@ public class ClassHierarchyStats {
       System.out.println("  classes: " + loaders[i].getNumberOfClasses());
       System.out.println("  methods: " + loaders[i].getNumberOfMethods());
     }
+    if (cha instanceof ClassHierarchy) {
+      ClassHierarchy c = (ClassHierarchy) cha;
+      System.out.println("subclass cache: " + cacheStats(c.getSubclassCacheStats()));
+      System.out.println("target cache: " + cacheStats(c.getTargetCacheStats()));
+    }
+  }
+
+  /**
+   * @return the fraction of lookups in the cache of subclass sets that hit, or 0 if there were none
+   */
+  public static double getSubclassCacheHitRate(ClassHierarchy cha) {
+    if (cha == null) {
+      throw new IllegalArgumentException("cha cannot be null");
+    }
+    return hitRate(cha.getSubclassCacheStats());
+  }
+
+  /**
+   * @return the fraction of lookups in the cache of dispatch target sets that hit, or 0 if there were none
+   */
+  public static double getTargetCacheHitRate(ClassHierarchy cha) {
+    if (cha == null) {
+      throw new IllegalArgumentException("cha cannot be null");
+    }
+    return hitRate(cha.getTargetCacheStats());
+  }
+
+  private static double hitRate(long[] stats) {
+    long lookups = stats[0] + stats[1];
+    return lookups == 0 ? 0 : (double) stats[0] / lookups;
+  }
+
+  private static String cacheStats(long[] stats) {
+    return stats[0] + " hits, " + stats[1] + " misses (" + Math.round(100 * hitRate(stats)) + "%)";
   }
 }
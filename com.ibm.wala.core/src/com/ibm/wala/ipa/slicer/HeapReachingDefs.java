@@ -47,6 +47,7 @@ import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.collections.Filter;
 import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.IntObjectHashMap;
 import com.ibm.wala.util.collections.Iterator2Collection;
 import com.ibm.wala.util.collections.Iterator2Iterable;
 import com.ibm.wala.util.collections.ObjectArrayMapping;
@@ -117,7 +118,7 @@ public class HeapReachingDefs {
     OrdinalSetMapping<Statement> domain = createStatementDomain(statements);
 
     // map SSAInstruction indices to statements
-    Map<Integer, NormalStatement> ssaInstructionIndex2Statement = mapInstructionsToStatements(domain);
+    IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement = mapInstructionsToStatements(domain);
 
     // solve reaching definitions as a dataflow problem
     BitVectorFramework<IExplodedBasicBlock, Statement> rd = new BitVectorFramework<IExplodedBasicBlock, Statement>(cfg, new RD(node,
@@ -147,7 +148,7 @@ public class HeapReachingDefs {
 
     RDMap(BitVectorSolver<? extends ISSABasicBlock> solver, OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h,
         PointerAnalysis pa, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
+        IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
       if (VERBOSE) {
         System.err.println("Init pointer Key mod ");
       }
@@ -166,7 +167,7 @@ public class HeapReachingDefs {
     private void eagerPopulate(Map<PointerKey, MutableIntSet> pointerKeyMod, BitVectorSolver<? extends ISSABasicBlock> solver,
         OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h, PointerAnalysis pa,
         Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstruction2Statement) {
+        IntObjectHashMap<NormalStatement> ssaInstruction2Statement) {
       for (Statement s : domain) {
         delegate.put(s, computeResult(s, pointerKeyMod, solver, domain, node, h, pa, mod, cfg, ssaInstruction2Statement));
       }
@@ -302,7 +303,7 @@ public class HeapReachingDefs {
     OrdinalSet<Statement> computeResult(Statement s, Map<PointerKey, MutableIntSet> pointerKeyMod,
         BitVectorSolver<? extends ISSABasicBlock> solver, OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h,
         PointerAnalysis pa, Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement) {
+        IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement) {
       switch (s.getKind()) {
       case NORMAL:
         NormalStatement n = (NormalStatement) s;
@@ -394,7 +395,7 @@ public class HeapReachingDefs {
   private Map<Statement, OrdinalSet<Statement>> makeResult(BitVectorSolver<? extends ISSABasicBlock> solver,
       OrdinalSetMapping<Statement> domain, CGNode node, ExtendedHeapModel h, PointerAnalysis pa,
       Map<CGNode, OrdinalSet<PointerKey>> mod, ExplodedControlFlowGraph cfg,
-      Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
+      IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions, CallGraph cg) {
 
     return new RDMap(solver, domain, node, h, pa, mod, cfg, ssaInstructionIndex2Statement, exclusions, cg);
   }
@@ -448,8 +449,8 @@ public class HeapReachingDefs {
   /**
    * map each SSAInstruction index to the NormalStatement which represents it.
    */
-  private static Map<Integer, NormalStatement> mapInstructionsToStatements(OrdinalSetMapping<Statement> domain) {
-    Map<Integer, NormalStatement> result = HashMapFactory.make();
+  private static IntObjectHashMap<NormalStatement> mapInstructionsToStatements(OrdinalSetMapping<Statement> domain) {
+    IntObjectHashMap<NormalStatement> result = new IntObjectHashMap<NormalStatement>();
     for (Statement s : domain) {
       if (s.getKind().equals(Kind.NORMAL)) {
         NormalStatement n = (NormalStatement) s;
@@ -480,7 +481,7 @@ public class HeapReachingDefs {
 
     private final ExtendedHeapModel h;
 
-    private final Map<Integer, NormalStatement> ssaInstructionIndex2Statement;
+    private final IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement;
 
     private final HeapExclusions exclusions;
 
@@ -491,7 +492,7 @@ public class HeapReachingDefs {
     private final IBinaryNaturalRelation heapReturnCaller = new BasicNaturalRelation();
 
     public RD(CGNode node, ExplodedControlFlowGraph cfg, PointerAnalysis pa, OrdinalSetMapping<Statement> domain,
-        Map<Integer, NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions) {
+        IntObjectHashMap<NormalStatement> ssaInstructionIndex2Statement, HeapExclusions exclusions) {
       this.node = node;
       this.cfg = cfg;
       this.domain = domain;
@@ -1091,6 +1091,20 @@ public class PDG implements NumberedGraph<Statement> {
     return delegate.getPredNodes(N);
   }
 
+  /**
+   * Build all nodes and edges of this PDG now, including the heap data dependence edges which are otherwise created lazily as
+   * statements are visited.
+   */
+  void computeAllEdges() {
+    populate();
+    if (!dOptions.isIgnoreHeap()) {
+      for (Statement st : Iterator2Collection.toList(delegate.iterator())) {
+        computeIncomingHeapDependencies(st);
+        computeOutgoingHeapDependencies(st);
+      }
+    }
+  }
+
   private void computeIncomingHeapDependencies(Statement N) {
     switch (N.getKind()) {
     case NORMAL:
@@ -10,10 +10,17 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.CGNode;
@@ -48,7 +55,8 @@ import com.ibm.wala.util.intset.OrdinalSet;
 /**
  * System dependence graph.
  * 
- * An SDG comprises a set of PDGs, one for each method. We compute these lazily.
+ * An SDG comprises a set of PDGs, one for each method. We compute these lazily, unless the SDG is constructed eagerly, in which case
+ * the PDGs may be built on several threads; see {@link #setParallelism(int)}.
  * 
  * Prototype implementation. Not efficient.
  */
@@ -121,6 +129,11 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
    */
   private boolean eagerComputed = false;
 
+  /**
+   * number of threads on which eager construction builds the PDGs
+   */
+  private int parallelism = 1;
+
   public SDG(final CallGraph cg, PointerAnalysis pa, DataDependenceOptions dOptions, ControlDependenceOptions cOptions) {
     this(cg, pa, ModRef.make(), dOptions, cOptions, null);
   }
@@ -159,17 +172,35 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
   }
 
   /**
-   * force eager construction of the entire SDG
+   * Set the number of threads on which {@link #eagerConstruction()} builds the PDGs. The default is 1, which builds them on the
+   * calling thread.
+   * 
+   * With more threads, the heap reaching definitions and control dependences of different methods are computed concurrently, while
+   * queries to the pointer analysis are serialized. Each PDG is built by one worker and handed back to the calling thread, which
+   * adds the statements to the SDG in call graph order. The SDG itself is no more thread-safe than with one thread.
+   * 
+   * @throws IllegalArgumentException if threads &lt; 1
+   */
+  public void setParallelism(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be >= 1: " + threads);
+    }
+    this.parallelism = threads;
+  }
+
+  /**
+   * force eager construction of the entire SDG. Use this with care, SDGs can be big.
+   * 
+   * @see #setParallelism(int)
    */
-  private void eagerConstruction() {
+  public void eagerConstruction() {
     if (DEBUG_LAZY) {
       Assertions.UNREACHABLE();
     }
     // Assertions.UNREACHABLE();
     if (!eagerComputed) {
       eagerComputed = true;
-      computeAllPDGs();
-      for (PDG pdg : pdgMap.values()) {
+      for (PDG pdg : computeAllPDGs()) {
         addPDGStatementNodes(pdg.getCallGraphNode());
       }
     }
@@ -187,11 +218,82 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
 
   /**
    * force computation of all PDGs in the SDG
+   * 
+   * @return the PDGs, in call graph order
    */
-  private void computeAllPDGs() {
+  private List<PDG> computeAllPDGs() {
+    List<PDG> result = new ArrayList<PDG>();
+    // PDGs which already exist query the pointer analysis directly, and synthetic methods have IRs which their context
+    // interpreters may mutate; we build both of these on this thread. Only the PDGs built by workers serialize their queries.
+    List<PDG> local = new ArrayList<PDG>();
+    List<PDG> confined = new ArrayList<PDG>();
+    PointerAnalysis synchronizedPA = (parallelism > 1 && pa != null) ? new SynchronizedPointerAnalysis(pa) : null;
     for (Iterator<? extends CGNode> it = cg.iterator(); it.hasNext();) {
       CGNode n = it.next();
-      getPDG(n);
+      PDG pdg = pdgMap.get(n);
+      if (pdg == null && synchronizedPA != null && !n.getMethod().isSynthetic()) {
+        pdg = new PDG(n, synchronizedPA, mod, ref, dOptions, cOptions, heapExclude, cg, modRef);
+        pdgMap.put(n, pdg);
+        confined.add(pdg);
+      } else {
+        pdg = getPDG(n);
+        local.add(pdg);
+      }
+      result.add(pdg);
+    }
+    for (PDG pdg : local) {
+      populate(pdg);
+    }
+    if (!confined.isEmpty()) {
+      populateInParallel(confined);
+    }
+    return result;
+  }
+
+  /**
+   * build the nodes of a PDG; its heap data dependence edges are left to be built lazily
+   */
+  private static void populate(PDG pdg) {
+    pdg.getNumberOfNodes();
+  }
+
+  /**
+   * build the nodes and all edges of the given PDGs on {@link #parallelism} worker threads. The heap data dependence edges, which
+   * dominate the cost, are built here too, since otherwise the first traversal of the SDG would build them one at a time. Each PDG
+   * is touched by one worker only, and waiting for its future publishes it to this thread.
+   */
+  private void populateInParallel(List<PDG> pdgs) {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, pdgs.size()));
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(pdgs.size());
+      for (final PDG pdg : pdgs) {
+        futures.add(pool.submit(new Callable<Object>() {
+          @Override
+          public Object call() {
+            pdg.computeAllEdges();
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> f : futures) {
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("interrupted while building PDGs", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          } else {
+            Assertions.UNREACHABLE(cause);
+          }
+        }
+      }
+    } finally {
+      pool.shutdownNow();
     }
   }
 
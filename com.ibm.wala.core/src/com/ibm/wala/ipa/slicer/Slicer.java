@@ -10,12 +10,17 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.slicer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import com.ibm.wala.dataflow.IFDS.BackwardsSupergraph;
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
 import com.ibm.wala.dataflow.IFDS.IMergeFunction;
 import com.ibm.wala.dataflow.IFDS.IPartiallyBalancedFlowFunctions;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IdentityFlowFunction;
 import com.ibm.wala.dataflow.IFDS.ISupergraph;
 import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationProblem;
 import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationSolver;
@@ -28,6 +33,10 @@ import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
 
 /**
  * A demand-driven context-sensitive slicer.
@@ -35,6 +44,12 @@ import com.ibm.wala.util.collections.HashSetFactory;
  * This computes a context-sensitive slice, building an SDG and finding realizable paths to a statement using tabulation.
  * 
  * This implementation uses a preliminary pointer analysis to compute data dependence between heap locations in the SDG.
+ * 
+ * To slice from many statements, use {@link #computeBackwardSlices(SDG, List)} or {@link #computeForwardSlices(SDG, List)}, which
+ * compute the slices of all the statements in one tabulation.
+ * 
+ * To reuse procedure summaries across runs, compute them into a {@link SummaryStore} and pass it to
+ * {@link #slice(SDG, Collection, boolean, SummaryStore)}.
  */
 public class Slicer {
 
@@ -172,6 +187,63 @@ public class Slicer {
     return computeSlice(sdg, ss, true);
   }
 
+  /**
+   * Use the passed-in SDG, stepping over calls to the procedures summarized in the store
+   * 
+   * @throws CancelException
+   */
+  public static Collection<Statement> computeBackwardSlice(SDG sdg, Collection<Statement> ss, SummaryStore summaries)
+      throws IllegalArgumentException, CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().slice(sdg, ss, true, summaries);
+  }
+
+  /**
+   * Use the passed-in SDG, stepping over calls to the procedures summarized in the store
+   * 
+   * @throws CancelException
+   */
+  public static Collection<Statement> computeForwardSlice(SDG sdg, Collection<Statement> ss, SummaryStore summaries)
+      throws IllegalArgumentException, CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    return new Slicer().slice(sdg, ss, false, summaries);
+  }
+
+  /**
+   * Compute the backward slice of each of the given statements, in one tabulation over the passed-in SDG.
+   * 
+   * @param seeds the statements of interest; the i'th slice is the slice of the i'th statement
+   * @throws CancelException
+   */
+  public static MultiSlice computeBackwardSlices(SDG sdg, List<Statement> seeds) throws IllegalArgumentException,
+      CancelException {
+    return computeSlices(sdg, seeds, true);
+  }
+
+  /**
+   * Compute the forward slice of each of the given statements, in one tabulation over the passed-in SDG.
+   * 
+   * @param seeds the statements of interest; the i'th slice is the slice of the i'th statement
+   * @throws CancelException
+   */
+  public static MultiSlice computeForwardSlices(SDG sdg, List<Statement> seeds) throws IllegalArgumentException, CancelException {
+    return computeSlices(sdg, seeds, false);
+  }
+
+  protected static MultiSlice computeSlices(SDG sdg, List<Statement> seeds, boolean backward) throws CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    if (seeds == null) {
+      throw new IllegalArgumentException("seeds cannot be null");
+    }
+    return new Slicer().sliceAll(sdg, seeds, backward);
+  }
+
   /**
    * @param ss a collection of statements of interest
    * @throws CancelException
@@ -212,6 +284,69 @@ public class Slicer {
     return slice;
   }
 
+  /**
+   * Slice using the summaries in a {@link SummaryStore}: calls to procedures with a valid summary are stepped over along their
+   * summary edges instead of being tabulated, so the statements inside those procedures are not in the slice.
+   * 
+   * @param sdg governing system dependence graph
+   * @param roots set of roots to slice from
+   * @param backward do a backwards slice?
+   * @param summaries procedure summaries, usually computed and saved by an earlier run
+   * @return the {@link Statement}s found by the slicer
+   * @throws CancelException
+   */
+  public Collection<Statement> slice(SDG sdg, Collection<Statement> roots, boolean backward, SummaryStore summaries)
+      throws CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    if (summaries == null) {
+      throw new IllegalArgumentException("summaries cannot be null");
+    }
+    SummarizedCalls calls = new SummarizedCalls(summaries, sdg);
+    SliceProblem p = new SliceProblem(roots, sdg, backward, calls.wrap(new SliceFunctions()));
+
+    PartiallyBalancedTabulationSolver<Statement, PDG, Object> solver = calls.makePartiallyBalancedSolver(p);
+    TabulationResult<Statement, PDG, Object> tr = solver.solve();
+
+    if (VERBOSE) {
+      System.err.println("Slicer done.");
+    }
+
+    return tr.getSupergraphNodesReached();
+  }
+
+  /**
+   * Slice from each of several statements, in one tabulation.
+   * 
+   * Each seed gets its own fact, and the flow functions of {@link SliceFunctions} carry a fact along an edge exactly when they
+   * would carry the reachability fact of a single slice along it, so each slice is the one {@link #slice(SDG, Collection, boolean)}
+   * computes for its seed alone. One solver computes all the slices, so the SDG edges it builds on demand serve every seed, the
+   * summary edges of a procedure serve all calls to it, and the result at each statement is the set of seeds whose slices contain
+   * it.
+   * 
+   * @param sdg governing system dependence graph
+   * @param seeds the statements to slice from
+   * @param backward do backwards slices?
+   * @throws CancelException
+   */
+  public MultiSlice sliceAll(SDG sdg, List<Statement> seeds, boolean backward) throws CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg cannot be null");
+    }
+    MultiSliceProblem p = new MultiSliceProblem(seeds, sdg, backward);
+
+    PartiallyBalancedTabulationSolver<Statement, PDG, Object> solver = PartiallyBalancedTabulationSolver
+        .createPartiallyBalancedTabulationSolver(p, null);
+    TabulationResult<Statement, PDG, Object> tr = solver.solve();
+
+    if (VERBOSE) {
+      System.err.println("Slicer done.");
+    }
+
+    return new MultiSlice(seeds, tr);
+  }
+
   /**
    * Return an object which encapsulates the tabulation logic for the slice problem. Subclasses can override this method to
    * implement special semantics.
@@ -240,16 +375,20 @@ public class Slicer {
 
     private final ISupergraph<Statement, PDG> supergraph;
 
-    private final SliceFunctions f;
+    private final IPartiallyBalancedFlowFunctions<Statement> f;
 
     private final boolean backward;
 
     public SliceProblem(Collection<Statement> roots, ISDG sdg, boolean backward) {
+      this(roots, sdg, backward, new SliceFunctions());
+    }
+
+    SliceProblem(Collection<Statement> roots, ISDG sdg, boolean backward, IPartiallyBalancedFlowFunctions<Statement> f) {
       this.roots = roots;
       this.backward = backward;
       SDGSupergraph forwards = new SDGSupergraph(sdg, backward);
       this.supergraph = backward ? BackwardsSupergraph.make(forwards) : forwards;
-      f = new SliceFunctions();
+      this.f = f;
     }
 
     /*
@@ -311,4 +450,190 @@ public class Slicer {
 
   }
 
+  /**
+   * The slices of several statements, computed together by {@link Slicer#sliceAll(SDG, List, boolean)}.
+   */
+  public static class MultiSlice {
+
+    private final List<Statement> seeds;
+
+    /**
+     * fact i+1 at a statement means that the statement is in the slice of the i'th seed
+     */
+    private final TabulationResult<Statement, PDG, Object> result;
+
+    private MultiSlice(List<Statement> seeds, TabulationResult<Statement, PDG, Object> result) {
+      this.seeds = Collections.unmodifiableList(new ArrayList<Statement>(seeds));
+      this.result = result;
+    }
+
+    /**
+     * @return the statements sliced from, in order
+     */
+    public List<Statement> getSeeds() {
+      return seeds;
+    }
+
+    /**
+     * @return the statements in at least one of the slices
+     */
+    public Collection<Statement> getStatementsReached() {
+      return result.getSupergraphNodesReached();
+    }
+
+    /**
+     * @return the indices of the seeds whose slices contain s
+     */
+    public IntSet getSeedsReaching(Statement s) {
+      MutableSparseIntSet seedsReaching = MutableSparseIntSet.makeEmpty();
+      IntSet facts = result.getResult(s);
+      if (facts != null) {
+        for (IntIterator it = facts.intIterator(); it.hasNext();) {
+          int fact = it.next();
+          if (fact > 0) {
+            seedsReaching.add(fact - 1);
+          }
+        }
+      }
+      return seedsReaching;
+    }
+
+    /**
+     * @return the slice of the i'th seed
+     */
+    public Collection<Statement> getSlice(int i) {
+      if (i < 0 || i >= seeds.size()) {
+        throw new IllegalArgumentException("no seed " + i);
+      }
+      Collection<Statement> slice = HashSetFactory.make();
+      for (Statement s : getStatementsReached()) {
+        IntSet facts = result.getResult(s);
+        if (facts != null && facts.contains(i + 1)) {
+          slice.add(s);
+        }
+      }
+      return slice;
+    }
+  }
+
+  /**
+   * Tabulation problem for slicing from several seeds at once. Fact i+1 stands for the slice of the i'th seed; fact 0 is not used.
+   */
+  public static class MultiSliceProblem implements PartiallyBalancedTabulationProblem<Statement, PDG, Object> {
+
+    private final List<Statement> seeds;
+
+    private final ISupergraph<Statement, PDG> supergraph;
+
+    private final LabeledSliceFunctions f;
+
+    private final boolean backward;
+
+    public MultiSliceProblem(List<Statement> seeds, ISDG sdg, boolean backward) {
+      this(seeds, sdg, backward, new SliceFunctions());
+    }
+
+    /**
+     * @param reachability flow functions for a single slice, which carry fact 0 or kill it
+     */
+    MultiSliceProblem(List<Statement> seeds, ISDG sdg, boolean backward, IPartiallyBalancedFlowFunctions<Statement> reachability) {
+      this.seeds = seeds;
+      this.backward = backward;
+      SDGSupergraph forwards = new SDGSupergraph(sdg, backward);
+      this.supergraph = backward ? BackwardsSupergraph.make(forwards) : forwards;
+      f = new LabeledSliceFunctions(reachability);
+    }
+
+    @Override
+    public TabulationDomain<Object, Statement> getDomain() {
+      // a dummy
+      return new UnorderedDomain<Object, Statement>();
+    }
+
+    @Override
+    public IPartiallyBalancedFlowFunctions<Statement> getFunctionMap() {
+      return f;
+    }
+
+    @Override
+    public IMergeFunction getMergeFunction() {
+      return null;
+    }
+
+    @Override
+    public ISupergraph<Statement, PDG> getSupergraph() {
+      return supergraph;
+    }
+
+    @Override
+    public Collection<PathEdge<Statement>> initialSeeds() {
+      Collection<PathEdge<Statement>> result = HashSetFactory.make();
+      int fact = 1;
+      for (Statement st : seeds) {
+        result.add(PathEdge.createPathEdge(getFakeEntry(st), fact, st, fact));
+        fact++;
+      }
+      return result;
+    }
+
+    @Override
+    public Statement getFakeEntry(Statement node) {
+      return backward ? new MethodExitStatement(node.getNode()) : new MethodEntryStatement(node.getNode());
+    }
+  }
+
+  /**
+   * Lifts reachability flow functions, which carry the single fact 0 or kill it, to functions which carry every fact the same way.
+   */
+  private static class LabeledSliceFunctions implements IPartiallyBalancedFlowFunctions<Statement> {
+
+    private final IPartiallyBalancedFlowFunctions<Statement> reachability;
+
+    LabeledSliceFunctions(IPartiallyBalancedFlowFunctions<Statement> reachability) {
+      this.reachability = reachability;
+    }
+
+    private static IUnaryFlowFunction lift(IFlowFunction f) {
+      if (!(f instanceof IUnaryFlowFunction)) {
+        Assertions.UNREACHABLE("expected a unary reachability function: " + f);
+      }
+      IntSet targets = ((IUnaryFlowFunction) f).getTargets(0);
+      if (targets != null && targets.contains(0)) {
+        return IdentityFlowFunction.identity();
+      } else {
+        return ReachabilityFunctions.KILL_FLOW;
+      }
+    }
+
+    @Override
+    public IUnaryFlowFunction getNormalFlowFunction(Statement src, Statement dest) {
+      return lift(reachability.getNormalFlowFunction(src, dest));
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallFlowFunction(Statement src, Statement dest, Statement ret) {
+      return lift(reachability.getCallFlowFunction(src, dest, ret));
+    }
+
+    @Override
+    public IFlowFunction getReturnFlowFunction(Statement call, Statement src, Statement dest) {
+      return lift(reachability.getReturnFlowFunction(call, src, dest));
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallToReturnFlowFunction(Statement src, Statement dest) {
+      return lift(reachability.getCallToReturnFlowFunction(src, dest));
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallNoneToReturnFlowFunction(Statement src, Statement dest) {
+      return lift(reachability.getCallNoneToReturnFlowFunction(src, dest));
+    }
+
+    @Override
+    public IFlowFunction getUnbalancedReturnFlowFunction(Statement src, Statement dest) {
+      return lift(reachability.getUnbalancedReturnFlowFunction(src, dest));
+    }
+  }
+
 }
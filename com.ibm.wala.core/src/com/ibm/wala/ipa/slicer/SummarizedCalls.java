@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.ibm.wala.classLoader.ShrikeCTMethod;
+import com.ibm.wala.dataflow.IFDS.IFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IPartiallyBalancedFlowFunctions;
+import com.ibm.wala.dataflow.IFDS.IUnaryFlowFunction;
+import com.ibm.wala.dataflow.IFDS.IdentityFlowFunction;
+import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationProblem;
+import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationSolver;
+import com.ibm.wala.dataflow.IFDS.PathEdge;
+import com.ibm.wala.dataflow.IFDS.TabulationProblem;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.slicer.SummaryStore.Summary;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
+
+/**
+ * The summaries of a {@link SummaryStore} which are valid for the call graph of one SDG, and the tabulation machinery to step over
+ * calls to the summarized procedures.
+ */
+class SummarizedCalls {
+
+  private final SummaryStore store;
+
+  private final SDG sdg;
+
+  /**
+   * procedure -> its valid summary, or null if it has none
+   */
+  private final Map<CGNode, Summary> valid = HashMapFactory.make();
+
+  /**
+   * SCCs of the call graph, callees first; computed lazily
+   */
+  private List<Set<CGNode>> sccs;
+
+  /**
+   * procedure -> hash of the bytecodes of its SCC and of all SCCs it reaches; computed lazily
+   */
+  private Map<CGNode, String> hashes;
+
+  SummarizedCalls(SummaryStore store, SDG sdg) {
+    this.store = store;
+    this.sdg = sdg;
+  }
+
+  SDG getSDG() {
+    return sdg;
+  }
+
+  List<Set<CGNode>> getSCCsCalleesFirst() {
+    computeHashes();
+    return sccs;
+  }
+
+  String getHash(CGNode n) {
+    computeHashes();
+    return hashes.get(n);
+  }
+
+  /**
+   * @return the summary of n, if the store has one which still describes n; null otherwise
+   */
+  Summary getSummary(CGNode n) {
+    if (valid.containsKey(n)) {
+      return valid.get(n);
+    }
+    Summary s = store.matches(sdg) ? store.get(n) : null;
+    if (s != null && (!s.getHash().equals(getHash(n)) || !s.getFormalIns().equals(getFormalIns(n)))) {
+      s = null;
+    }
+    valid.put(n, s);
+    return s;
+  }
+
+  void update(CGNode n, Summary s) {
+    valid.put(n, s);
+  }
+
+  /**
+   * the labels of n's formal-in statements; unlike its formal-outs, these are known without building its PDG
+   */
+  private Set<String> getFormalIns(CGNode n) {
+    Set<String> result = HashSetFactory.make();
+    result.add(SummaryStore.label(new MethodEntryStatement(n)));
+    for (Statement s : sdg.getPDG(n).getParamCalleeStatements()) {
+      result.add(SummaryStore.label(s));
+    }
+    return result;
+  }
+
+  private void computeHashes() {
+    if (hashes != null) {
+      return;
+    }
+    CallGraph cg = sdg.getCallGraph();
+    // the SCC iterator yields callers before callees
+    sccs = new ArrayList<Set<CGNode>>();
+    for (SCCIterator<CGNode> it = new SCCIterator<CGNode>(cg); it.hasNext();) {
+      sccs.add(it.next());
+    }
+    Collections.reverse(sccs);
+
+    hashes = HashMapFactory.make();
+    for (Set<CGNode> scc : sccs) {
+      MessageDigest digest = makeDigest();
+      // hash the members and the hashes of the callee SCCs in an order which does not depend on this run's numbering
+      Set<String> members = new TreeSet<String>();
+      Set<String> callees = new TreeSet<String>();
+      for (CGNode n : scc) {
+        members.add(SummaryStore.key(n) + " " + hex(getBytecodes(n)));
+        for (Iterator<? extends CGNode> it = cg.getSuccNodes(n); it.hasNext();) {
+          CGNode callee = it.next();
+          if (!scc.contains(callee)) {
+            String h = hashes.get(callee);
+            if (h == null) {
+              Assertions.UNREACHABLE("callee SCC not hashed before caller: " + callee);
+            }
+            callees.add(h);
+          }
+        }
+      }
+      for (String m : members) {
+        update(digest, m);
+      }
+      for (String h : callees) {
+        update(digest, h);
+      }
+      String hash = hex(digest.digest());
+      for (CGNode n : scc) {
+        hashes.put(n, hash);
+      }
+    }
+  }
+
+  private static byte[] getBytecodes(CGNode n) {
+    if (n.getMethod() instanceof ShrikeCTMethod) {
+      byte[] b = ((ShrikeCTMethod) n.getMethod()).getBytecodes();
+      if (b != null) {
+        return b;
+      }
+    }
+    // synthetic methods are generated from their signature
+    return new byte[0];
+  }
+
+  private static MessageDigest makeDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      Assertions.UNREACHABLE("every Java platform supports SHA-1");
+      return null;
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    try {
+      digest.update(s.getBytes("UTF-8"));
+      digest.update((byte) 0);
+    } catch (UnsupportedEncodingException e) {
+      Assertions.UNREACHABLE("every Java platform supports UTF-8");
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder result = new StringBuilder(2 * bytes.length);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16));
+      result.append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  private static boolean isActualIn(Statement s) {
+    switch (s.getKind()) {
+    case PARAM_CALLER:
+    case HEAP_PARAM_CALLER:
+    case NORMAL:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isActualOut(Statement s) {
+    switch (s.getKind()) {
+    case NORMAL_RET_CALLER:
+    case EXC_RET_CALLER:
+    case HEAP_RET_CALLER:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isFormalIn(Statement s) {
+    switch (s.getKind()) {
+    case METHOD_ENTRY:
+    case PARAM_CALLEE:
+    case HEAP_PARAM_CALLEE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isFormalOut(Statement s) {
+    switch (s.getKind()) {
+    case NORMAL_RET_CALLEE:
+    case EXC_RET_CALLEE:
+    case HEAP_RET_CALLEE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Does a summarized callee connect an actual-in statement of a call to an actual-out statement of the same call? The statements
+   * may come in either order, since backward slices step over calls from the actual-outs to the actual-ins.
+   */
+  boolean connects(Statement src, Statement dest) {
+    Statement in = isActualIn(src) ? src : dest;
+    Statement out = in == src ? dest : src;
+    if (!isActualIn(in) || !isActualOut(out)) {
+      return false;
+    }
+    Collection<Statement> formalOuts = HashSetFactory.make();
+    for (Iterator<Statement> it = sdg.getPredNodes(out); it.hasNext();) {
+      Statement s = it.next();
+      if (isFormalOut(s) && getSummary(s.getNode()) != null) {
+        formalOuts.add(s);
+      }
+    }
+    if (formalOuts.isEmpty()) {
+      return false;
+    }
+    for (Iterator<Statement> it = sdg.getSuccNodes(in); it.hasNext();) {
+      Statement formalIn = it.next();
+      if (isFormalIn(formalIn)) {
+        Summary s = getSummary(formalIn.getNode());
+        if (s != null) {
+          for (Statement formalOut : formalOuts) {
+            if (formalOut.getNode().equals(formalIn.getNode())
+                && s.reaches(SummaryStore.label(formalIn), SummaryStore.label(formalOut))) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return flow functions which also carry facts across calls along the summaries of the callees
+   */
+  IPartiallyBalancedFlowFunctions<Statement> wrap(IPartiallyBalancedFlowFunctions<Statement> f) {
+    return new SummarizingFunctions(f);
+  }
+
+  /**
+   * @return a solver which does not descend into summarized callees
+   */
+  TabulationSolver<Statement, PDG, Object> makeSolver(TabulationProblem<Statement, PDG, Object> p) {
+    return new TabulationSolver<Statement, PDG, Object>(p, null) {
+      @Override
+      protected void processParticularCallee(PathEdge<Statement> edge, int callNodeNum, Collection<Statement> allReturnSites,
+          Statement calleeEntry) {
+        if (getSummary(calleeEntry.getNode()) == null) {
+          super.processParticularCallee(edge, callNodeNum, allReturnSites, calleeEntry);
+        } else {
+          addReturnSites(supergraph.getReturnSites(edge.getTarget(), supergraph.getProcOf(calleeEntry)), allReturnSites);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return a partially balanced solver which does not descend into summarized callees
+   */
+  PartiallyBalancedTabulationSolver<Statement, PDG, Object> makePartiallyBalancedSolver(
+      PartiallyBalancedTabulationProblem<Statement, PDG, Object> p) {
+    return new PartiallyBalancedTabulationSolver<Statement, PDG, Object>(p, null) {
+      @Override
+      protected void processParticularCallee(PathEdge<Statement> edge, int callNodeNum, Collection<Statement> allReturnSites,
+          Statement calleeEntry) {
+        if (getSummary(calleeEntry.getNode()) == null) {
+          super.processParticularCallee(edge, callNodeNum, allReturnSites, calleeEntry);
+        } else {
+          addReturnSites(supergraph.getReturnSites(edge.getTarget(), supergraph.getProcOf(calleeEntry)), allReturnSites);
+        }
+      }
+    };
+  }
+
+  private static void addReturnSites(Iterator<? extends Statement> returnSites, Collection<Statement> allReturnSites) {
+    while (returnSites.hasNext()) {
+      allReturnSites.add(returnSites.next());
+    }
+  }
+
+  private class SummarizingFunctions implements IPartiallyBalancedFlowFunctions<Statement> {
+
+    private final IPartiallyBalancedFlowFunctions<Statement> delegate;
+
+    SummarizingFunctions(IPartiallyBalancedFlowFunctions<Statement> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public IUnaryFlowFunction getNormalFlowFunction(Statement src, Statement dest) {
+      return delegate.getNormalFlowFunction(src, dest);
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallFlowFunction(Statement src, Statement dest, Statement ret) {
+      return delegate.getCallFlowFunction(src, dest, ret);
+    }
+
+    @Override
+    public IFlowFunction getReturnFlowFunction(Statement call, Statement src, Statement dest) {
+      return delegate.getReturnFlowFunction(call, src, dest);
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallToReturnFlowFunction(Statement src, Statement dest) {
+      if (connects(src, dest)) {
+        return IdentityFlowFunction.identity();
+      }
+      return delegate.getCallToReturnFlowFunction(src, dest);
+    }
+
+    @Override
+    public IUnaryFlowFunction getCallNoneToReturnFlowFunction(Statement src, Statement dest) {
+      return delegate.getCallNoneToReturnFlowFunction(src, dest);
+    }
+
+    @Override
+    public IFlowFunction getUnbalancedReturnFlowFunction(Statement src, Statement dest) {
+      return delegate.getUnbalancedReturnFlowFunction(src, dest);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.ibm.wala.classLoader.ShrikeCTMethod;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.dataflow.IFDS.TabulationSolver;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * A persistent store of procedure summaries for the {@link Slicer}.
+ *
+ * The summary of a {@link CGNode} records which of its formal-in statements (the method entry, its parameters and the heap
+ * locations it reads) reach which of its formal-out statements (its return values and the heap locations it writes) in the SDG.
+ * Summaries are keyed by method signature and context, so a store computed in one run can be saved with
+ * {@link #write(OutputStream)}, read back with {@link #read(InputStream)} in a later run, and handed to
+ * {@link Slicer#slice(SDG, java.util.Collection, boolean, SummaryStore)}, which then steps over calls to summarized procedures
+ * instead of slicing through them.
+ *
+ * A summary is only used while it still describes the code: each one carries a hash of the bytecodes of its procedure and of
+ * everything the procedure calls, transitively, in the call graph, and it is ignored if that hash or the formal-in statements of
+ * the procedure differ in the current run. Summaries of heap locations also assume a pointer analysis that names locations the same
+ * way.
+ *
+ * Statements inside a summarized procedure are not part of slices computed with the store; summaries are intended for library code
+ * whose statements are not of interest. Only procedures with bytecodes get summaries.
+ */
+public class SummaryStore implements Serializable {
+
+  private static final long serialVersionUID = -2474183385410929517L;
+
+  private final DataDependenceOptions dOptions;
+
+  private final ControlDependenceOptions cOptions;
+
+  /**
+   * procedure key -> summary
+   */
+  private final Map<String, Summary> summaries = new TreeMap<String, Summary>();
+
+  /**
+   * @param dOptions the data dependence options of the SDGs this store summarizes
+   * @param cOptions the control dependence options of the SDGs this store summarizes
+   */
+  public SummaryStore(DataDependenceOptions dOptions, ControlDependenceOptions cOptions) {
+    if (dOptions == null) {
+      throw new IllegalArgumentException("dOptions is null");
+    }
+    if (cOptions == null) {
+      throw new IllegalArgumentException("cOptions is null");
+    }
+    this.dOptions = dOptions;
+    this.cOptions = cOptions;
+  }
+
+  public DataDependenceOptions getDataDependenceOptions() {
+    return dOptions;
+  }
+
+  public ControlDependenceOptions getControlDependenceOptions() {
+    return cOptions;
+  }
+
+  /**
+   * @return the number of summaries in this store, including stale ones
+   */
+  public int size() {
+    return summaries.size();
+  }
+
+  /**
+   * Compute summaries for the procedures of the SDG's call graph which satisfy the filter, replacing any stale summaries stored for
+   * them.
+   *
+   * @throws IllegalArgumentException if the SDG was built with different options than this store
+   * @throws CancelException
+   */
+  public void summarize(SDG sdg, Predicate<CGNode> filter) throws IllegalArgumentException, CancelException {
+    if (sdg == null) {
+      throw new IllegalArgumentException("sdg is null");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("filter is null");
+    }
+    if (!matches(sdg)) {
+      throw new IllegalArgumentException("sdg options " + sdg.getDOptions() + " " + sdg.getCOptions() + " differ from " + dOptions
+          + " " + cOptions);
+    }
+    SummarizedCalls calls = new SummarizedCalls(this, sdg);
+    // callees first, so that a procedure's summary can use those of its callees. Procedures in the same SCC tabulate through each
+    // other, so they only see each other's summaries once all of them are computed.
+    for (Set<CGNode> scc : calls.getSCCsCalleesFirst()) {
+      Map<CGNode, Summary> computed = HashMapFactory.make();
+      for (CGNode n : scc) {
+        if (n.getMethod() instanceof ShrikeCTMethod && filter.test(n) && calls.getSummary(n) == null) {
+          computed.put(n, computeSummary(calls, n));
+        }
+      }
+      for (Map.Entry<CGNode, Summary> e : computed.entrySet()) {
+        summaries.put(key(e.getKey()), e.getValue());
+        calls.update(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Slice forward from each formal-in statement of n, stepping over calls to procedures already summarized.
+   */
+  private static Summary computeSummary(SummarizedCalls calls, CGNode n) throws CancelException {
+    SDG sdg = calls.getSDG();
+    PDG pdg = sdg.getPDG(n);
+    SDGSupergraph supergraph = new SDGSupergraph(sdg, false);
+    Statement[] entries = supergraph.getEntriesForProcedure(pdg);
+    Statement[] exits = supergraph.getExitsForProcedure(pdg);
+
+    Slicer.MultiSliceProblem p = new Slicer.MultiSliceProblem(Arrays.asList(entries), sdg, false, calls
+        .wrap(new SliceFunctions()));
+    TabulationSolver<Statement, PDG, Object> solver = calls.makeSolver(p);
+    TabulationResult<Statement, PDG, Object> result = solver.solve();
+
+    Map<String, Set<String>> reaches = new TreeMap<String, Set<String>>();
+    for (Statement entry : entries) {
+      reaches.put(label(entry), new TreeSet<String>());
+    }
+    for (Statement exit : exits) {
+      IntSet facts = result.getResult(exit);
+      if (facts != null) {
+        for (IntIterator it = facts.intIterator(); it.hasNext();) {
+          int fact = it.next();
+          if (fact > 0) {
+            reaches.get(label(entries[fact - 1])).add(label(exit));
+          }
+        }
+      }
+    }
+    return new Summary(calls.getHash(n), reaches);
+  }
+
+  boolean matches(SDG sdg) {
+    return dOptions.equals(sdg.getDOptions()) && cOptions.equals(sdg.getCOptions());
+  }
+
+  Summary get(CGNode n) {
+    return summaries.get(key(n));
+  }
+
+  /**
+   * the key of a procedure: its method and context, which name it in any run
+   */
+  static String key(CGNode n) {
+    return n.getMethod().getSignature() + " " + n.getContext();
+  }
+
+  /**
+   * a name for a formal statement which does not depend on its procedure's number in this run
+   */
+  static String label(Statement s) {
+    switch (s.getKind()) {
+    case METHOD_ENTRY:
+      return "entry";
+    case METHOD_EXIT:
+      return "exit";
+    case PARAM_CALLEE:
+      return "param " + ((ParamCallee) s).getValueNumber();
+    case NORMAL_RET_CALLEE:
+      return "return";
+    case EXC_RET_CALLEE:
+      return "exception";
+    case HEAP_PARAM_CALLEE:
+      return "heap " + ((HeapStatement) s).getLocation();
+    case HEAP_RET_CALLEE:
+      return "heap return " + ((HeapStatement) s).getLocation();
+    default:
+      throw new IllegalArgumentException("not a formal statement: " + s);
+    }
+  }
+
+  /**
+   * Write this store to a stream. The stream is not closed.
+   */
+  public void write(OutputStream out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("out is null");
+    }
+    ObjectOutputStream o = new ObjectOutputStream(out);
+    o.writeObject(this);
+    o.flush();
+  }
+
+  /**
+   * Read a store written by {@link #write(OutputStream)}. The stream is not closed.
+   */
+  public static SummaryStore read(InputStream in) throws IOException {
+    if (in == null) {
+      throw new IllegalArgumentException("in is null");
+    }
+    ObjectInputStream o = new ObjectInputStream(in);
+    try {
+      return (SummaryStore) o.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } catch (ClassCastException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * The summary of one procedure.
+   */
+  static class Summary implements Serializable {
+
+    private static final long serialVersionUID = 6230865452862009731L;
+
+    /**
+     * hash of the bytecodes of the procedure and its transitive callees when the summary was computed
+     */
+    private final String hash;
+
+    /**
+     * formal-in label -> labels of the formal-out statements it reaches
+     */
+    private final Map<String, Set<String>> reaches;
+
+    Summary(String hash, Map<String, Set<String>> reaches) {
+      this.hash = hash;
+      this.reaches = reaches;
+    }
+
+    String getHash() {
+      return hash;
+    }
+
+    Set<String> getFormalIns() {
+      return Collections.unmodifiableSet(reaches.keySet());
+    }
+
+    boolean reaches(String formalIn, String formalOut) {
+      Set<String> outs = reaches.get(formalIn);
+      return outs != null && outs.contains(formalOut);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.slicer;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.ibm.wala.analysis.pointers.HeapGraph;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.ProgramCounter;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.propagation.FilteredPointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.HeapModel;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.intset.OrdinalSet;
+import com.ibm.wala.util.intset.OrdinalSetMapping;
+
+/**
+ * A view of a {@link PointerAnalysis} that serializes all queries, so that PDGs can be built on several threads.
+ *
+ * Pointer analyses are not thread-safe even for queries: they create instance keys and points-to sets lazily. The PDG
+ * computations themselves (heap reaching definitions and control dependence) run in parallel; only their queries to the pointer
+ * analysis and its heap model take turns.
+ */
+class SynchronizedPointerAnalysis implements PointerAnalysis {
+
+  private final PointerAnalysis delegate;
+
+  private final HeapModel heapModel;
+
+  SynchronizedPointerAnalysis(PointerAnalysis delegate) {
+    this.delegate = delegate;
+    this.heapModel = new SynchronizedHeapModel(delegate.getHeapModel());
+  }
+
+  @Override
+  public OrdinalSet<InstanceKey> getPointsToSet(PointerKey key) {
+    synchronized (delegate) {
+      return delegate.getPointsToSet(key);
+    }
+  }
+
+  @Override
+  public HeapModel getHeapModel() {
+    return heapModel;
+  }
+
+  @Override
+  public HeapGraph getHeapGraph() {
+    synchronized (delegate) {
+      return delegate.getHeapGraph();
+    }
+  }
+
+  @Override
+  public OrdinalSetMapping<InstanceKey> getInstanceKeyMapping() {
+    synchronized (delegate) {
+      return delegate.getInstanceKeyMapping();
+    }
+  }
+
+  @Override
+  public Iterable<PointerKey> getPointerKeys() {
+    synchronized (delegate) {
+      return delegate.getPointerKeys();
+    }
+  }
+
+  @Override
+  public Collection<InstanceKey> getInstanceKeys() {
+    synchronized (delegate) {
+      return delegate.getInstanceKeys();
+    }
+  }
+
+  @Override
+  public boolean isFiltered(PointerKey pk) {
+    synchronized (delegate) {
+      return delegate.isFiltered(pk);
+    }
+  }
+
+  @Override
+  public IClassHierarchy getClassHierarchy() {
+    return delegate.getClassHierarchy();
+  }
+
+  /**
+   * serializes the queries to the heap model on the same lock as those to the pointer analysis, since the heap model may share the
+   * pointer analysis' state
+   */
+  private class SynchronizedHeapModel implements HeapModel {
+
+    private final HeapModel h;
+
+    SynchronizedHeapModel(HeapModel h) {
+      this.h = h;
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForAllocation(CGNode node, NewSiteReference allocation) {
+      synchronized (delegate) {
+        return h.getInstanceKeyForAllocation(node, allocation);
+      }
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForMultiNewArray(CGNode node, NewSiteReference allocation, int dim) {
+      synchronized (delegate) {
+        return h.getInstanceKeyForMultiNewArray(node, allocation, dim);
+      }
+    }
+
+    @Override
+    public <T> InstanceKey getInstanceKeyForConstant(TypeReference type, T S) {
+      synchronized (delegate) {
+        return h.getInstanceKeyForConstant(type, S);
+      }
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForPEI(CGNode node, ProgramCounter instr, TypeReference type) {
+      synchronized (delegate) {
+        return h.getInstanceKeyForPEI(node, instr, type);
+      }
+    }
+
+    @Override
+    public InstanceKey getInstanceKeyForClassObject(TypeReference type) {
+      synchronized (delegate) {
+        return h.getInstanceKeyForClassObject(type);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForLocal(CGNode node, int valueNumber) {
+      synchronized (delegate) {
+        return h.getPointerKeyForLocal(node, valueNumber);
+      }
+    }
+
+    @Override
+    public FilteredPointerKey getFilteredPointerKeyForLocal(CGNode node, int valueNumber, FilteredPointerKey.TypeFilter filter) {
+      synchronized (delegate) {
+        return h.getFilteredPointerKeyForLocal(node, valueNumber, filter);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForReturnValue(CGNode node) {
+      synchronized (delegate) {
+        return h.getPointerKeyForReturnValue(node);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForExceptionalReturnValue(CGNode node) {
+      synchronized (delegate) {
+        return h.getPointerKeyForExceptionalReturnValue(node);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForStaticField(IField f) {
+      synchronized (delegate) {
+        return h.getPointerKeyForStaticField(f);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForInstanceField(InstanceKey I, IField field) {
+      synchronized (delegate) {
+        return h.getPointerKeyForInstanceField(I, field);
+      }
+    }
+
+    @Override
+    public PointerKey getPointerKeyForArrayContents(InstanceKey I) {
+      synchronized (delegate) {
+        return h.getPointerKeyForArrayContents(I);
+      }
+    }
+
+    @Override
+    public Iterator<PointerKey> iteratePointerKeys() {
+      synchronized (delegate) {
+        return h.iteratePointerKeys();
+      }
+    }
+
+    @Override
+    public IClassHierarchy getClassHierarchy() {
+      return h.getClassHierarchy();
+    }
+  }
+}
@@ -10,115 +10,197 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.Context;
-import com.ibm.wala.util.collections.HashMapFactory;
-import com.ibm.wala.util.collections.HashSetFactory;
-import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.ref.CacheReference;
 
 /**
  * A cache for auxiliary information based on an SSA representation
- * 
+ *
  * A mapping from (IMethod,Context) -> SSAOptions -> SoftReference -> something
- * 
- * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
+ *
+ * The cache holds at most a fixed number of (IMethod,Context) pairs, and evicts the least recently used pairs beyond that. It is
+ * safe to use from several threads: each item is created at most once at a time, and a thread creating one item blocks only
+ * the threads that want the same item.
  */
 class AuxiliaryCache {
 
   /**
-   * A mapping from IMethod -> SSAOptions -> SoftReference -> IR
+   * Creates the item to cache when it is missing
    */
-  private HashMap<Pair<IMethod, Context>, Map<SSAOptions, Object>> dictionary = HashMapFactory.make();
+  interface Creator {
+    Object create();
+  }
 
   /**
-   * Help out the garbage collector: clear this cache when the number of items is > RESET_THRESHOLD
+   * A mapping from (IMethod,Context) -> Entry
    */
-  final private static int RESET_THRESHOLD = 2000;
+  private final ConcurrentMap<Pair<IMethod, Context>, Entry> dictionary = new ConcurrentHashMap<Pair<IMethod, Context>, Entry>();
 
   /**
-   * number of items cached here.
+   * the most (IMethod,Context) pairs to keep
    */
-  private int nItems = 0;
+  private final int capacity;
 
   /**
-   * The existence of this is unfortunate.
+   * a logical clock, ticked on every access, to order entries by last use
    */
-  public synchronized void wipe() {
-    dictionary = HashMapFactory.make();
-    nItems = 0;
-  }
+  private final AtomicLong clock = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * is some thread evicting entries?
+   */
+  private final AtomicBoolean evicting = new AtomicBoolean();
 
   /**
-   * clear out things from which no IR is reachable
+   * The items cached for one (IMethod,Context) pair
    */
-  private void reset() {
-    Map<Pair<IMethod, Context>, Map<SSAOptions, Object>> oldDictionary = dictionary;
-    dictionary = HashMapFactory.make();
-    nItems = 0;
-
-    for (Iterator<Map.Entry<Pair<IMethod, Context>, Map<SSAOptions, Object>>> it = oldDictionary.entrySet().iterator(); it
-        .hasNext();) {
-      Map.Entry<Pair<IMethod, Context>, Map<SSAOptions, Object>> e = it.next();
-      Map<SSAOptions, Object> m = e.getValue();
-      HashSet<Object> toRemove = HashSetFactory.make();
-      for (Iterator it2 = m.entrySet().iterator(); it2.hasNext();) {
-        Map.Entry e2 = (Map.Entry) it2.next();
-        Object key = e2.getKey();
-        Object val = e2.getValue();
-        if (CacheReference.get(val) == null) {
-          toRemove.add(key);
+  private static final class Entry {
+
+    /**
+     * clock value at the last access
+     */
+    private volatile long lastUse;
+
+    /**
+     * SSAOptions -> Slot; usually there is only one
+     */
+    private final ConcurrentMap<SSAOptions, Slot> slots = new ConcurrentHashMap<SSAOptions, Slot>(2, 0.75f, 1);
+
+    Slot findOrCreateSlot(SSAOptions options) {
+      Slot result = slots.get(options);
+      if (result == null) {
+        Slot s = new Slot();
+        result = slots.putIfAbsent(options, s);
+        if (result == null) {
+          result = s;
         }
       }
-      for (Iterator<Object> it2 = toRemove.iterator(); it2.hasNext();) {
-        m.remove(it2.next());
-      }
-      if (m.size() > 0) {
-        dictionary.put(e.getKey(), m);
-      }
+      return result;
     }
   }
 
   /**
-   * @param m a method
-   * @param options options governing ssa construction
-   * @return the object cached for m, or null if none found
+   * The item cached for one (IMethod,Context,SSAOptions). Whoever holds the lock of a slot is the only thread creating its item.
    */
-  public synchronized Object find(IMethod m, Context c, SSAOptions options) {
-    // methodMap: SSAOptions -> SoftReference
-    Pair<IMethod, Context> p = Pair.make(m, c);
-    Map methodMap = MapUtil.findOrCreateMap(dictionary, p);
-    Object ref = methodMap.get(options);
-    if (ref == null || CacheReference.get(ref) == null) {
-      return null;
-    } else {
-      return CacheReference.get(ref);
+  private static final class Slot {
+    /**
+     * a CacheReference to the item, or null; guarded by this
+     */
+    private Object ref;
+  }
+
+  /**
+   * @param capacity the most (IMethod,Context) pairs to keep
+   */
+  AuxiliaryCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
     }
+    this.capacity = capacity;
+  }
+
+  /**
+   * The existence of this is unfortunate.
+   */
+  public void wipe() {
+    dictionary.clear();
   }
 
   /**
-   * cache new auxiliary information for an <m,options> pair
-   * 
    * @param m a method
    * @param options options governing ssa construction
+   * @return the object cached for m, after creating and caching it with creator if none was found
    */
-  public synchronized void cache(IMethod m, Context c, SSAOptions options, Object aux) {
-    nItems++;
-
-    if (nItems > RESET_THRESHOLD) {
-      reset();
+  public Object findOrCreate(IMethod m, Context c, SSAOptions options, Creator creator) {
+    Slot s = findOrCreateEntry(m, c).findOrCreateSlot(options);
+    synchronized (s) {
+      Object result = CacheReference.get(s.ref);
+      if (result != null) {
+        hits.incrementAndGet();
+      } else {
+        misses.incrementAndGet();
+        result = creator.create();
+        s.ref = result == null ? null : CacheReference.make(result);
+      }
+      return result;
     }
+  }
+
+  private Entry findOrCreateEntry(IMethod m, Context c) {
     Pair<IMethod, Context> p = Pair.make(m, c);
-    // methodMap: SSAOptions -> SoftReference
-    Map<SSAOptions, Object> methodMap = MapUtil.findOrCreateMap(dictionary, p);
-    Object ref = CacheReference.make(aux);
-    methodMap.put(options, ref);
+    Entry result = dictionary.get(p);
+    if (result == null) {
+      Entry e = new Entry();
+      // stamp the entry before it is published, so that it is not the first to be evicted
+      e.lastUse = clock.incrementAndGet();
+      result = dictionary.putIfAbsent(p, e);
+      if (result == null) {
+        result = e;
+        if (dictionary.size() > capacity) {
+          evict();
+        }
+      }
+    }
+    result.lastUse = clock.incrementAndGet();
+    return result;
+  }
+
+  /**
+   * Evict the least recently used entries, so that the cache is comfortably below its capacity again. Evicting a batch at a time
+   * amortizes the cost of finding the entries to evict. If another thread is already evicting, do nothing.
+   */
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      List<Map.Entry<Pair<IMethod, Context>, Entry>> entries = new ArrayList<Map.Entry<Pair<IMethod, Context>, Entry>>(
+          dictionary.entrySet());
+      int target = capacity - capacity / 10;
+      if (entries.size() <= target) {
+        return;
+      }
+      // snapshot the clock values, since they change while we sort
+      final Map<Entry, Long> lastUse = new IdentityHashMap<Entry, Long>(entries.size());
+      for (Map.Entry<Pair<IMethod, Context>, Entry> e : entries) {
+        lastUse.put(e.getValue(), e.getValue().lastUse);
+      }
+      Collections.sort(entries, new Comparator<Map.Entry<Pair<IMethod, Context>, Entry>>() {
+        @Override
+        public int compare(Map.Entry<Pair<IMethod, Context>, Entry> o1, Map.Entry<Pair<IMethod, Context>, Entry> o2) {
+          long l1 = lastUse.get(o1.getValue());
+          long l2 = lastUse.get(o2.getValue());
+          return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+        }
+      });
+      for (int i = 0; i < entries.size() - target; i++) {
+        Map.Entry<Pair<IMethod, Context>, Entry> e = entries.get(i);
+        if (dictionary.remove(e.getKey(), e.getValue())) {
+          evictions.incrementAndGet();
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
   }
 
   /**
@@ -127,4 +209,8 @@ class AuxiliaryCache {
   public void invalidate(IMethod method, Context c) {
     dictionary.remove(Pair.make(method, c));
   }
+
+  SSACache.Statistics getStatistics() {
+    return new SSACache.Statistics(hits.get(), misses.get(), evictions.get(), dictionary.size(), capacity);
+  }
 }
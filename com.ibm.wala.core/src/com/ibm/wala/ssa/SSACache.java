@@ -17,10 +17,16 @@ import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 /**
  * A mapping from IMethod -> SSAOptions -> SoftReference -> Something
  * 
- * This doesn't work very well ... GCs don't do such a great job with SoftReferences ... revamp it.
+ * The caches are bounded by the number of (method, context) pairs they hold, and may be used by several threads at once; a thread
+ * building an IR only blocks the threads that want the same IR.
  */
 public class SSACache {
 
+  /**
+   * A tuning parameter: the default number of (method, context) pairs for which IRs and {@link DefUse}s are kept
+   */
+  public static final int DEFAULT_CAPACITY = 10000;
+
   /**
    * used for debugging
    */
@@ -34,18 +40,28 @@ public class SSACache {
   /**
    * A cache of SSA IRs
    */
-  final private AuxiliaryCache irCache = new AuxiliaryCache();
+  final private AuxiliaryCache irCache;
 
   /**
    * A cache of DefUse information
    */
-  final private AuxiliaryCache duCache = new AuxiliaryCache();
+  final private AuxiliaryCache duCache;
 
   /**
    * @param factory a factory for creating IRs
    */
   public SSACache(IRFactory<IMethod> factory) {
+    this(factory, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param factory a factory for creating IRs
+   * @param capacity the number of (method, context) pairs for which IRs, and separately {@link DefUse}s, are kept
+   */
+  public SSACache(IRFactory<IMethod> factory, int capacity) {
     this.factory = factory;
+    this.irCache = new AuxiliaryCache(capacity);
+    this.duCache = new AuxiliaryCache(capacity);
   }
 
   /**
@@ -54,7 +70,7 @@ public class SSACache {
    * @return an IR for m, built according to the specified options. null if m is abstract or native.
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
+  public IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
 
     if (m == null) {
       throw new IllegalArgumentException("m is null");
@@ -71,12 +87,13 @@ public class SSACache {
       return factory.makeIR(m, c, options);
     }
 
-    IR ir = (IR) irCache.find(m, c, options);
-    if (ir == null) {
-      ir = factory.makeIR(m, c, options);
-      irCache.cache(m, c, options, ir);
-    }
-    return ir;
+    final Context context = c;
+    return (IR) irCache.findOrCreate(m, c, options, new AuxiliaryCache.Creator() {
+      @Override
+      public Object create() {
+        return factory.makeIR(m, context, options);
+      }
+    });
   }
 
   /**
@@ -85,7 +102,7 @@ public class SSACache {
    * @return DefUse information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
+  public DefUse findOrCreateDU(final IMethod m, Context c, final SSAOptions options) {
     if (m == null) {
       throw new IllegalArgumentException("m is null");
     }
@@ -96,29 +113,29 @@ public class SSACache {
       c = Everywhere.EVERYWHERE;
     }
 
-    DefUse du = (DefUse) duCache.find(m, c, options);
-    if (du == null) {
-      IR ir = findOrCreateIR(m, c, options);
-      du = new DefUse(ir);
-      duCache.cache(m, c, options, du);
-    }
-    return du;
+    final Context context = c;
+    return (DefUse) duCache.findOrCreate(m, c, options, new AuxiliaryCache.Creator() {
+      @Override
+      public Object create() {
+        return new DefUse(findOrCreateIR(m, context, options));
+      }
+    });
   }
 
   /**
    * @return {@link DefUse} information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if ir is null
    */
-  public synchronized DefUse findOrCreateDU(IR ir, Context C) {
+  public DefUse findOrCreateDU(final IR ir, Context C) {
     if (ir == null) {
       throw new IllegalArgumentException("ir is null");
     }
-    DefUse du = (DefUse) duCache.find(ir.getMethod(), C, ir.getOptions());
-    if (du == null) {
-      du = new DefUse(ir);
-      duCache.cache(ir.getMethod(), C, ir.getOptions(), du);
-    }
-    return du;
+    return (DefUse) duCache.findOrCreate(ir.getMethod(), C, ir.getOptions(), new AuxiliaryCache.Creator() {
+      @Override
+      public Object create() {
+        return new DefUse(ir);
+      }
+    });
   }
 
   /**
@@ -150,4 +167,73 @@ public class SSACache {
     invalidateIR(method, c);
     invalidateDU(method, c);
   }
+
+  /**
+   * @return how well the cache of IRs has done so far
+   */
+  public Statistics getIRStatistics() {
+    return irCache.getStatistics();
+  }
+
+  /**
+   * @return how well the cache of {@link DefUse}s has done so far
+   */
+  public Statistics getDUStatistics() {
+    return duCache.getStatistics();
+  }
+
+  /**
+   * Counts of the lookups in one of the caches, for sizing it. An item the garbage collector reclaimed counts as a miss when it is
+   * next looked up, rather than as an eviction.
+   */
+  public static final class Statistics {
+    private final long hits;
+
+    private final long misses;
+
+    private final long evictions;
+
+    private final int size;
+
+    private final int capacity;
+
+    Statistics(long hits, long misses, long evictions, int size, int capacity) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.size = size;
+      this.capacity = capacity;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * @return the number of (method, context) pairs dropped to keep the cache within its capacity
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * @return the number of (method, context) pairs currently in the cache
+     */
+    public int getSize() {
+      return size;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    @Override
+    public String toString() {
+      return "hits: " + hits + " misses: " + misses + " evictions: " + evictions + " size: " + size + "/" + capacity;
+    }
+  }
 }
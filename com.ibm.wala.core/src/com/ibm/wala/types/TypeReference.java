@@ -16,8 +16,9 @@ import static com.ibm.wala.types.TypeName.PrimitiveMask;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import com.ibm.wala.util.collections.HashMapFactory;
 
 /**
  * A class to represent the reference in a class file to some type (class, primitive or array). A type reference is
@@ -43,12 +44,12 @@ public final class TypeReference implements Serializable {
   /**
    * Used for fast access to primitives. Primitives appear in the main dictionary also.
    */
-  private final static Map<TypeName, TypeReference> primitiveMap = HashMapFactory.make();
+  private final static Map<TypeName, TypeReference> primitiveMap = new ConcurrentHashMap<TypeName, TypeReference>();
 
   /**
-   * Used to canonicalize TypeReferences.
+   * Used to canonicalize TypeReferences. Reads do not lock, so many threads may resolve types at once.
    */
-  private final static Map<Key, TypeReference> dictionary = HashMapFactory.make();
+  private final static ConcurrentMap<Key, TypeReference> dictionary = new ConcurrentHashMap<Key, TypeReference>();
 
   /*********************************************************************************************************************
    * Primitive Dispatch *
@@ -376,7 +377,7 @@ public final class TypeReference implements Serializable {
    * 
    * @param cl the classloader (defining/initiating depending on usage)
    */
-  public static synchronized TypeReference findOrCreate(ClassLoaderReference cl, TypeName typeName) {
+  public static TypeReference findOrCreate(ClassLoaderReference cl, TypeName typeName) {
 
     if (cl == null) {
       throw new IllegalArgumentException("null cl");
@@ -400,9 +401,10 @@ public final class TypeReference implements Serializable {
     if (val != null) {
       return val;
     } else {
+      // if another thread got there first, use its instance, so the reference stays canonical
       val = new TypeReference(cl, typeName);
-      dictionary.put(key, val);
-      return val;
+      TypeReference old = dictionary.putIfAbsent(key, val);
+      return (old == null) ? val : old;
     }
   }
 
@@ -412,7 +414,7 @@ public final class TypeReference implements Serializable {
    * @param cl the classloader (defining/initiating depending on usage)
    * @param typeName something like "Ljava/util/Arrays"
    */
-  public static synchronized TypeReference findOrCreate(ClassLoaderReference cl, String typeName) {
+  public static TypeReference findOrCreate(ClassLoaderReference cl, String typeName) {
     return findOrCreate(cl, TypeName.string2TypeName(typeName));
   }
 
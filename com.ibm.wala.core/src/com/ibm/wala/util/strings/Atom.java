@@ -11,9 +11,9 @@
 package com.ibm.wala.util.strings;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import com.ibm.wala.util.collections.HashMapFactory;
 
 /**
  * An utf8-encoded byte string.
@@ -30,7 +30,7 @@ public final class Atom implements Serializable {
   /**
    * Used to canonicalize Atoms, a mapping from AtomKey -> Atom. AtomKeys are not canonical, but Atoms are.
    */
-  final private static HashMap<AtomKey, Atom> dictionary = HashMapFactory.make();
+  final private static ConcurrentMap<AtomKey, Atom> dictionary = new ConcurrentHashMap<AtomKey, Atom>();
 
   /**
    * The utf8 value this atom represents
@@ -113,7 +113,7 @@ public final class Atom implements Serializable {
 
   }
 
-  public static synchronized Atom findOrCreate(byte[] bytes) {
+  public static Atom findOrCreate(byte[] bytes) {
     if (bytes == null) {
       throw new IllegalArgumentException("bytes is null");
     }
@@ -123,18 +123,18 @@ public final class Atom implements Serializable {
       return val;
     }
     val = new Atom(key);
-    dictionary.put(key, val);
-    return val;
+    Atom old = dictionary.putIfAbsent(key, val);
+    return (old == null) ? val : old;
   }
 
-  public static synchronized Atom findOrCreate(ImmutableByteArray b) {
+  public static Atom findOrCreate(ImmutableByteArray b) {
     if (b == null) {
       throw new IllegalArgumentException("b is null");
     }
     return findOrCreate(b.b);
   }
 
-  public static synchronized Atom findOrCreate(ImmutableByteArray b, int start, int length) {
+  public static Atom findOrCreate(ImmutableByteArray b, int start, int length) {
     if (b == null) {
       throw new IllegalArgumentException("b is null");
     }
@@ -113,6 +113,13 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     firstSolve = false;
   }
 
+  /**
+   * @return true iff {@link #solve(IProgressMonitor)} has not yet initialized this system
+   */
+  protected boolean isFirstSolve() {
+    return firstSolve;
+  }
+
   /**
    * @return true iff work list is empty
    */
@@ -128,7 +135,6 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
    * @return true iff the evaluation of some equation caused a change in the value of some variable.
    */
   @Override
-  @SuppressWarnings("unchecked")
   public boolean solve(IProgressMonitor monitor) throws CancelException {
 
     boolean globalChange = false;
@@ -144,32 +150,43 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
       // duplicate insertion detection
       AbstractStatement s = workList.takeStatement();
 
-      if (DEBUG) {
-        System.err.println(("Before evaluation " + s));
+      if (evaluateStatement(s)) {
+        globalChange = true;
       }
-      byte code = s.evaluate();
-      if (verbose) {
-        nEvaluated++;
-        if (nEvaluated % getVerboseInterval() == 0) {
-          performVerboseAction();
-        }
-        if (nEvaluated % getPeriodicMaintainInterval() == 0) {
-          periodicMaintenance();
-        }
+    }
+    return globalChange;
+  }
 
+  /**
+   * Evaluate a single statement, and update the work list and the system according to the result.
+   * 
+   * @return true iff the evaluation of s changed the value of its left-hand side
+   */
+  @SuppressWarnings("unchecked")
+  protected boolean evaluateStatement(AbstractStatement s) {
+    if (DEBUG) {
+      System.err.println(("Before evaluation " + s));
+    }
+    byte code = s.evaluate();
+    if (verbose) {
+      nEvaluated++;
+      if (nEvaluated % getVerboseInterval() == 0) {
+        performVerboseAction();
       }
-      if (DEBUG) {
-        System.err.println(("After evaluation  " + s + " " + isChanged(code)));
-      }
-      if (isChanged(code)) {
-        globalChange = true;
-        updateWorkList(s);
-      }
-      if (isFixed(code)) {
-        removeStatement(s);
+      if (nEvaluated % getPeriodicMaintainInterval() == 0) {
+        periodicMaintenance();
       }
     }
-    return globalChange;
+    if (DEBUG) {
+      System.err.println(("After evaluation  " + s + " " + isChanged(code)));
+    }
+    if (isChanged(code)) {
+      updateWorkList(s);
+    }
+    if (isFixed(code)) {
+      removeStatement(s);
+    }
+    return isChanged(code);
   }
 
   @Override
@@ -284,25 +301,9 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     return true;
   }
 
-  @SuppressWarnings("unchecked")
   private void incorporateNewStatement(boolean toWorkList, boolean eager, AbstractStatement s) {
     if (eager) {
-      byte code = s.evaluate();
-      if (verbose) {
-        nEvaluated++;
-        if (nEvaluated % getVerboseInterval() == 0) {
-          performVerboseAction();
-        }
-        if (nEvaluated % getPeriodicMaintainInterval() == 0) {
-          periodicMaintenance();
-        }
-      }
-      if (isChanged(code)) {
-        updateWorkList(s);
-      }
-      if (isFixed(code)) {
-        removeStatement(s);
-      }
+      evaluateStatement(s);
     } else if (toWorkList) {
       addToWorkList(s);
     }
@@ -575,6 +576,13 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     nEvaluated++;
   }
 
+  /**
+   * @return the number of statements added to the system, not counting those it already contained
+   */
+  public int getNumberOfStatementsCreated() {
+    return nCreated;
+  }
+
   /**
    * a method that will be called every N evaluations. subclasses should override as desired.
    */
@@ -11,6 +11,7 @@
 package com.ibm.wala.fixpoint;
 
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetRepository;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
 
@@ -24,8 +25,56 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
 
   private MutableIntSet V;
 
+  /**
+   * if non-null, V is the canonical set of this shared value, which other variables may hold as well; so V is copied before it
+   * changes. See {@link #share(IntSetRepository)}.
+   */
+  private IntSetRepository.SharedSet shared;
+
+  /**
+   * Replace the value of this variable with the canonical set of its value in a repository, so that all shared variables with equal
+   * values hold a single set. The variable copies its value again before the value next changes.
+   */
+  public void share(IntSetRepository repository) {
+    if (repository == null) {
+      throw new IllegalArgumentException("null repository");
+    }
+    if (V == null || (shared != null && shared.getRepository() == repository)) {
+      return;
+    }
+    // an unshared V belongs to this variable alone, so the repository may keep it
+    shared = (shared == null) ? repository.findOrAdopt(V) : repository.findOrCreate(V);
+    V = shared.getValue();
+  }
+
+  public boolean isShared() {
+    return shared != null;
+  }
+
+  /**
+   * @return the canonical set this variable holds, or null if it is not {@link #isShared()}
+   */
+  public IntSetRepository.SharedSet getSharedSet() {
+    return shared;
+  }
+
+  /**
+   * make V a private copy, if it is shared
+   */
+  private void unshare() {
+    if (shared != null) {
+      V = IntSetUtil.getDefaultIntSetFactory().makeCopy(V);
+      shared = null;
+    }
+  }
+
   @Override
   public void copyState(T other) {
+    if (other.shared != null) {
+      V = other.V;
+      shared = other.shared;
+      return;
+    }
     if (V == null) {
       if (other.V == null) {
         return;
@@ -35,7 +84,12 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
       }
     } else {
       if (other.V != null) {
-        V.copySet(other.V);
+        if (shared != null) {
+          V = IntSetUtil.getDefaultIntSetFactory().makeCopy(other.V);
+          shared = null;
+        } else {
+          V.copySet(other.V);
+        }
       }
     }
   }
@@ -50,6 +104,12 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
       V = IntSetUtil.getDefaultIntSetFactory().makeCopy(B);
       return (B.size() > 0);
     } else {
+      if (shared != null) {
+        if (B.isSubset(V)) {
+          return false;
+        }
+        unshare();
+      }
       boolean result = V.addAll(B);
       return result;
     }
@@ -66,6 +126,16 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
       return (V != null);
     } else {
       if (other.V != null) {
+        if (shared != null && other.shared != null && shared.getRepository() == other.shared.getRepository()) {
+          // both values are shared: the repository remembers their union
+          IntSetRepository.SharedSet union = shared.getRepository().union(shared, other.shared);
+          if (union == shared) {
+            return false;
+          }
+          V = union.getValue();
+          shared = union;
+          return true;
+        }
         boolean result = addAll(other.V);
         return result;
       } else {
@@ -81,6 +151,9 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
       if (other.V == null) {
         return false;
       } else {
+        if (shared != null && other.shared != null && shared.getRepository() == other.shared.getRepository()) {
+          return shared == other.shared;
+        }
         return V.sameValue(other.V);
       }
     }
@@ -102,6 +175,11 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
   public void add(int b) {
     if (V == null) {
       V = IntSetUtil.getDefaultIntSetFactory().make();
+    } else if (shared != null) {
+      if (V.contains(b)) {
+        return;
+      }
+      unshare();
     }
     V.add(b);
   }
@@ -120,7 +198,8 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
   }
 
   /**
-   * @return the value of this variable as a MutableSparseIntSet ... null if the set is empty.
+   * @return the value of this variable as a MutableSparseIntSet ... null if the set is empty. If the variable {@link #isShared()},
+   *         other variables may hold the same set, so callers must not mutate it.
    */
   public MutableIntSet getValue() {
     return V;
@@ -131,6 +210,12 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
    */
   public void remove(int i) {
     if (V != null) {
+      if (shared != null) {
+        if (!V.contains(i)) {
+          return;
+        }
+        unshare();
+      }
       V.remove(i);
     }
   }
@@ -147,6 +232,7 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
     if (V == null) {
       copyState(other);
       if (V != null) {
+        unshare();
         V.intersectWith(filter);
         if (V.isEmpty()) {
           V = null;
@@ -172,6 +258,15 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
       }
       return (V != null);
     } else {
+      if (shared != null) {
+        MutableIntSet copy = IntSetUtil.getDefaultIntSetFactory().makeCopy(V);
+        if (!copy.addAllInIntersection(other, filter)) {
+          return false;
+        }
+        V = copy;
+        shared = null;
+        return true;
+      }
       boolean result = V.addAllInIntersection(other, filter);
       return result;
     }
@@ -179,5 +274,6 @@ public abstract class IntSetVariable<T extends IntSetVariable> extends AbstractV
 
   public void removeAll() {
     V = null;
+    shared = null;
   }
 }
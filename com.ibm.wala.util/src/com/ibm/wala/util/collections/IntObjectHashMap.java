@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * A hash map from non-negative ints to objects, with open addressing and linear probing. Unlike a {@link java.util.HashMap} from
+ * {@link Integer}s, it allocates no objects per entry. Values may not be null; get() answers null for keys which are not in the
+ * map.
+ */
+public class IntObjectHashMap<V> {
+
+  private final static int INITIAL_CAPACITY = 16;
+
+  /**
+   * the key of a free slot
+   */
+  private final static int FREE = -1;
+
+  /**
+   * keys[i] is the key of slot i, or FREE. keys.length is a power of two.
+   */
+  private int[] keys;
+
+  /**
+   * values[i] is the value of keys[i]
+   */
+  private Object[] values;
+
+  private int size = 0;
+
+  public IntObjectHashMap() {
+    this.keys = makeKeys(INITIAL_CAPACITY);
+    this.values = new Object[INITIAL_CAPACITY];
+  }
+
+  private static int[] makeKeys(int capacity) {
+    int[] result = new int[capacity];
+    for (int i = 0; i < capacity; i++) {
+      result[i] = FREE;
+    }
+    return result;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot of key, or of the free slot where key would go
+   */
+  private int slot(int key) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (keys[i] != FREE && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * @return the value of key, or null if key is not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    if (key < 0) {
+      return null;
+    }
+    return (V) values[slot(key)];
+  }
+
+  public boolean containsKey(int key) {
+    return key >= 0 && keys[slot(key)] != FREE;
+  }
+
+  /**
+   * @return the previous value of key, or null if key was not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (key < 0) {
+      throw new IllegalArgumentException("illegal key: " + key);
+    }
+    if (value == null) {
+      throw new IllegalArgumentException("null value");
+    }
+    int i = slot(key);
+    V result = (V) values[i];
+    values[i] = value;
+    if (keys[i] == FREE) {
+      keys[i] = key;
+      size++;
+      // keep the table at most 3/4 full
+      if (4 * size > 3 * keys.length) {
+        grow();
+      }
+    }
+    return result;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = makeKeys(2 * oldKeys.length);
+    values = new Object[2 * oldKeys.length];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != FREE) {
+        int i = slot(oldKeys[j]);
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * @return the previous value of key, or null if key was not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    if (key < 0) {
+      return null;
+    }
+    int i = slot(key);
+    if (keys[i] == FREE) {
+      return null;
+    }
+    V result = (V) values[i];
+    // shift back the entries of the probe sequence after i, so that no lookup finds a free slot before its key
+    int mask = keys.length - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (keys[j] == FREE) {
+        break;
+      }
+      int home = hash(keys[j]) & mask;
+      // the entry at j may move to i iff its home slot is not cyclically in (i, j]
+      if ((j > i) ? (home <= i || home > j) : (home <= i && home > j)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = FREE;
+    values[i] = null;
+    size--;
+    return result;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return an iterator of the keys in the map, in no particular order, which does not support concurrent modification of the map
+   */
+  public IntIterator keyIterator() {
+    final int[] table = keys;
+    return new IntIterator() {
+      private int next = advance(0);
+
+      private int advance(int i) {
+        while (i < table.length && table[i] == FREE) {
+          i++;
+        }
+        return i;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < table.length;
+      }
+
+      @Override
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int result = table[next];
+        next = advance(next + 1);
+        return result;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer("{");
+    boolean first = true;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != FREE) {
+        if (!first) {
+          result.append(", ");
+        }
+        first = false;
+        result.append(keys[i]).append("=").append(values[i]);
+      }
+    }
+    return result.append("}").toString();
+  }
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.collections;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from objects to ints, with open addressing and linear probing. Unlike a {@link java.util.HashMap} from objects to
+ * {@link Integer}s, it allocates no objects per entry: the keys, their hashes and the values live in parallel arrays.
+ *
+ * Keys may not be null. The map answers a default value for keys it does not hold. The order of iteration is unspecified.
+ */
+public class ObjectIntHashMap<K> {
+
+  private final static int INITIAL_CAPACITY = 16;
+
+  /**
+   * the table is grown when it is more than 3/4 full
+   */
+  private final static int MAX_LOAD_NUMERATOR = 3;
+
+  private final static int MAX_LOAD_DENOMINATOR = 4;
+
+  /**
+   * keys[i] is the key of slot i, or null if the slot is free. keys.length is a power of two.
+   */
+  private Object[] keys;
+
+  /**
+   * hashes[i] is the hash of keys[i]. As in {@link java.util.HashMap}, a lookup calls equals() only on keys with the same hash,
+   * which is cheaper, and is also right for keys whose equals() is not symmetric across classes.
+   */
+  private int[] hashes;
+
+  /**
+   * values[i] is the value of keys[i]
+   */
+  private int[] values;
+
+  private int size = 0;
+
+  private final int defaultValue;
+
+  /**
+   * @param defaultValue the value of keys which are not in the map
+   */
+  public ObjectIntHashMap(int defaultValue) {
+    this.defaultValue = defaultValue;
+    this.keys = new Object[INITIAL_CAPACITY];
+    this.hashes = new int[INITIAL_CAPACITY];
+    this.values = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Make a map whose value for keys which are not in the map is -1.
+   */
+  public ObjectIntHashMap() {
+    this(-1);
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot of key, or of the free slot where key would go
+   */
+  private int slot(Object key, int h) {
+    int mask = keys.length - 1;
+    int i = h & mask;
+    while (keys[i] != null && !(hashes[i] == h && (keys[i] == key || key.equals(keys[i])))) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * @return the value of key, or the default value if key is not in the map
+   */
+  public int get(Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("null key");
+    }
+    int i = slot(key, hash(key));
+    return (keys[i] == null) ? defaultValue : values[i];
+  }
+
+  public boolean containsKey(Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("null key");
+    }
+    return keys[slot(key, hash(key))] != null;
+  }
+
+  /**
+   * @return the previous value of key, or the default value if key was not in the map
+   */
+  public int put(K key, int value) {
+    if (key == null) {
+      throw new IllegalArgumentException("null key");
+    }
+    int h = hash(key);
+    int i = slot(key, h);
+    if (keys[i] != null) {
+      int result = values[i];
+      values[i] = value;
+      return result;
+    }
+    keys[i] = key;
+    hashes[i] = h;
+    values[i] = value;
+    size++;
+    if (size * MAX_LOAD_DENOMINATOR > keys.length * MAX_LOAD_NUMERATOR) {
+      grow();
+    }
+    return defaultValue;
+  }
+
+  private void grow() {
+    Object[] oldKeys = keys;
+    int[] oldHashes = hashes;
+    int[] oldValues = values;
+    keys = new Object[2 * oldKeys.length];
+    hashes = new int[2 * oldKeys.length];
+    values = new int[2 * oldKeys.length];
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != null) {
+        // the keys are distinct, so just find a free slot
+        int i = oldHashes[j] & mask;
+        while (keys[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        hashes[i] = oldHashes[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * @return the previous value of key, or the default value if key was not in the map
+   */
+  public int remove(Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("null key");
+    }
+    int i = slot(key, hash(key));
+    if (keys[i] == null) {
+      return defaultValue;
+    }
+    int result = values[i];
+    // shift back the entries of the probe sequence after i, so that no lookup finds a free slot before its key
+    int mask = keys.length - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (keys[j] == null) {
+        break;
+      }
+      int home = hashes[j] & mask;
+      // the entry at j may move to i iff its home slot is not cyclically in (i, j]
+      if ((j > i) ? (home <= i || home > j) : (home <= i && home > j)) {
+        keys[i] = keys[j];
+        hashes[i] = hashes[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = null;
+    size--;
+    return result;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    keys = new Object[INITIAL_CAPACITY];
+    hashes = new int[INITIAL_CAPACITY];
+    values = new int[INITIAL_CAPACITY];
+    size = 0;
+  }
+
+  /**
+   * @return an iterator of the keys of the map, which does not support concurrent modification of the map
+   */
+  public Iterator<K> keyIterator() {
+    final Object[] table = keys;
+    return new Iterator<K>() {
+      private int next = advance(0);
+
+      private int advance(int i) {
+        while (i < table.length && table[i] == null) {
+          i++;
+        }
+        return i;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < table.length;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        K result = (K) table[next];
+        next = advance(next + 1);
+        return result;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer result = new StringBuffer("{");
+    boolean first = true;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        if (!first) {
+          result.append(", ");
+        }
+        first = false;
+        result.append(keys[i]).append("=").append(values[i]);
+      }
+    }
+    return result.append("}").toString();
+  }
+}
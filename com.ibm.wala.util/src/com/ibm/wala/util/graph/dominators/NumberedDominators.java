@@ -10,6 +10,8 @@
  *******************************************************************************/
 package com.ibm.wala.util.graph.dominators;
 
+import java.util.Arrays;
+
 import com.ibm.wala.util.graph.NumberedGraph;
 
 /**
@@ -19,6 +21,9 @@ import com.ibm.wala.util.graph.NumberedGraph;
  * is the number of nodes.
  * 
  * Sources: TOPLAS article, Muchnick book
+ * 
+ * Dominance queries take constant time: on the first query, the dominator tree is numbered with the intervals of a depth-first
+ * traversal, and a node dominates exactly the nodes whose entry time falls within its interval.
  */
 
 public class NumberedDominators<T> extends Dominators<T> {
@@ -51,4 +56,72 @@ public class NumberedDominators<T> extends Dominators<T> {
     return (DominatorInfo) infoMap[getGraph().getNumber(node)];
   }
 
+  /**
+   * For the node numbered n, intervals[2n] is the time at which a depth-first traversal of the dominator tree enters the node, and
+   * intervals[2n+1] the last time at which the traversal enters a node below it. Both are 0 for nodes unreachable from the root.
+   * Computed on demand by {@link #numberDominatorTree()}.
+   */
+  private volatile int[] intervals;
+
+  /**
+   * is node dominated by master? This is a range check on the intervals of the dominator tree.
+   */
+  @Override
+  public boolean isDominatedBy(T node, T master) {
+    if (node == null || master == null) {
+      return false;
+    }
+    int[] t = intervals;
+    if (t == null) {
+      // racing threads compute the same numbering
+      intervals = t = numberDominatorTree();
+    }
+    int n = getGraph().getNumber(node);
+    int m = getGraph().getNumber(master);
+    if (t[2 * n] == 0) {
+      // an unreachable node has no dominators but itself
+      return node.equals(master);
+    }
+    return t[2 * m] <= t[2 * n] && t[2 * n] <= t[2 * m + 1];
+  }
+
+  private int[] numberDominatorTree() {
+    NumberedGraph<T> g = getGraph();
+    int max = g.getMaxNumber();
+    // the dominator tree, as lists of children
+    int[] firstChild = new int[max + 1];
+    int[] nextSibling = new int[max + 1];
+    Arrays.fill(firstChild, -1);
+    for (T n : g) {
+      T d = getIdom(n);
+      if (d != null) {
+        int c = g.getNumber(n);
+        int p = g.getNumber(d);
+        nextSibling[c] = firstChild[p];
+        firstChild[p] = c;
+      }
+    }
+
+    int[] result = new int[2 * (max + 1)];
+    int[] stack = new int[max + 1];
+    int top = 0;
+    int time = 0;
+    stack[0] = g.getNumber(root);
+    result[2 * stack[0]] = ++time;
+    while (top >= 0) {
+      int n = stack[top];
+      int c = firstChild[n];
+      if (c == -1) {
+        result[2 * n + 1] = time;
+        top--;
+      } else {
+        // consume the child, so the next visit to n takes its next sibling
+        firstChild[n] = nextSibling[c];
+        result[2 * c] = ++time;
+        stack[++top] = c;
+      }
+    }
+    return result;
+  }
+
 }
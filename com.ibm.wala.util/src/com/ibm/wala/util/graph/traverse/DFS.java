@@ -19,6 +19,7 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.Filter;
 import com.ibm.wala.util.collections.FilterIterator;
 import com.ibm.wala.util.collections.HashMapFactory;
@@ -55,6 +56,28 @@ public class DFS {
     return Iterator2Collection.toSet(dfs);
   }
 
+  /**
+   * Perform a DFS starting with a particular node set and return the set of all nodes visited.
+   * 
+   * @param C collection of nodes to start from
+   * @param p only traverse nodes that satisfy this predicate
+   * @throws IllegalArgumentException if C is null
+   */
+  @SuppressWarnings("serial")
+  public static <T> Collection<T> getReachableNodes(final Graph<T> G, Collection<? extends T> C, final Predicate<T> p) {
+    if (C == null) {
+      throw new IllegalArgumentException("C is null");
+    }
+    Iterator<T> dfs = new SlowDFSFinishTimeIterator<T>(G, C.iterator()) {
+
+      @Override
+      protected Iterator<T> getConnected(T n) {
+        return Predicate.filter(G.getSuccNodes(n), p).iterator();
+      }
+    };
+    return Iterator2Collection.toSet(dfs);
+  }
+
   /**
    * Perform a DFS starting with a particular node set and return the set of all nodes visited.
    * 
@@ -84,7 +84,6 @@ public class HeapTracer {
     static {
 	try {
 	    internalClasses.add(Class.forName("java.lang.String"));
-	    internalClasses.add(Class.forName("java.util.HashMap$Entry"));
 	    internalClasses.add(Class.forName("java.util.HashMap"));
 	    internalClasses.add(Class.forName("java.util.HashSet"));
 	    internalClasses.add(Class.forName("java.util.Vector"));
@@ -117,6 +116,14 @@ public class HeapTracer {
 	    e.printStackTrace();
 	    Assertions.UNREACHABLE();
 	}
+	// the class of hash map entries depends on the version of the library
+	for (String entry : new String[] { "java.util.HashMap$Entry", "java.util.HashMap$Node" }) {
+	    try {
+		internalClasses.add(Class.forName(entry));
+	    } catch (ClassNotFoundException e) {
+		// not this version
+	    }
+	}
     }
 
     /**
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An int vector implementation for low occupancy: a hash map from non-negative ints to ints, with open addressing and linear
+ * probing. Unlike {@link SparseIntVector}, get() and set() take constant expected time; unlike a {@link java.util.HashMap} from
+ * {@link Integer}s, it allocates no objects per entry.
+ */
+public class IntIntHashMap implements IntVector {
+
+  private final static int INITIAL_CAPACITY = 8;
+
+  /**
+   * the key of a free slot
+   */
+  private final static int FREE = -1;
+
+  /**
+   * keys[i] is the key of slot i, or FREE. keys.length is a power of two.
+   */
+  private int[] keys;
+
+  /**
+   * values[i] is the value of keys[i]
+   */
+  private int[] values;
+
+  private int size = 0;
+
+  private int maxIndex = -1;
+
+  private final int defaultValue;
+
+  /**
+   * @param defaultValue the value of keys which are not in the map
+   */
+  public IntIntHashMap(int defaultValue) {
+    this.defaultValue = defaultValue;
+    this.keys = makeKeys(INITIAL_CAPACITY);
+    this.values = new int[INITIAL_CAPACITY];
+  }
+
+  private static int[] makeKeys(int capacity) {
+    int[] result = new int[capacity];
+    for (int i = 0; i < capacity; i++) {
+      result[i] = FREE;
+    }
+    return result;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot of key, or of the free slot where key would go
+   */
+  private int slot(int key) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (keys[i] != FREE && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntVector#get(int)
+   */
+  @Override
+  public int get(int x) {
+    if (x < 0) {
+      return defaultValue;
+    }
+    int i = slot(x);
+    return (keys[i] == FREE) ? defaultValue : values[i];
+  }
+
+  public boolean containsKey(int x) {
+    return x >= 0 && keys[slot(x)] != FREE;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntVector#set(int, int)
+   */
+  @Override
+  public void set(int x, int value) {
+    if (x < 0) {
+      throw new IllegalArgumentException("illegal x: " + x);
+    }
+    maxIndex = Math.max(maxIndex, x);
+    int i = slot(x);
+    values[i] = value;
+    if (keys[i] == FREE) {
+      keys[i] = x;
+      size++;
+      // keep the table at most 3/4 full
+      if (4 * size > 3 * keys.length) {
+        grow();
+      }
+    }
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = makeKeys(2 * oldKeys.length);
+    values = new int[2 * oldKeys.length];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != FREE) {
+        int i = slot(oldKeys[j]);
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  /**
+   * Remove x from the map, so that get(x) answers the default value again.
+   */
+  public void remove(int x) {
+    if (x < 0) {
+      return;
+    }
+    int i = slot(x);
+    if (keys[i] == FREE) {
+      return;
+    }
+    // shift back the entries of the probe sequence after i, so that no lookup finds a free slot before its key
+    int mask = keys.length - 1;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (keys[j] == FREE) {
+        break;
+      }
+      int home = hash(keys[j]) & mask;
+      // the entry at j may move to i iff its home slot is not cyclically in (i, j]
+      if ((j > i) ? (home <= i || home > j) : (home <= i && home > j)) {
+        keys[i] = keys[j];
+        values[i] = values[j];
+        i = j;
+      }
+    }
+    keys[i] = FREE;
+    size--;
+  }
+
+  /**
+   * @return the number of keys in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return an iterator of the keys in the map, in no particular order
+   */
+  public IntIterator keyIterator() {
+    final int[] table = keys;
+    return new IntIterator() {
+      private int next = advance(0);
+
+      private int advance(int i) {
+        while (i < table.length && table[i] == FREE) {
+          i++;
+        }
+        return i;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < table.length;
+      }
+
+      @Override
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int result = table[next];
+        next = advance(next + 1);
+        return result;
+      }
+    };
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntVector#getMaxIndex()
+   */
+  @Override
+  public int getMaxIndex() {
+    return maxIndex;
+  }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A repository of hash-consed int sets: the repository holds one canonical {@link SharedSet} for each distinct value, so that clients
+ * with equal sets may share a single copy. The canonical sets must never be mutated; a client copies the set before it changes it.
+ *
+ * The repository also memoizes the unions of its sets, keyed by the ids of the operands.
+ *
+ * This class is thread-safe.
+ */
+public class IntSetRepository {
+
+  /**
+   * A tuning parameter: the number of unions to remember before the cache is flushed
+   */
+  private final static int MAX_CACHED_UNIONS = 1 << 16;
+
+  /**
+   * factory for the sets the repository makes
+   */
+  private final MutableIntSetFactory<?> factory;
+
+  /**
+   * the canonical set of each value, mapped to itself
+   */
+  private final ConcurrentHashMap<SharedSet, SharedSet> sets = new ConcurrentHashMap<SharedSet, SharedSet>();
+
+  /**
+   * (id, id) -> union of the two sets, where the smaller id is in the high word
+   */
+  private final ConcurrentHashMap<Long, SharedSet> unions = new ConcurrentHashMap<Long, SharedSet>();
+
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  public IntSetRepository(MutableIntSetFactory<?> factory) {
+    if (factory == null) {
+      throw new IllegalArgumentException("null factory");
+    }
+    this.factory = factory;
+  }
+
+  public IntSetRepository() {
+    this(IntSetUtil.getDefaultIntSetFactory());
+  }
+
+  /**
+   * @return the canonical set with the same value as s. If there is none yet, the repository keeps a copy of s.
+   */
+  public SharedSet findOrCreate(IntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    SharedSet probe = new SharedSet(s);
+    SharedSet result = sets.get(probe);
+    if (result == null) {
+      result = intern(new SharedSet(factory.makeCopy(s), probe.hash));
+    }
+    return result;
+  }
+
+  /**
+   * Like {@link #findOrCreate(IntSet)}, but if there is no canonical set with the same value yet, s itself becomes the canonical
+   * set. So the caller gives up s, and must not mutate it afterwards.
+   */
+  public SharedSet findOrAdopt(MutableIntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    return intern(new SharedSet(s));
+  }
+
+  private SharedSet intern(SharedSet s) {
+    // number s before it is published, so that no other thread sees it without its id
+    s.id = nextId.getAndIncrement();
+    SharedSet result = sets.putIfAbsent(s, s);
+    return (result == null) ? s : result;
+  }
+
+  /**
+   * @return the canonical set of the union of a and b
+   */
+  public SharedSet union(SharedSet a, SharedSet b) {
+    if (a == null) {
+      throw new IllegalArgumentException("null a");
+    }
+    if (b == null) {
+      throw new IllegalArgumentException("null b");
+    }
+    if (a.getRepository() != this || b.getRepository() != this) {
+      throw new IllegalArgumentException("sets from another repository");
+    }
+    if (a == b) {
+      return a;
+    }
+    Long key = Long.valueOf(((long) Math.min(a.id, b.id) << 32) | Math.max(a.id, b.id));
+    SharedSet result = unions.get(key);
+    if (result == null) {
+      if (b.value.isSubset(a.value)) {
+        result = a;
+      } else if (a.value.isSubset(b.value)) {
+        result = b;
+      } else {
+        MutableIntSet u = factory.makeCopy(a.value);
+        u.addAll(b.value);
+        result = findOrAdopt(u);
+      }
+      if (unions.size() >= MAX_CACHED_UNIONS) {
+        unions.clear();
+      }
+      unions.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Forget the canonical sets which are not in live, and all memoized unions, so that the repository does not keep alive sets which
+   * its clients no longer hold. The sets in live stay canonical, with the same ids.
+   */
+  public void retainAll(Set<SharedSet> live) {
+    if (live == null) {
+      throw new IllegalArgumentException("null live");
+    }
+    unions.clear();
+    sets.keySet().retainAll(live);
+  }
+
+  /**
+   * @return the number of distinct sets in the repository
+   */
+  public int size() {
+    return sets.size();
+  }
+
+  /**
+   * A set held by a repository. Two shared sets of the same repository are equal iff they are the same object.
+   */
+  public final class SharedSet {
+
+    /**
+     * a {@link MutableIntSet}, except in the probes of {@link IntSetRepository#findOrCreate(IntSet)}, which never escape
+     */
+    private final IntSet value;
+
+    /**
+     * a hash of the elements of value, which does not depend on its representation
+     */
+    private final int hash;
+
+    private int id = -1;
+
+    private SharedSet(IntSet value) {
+      this(value, hash(value));
+    }
+
+    private SharedSet(IntSet value, int hash) {
+      this.value = value;
+      this.hash = hash;
+    }
+
+    /**
+     * @return the canonical set, which must not be mutated
+     */
+    public MutableIntSet getValue() {
+      return (MutableIntSet) value;
+    }
+
+    /**
+     * @return a number unique to this set within its repository
+     */
+    public int getId() {
+      return id;
+    }
+
+    public IntSetRepository getRepository() {
+      return IntSetRepository.this;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof SharedSet)) {
+        return false;
+      }
+      SharedSet other = (SharedSet) obj;
+      return hash == other.hash && value.size() == other.value.size() && value.sameValue(other.value);
+    }
+
+    @Override
+    public String toString() {
+      return "#" + id + ":" + value;
+    }
+  }
+
+  private static int hash(IntSet s) {
+    final int[] h = new int[] { s.size() };
+    s.foreach(new IntSetAction() {
+      @Override
+      public void act(int x) {
+        // a sum of mixed elements, so that the hash does not depend on the order of iteration
+        int m = x * 0x9E3779B1;
+        h[0] += m ^ (m >>> 16);
+      }
+    });
+    return h[0];
+  }
+}
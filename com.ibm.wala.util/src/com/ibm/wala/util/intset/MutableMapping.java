@@ -10,12 +10,12 @@
  *******************************************************************************/
 package com.ibm.wala.util.intset;
 
+import java.util.AbstractCollection;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.ObjectIntHashMap;
 
 /**
  * A bit set mapping based on an object array. This is not terribly efficient, but is useful for prototyping.
@@ -35,9 +35,22 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
   private int nextIndex = 0;
 
   /**
-   * A mapping from object to Integer.
+   * A mapping from object to index, or -1 for objects which are not mapped.
    */
-  final HashMap<T, Integer> map = HashMapFactory.make();
+  final ObjectIntHashMap<T> map = new ObjectIntHashMap<T>();
+
+  /**
+   * The indices of the mapped objects, in the order in which the objects were mapped; {@link #replace(Object, Object)} appends the
+   * index again. Only the last appearance of an index counts.
+   */
+  private int[] order;
+
+  private int orderSize = 0;
+
+  /**
+   * lastPosition[i] is the position in order of the last appearance of index i, or -1
+   */
+  private int[] lastPosition;
 
   /**
    * @throws IllegalArgumentException if array is null
@@ -48,18 +61,66 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
       throw new IllegalArgumentException("array is null");
     }
     this.array = new Object[2 * array.length];
+    this.order = new int[Math.max(INITIAL_CAPACITY, array.length)];
+    this.lastPosition = new int[this.array.length];
     for (int i = 0; i < array.length; i++) {
       this.array[i] = array[i];
-      map.put((T) array[i], Integer.valueOf(i));
+      map.put((T) array[i], i);
+      append(i);
     }
     nextIndex = array.length;
   }
 
   protected MutableMapping() {
     array = new Object[INITIAL_CAPACITY];
+    order = new int[INITIAL_CAPACITY];
+    lastPosition = new int[INITIAL_CAPACITY];
     nextIndex = 0;
   }
 
+  /**
+   * Record that index i was mapped last.
+   */
+  private void append(int i) {
+    if (orderSize == order.length) {
+      // drop the stale appearances before growing
+      int n = 0;
+      for (int p = 0; p < orderSize; p++) {
+        if (isLive(p)) {
+          lastPosition[order[p]] = n;
+          order[n++] = order[p];
+        }
+      }
+      orderSize = n;
+      if (4 * orderSize > 3 * order.length) {
+        int[] old = order;
+        order = new int[2 * old.length];
+        System.arraycopy(old, 0, order, 0, orderSize);
+      }
+    }
+    lastPosition[i] = orderSize;
+    order[orderSize++] = i;
+  }
+
+  /**
+   * @return true iff position p of order holds the last appearance of the index of a mapped object
+   */
+  private boolean isLive(int p) {
+    int i = order[p];
+    return lastPosition[i] == p && array[i] != null;
+  }
+
+  private void ensureCapacity(int length) {
+    if (length > array.length) {
+      Object[] old = array;
+      array = new Object[length];
+      System.arraycopy(old, 0, array, 0, old.length);
+      int[] oldPositions = lastPosition;
+      lastPosition = new int[length];
+      System.arraycopy(oldPositions, 0, lastPosition, 0, oldPositions.length);
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public T getMappedObject(int n) {
@@ -72,18 +133,12 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
 
   @Override
   public int getMappedIndex(T o) {
-    Integer I = map.get(o);
-    if (I == null) {
-      return -1;
-    } else {
-      return I.intValue();
-    }
-
+    return (o == null) ? -1 : map.get(o);
   }
 
   @Override
   public boolean hasMappedIndex(T o) {
-    return map.get(o) != null;
+    return o != null && map.containsKey(o);
   }
 
   /**
@@ -93,18 +148,17 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
    */
   @Override
   public int add(T o) {
-    Integer I = map.get(o);
-    if (I != null) {
-      return I.intValue();
+    int I = map.get(o);
+    if (I != -1) {
+      return I;
     }
-    map.put(o, new Integer(nextIndex));
+    map.put(o, nextIndex);
     if (nextIndex >= array.length) {
-      Object[] old = array;
-      array = new Object[2 * array.length];
-      System.arraycopy(old, 0, array, 0, old.length);
+      ensureCapacity(2 * array.length);
     }
     int result = nextIndex++;
     array[result] = o;
+    append(result);
     return result;
   }
 
@@ -117,12 +171,45 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
     return result.toString();
   }
 
-  /*
-   * @see com.ibm.wala.util.intset.OrdinalSetMapping#iterator()
+  /**
+   * @return an iterator of the mapped objects, in the order in which they were mapped
    */
   @Override
   public Iterator<T> iterator() {
-    return map.keySet().iterator();
+    return new Iterator<T>() {
+      private int next = advance(0);
+
+      /**
+       * @return the first live position of order at or after p, or orderSize if there is none
+       */
+      private int advance(int p) {
+        while (p < orderSize && !isLive(p)) {
+          p++;
+        }
+        return p;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < orderSize;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        T result = (T) array[order[next]];
+        next = advance(next + 1);
+        return result;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
   }
 
   /*
@@ -144,7 +231,23 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
   }
 
   public Collection<T> getObjects() {
-    return Collections.unmodifiableCollection(map.keySet());
+    return new AbstractCollection<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        return MutableMapping.this.iterator();
+      }
+
+      @Override
+      public int size() {
+        return getSize();
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public boolean contains(Object o) {
+        return hasMappedIndex((T) o);
+      }
+    };
   }
 
   /**
@@ -156,8 +259,9 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
       throw new IllegalArgumentException("first element does not exist in map");
     }
     map.remove(a);
-    map.put(b, new Integer(i));
+    map.put(b, i);
     array[i] = b;
+    append(i);
   }
 
   /**
@@ -168,15 +272,21 @@ public class MutableMapping<T> implements OrdinalSetMapping<T> {
     if (i < 0 || i > MAX_SIZE) {
       throw new IllegalArgumentException("invalid i: " + i);
     }
-    Integer I = Integer.valueOf(i);
-    map.put(o, I);
+    int j = map.put(o, i);
     if (i >= array.length) {
-      Object[] old = array;
-      array = new Object[2 * i];
-      System.arraycopy(old, 0, array, 0, old.length);
+      ensureCapacity(2 * i);
     }
     array[i] = o;
     nextIndex = Math.max(nextIndex, i + 1);
+    if (j == -1) {
+      append(i);
+    } else if (j != i) {
+      // o keeps its place in the order
+      int p = lastPosition[j];
+      lastPosition[j] = -1;
+      order[p] = i;
+      lastPosition[i] = p;
+    }
 
   }
 
@@ -0,0 +1,1401 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed bitmap in the style of Roaring bitmaps. The ints are split into chunks of 2^16 by their high 16 bits, and the low
+ * 16 bits of the elements of each non-empty chunk are held in a container of one of three kinds:
+ * <ul>
+ * <li>a sorted array, when the chunk has at most {@link #ARRAY_MAX} elements,
+ * <li>a bitmap of 2^16 bits, when it has more,
+ * <li>a list of runs of consecutive elements, when {@link #optimize()} finds that smaller than both.
+ * </ul>
+ *
+ * Sets which are large and sparse overall, but clustered within chunks, such as the points-to sets of big programs, take little
+ * space. Bulk operations work a chunk at a time, and combine bitmaps a 64-bit word at a time in plain loops over long arrays, which
+ * the JIT can unroll and vectorize.
+ *
+ * The set holds only non-negative ints.
+ */
+public class RoaringMutableIntSet implements MutableIntSet {
+
+  /**
+   * the largest number of elements held in an array container. An array container of this many elements takes as much space as
+   * a bitmap container.
+   */
+  static final int ARRAY_MAX = 4096;
+
+  /**
+   * the number of longs in a bitmap container
+   */
+  private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+  private static final char[] NO_KEYS = new char[0];
+
+  private static final Container[] NO_CONTAINERS = new Container[0];
+
+  /**
+   * the high 16 bits of the chunks with elements, in increasing order
+   */
+  private char[] keys = NO_KEYS;
+
+  /**
+   * containers[i] holds the low 16 bits of the elements of chunk keys[i], and is never empty
+   */
+  private Container[] containers = NO_CONTAINERS;
+
+  /**
+   * the number of chunks with elements
+   */
+  private int count;
+
+  public RoaringMutableIntSet() {
+  }
+
+  public RoaringMutableIntSet(RoaringMutableIntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    copySet(set);
+  }
+
+  public RoaringMutableIntSet(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    copySet(set);
+  }
+
+  private static int high(int i) {
+    return i >>> 16;
+  }
+
+  private static int low(int i) {
+    return i & 0xFFFF;
+  }
+
+  /**
+   * @return the index of the chunk with high bits high, or -(insertion point + 1) if there is none
+   */
+  private int find(int high) {
+    int lo = 0;
+    int hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int k = keys[mid];
+      if (k < high) {
+        lo = mid + 1;
+      } else if (k > high) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(lo + 1);
+  }
+
+  private void insertContainer(int index, int high, Container c) {
+    if (count == keys.length) {
+      int capacity = Math.max(4, 2 * count);
+      char[] oldKeys = keys;
+      Container[] oldContainers = containers;
+      keys = new char[capacity];
+      containers = new Container[capacity];
+      System.arraycopy(oldKeys, 0, keys, 0, count);
+      System.arraycopy(oldContainers, 0, containers, 0, count);
+    }
+    System.arraycopy(keys, index, keys, index + 1, count - index);
+    System.arraycopy(containers, index, containers, index + 1, count - index);
+    keys[index] = (char) high;
+    containers[index] = c;
+    count++;
+  }
+
+  private void removeContainer(int index) {
+    System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+    System.arraycopy(containers, index + 1, containers, index, count - index - 1);
+    count--;
+    containers[count] = null;
+  }
+
+  /**
+   * Convert each container to the smallest of its representations. The bulk operations keep the containers they make reasonably
+   * small, so this is worth calling only on a set built element by element which will be kept for long.
+   */
+  public void optimize() {
+    for (int i = 0; i < count; i++) {
+      containers[i] = optimize(containers[i]);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#contains(int)
+   */
+  @Override
+  public boolean contains(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = find(high(i));
+    return index >= 0 && containers[index].contains(low(i));
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#containsAny(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public boolean containsAny(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet that = (RoaringMutableIntSet) set;
+      int i = 0;
+      int j = 0;
+      while (i < count && j < that.count) {
+        if (keys[i] < that.keys[j]) {
+          i++;
+        } else if (keys[i] > that.keys[j]) {
+          j++;
+        } else {
+          if (intersects(containers[i], that.containers[j])) {
+            return true;
+          }
+          i++;
+          j++;
+        }
+      }
+      return false;
+    } else {
+      for (IntIterator it = set.intIterator(); it.hasNext();) {
+        if (contains(it.next())) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#intersection(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public IntSet intersection(IntSet that) throws IllegalArgumentException {
+    if (that == null) {
+      throw new IllegalArgumentException("that == null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet(this);
+    result.intersectWith(that);
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#union(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public IntSet union(IntSet that) throws IllegalArgumentException {
+    if (that == null) {
+      throw new IllegalArgumentException("that == null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet(this);
+    result.addAll(that);
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#isEmpty()
+   */
+  @Override
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#size()
+   */
+  @Override
+  public int size() {
+    int result = 0;
+    for (int i = 0; i < count; i++) {
+      result += containers[i].cardinality();
+    }
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#intIterator()
+   */
+  @Override
+  public IntIterator intIterator() {
+    return new IntIterator() {
+      private int index = 0;
+
+      private IntIterator current = count == 0 ? null : containers[0].iterator(keys[0] << 16);
+
+      @Override
+      public boolean hasNext() {
+        while (current != null && !current.hasNext()) {
+          index++;
+          current = index < count ? containers[index].iterator(keys[index] << 16) : null;
+        }
+        return current != null;
+      }
+
+      @Override
+      public int next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return current.next();
+      }
+    };
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#foreach(com.ibm.wala.util.intset.IntSetAction)
+   */
+  @Override
+  public void foreach(IntSetAction action) {
+    if (action == null) {
+      throw new IllegalArgumentException("null action");
+    }
+    for (int i = 0; i < count; i++) {
+      containers[i].foreach(keys[i] << 16, action);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#foreachExcluding(com.ibm.wala.util.intset.IntSet,
+   * com.ibm.wala.util.intset.IntSetAction)
+   */
+  @Override
+  public void foreachExcluding(IntSet X, IntSetAction action) {
+    if (action == null) {
+      throw new IllegalArgumentException("null action");
+    }
+    if (X == null) {
+      throw new IllegalArgumentException("null X");
+    }
+    if (X instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet that = (RoaringMutableIntSet) X;
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+        while (j < that.count && that.keys[j] < keys[i]) {
+          j++;
+        }
+        int base = keys[i] << 16;
+        if (j < that.count && that.keys[j] == keys[i]) {
+          Container c = containers[i];
+          Container d = that.containers[j];
+          if (c instanceof BitmapContainer && d instanceof BitmapContainer) {
+            long[] a = ((BitmapContainer) c).words;
+            long[] b = ((BitmapContainer) d).words;
+            for (int k = 0; k < BITMAP_WORDS; k++) {
+              foreachBit(a[k] & ~b[k], base + 64 * k, action);
+            }
+          } else {
+            andNot(c, d).foreach(base, action);
+          }
+        } else {
+          containers[i].foreach(base, action);
+        }
+      }
+    } else {
+      for (IntIterator it = intIterator(); it.hasNext();) {
+        int i = it.next();
+        if (!X.contains(i)) {
+          action.act(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Invoke an action on base plus the index of each set bit of a word
+   */
+  private static void foreachBit(long word, int base, IntSetAction action) {
+    while (word != 0) {
+      action.act(base + Long.numberOfTrailingZeros(word));
+      word &= word - 1;
+    }
+  }
+
+  /**
+   * @return the largest element, or -1 if the set is empty
+   */
+  @Override
+  public int max() {
+    if (count == 0) {
+      return -1;
+    }
+    return (keys[count - 1] << 16) | containers[count - 1].last();
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#sameValue(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public boolean sameValue(IntSet that) throws IllegalArgumentException {
+    if (that == null) {
+      throw new IllegalArgumentException("that == null");
+    }
+    if (that instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet r = (RoaringMutableIntSet) that;
+      if (count != r.count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        if (keys[i] != r.keys[i] || containers[i].cardinality() != r.containers[i].cardinality()
+            || !isSubset(containers[i], r.containers[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      return size() == that.size() && isSubset(that);
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.IntSet#isSubset(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public boolean isSubset(IntSet that) throws IllegalArgumentException {
+    if (that == null) {
+      throw new IllegalArgumentException("that == null");
+    }
+    if (that instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet r = (RoaringMutableIntSet) that;
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+        while (j < r.count && r.keys[j] < keys[i]) {
+          j++;
+        }
+        if (j == r.count || r.keys[j] != keys[i] || !isSubset(containers[i], r.containers[j])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      for (IntIterator it = intIterator(); it.hasNext();) {
+        if (!that.contains(it.next())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#copySet(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public void copySet(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set == this) {
+      return;
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      RoaringMutableIntSet that = (RoaringMutableIntSet) set;
+      keys = new char[that.count];
+      containers = new Container[that.count];
+      System.arraycopy(that.keys, 0, keys, 0, that.count);
+      for (int i = 0; i < that.count; i++) {
+        containers[i] = that.containers[i].copy();
+      }
+      count = that.count;
+    } else {
+      clear();
+      for (IntIterator it = set.intIterator(); it.hasNext();) {
+        add(it.next());
+      }
+    }
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#addAll(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public boolean addAll(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    if (set instanceof RoaringMutableIntSet) {
+      return addAllInternal((RoaringMutableIntSet) set);
+    } else {
+      boolean change = false;
+      for (IntIterator it = set.intIterator(); it.hasNext();) {
+        change |= add(it.next());
+      }
+      return change;
+    }
+  }
+
+  private boolean addAllInternal(RoaringMutableIntSet that) {
+    boolean change = false;
+    int missing = 0;
+    int i = 0;
+    for (int j = 0; j < that.count; j++) {
+      while (i < count && keys[i] < that.keys[j]) {
+        i++;
+      }
+      if (i < count && keys[i] == that.keys[j]) {
+        Container c = containers[i];
+        int before = c.cardinality();
+        if (c instanceof BitmapContainer) {
+          orInto((BitmapContainer) c, that.containers[j]);
+        } else {
+          containers[i] = or(c, that.containers[j]);
+        }
+        change |= containers[i].cardinality() != before;
+      } else {
+        missing++;
+      }
+    }
+    if (missing > 0) {
+      // merge in the chunks this does not have
+      char[] newKeys = new char[count + missing];
+      Container[] newContainers = new Container[count + missing];
+      int k = 0;
+      i = 0;
+      int j = 0;
+      while (i < count || j < that.count) {
+        if (j == that.count || (i < count && keys[i] <= that.keys[j])) {
+          if (j < that.count && keys[i] == that.keys[j]) {
+            j++;
+          }
+          newKeys[k] = keys[i];
+          newContainers[k++] = containers[i++];
+        } else {
+          newKeys[k] = that.keys[j];
+          newContainers[k++] = that.containers[j++].copy();
+        }
+      }
+      keys = newKeys;
+      containers = newContainers;
+      count = k;
+      change = true;
+    }
+    return change;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#add(int)
+   */
+  @Override
+  public boolean add(int i) {
+    if (i < 0) {
+      throw new IllegalArgumentException("illegal i: " + i);
+    }
+    int index = find(high(i));
+    if (index < 0) {
+      ArrayContainer c = new ArrayContainer(1);
+      c.content[0] = (char) low(i);
+      c.cardinality = 1;
+      insertContainer(-(index + 1), high(i), c);
+      return true;
+    }
+    Container c = containers[index];
+    int before = c.cardinality();
+    containers[index] = c.add(low(i));
+    return containers[index].cardinality() != before;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#remove(int)
+   */
+  @Override
+  public boolean remove(int i) {
+    if (i < 0) {
+      return false;
+    }
+    int index = find(high(i));
+    if (index < 0) {
+      return false;
+    }
+    Container c = containers[index];
+    int before = c.cardinality();
+    c = c.remove(low(i));
+    if (c.cardinality() == 0) {
+      removeContainer(index);
+    } else {
+      containers[index] = c;
+    }
+    return c.cardinality() != before;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#clear()
+   */
+  @Override
+  public void clear() {
+    keys = NO_KEYS;
+    containers = NO_CONTAINERS;
+    count = 0;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#intersectWith(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public void intersectWith(IntSet set) throws IllegalArgumentException {
+    if (set == null) {
+      throw new IllegalArgumentException("set == null");
+    }
+    RoaringMutableIntSet that = set instanceof RoaringMutableIntSet ? (RoaringMutableIntSet) set : new RoaringMutableIntSet(set);
+    int k = 0;
+    int j = 0;
+    for (int i = 0; i < count; i++) {
+      while (j < that.count && that.keys[j] < keys[i]) {
+        j++;
+      }
+      if (j < that.count && that.keys[j] == keys[i]) {
+        Container c = and(containers[i], that.containers[j]);
+        if (c.cardinality() > 0) {
+          keys[k] = keys[i];
+          containers[k++] = c;
+        }
+      }
+    }
+    for (int i = k; i < count; i++) {
+      containers[i] = null;
+    }
+    count = k;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSet#addAllInIntersection(com.ibm.wala.util.intset.IntSet,
+   * com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) throws IllegalArgumentException {
+    if (other == null) {
+      throw new IllegalArgumentException("other == null");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("filter == null");
+    }
+    RoaringMutableIntSet o = new RoaringMutableIntSet(other);
+    o.intersectWith(filter);
+    return addAllInternal(o);
+  }
+
+  /**
+   * Remove the elements of B from this.
+   *
+   * @return this
+   */
+  public RoaringMutableIntSet removeAll(RoaringMutableIntSet B) throws IllegalArgumentException {
+    if (B == null) {
+      throw new IllegalArgumentException("B == null");
+    }
+    int k = 0;
+    int j = 0;
+    for (int i = 0; i < count; i++) {
+      while (j < B.count && B.keys[j] < keys[i]) {
+        j++;
+      }
+      Container c = containers[i];
+      if (j < B.count && B.keys[j] == keys[i]) {
+        c = andNot(c, B.containers[j]);
+      }
+      if (c.cardinality() > 0) {
+        keys[k] = keys[i];
+        containers[k++] = c;
+      }
+    }
+    for (int i = k; i < count; i++) {
+      containers[i] = null;
+    }
+    count = k;
+    return this;
+  }
+
+  /**
+   * Compute the asymmetric difference of two sets, A \ B.
+   */
+  public static RoaringMutableIntSet diff(RoaringMutableIntSet A, RoaringMutableIntSet B) throws IllegalArgumentException {
+    if (A == null) {
+      throw new IllegalArgumentException("A == null");
+    }
+    if (B == null) {
+      throw new IllegalArgumentException("B == null");
+    }
+    return new RoaringMutableIntSet(A).removeAll(B);
+  }
+
+  @Override
+  public String toString() {
+    StringBuffer sb = new StringBuffer("{ ");
+    for (IntIterator it = intIterator(); it.hasNext();) {
+      sb.append(it.next());
+      sb.append(" ");
+    }
+    sb.append("}");
+    return sb.toString();
+  }
+
+  /*
+   * operations on pairs of containers. Each returns a new container, which may be empty, and leaves its arguments alone unless it
+   * says otherwise.
+   */
+
+  /**
+   * @return the bits of a container; a new array unless c is a bitmap
+   */
+  private static long[] words(Container c) {
+    return c instanceof BitmapContainer ? ((BitmapContainer) c).words : c.toBitmap().words;
+  }
+
+  /**
+   * @return the number of set bits in some words
+   */
+  private static int cardinality(long[] words) {
+    int result = 0;
+    for (int k = 0; k < BITMAP_WORDS; k++) {
+      result += Long.bitCount(words[k]);
+    }
+    return result;
+  }
+
+  /**
+   * @return a bitmap as an array container if it is small enough
+   */
+  private static Container shrink(BitmapContainer b) {
+    return b.cardinality <= ARRAY_MAX ? b.toArray() : b;
+  }
+
+  /**
+   * @return a container with the same elements as c in its smallest representation
+   */
+  private static Container optimize(Container c) {
+    int cardinality = c.cardinality();
+    // sizes in chars
+    int runSize = 2 * c.numberOfRuns();
+    int arrayOrBitmapSize = Math.min(cardinality, ARRAY_MAX);
+    if (runSize < arrayOrBitmapSize) {
+      return c instanceof RunContainer ? c : c.toRun();
+    } else if (cardinality <= ARRAY_MAX) {
+      return c instanceof ArrayContainer ? c : c.toArray();
+    } else {
+      return c instanceof BitmapContainer ? c : c.toBitmap();
+    }
+  }
+
+  /**
+   * Add the elements of c to b, in place.
+   */
+  private static void orInto(BitmapContainer b, Container c) {
+    long[] w = b.words;
+    if (c instanceof ArrayContainer) {
+      ArrayContainer a = (ArrayContainer) c;
+      for (int k = 0; k < a.cardinality; k++) {
+        int v = a.content[k];
+        long old = w[v >>> 6];
+        long updated = old | (1L << v);
+        w[v >>> 6] = updated;
+        b.cardinality += (int) ((old ^ updated) >>> v);
+      }
+    } else {
+      long[] x = words(c);
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        w[k] |= x[k];
+      }
+      b.cardinality = cardinality(w);
+    }
+  }
+
+  private static Container or(Container a, Container b) {
+    if (a instanceof BitmapContainer) {
+      BitmapContainer result = ((BitmapContainer) a).copy();
+      orInto(result, b);
+      return result;
+    } else if (b instanceof BitmapContainer) {
+      BitmapContainer result = ((BitmapContainer) b).copy();
+      orInto(result, a);
+      return result;
+    } else if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+      ArrayContainer x = (ArrayContainer) a;
+      ArrayContainer y = (ArrayContainer) b;
+      if (x.cardinality + y.cardinality <= ARRAY_MAX) {
+        return merge(x, y);
+      } else {
+        BitmapContainer result = x.toBitmap();
+        orInto(result, y);
+        return shrink(result);
+      }
+    } else {
+      BitmapContainer result = a.toBitmap();
+      orInto(result, b);
+      return optimize(result);
+    }
+  }
+
+  /**
+   * @return the union of two array containers, as an array container
+   */
+  private static ArrayContainer merge(ArrayContainer x, ArrayContainer y) {
+    ArrayContainer result = new ArrayContainer(x.cardinality + y.cardinality);
+    char[] r = result.content;
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < x.cardinality && j < y.cardinality) {
+      char u = x.content[i];
+      char v = y.content[j];
+      if (u < v) {
+        r[k++] = u;
+        i++;
+      } else if (u > v) {
+        r[k++] = v;
+        j++;
+      } else {
+        r[k++] = u;
+        i++;
+        j++;
+      }
+    }
+    while (i < x.cardinality) {
+      r[k++] = x.content[i++];
+    }
+    while (j < y.cardinality) {
+      r[k++] = y.content[j++];
+    }
+    result.cardinality = k;
+    return result;
+  }
+
+  private static Container and(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return filter((ArrayContainer) a, b, true);
+    } else if (b instanceof ArrayContainer) {
+      return filter((ArrayContainer) b, a, true);
+    } else {
+      BitmapContainer result = a instanceof BitmapContainer ? ((BitmapContainer) a).copy() : a.toBitmap();
+      long[] w = result.words;
+      long[] x = words(b);
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        w[k] &= x[k];
+      }
+      result.cardinality = cardinality(w);
+      return a instanceof RunContainer || b instanceof RunContainer ? optimize(result) : shrink(result);
+    }
+  }
+
+  private static Container andNot(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return filter((ArrayContainer) a, b, false);
+    }
+    BitmapContainer result = a instanceof BitmapContainer ? ((BitmapContainer) a).copy() : a.toBitmap();
+    long[] w = result.words;
+    if (b instanceof ArrayContainer) {
+      ArrayContainer y = (ArrayContainer) b;
+      for (int k = 0; k < y.cardinality; k++) {
+        int v = y.content[k];
+        long old = w[v >>> 6];
+        long updated = old & ~(1L << v);
+        w[v >>> 6] = updated;
+        result.cardinality -= (int) ((old ^ updated) >>> v);
+      }
+    } else {
+      long[] x = words(b);
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        w[k] &= ~x[k];
+      }
+      result.cardinality = cardinality(w);
+    }
+    return a instanceof RunContainer ? optimize(result) : shrink(result);
+  }
+
+  /**
+   * @return an array container of the elements of a which are (if keep) or are not (if !keep) in b
+   */
+  private static ArrayContainer filter(ArrayContainer a, Container b, boolean keep) {
+    ArrayContainer result = new ArrayContainer(a.cardinality);
+    int k = 0;
+    for (int i = 0; i < a.cardinality; i++) {
+      char v = a.content[i];
+      if (b.contains(v) == keep) {
+        result.content[k++] = v;
+      }
+    }
+    result.cardinality = k;
+    return result;
+  }
+
+  private static boolean intersects(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return intersects((ArrayContainer) a, b);
+    } else if (b instanceof ArrayContainer) {
+      return intersects((ArrayContainer) b, a);
+    } else {
+      long[] x = words(a);
+      long[] y = words(b);
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        if ((x[k] & y[k]) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static boolean intersects(ArrayContainer a, Container b) {
+    for (int i = 0; i < a.cardinality; i++) {
+      if (b.contains(a.content[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true iff every element of a is in b
+   */
+  private static boolean isSubset(Container a, Container b) {
+    if (a.cardinality() > b.cardinality()) {
+      return false;
+    }
+    if (a instanceof ArrayContainer) {
+      ArrayContainer x = (ArrayContainer) a;
+      for (int i = 0; i < x.cardinality; i++) {
+        if (!b.contains(x.content[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      long[] x = words(a);
+      long[] y = words(b);
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        if ((x[k] & ~y[k]) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The low 16 bits of the elements of a chunk.
+   */
+  private static abstract class Container {
+
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /**
+     * @return a container with the elements of this and low: this, changed in place, or a new one
+     */
+    abstract Container add(int low);
+
+    /**
+     * @return a container with the elements of this but low: this, changed in place, or a new one
+     */
+    abstract Container remove(int low);
+
+    /**
+     * @return the largest element
+     */
+    abstract int last();
+
+    /**
+     * @return the number of runs of consecutive elements
+     */
+    abstract int numberOfRuns();
+
+    /**
+     * Invoke an action on base plus each element, in increasing order
+     */
+    abstract void foreach(int base, IntSetAction action);
+
+    abstract IntIterator iterator(int base);
+
+    abstract Container copy();
+
+    abstract BitmapContainer toBitmap();
+
+    /**
+     * @return the elements in increasing order, in a new array of exactly {@link #cardinality()} elements
+     */
+    abstract char[] toChars();
+
+    ArrayContainer toArray() {
+      char[] content = toChars();
+      return new ArrayContainer(content, content.length);
+    }
+
+    RunContainer toRun() {
+      char[] content = toChars();
+      int runs = numberOfRuns();
+      RunContainer result = new RunContainer(runs);
+      int r = -1;
+      for (int i = 0; i < content.length; i++) {
+        if (i == 0 || content[i] != content[i - 1] + 1) {
+          r++;
+          result.starts[r] = content[i];
+        } else {
+          result.lengths[r]++;
+        }
+      }
+      result.runs = runs;
+      result.cardinality = content.length;
+      return result;
+    }
+  }
+
+  /**
+   * A sorted array of the elements.
+   */
+  private static final class ArrayContainer extends Container {
+
+    char[] content;
+
+    int cardinality;
+
+    ArrayContainer(int capacity) {
+      this.content = new char[capacity];
+    }
+
+    ArrayContainer(char[] content, int cardinality) {
+      this.content = content;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    /**
+     * @return the index of low, or -(insertion point + 1) if it is absent
+     */
+    private int indexOf(int low) {
+      int lo = 0;
+      int hi = cardinality - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int v = content[mid];
+        if (v < low) {
+          lo = mid + 1;
+        } else if (v > low) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(lo + 1);
+    }
+
+    @Override
+    boolean contains(int low) {
+      return indexOf(low) >= 0;
+    }
+
+    @Override
+    Container add(int low) {
+      int index = indexOf(low);
+      if (index >= 0) {
+        return this;
+      }
+      if (cardinality == ARRAY_MAX) {
+        BitmapContainer result = toBitmap();
+        return result.add(low);
+      }
+      index = -(index + 1);
+      if (cardinality == content.length) {
+        char[] old = content;
+        content = new char[Math.min(ARRAY_MAX, Math.max(4, 2 * cardinality))];
+        System.arraycopy(old, 0, content, 0, cardinality);
+      }
+      System.arraycopy(content, index, content, index + 1, cardinality - index);
+      content[index] = (char) low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(int low) {
+      int index = indexOf(low);
+      if (index >= 0) {
+        System.arraycopy(content, index + 1, content, index, cardinality - index - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    int last() {
+      return content[cardinality - 1];
+    }
+
+    @Override
+    int numberOfRuns() {
+      int result = 0;
+      for (int i = 0; i < cardinality; i++) {
+        if (i == 0 || content[i] != content[i - 1] + 1) {
+          result++;
+        }
+      }
+      return result;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int i = 0; i < cardinality; i++) {
+        action.act(base | content[i]);
+      }
+    }
+
+    @Override
+    IntIterator iterator(final int base) {
+      return new IntIterator() {
+        private int i = 0;
+
+        @Override
+        public boolean hasNext() {
+          return i < cardinality;
+        }
+
+        @Override
+        public int next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return base | content[i++];
+        }
+      };
+    }
+
+    @Override
+    ArrayContainer copy() {
+      char[] c = new char[cardinality];
+      System.arraycopy(content, 0, c, 0, cardinality);
+      return new ArrayContainer(c, cardinality);
+    }
+
+    @Override
+    BitmapContainer toBitmap() {
+      BitmapContainer result = new BitmapContainer();
+      for (int i = 0; i < cardinality; i++) {
+        int v = content[i];
+        result.words[v >>> 6] |= 1L << v;
+      }
+      result.cardinality = cardinality;
+      return result;
+    }
+
+    @Override
+    char[] toChars() {
+      char[] result = new char[cardinality];
+      System.arraycopy(content, 0, result, 0, cardinality);
+      return result;
+    }
+
+    @Override
+    ArrayContainer toArray() {
+      return copy();
+    }
+  }
+
+  /**
+   * A bitmap of 2^16 bits.
+   */
+  private static final class BitmapContainer extends Container {
+
+    final long[] words;
+
+    int cardinality;
+
+    BitmapContainer() {
+      this.words = new long[BITMAP_WORDS];
+    }
+
+    private BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Container add(int low) {
+      long old = words[low >>> 6];
+      long updated = old | (1L << low);
+      words[low >>> 6] = updated;
+      cardinality += (int) ((old ^ updated) >>> low);
+      return this;
+    }
+
+    @Override
+    Container remove(int low) {
+      long old = words[low >>> 6];
+      long updated = old & ~(1L << low);
+      words[low >>> 6] = updated;
+      cardinality -= (int) ((old ^ updated) >>> low);
+      return shrink(this);
+    }
+
+    @Override
+    int last() {
+      for (int k = BITMAP_WORDS - 1; k >= 0; k--) {
+        if (words[k] != 0) {
+          return 64 * k + 63 - Long.numberOfLeadingZeros(words[k]);
+        }
+      }
+      throw new IllegalStateException("empty container");
+    }
+
+    @Override
+    int numberOfRuns() {
+      // count the ends of runs: a set bit followed by a clear one
+      int result = 0;
+      for (int k = 0; k < BITMAP_WORDS - 1; k++) {
+        long w = words[k];
+        result += Long.bitCount(~w & (w << 1)) + (int) ((w >>> 63) & ~words[k + 1]);
+      }
+      long w = words[BITMAP_WORDS - 1];
+      result += Long.bitCount(~w & (w << 1)) + (int) (w >>> 63);
+      return result;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        foreachBit(words[k], base + 64 * k, action);
+      }
+    }
+
+    @Override
+    IntIterator iterator(final int base) {
+      return new IntIterator() {
+        private int k = 0;
+
+        private long word = words[0];
+
+        @Override
+        public boolean hasNext() {
+          while (word == 0 && k < BITMAP_WORDS - 1) {
+            word = words[++k];
+          }
+          return word != 0;
+        }
+
+        @Override
+        public int next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          int result = base + 64 * k + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          return result;
+        }
+      };
+    }
+
+    @Override
+    BitmapContainer copy() {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    BitmapContainer toBitmap() {
+      return copy();
+    }
+
+    @Override
+    char[] toChars() {
+      char[] result = new char[cardinality];
+      int i = 0;
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        long w = words[k];
+        while (w != 0) {
+          result[i++] = (char) (64 * k + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Runs of consecutive elements: run r is starts[r] .. starts[r] + lengths[r].
+   */
+  private static final class RunContainer extends Container {
+
+    final char[] starts;
+
+    final char[] lengths;
+
+    int runs;
+
+    int cardinality;
+
+    RunContainer(int capacity) {
+      this.starts = new char[capacity];
+      this.lengths = new char[capacity];
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low) {
+      // find the last run starting at or before low
+      int lo = 0;
+      int hi = runs - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (starts[mid] <= low) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return hi >= 0 && low <= starts[hi] + lengths[hi];
+    }
+
+    /**
+     * @return the container this turns into when it changes: runs are only made by {@link RoaringMutableIntSet#optimize(Container)}
+     */
+    private Container unpack() {
+      return cardinality <= ARRAY_MAX ? toArray() : toBitmap();
+    }
+
+    @Override
+    Container add(int low) {
+      return contains(low) ? this : unpack().add(low);
+    }
+
+    @Override
+    Container remove(int low) {
+      return contains(low) ? unpack().remove(low) : this;
+    }
+
+    @Override
+    int last() {
+      return starts[runs - 1] + lengths[runs - 1];
+    }
+
+    @Override
+    int numberOfRuns() {
+      return runs;
+    }
+
+    @Override
+    void foreach(int base, IntSetAction action) {
+      for (int r = 0; r < runs; r++) {
+        int end = base + starts[r] + lengths[r];
+        for (int v = base + starts[r]; v <= end; v++) {
+          action.act(v);
+        }
+      }
+    }
+
+    @Override
+    IntIterator iterator(final int base) {
+      return new IntIterator() {
+        private int r = 0;
+
+        private int next = runs == 0 ? 0 : starts[0];
+
+        @Override
+        public boolean hasNext() {
+          return r < runs;
+        }
+
+        @Override
+        public int next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          int result = base + next;
+          if (next == starts[r] + lengths[r]) {
+            r++;
+            if (r < runs) {
+              next = starts[r];
+            }
+          } else {
+            next++;
+          }
+          return result;
+        }
+      };
+    }
+
+    @Override
+    RunContainer copy() {
+      RunContainer result = new RunContainer(runs);
+      System.arraycopy(starts, 0, result.starts, 0, runs);
+      System.arraycopy(lengths, 0, result.lengths, 0, runs);
+      result.runs = runs;
+      result.cardinality = cardinality;
+      return result;
+    }
+
+    @Override
+    BitmapContainer toBitmap() {
+      BitmapContainer result = new BitmapContainer();
+      long[] w = result.words;
+      for (int r = 0; r < runs; r++) {
+        int from = starts[r];
+        int to = from + lengths[r] + 1;
+        // set bits [from, to) a word at a time
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        if (first == last) {
+          w[first] |= (-1L << from) & (-1L >>> -to);
+        } else {
+          w[first] |= -1L << from;
+          for (int k = first + 1; k < last; k++) {
+            w[k] = -1L;
+          }
+          w[last] |= -1L >>> -to;
+        }
+      }
+      result.cardinality = cardinality;
+      return result;
+    }
+
+    @Override
+    char[] toChars() {
+      char[] result = new char[cardinality];
+      int i = 0;
+      for (int r = 0; r < runs; r++) {
+        int end = starts[r] + lengths[r];
+        for (int v = starts[r]; v <= end; v++) {
+          result[i++] = (char) v;
+        }
+      }
+      return result;
+    }
+
+    @Override
+    RunContainer toRun() {
+      return copy();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.intset;
+
+/**
+ * A factory for {@link RoaringMutableIntSet}s. To use them for points-to sets, pass one to
+ * {@link IntSetUtil#setDefaultIntSetFactory(MutableIntSetFactory)}, or name this class in the
+ * {@link IntSetUtil#INT_SET_FACTORY_CONFIG_PROPERTY_NAME} system property.
+ */
+public class RoaringMutableIntSetFactory implements MutableIntSetFactory<RoaringMutableIntSet> {
+
+  /**
+   * @throws IllegalArgumentException if set is null
+   */
+  @Override
+  public RoaringMutableIntSet make(int[] set) {
+    if (set == null) {
+      throw new IllegalArgumentException("set is null");
+    }
+    RoaringMutableIntSet result = new RoaringMutableIntSet();
+    for (int i = 0; i < set.length; i++) {
+      result.add(set[i]);
+    }
+    result.optimize();
+    return result;
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSetFactory#parse(java.lang.String)
+   */
+  @Override
+  public RoaringMutableIntSet parse(String string) throws NumberFormatException {
+    return make(SparseIntSet.parseIntArray(string));
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSetFactory#makeCopy(com.ibm.wala.util.intset.IntSet)
+   */
+  @Override
+  public RoaringMutableIntSet makeCopy(IntSet x) throws IllegalArgumentException {
+    if (x == null) {
+      throw new IllegalArgumentException("x == null");
+    }
+    return new RoaringMutableIntSet(x);
+  }
+
+  /*
+   * @see com.ibm.wala.util.intset.MutableIntSetFactory#make()
+   */
+  @Override
+  public RoaringMutableIntSet make() {
+    return new RoaringMutableIntSet();
+  }
+}
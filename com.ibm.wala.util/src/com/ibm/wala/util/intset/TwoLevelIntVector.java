@@ -28,7 +28,7 @@ public class TwoLevelIntVector implements IntVector {
   /**
    * Array of IntVector: data.get(i) holds data[i*PAGE_SIZE] ... data[(i+1)*PAGESIZE - 1]
    */
-  final private Vector<SparseIntVector> data = new Vector<SparseIntVector>();
+  final private Vector<IntIntHashMap> data = new Vector<IntIntHashMap>();
 
   private final int defaultValue;
 
@@ -81,14 +81,14 @@ public class TwoLevelIntVector implements IntVector {
 
   private IntVector findOrCreatePage(int page) {
     if (page >= data.size()) {
-      SparseIntVector v = new SparseIntVector(defaultValue);
+      IntIntHashMap v = new IntIntHashMap(defaultValue);
       data.setSize(page + 1);
       data.add(page, v);
       return v;
     } else {
-      SparseIntVector v = data.get(page);
+      IntIntHashMap v = data.get(page);
       if (v == null) {
-        v = new SparseIntVector(defaultValue);
+        v = new IntIntHashMap(defaultValue);
         data.set(page, v);
       }
       return v;